@@ -1,4 +1,4 @@
-import { sys } from 'cc';
+import { sys, native } from 'cc';
 
 /**
  * API配置文件
@@ -398,6 +398,7 @@ export class ApiConfig {
      */
     public static setLocalGameProgress(data: LocalGameProgress): void {
         this.LOCAL_GAME_PROGRESS = data;
+        this.markProgressDirty(...(Object.keys(data) as (keyof LocalGameProgress)[]));
         this.saveLocalProgressToStorage();
     }
 
@@ -435,15 +436,53 @@ export class ApiConfig {
         return defaultProgress;
     }
 
+    // 原生键值存储中进度字段的键前缀，每个字段单独保存
+    private static readonly PROGRESS_KEY_PREFIX = 'progress.';
+    // 上次保存后被修改过的字段，保存时只写入这些字段
+    private static dirtyProgressFields: Record<string, boolean> = {};
+    // 原生键值存储已保存完整进度后为true，此后不再写入localStorage，避免两边数据不一致
+    private static nativeProgressStoreActive = false;
+
+    /**
+     * 标记进度字段已修改，下次保存时写入
+     * 直接修改getLocalGameProgress()返回对象的字段后，需要调用此方法再保存
+     */
+    public static markProgressDirty(...fields: (keyof LocalGameProgress)[]): void {
+        for (const field of fields) {
+            this.dirtyProgressFields[field] = true;
+        }
+    }
+
+    /**
+     * 是否使用原生键值存储保存进度（仅Android原生环境）
+     */
+    private static useNativeProgressStore(): boolean {
+        return sys.isNative && sys.platform === sys.Platform.ANDROID;
+    }
+
     /**
      * 从本地存储加载游戏进度
+     * Android原生环境下从原生键值存储读取各字段；第一次读取时把旧的localStorage数据迁移过去
      */
     public static loadLocalProgressFromStorage(): LocalGameProgress | null {
         try {
+            if (this.useNativeProgressStore()) {
+                const progress = this.loadProgressFromNativeStore();
+                if (progress) {
+                    this.LOCAL_GAME_PROGRESS = progress;
+                    this.nativeProgressStoreActive = true;
+                    return progress;
+                }
+            }
             const stored = localStorage.getItem('game_progress');
             if (stored) {
                 const progress = JSON.parse(stored) as LocalGameProgress;
                 this.LOCAL_GAME_PROGRESS = progress;
+                if (this.useNativeProgressStore() && this.writeProgressFieldsToNativeStore(progress, true)) {
+                    this.nativeProgressStoreActive = true;
+                    localStorage.removeItem('game_progress');
+                    console.log('本地进度已迁移到原生存储');
+                }
                 return progress;
             }
         } catch (error) {
@@ -454,11 +493,30 @@ export class ApiConfig {
 
     /**
      * 保存游戏进度到本地存储
+     * Android原生环境下只把标记为已修改的字段交给原生后写日志，由后台线程合并后写入键值存储。
+     * 原生存储一旦保存过完整进度，写入失败时保留修改标记等下次保存重试，不再回退到localStorage，
+     * 否则加载时优先读取原生存储会读到旧数据
      */
     public static saveLocalProgressToStorage(): void {
         try {
             if (this.LOCAL_GAME_PROGRESS) {
                 this.LOCAL_GAME_PROGRESS.lastLocalSaveTime = Date.now();
+                this.markProgressDirty('lastLocalSaveTime');
+                if (this.useNativeProgressStore()) {
+                    // 第一次写入原生存储时写入全部字段，保证原生存储中的进度完整
+                    const firstWrite = !this.nativeProgressStoreActive;
+                    if (this.writeProgressFieldsToNativeStore(this.LOCAL_GAME_PROGRESS, firstWrite)) {
+                        if (firstWrite) {
+                            this.nativeProgressStoreActive = true;
+                            localStorage.removeItem('game_progress');
+                        }
+                        return;
+                    }
+                    if (!firstWrite) {
+                        console.warn('写入原生进度存储失败，下次保存时重试');
+                        return;
+                    }
+                }
                 localStorage.setItem('game_progress', JSON.stringify(this.LOCAL_GAME_PROGRESS));
             }
         } catch (error) {
@@ -466,6 +524,65 @@ export class ApiConfig {
         }
     }
 
+    /**
+     * 读取原生键值存储中的进度字段，没有数据时返回null
+     */
+    private static loadProgressFromNativeStore(): LocalGameProgress | null {
+        const json = native.reflection.callStaticMethod(
+            'com/schanyin/tgcf/ProgressJournal',
+            'getAllStatic',
+            '()Ljava/lang/String;'
+        );
+        const all = json ? JSON.parse(json) : {};
+        const progress: any = {
+            localSceneData: null,
+            serverSceneData: null
+        };
+        let found = false;
+        for (const key of Object.keys(all)) {
+            if (key.startsWith(this.PROGRESS_KEY_PREFIX)) {
+                progress[key.substring(this.PROGRESS_KEY_PREFIX.length)] = all[key];
+                found = true;
+            }
+        }
+        if (!found) {
+            return null;
+        }
+        this.dirtyProgressFields = {};
+        return progress as LocalGameProgress;
+    }
+
+    /**
+     * 把标记为已修改的字段写入原生键值存储（值为null的字段被删除），成功后清除修改标记
+     * @param all 为true时写入全部字段
+     * @returns 是否写入成功
+     */
+    private static writeProgressFieldsToNativeStore(progress: LocalGameProgress, all: boolean): boolean {
+        const fields = all ? Object.keys(progress) : Object.keys(this.dirtyProgressFields);
+        if (fields.length === 0) {
+            return true;
+        }
+        const changed: Record<string, any> = {};
+        for (const field of fields) {
+            const value = (progress as any)[field];
+            changed[this.PROGRESS_KEY_PREFIX + field] = value === undefined ? null : value;
+        }
+        try {
+            // 交给原生后写日志后立即返回，合并和落盘在后台进行
+            native.reflection.callStaticMethod(
+                'com/schanyin/tgcf/ProgressJournal',
+                'recordStatic',
+                '(Ljava/lang/String;)V',
+                JSON.stringify(changed)
+            );
+        } catch (error) {
+            console.warn('写入原生进度存储失败:', error);
+            return false;
+        }
+        this.dirtyProgressFields = {};
+        return true;
+    }
+
     /**
      * 更新服务器数据（从服务器响应更新）
      */
@@ -519,11 +636,27 @@ export class ApiConfig {
             }
             
             this.LOCAL_GAME_PROGRESS.lastServerSyncTime = Date.now();
+            this.markProgressDirty('goldNumOther', 'goldNumCompose', 'redBagNumOther', 'redBagNumCompose',
+                'wealthNum', 'exp', 'level', 'drawNum', 'progress', 'nextLotteryLayer',
+                'serverSceneData', 'lastServerSyncTime');
             
             this.saveLocalProgressToStorage();
         }
     }
 
+    /**
+     * 从合成计数中扣除服务器已确认的部分（上报期间新增的合成数据保留到下次上报）
+     */
+    public static deductSyncedCompose(goldNumCompose: number, redBagNumCompose: number, times: number): void {
+        if (this.LOCAL_GAME_PROGRESS) {
+            this.LOCAL_GAME_PROGRESS.goldNumCompose = Math.max(0, this.LOCAL_GAME_PROGRESS.goldNumCompose - goldNumCompose);
+            this.LOCAL_GAME_PROGRESS.redBagNumCompose = Math.max(0, this.LOCAL_GAME_PROGRESS.redBagNumCompose - redBagNumCompose);
+            this.LOCAL_GAME_PROGRESS.times = Math.max(0, this.LOCAL_GAME_PROGRESS.times - times);
+            this.markProgressDirty('goldNumCompose', 'redBagNumCompose', 'times');
+            this.saveLocalProgressToStorage();
+        }
+    }
+
     /**
      * 增加合成奖励
      */
@@ -540,6 +673,7 @@ export class ApiConfig {
             
             // 增加激励视频计数器
             this.LOCAL_GAME_PROGRESS.rewardAdCounter += 1;
+            this.markProgressDirty('goldNumCompose', 'redBagNumCompose', 'wealthNum', 'times', 'rewardAdCounter');
             
             // 不立即保存到本地存储，由定时器统一保存
         }
@@ -578,6 +712,7 @@ export class ApiConfig {
         if (this.LOCAL_GAME_PROGRESS) {
             this.LOCAL_GAME_PROGRESS.rewardAdCounter = 0;
             this.LOCAL_GAME_PROGRESS.lastRewardAdTime = Date.now();
+            this.markProgressDirty('rewardAdCounter', 'lastRewardAdTime');
             this.saveLocalProgressToStorage();
         }
     }
@@ -592,6 +727,7 @@ export class ApiConfig {
         
         if (this.LOCAL_GAME_PROGRESS) {
             this.LOCAL_GAME_PROGRESS.localSceneData = sceneData;
+            this.markProgressDirty('localSceneData');
             // 立即保存本地数据，因为场景变化频繁
             this.saveLocalProgressToStorage();
         }
@@ -607,6 +743,7 @@ export class ApiConfig {
         
         if (this.LOCAL_GAME_PROGRESS) {
             this.LOCAL_GAME_PROGRESS.serverSceneData = sceneData;
+            this.markProgressDirty('serverSceneData');
             this.saveLocalProgressToStorage();
         }
     }
@@ -748,13 +885,47 @@ export class ApiConfig {
         return this.getCurrentEnvironment().baseUrl;
     }
 
+    // 原生网络质量对应的超时缩放系数，按时间缓存，避免每个请求都走反射
+    private static timeoutScale: number = 1;
+    private static timeoutScaleReadAt: number = 0;
+    private static readonly TIMEOUT_SCALE_TTL = 5000;
+
     /**
      * 获取超时时间
+     * Android原生环境下按原生估计的网络质量缩放：网络差时延长，任何情况下都不短于基础超时
      */
     public static getTimeout(): number {
+        return Math.round(this.getBaseTimeout() * this.getTimeoutScale());
+    }
+
+    /**
+     * 获取环境配置的基础超时时间（不随网络质量变化）
+     */
+    public static getBaseTimeout(): number {
         return this.getCurrentEnvironment().timeout;
     }
 
+    private static getTimeoutScale(): number {
+        if (!sys.isNative || sys.platform !== sys.Platform.ANDROID) {
+            return 1;
+        }
+        const now = Date.now();
+        if (now - this.timeoutScaleReadAt > this.TIMEOUT_SCALE_TTL) {
+            this.timeoutScaleReadAt = now;
+            try {
+                const scale = native.reflection.callStaticMethod(
+                    'com/schanyin/tgcf/NetworkQualityEstimator',
+                    'getTimeoutScale',
+                    '()F'
+                );
+                this.timeoutScale = scale > 1 ? scale : 1;
+            } catch (error) {
+                this.timeoutScale = 1;
+            }
+        }
+        return this.timeoutScale;
+    }
+
     /**
      * 获取完整的API地址
      * @param endpoint 端点路径
@@ -0,0 +1,80 @@
+import { log, warn, native, assetManager } from 'cc';
+import { NativeHttpClient } from './NativeHttpClient';
+
+/**
+ * 开屏期间预热的资源列表
+ * 第一个场景加载完成后，把场景依赖的资源文件（场景本身、引用的预制体及其贴图等）路径交给原生保存；
+ * 下次启动展示开屏广告时，原生在后台顺序读取这些文件，使其进入系统页缓存
+ */
+export class AssetWarmList {
+
+    // 保存的路径数上限，与原生预热的字节预算配合
+    private static readonly MAX_PATHS = 400;
+    private static recorded: boolean = false;
+
+    /**
+     * 记录场景依赖的资源文件路径（每次启动只记录一次）
+     */
+    public static recordSceneAssets(sceneName: string): void {
+        if (this.recorded || !NativeHttpClient.isNativeAvailable()) {
+            return;
+        }
+        this.recorded = true;
+        try {
+            const bundle = assetManager.main;
+            const info = bundle?.getSceneInfo(sceneName);
+            if (!info) {
+                return;
+            }
+            const uuids = [info.uuid, ...assetManager.dependUtil.getDepsRecursively(info.uuid)];
+            const paths: string[] = [];
+            // 多个资源合并在同一个pack文件中时只记录一次
+            const recordedPacks: Record<string, boolean> = {};
+            for (const uuid of uuids) {
+                const importPath = this.resolveImportPath(uuid, recordedPacks);
+                if (importPath) {
+                    paths.push(importPath);
+                }
+                const nativeDep = assetManager.dependUtil.getNativeDep(uuid);
+                if (nativeDep) {
+                    paths.push(assetManager.utils.getUrlWithUuid(uuid, { isNative: true, nativeExt: nativeDep.ext }));
+                }
+                if (paths.length >= this.MAX_PATHS) {
+                    break;
+                }
+            }
+            native.reflection.callStaticMethod(
+                'com/schanyin/tgcf/AssetPageCacheWarmer',
+                'setWarmListStatic',
+                '(Ljava/lang/String;)V',
+                paths.slice(0, this.MAX_PATHS).join('\n')
+            );
+            log(`[AssetWarmList] 已记录场景${sceneName}的${uuids.length}个资源，${Math.min(paths.length, this.MAX_PATHS)}个文件`);
+        } catch (error) {
+            warn('[AssetWarmList] 记录预热资源失败:', error);
+        }
+    }
+
+    /**
+     * 按bundle配置解析资源序列化数据实际加载的文件：被合并进pack的资源取pack文件（与引擎一样取第一个pack），
+     * 否则按配置中的扩展名（.json或.cconb）取单独的文件；pack已记录过或资源不在任何bundle中时返回null
+     */
+    private static resolveImportPath(uuid: string, recordedPacks: Record<string, boolean>): string | null {
+        const bundle = assetManager.bundles.find((b) => !!b.getAssetInfo(uuid));
+        const assetInfo: any = bundle?.getAssetInfo(uuid);
+        if (!assetInfo) {
+            return null;
+        }
+        const packs = assetInfo.packs;
+        if (packs && packs.length > 0) {
+            const pack = packs[0];
+            if (recordedPacks[pack.uuid]) {
+                return null;
+            }
+            recordedPacks[pack.uuid] = true;
+            // pack的uuid也登记在bundle配置中，按它解析可以带上版本号
+            return assetManager.utils.getUrlWithUuid(pack.uuid, { isNative: false, ext: pack.ext || '.json' });
+        }
+        return assetManager.utils.getUrlWithUuid(uuid, { isNative: false, ext: assetInfo.extension || '.json' });
+    }
+}
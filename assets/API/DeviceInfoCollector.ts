@@ -30,6 +30,18 @@ export interface DeviceInfo {
     wifi: boolean;
 }
 
+/**
+ * collectDeviceReport 字段掩码，与原生AppActivity中的定义保持一致
+ */
+export enum DeviceReportField {
+    DEVICE = 1,
+    ANDROID_ID = 1 << 1,
+    SIM = 1 << 2,
+    NETWORK = 1 << 3,
+    SYSTEM = 1 << 4,
+    TOKEN = 1 << 5
+}
+
 @ccclass('DeviceInfoCollector')
 export class DeviceInfoCollector extends Component implements INativeMessageHandler {
     
@@ -49,6 +61,27 @@ export class DeviceInfoCollector extends Component implements INativeMessageHand
     private resolveAndroidIdPromise: (value: string) => void = null;
     private rejectAndroidIdPromise: (reason?: any) => void = null;
     private androidIdTimeout: any = null;
+    
+    // 批量设备报告中附带的连云山token（静态保存，LianyunshanSDK获取token时优先使用，省去一次桥接往返）
+    private static reportedDeviceToken: string = '';
+    
+    // 原生增量推送的设备状态
+    private deviceState: { [field: string]: any } = {};
+    private deviceStateVersion: number = 0;
+    private deviceStateListeners: Array<(changes: { [field: string]: any }, full: boolean) => void> = [];
+    
+    // 推送字段名与DeviceInfo字段的对应关系，推送到达时同步更新缓存的设备信息
+    private static readonly STATE_TO_INFO_FIELD: { [field: string]: string } = {
+        isWiFi: 'wifi',
+        isVPN: 'vpn',
+        hasNetwork: 'network',
+        isCharging: 'charging',
+        isRoot: 'root',
+        debugMode: 'debug',
+        simCard: 'simCard',
+        ipAddress: 'ipAddress',
+        hasGyroscope: 'hasGyroscope'
+    };
 
     start() {
         warn('=== DeviceInfoCollector start 开始 ===');
@@ -103,6 +136,8 @@ export class DeviceInfoCollector extends Component implements INativeMessageHand
     private isDeviceInfoCommand(command: string): boolean {
         const deviceInfoCommands = [
             'deviceInfoResult',
+            'deviceReportResult',
+            'deviceStateUpdate',
             'deviceInfoError', 
             'androidIdResult',
             'simInfoResult',
@@ -122,6 +157,12 @@ export class DeviceInfoCollector extends Component implements INativeMessageHand
             case 'deviceInfoResult':
                 this.handleDeviceInfoResult(data);
                 break;
+            case 'deviceReportResult':
+                this.handleDeviceReportResult(data);
+                break;
+            case 'deviceStateUpdate':
+                this.handleDeviceStateUpdate(data);
+                break;
             case 'deviceInfoError':
                 this.handleDeviceInfoError(data);
                 break;
@@ -206,6 +247,101 @@ export class DeviceInfoCollector extends Component implements INativeMessageHand
         }
     }
 
+    /**
+     * 处理批量设备报告回调（collectDeviceReport）
+     */
+    private handleDeviceReportResult(jsonData: string): void {
+        try {
+            const report = JSON.parse(jsonData);
+            log(`批量设备报告返回，原生耗时: ${report.costMs}ms`);
+            
+            if (typeof report.token === 'string' && report.token.length > 0) {
+                DeviceInfoCollector.reportedDeviceToken = report.token;
+            }
+            if (report.failedFields && report.failedFields.length > 0) {
+                warn('设备报告部分字段采集失败:', report.failedFields);
+            }
+            
+            if (report.device) {
+                this.handleDeviceInfoResult(JSON.stringify(report.device));
+            } else {
+                this.handleDeviceInfoError('设备报告缺少设备信息');
+            }
+        } catch (error) {
+            log('解析设备报告JSON失败:', error);
+            this.handleDeviceInfoError('JSON解析失败: ' + error.message);
+        }
+    }
+
+    /**
+     * 处理设备状态推送（全量或增量）
+     * 增量版本号不连续时丢弃本次增量并请求全量同步
+     */
+    private handleDeviceStateUpdate(jsonData: string): void {
+        try {
+            const message = JSON.parse(jsonData);
+            if (!message.full && message.version !== this.deviceStateVersion + 1) {
+                warn(`设备状态版本不连续: 本地${this.deviceStateVersion}, 收到${message.version}，请求全量同步`);
+                NativeBridge.sendToNative('resyncDeviceState', '');
+                return;
+            }
+            
+            if (message.full) {
+                this.deviceState = {};
+            }
+            const changes = message.fields || {};
+            for (const key in changes) {
+                this.deviceState[key] = changes[key];
+                const infoField = DeviceInfoCollector.STATE_TO_INFO_FIELD[key];
+                if (this.cachedDeviceInfo && infoField) {
+                    (this.cachedDeviceInfo as any)[infoField] = changes[key];
+                }
+            }
+            this.deviceStateVersion = message.version;
+            
+            for (const listener of this.deviceStateListeners) {
+                listener(changes, !!message.full);
+            }
+        } catch (error) {
+            warn('解析设备状态推送失败:', error);
+        }
+    }
+
+    /**
+     * 订阅设备状态变化，原生只推送发生变化的字段，推送的值同时更新到缓存的设备信息
+     * 原生同一时间只有一个订阅，再次订阅会替换之前的字段和回调
+     * @param fields 字段名，与deviceInfoResult中的键一致（如 isWiFi、isVPN、batteryLevel）
+     * @param intervalMs 原生检查间隔
+     * @param listener 状态变化回调，参数为本次变化的字段和是否为全量推送
+     * @param staticFields 不会变化的字段（如isRoot），原生只读取一次并只在全量推送中带上
+     */
+    public subscribeDeviceState(fields: string[], intervalMs: number = 5000,
+                                listener?: (changes: { [field: string]: any }, full: boolean) => void,
+                                staticFields: string[] = []): void {
+        this.deviceStateListeners = listener ? [listener] : [];
+        if (sys.platform === sys.Platform.ANDROID && sys.isNative) {
+            this.deviceStateVersion = 0;
+            NativeBridge.sendToNative('subscribeDeviceState', JSON.stringify({ fields, staticFields, intervalMs }));
+        }
+    }
+
+    /**
+     * 取消设备状态订阅
+     */
+    public unsubscribeDeviceState(): void {
+        this.deviceStateListeners = [];
+        if (sys.platform === sys.Platform.ANDROID && sys.isNative) {
+            NativeBridge.sendToNative('unsubscribeDeviceState', '');
+        }
+    }
+
+    /**
+     * 获取当前设备状态（由原生推送维护）
+     */
+    public getDeviceState(): { [field: string]: any } {
+        return this.deviceState;
+    }
+
     /**
      * 处理设备信息获取失败的回调
      */
@@ -332,17 +468,23 @@ export class DeviceInfoCollector extends Component implements INativeMessageHand
 
     /**
      * 请求原生设备信息
+     * 使用collectDeviceReport一次往返同时获取设备信息和连云山token
      */
     private requestNativeDeviceInfo(): void {
         try {
+            const request = JSON.stringify({
+                fields: DeviceReportField.DEVICE | DeviceReportField.TOKEN,
+                tokenTimeoutMs: 3000
+            });
+            
             // 使用统一原生桥接管理器发送消息
-            const success = NativeBridge.sendToNative('getDeviceInfo', '');
+            const success = NativeBridge.sendToNative('collectDeviceReport', request);
             if (success) {
                 log('已通过统一桥接管理器发送设备信息请求到Android原生');
             } else {
                 warn('统一桥接管理器发送失败，尝试直接发送');
                 if (typeof native !== 'undefined' && native.bridge) {
-                    native.bridge.sendToNative('getDeviceInfo', '');
+                    native.bridge.sendToNative('collectDeviceReport', request);
                     log('已直接发送设备信息请求到Android原生');
                 } else {
                     throw new Error('原生桥接不可用');
@@ -541,6 +683,13 @@ export class DeviceInfoCollector extends Component implements INativeMessageHand
         return this.cachedDeviceInfo;
     }
 
+    /**
+     * 获取批量设备报告中附带的连云山token
+     */
+    public static getReportedDeviceToken(): string {
+        return DeviceInfoCollector.reportedDeviceToken;
+    }
+
     /**
      * 清除缓存的设备信息
      */
@@ -1,7 +1,11 @@
-import { _decorator, Component, log, warn, sys } from 'cc';
+import { _decorator, Component, log, warn, sys, native } from 'cc';
+import { ANDROID } from 'cc/env';
 import CryptoES from 'crypto-es';
 import { DeviceInfoCollector, DeviceInfo } from './DeviceInfoCollector';
 import { ApiConfig } from './ApiConfig';
+import { NativeHttpClient, NativeHttpCachePolicy } from './NativeHttpClient';
+import { HotUpdateDownloader } from './HotUpdateDownloader';
+import { HotUpdateInstaller } from './HotUpdateInstaller';
 
 const { ccclass, property } = _decorator;
 
@@ -31,6 +35,11 @@ export interface GetVersionResponse {
     packageName: string;
     downloadUrl: string;
     updateDescription: string;
+    // 热更新包的SHA-256（小写十六进制）和大小
+    sha256?: string;
+    size?: number;
+    // 服务端对"热更新号\n整包sha256\n整包大小"的签名（Base64），由原生用构建时写入的公钥验证
+    signature?: string;
 }
 
 /**
@@ -48,7 +57,8 @@ export interface ApiResponse<T> {
 export class EncryptedApiClient extends Component {
     
     // 密钥加固存储 - 使用多层编码和混淆（修正后的Base64编码）
-    private readonly SECRET_PARTS = [
+    // ANDROID是构建期常量，Android包构建时整个数组被裁掉，签名只能由原生SigningService完成
+    private readonly SECRET_PARTS: string[] = ANDROID ? [] : [
         'ODtqIWg3WA==', // 8;j!h7X
         'ezJhYjhLMDl2U0UwWnJOMm1BRzY=', // {2ab8K09vSE0ZrN2mAG6
         'XnQzNDVGMTVjNFZZKQ==', // ^t345F15c4VY)
@@ -57,23 +67,93 @@ export class EncryptedApiClient extends Component {
     
     private deviceInfoCollector: DeviceInfoCollector = null;
     
+    // 版本信息缓存：10分钟内直接使用，之后30分钟内先用缓存再后台重新验证，
+    // 更久的缓存不再使用，避免热更新和强更信息长期滞后
+    private static readonly VERSION_CACHE: NativeHttpCachePolicy = {
+        maxAgeMs: 10 * 60 * 1000,
+        staleMs: 30 * 60 * 1000,
+        ignoreParams: ['requestId', 'timeStamp'],
+        successCode: ApiConfig.BUSINESS_CODE.SUCCESS
+    };
+    
+    // 启动时的版本检查（每个进程只做一次，多个组件实例共享结果）
+    private static launchVersion: Promise<GetVersionResponse | null> = null;
+    // 启动版本检查的最新结果，后台重新验证拿到新内容时更新
+    private static launchVersionInfo: GetVersionResponse | null = null;
+    
     start() {
         log('EncryptedApiClient 已启动');
         
         // 打印当前配置信息
         ApiConfig.printCurrentConfig();
         
+        // 同步接口地址给原生端，下次启动时提前建立连接
+        NativeHttpClient.rememberPrewarmUrls([ApiConfig.getBaseUrl()]);
+        
+        // 启动时已切换的热更新目录加入搜索路径
+        HotUpdateInstaller.applySearchPaths();
+        
         // 获取设备信息收集器
         this.deviceInfoCollector = this.getComponent(DeviceInfoCollector);
         if (!this.deviceInfoCollector) {
             this.deviceInfoCollector = this.addComponent(DeviceInfoCollector);
         }
+        
+        // 启动时检查版本：原生端有缓存时立即返回（冷启动不等网络），过期的缓存在后台重新验证
+        if (!EncryptedApiClient.launchVersion && NativeHttpClient.isNativeAvailable()) {
+            EncryptedApiClient.launchVersion = this.checkVersionAtLaunch();
+        }
+    }
+    
+    /**
+     * 启动时的版本检查结果，后台重新验证后返回新内容（未检查或失败时为null）
+     */
+    public static getLaunchVersion(): Promise<GetVersionResponse | null> {
+        if (!EncryptedApiClient.launchVersion) {
+            return Promise.resolve(null);
+        }
+        return EncryptedApiClient.launchVersion.then(info => EncryptedApiClient.launchVersionInfo || info);
+    }
+    
+    /**
+     * 启动时的版本检查，走VERSION_CACHE缓存策略
+     */
+    private async checkVersionAtLaunch(): Promise<GetVersionResponse | null> {
+        try {
+            const info = await this.getVersion((updated) => {
+                EncryptedApiClient.launchVersionInfo = updated;
+                this.logVersionCheck(updated);
+            });
+            EncryptedApiClient.launchVersionInfo = info;
+            this.logVersionCheck(info);
+            // 构建提供了热更新公钥时，用同一份版本信息在后台准备热更新，下次启动生效
+            if (HotUpdateInstaller.isUpdateKeyConfigured()) {
+                this.prepareHotUpdate(info).catch(error => warn('热更新准备失败:', error));
+            }
+            return info;
+        } catch (error) {
+            warn('启动版本检查失败:', error);
+            return null;
+        }
+    }
+    
+    private logVersionCheck(info: GetVersionResponse): void {
+        const current = ApiConfig.getCurrentVersion();
+        if (info && info.versionCode > current) {
+            warn(`发现新版本: ${info.versionName} (${info.versionCode})，当前${current}，更新方式: ${info.updateMode}`);
+        } else {
+            log(`已是最新版本: ${current}`);
+        }
     }
 
     /**
      * 重构密钥 - 将分散的部分重新组合
      */
     private reconstructSecretKey(): string {
+        if (this.SECRET_PARTS.length === 0) {
+            // Android包不含JS密钥
+            return '';
+        }
         try {
             // 解码并组合各部分
             const parts = this.SECRET_PARTS.map(part => {
@@ -115,6 +195,16 @@ export class EncryptedApiClient extends Component {
             const jsonString = JSON.stringify(data);
             log('待签名的JSON字符串:', jsonString);
             
+            // Android原生端签名；Android包中不含JS密钥，原生签名失败时不回退
+            const nativeSignature = EncryptedApiClient.signNative(jsonString);
+            if (nativeSignature) {
+                return nativeSignature;
+            }
+            if (ANDROID) {
+                throw new Error('原生签名失败');
+            }
+            
+
             // 获取密钥
             const secretKey = this.reconstructSecretKey();
             if (!secretKey) {
@@ -132,6 +222,51 @@ export class EncryptedApiClient extends Component {
         }
     }
 
+    /**
+     * 调用原生SigningService计算HmacSHA256签名，非Android原生环境或失败时返回空字符串
+     */
+    private static signNative(payload: string): string {
+        if (!sys.isNative || sys.platform !== sys.Platform.ANDROID) {
+            return '';
+        }
+        try {
+            return native.reflection.callStaticMethod(
+                'com/schanyin/tgcf/SigningService',
+                'sign',
+                '(Ljava/lang/String;)Ljava/lang/String;',
+                payload
+            ) || '';
+        } catch (error) {
+            warn('原生签名失败:', error);
+            return '';
+        }
+    }
+    
+    /**
+     * 批量签名，一次桥接调用签名多个请求体，返回与输入顺序一致的签名
+     * @param dataList 要签名的数据列表
+     */
+    public signBatch(dataList: any[]): string[] {
+        const payloads = dataList.map(data => JSON.stringify(data));
+        if (sys.isNative && sys.platform === sys.Platform.ANDROID) {
+            try {
+                // JSON.stringify会转义控制字符，\u001E不会出现在请求体中
+                const joined: string = native.reflection.callStaticMethod(
+                    'com/schanyin/tgcf/SigningService',
+                    'signBatch',
+                    '(Ljava/lang/String;)Ljava/lang/String;',
+                    payloads.join('\u001E')
+                );
+                if (joined) {
+                    return joined.split(',');
+                }
+            } catch (error) {
+                warn('原生批量签名失败，逐个签名:', error);
+            }
+        }
+        return dataList.map(data => this.generateSignature(data));
+    }
+    
     /**
      * 验证时间戳是否在有效期内（3分钟）
      * @param timestamp 时间戳（毫秒）
@@ -147,9 +282,15 @@ export class EncryptedApiClient extends Component {
      * 发送带签名的HTTP请求
      * @param endpoint API端点
      * @param data 请求数据
+     * @param cache 可选，原生响应缓存策略
+     * @param onUpdate 可选，先返回了陈旧缓存、后台拿到新内容时回调
      * @returns Promise<响应数据>
      */
-    private async sendSignedRequest<T>(endpoint: string, data: any): Promise<ApiResponse<T>> {
+    private async sendSignedRequest<T>(endpoint: string, data: any, cache?: NativeHttpCachePolicy,
+                                       onUpdate?: (response: ApiResponse<T>) => void): Promise<ApiResponse<T>> {
+        if (NativeHttpClient.isNativeAvailable()) {
+            return this.sendSignedRequestNative<T>(endpoint, data, cache, onUpdate);
+        }
         return new Promise((resolve, reject) => {
             try {
                 // 生成签名
@@ -200,11 +341,68 @@ export class EncryptedApiClient extends Component {
         });
     }
 
+    /**
+     * 通过原生HTTP客户端发送带签名的请求，复用原生连接池
+     * 请求数据以对象传给原生端，由原生端在后台线程序列化并对序列化结果签名；
+     * 响应体也由原生端解析后嵌入桥接消息，JS只解析一次
+     * @param endpoint API端点
+     * @param data 请求数据
+     * @param cache 可选，原生响应缓存策略
+     * @param onUpdate 可选，后台重新验证拿到新内容时回调
+     */
+    private async sendSignedRequestNative<T>(endpoint: string, data: any, cache?: NativeHttpCachePolicy,
+                                             onUpdate?: (response: ApiResponse<T>) => void): Promise<ApiResponse<T>> {
+        const url = ApiConfig.getFullUrl(endpoint);
+        const headers: Record<string, string> = {
+            'Content-Type': 'application/json',
+            'Accept': 'application/json'
+        };
+        
+        log('发送请求到:', url);
+        
+        const response = await NativeHttpClient.getInstance().request({
+            url,
+            method: 'POST',
+            headers,
+            body: data,
+            sign: true,
+            parseJson: true,
+            timeoutMs: ApiConfig.getTimeout(),
+            cache,
+            onUpdate: onUpdate ? (updated) => {
+                try {
+                    onUpdate(updated.json !== undefined ? updated.json : JSON.parse(updated.body));
+                } catch (parseError) {
+                    warn('缓存更新解析失败:', parseError);
+                }
+            } : undefined
+        });
+        if (response.cacheStatus) {
+            log(`响应缓存状态: ${response.cacheStatus}`);
+        }
+        if (response.error) {
+            throw new Error(response.error === 'timeout' ? '请求超时' : '网络请求失败: ' + response.error);
+        }
+        if (response.status < 200 || response.status >= 300) {
+            throw new Error(`HTTP错误: ${response.status}`);
+        }
+        if (response.json !== undefined) {
+            return response.json;
+        }
+        try {
+            return JSON.parse(response.body);
+        } catch (parseError) {
+            throw new Error('响应解析失败: ' + parseError);
+        }
+    }
+
     /**
      * 获取版本信息
+     * Android原生环境下优先使用缓存（冷启动也能立即返回），缓存过期时后台重新验证
+     * @param onUpdate 可选，先返回了缓存、后台拿到不同的版本信息时回调
      * @returns Promise<版本信息>
      */
-    public async getVersion(): Promise<GetVersionResponse> {
+    public async getVersion(onUpdate?: (info: GetVersionResponse) => void): Promise<GetVersionResponse> {
         try {
             log('开始获取版本信息...');
 
@@ -232,7 +430,17 @@ export class EncryptedApiClient extends Component {
             log('请求参数:', requestData);
 
             // 发送请求
-            const response = await this.sendSignedRequest<GetVersionResponse>(ApiConfig.API_ENDPOINTS.GET_VERSION, requestData);
+            const response = await this.sendSignedRequest<GetVersionResponse>(
+                ApiConfig.API_ENDPOINTS.GET_VERSION,
+                requestData,
+                EncryptedApiClient.VERSION_CACHE,
+                onUpdate ? (updated) => {
+                    if (ApiConfig.isResponseSuccess(updated.code) && updated.data) {
+                        log('版本信息已更新:', updated.data);
+                        onUpdate(updated.data);
+                    }
+                } : undefined
+            );
             
             // 使用ApiConfig判断响应是否成功
             if (ApiConfig.isResponseSuccess(response.code) && response.data) {
@@ -247,6 +455,38 @@ export class EncryptedApiClient extends Component {
         }
     }
 
+    /**
+     * 检查并准备热更新：服务端的updateNumber大于已生效的热更新号时下载并安装更新包，下次启动生效
+     * 下载和安装都在原生后台线程进行，中断后再次调用会续传；构建没有提供热更新公钥时直接返回
+     * @param versionInfo 可选，已获取的版本信息，不传时重新获取
+     * @returns 是否有新的热更新已安装待生效
+     */
+    public async prepareHotUpdate(versionInfo?: GetVersionResponse): Promise<boolean> {
+        if (!HotUpdateDownloader.isNativeAvailable() || !HotUpdateInstaller.isUpdateKeyConfigured()) {
+            return false;
+        }
+        const info = versionInfo || await this.getVersion();
+        const installed = HotUpdateInstaller.getInstalledUpdateNumber();
+        if (!info || !info.downloadUrl || !(info.updateNumber > installed)) {
+            log(`无需热更新: 服务端${info?.updateNumber}, 本地${installed}`);
+            return false;
+        }
+        if (!info.sha256 || !info.size || !info.signature) {
+            // 没有签名无法确认更新包来源，不下载也不安装
+            warn(`热更新${info.updateNumber}缺少摘要或签名，跳过`);
+            return false;
+        }
+        log(`开始热更新: ${installed} -> ${info.updateNumber}`);
+        const download = await HotUpdateDownloader.getInstance().download(info);
+        if (!download.ok) {
+            warn('热更新包下载失败:', download.error);
+            return false;
+        }
+        const result = await HotUpdateInstaller.getInstance().install(
+            download.path, info.updateNumber, info.sha256, info.size, info.signature);
+        return result.ok;
+    }
+
     /**
      * 获取当前平台
      */
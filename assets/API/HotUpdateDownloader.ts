@@ -0,0 +1,181 @@
+import { log, warn, native } from 'cc';
+import { NativeBridge, INativeMessageHandler } from './NativeBridgeManager';
+import { NativeHttpClient } from './NativeHttpClient';
+import { ApiConfig } from './ApiConfig';
+import { GetVersionResponse } from './EncryptedApiClient';
+
+/**
+ * 下载进度（原生按固定间隔合并后发送）
+ */
+export interface HotUpdateProgress {
+    versionCode: number;
+    updateNumber: number;
+    downloaded: number;
+    // 服务端未返回长度时为-1
+    total: number;
+    speedKbps: number;
+    // 是否因游戏进行中而限速
+    throttled: boolean;
+}
+
+/**
+ * 下载结果
+ */
+export interface HotUpdateDownloadResult {
+    versionCode: number;
+    updateNumber: number;
+    ok: boolean;
+    // 成功时为安装包的本地路径
+    path?: string;
+    size?: number;
+    // 从上次中断处续传的字节数
+    resumedBytes?: number;
+    error?: string;
+    elapsedMs: number;
+}
+
+/**
+ * 热更新包下载
+ * Android原生环境下由原生分块并行下载，支持断点续传（进程被杀后再次调用download继续）、
+ * 校验和游戏进行中限速；其他环境不支持
+ */
+export class HotUpdateDownloader implements INativeMessageHandler {
+
+    private static instance: HotUpdateDownloader = null;
+    private registered: boolean = false;
+    private progressListener: ((progress: HotUpdateProgress) => void) | null = null;
+    private pending: Map<number, (result: HotUpdateDownloadResult) => void> = new Map();
+
+    /**
+     * 获取单例实例
+     */
+    public static getInstance(): HotUpdateDownloader {
+        if (!HotUpdateDownloader.instance) {
+            HotUpdateDownloader.instance = new HotUpdateDownloader();
+        }
+        return HotUpdateDownloader.instance;
+    }
+
+    /**
+     * 当前环境是否支持原生下载
+     */
+    public static isNativeAvailable(): boolean {
+        return NativeHttpClient.isNativeAvailable();
+    }
+
+    /**
+     * 版本信息是否需要下载更新包
+     */
+    public static hasUpdate(info: GetVersionResponse): boolean {
+        return !!info && !!info.downloadUrl && info.versionCode > ApiConfig.getCurrentVersion();
+    }
+
+    /**
+     * 设置进度回调
+     */
+    public setProgressListener(listener: (progress: HotUpdateProgress) => void): void {
+        this.progressListener = listener;
+    }
+
+    /**
+     * 按版本信息下载更新包，同一热更新号和下载地址重复调用时继续之前的下载
+     * 版本信息中必须有整包sha256，原生下载完成后据此校验
+     */
+    public download(info: GetVersionResponse): Promise<HotUpdateDownloadResult> {
+        if (!HotUpdateDownloader.isNativeAvailable()) {
+            return Promise.resolve({
+                versionCode: info.versionCode, updateNumber: info.updateNumber, ok: false, error: 'not supported', elapsedMs: 0
+            });
+        }
+        this.ensureRegistered();
+        return new Promise((resolve) => {
+            this.pending.set(info.updateNumber, resolve);
+            log(`[HotUpdateDownloader] 开始下载热更新${info.updateNumber}(${info.updateMode}): ${info.downloadUrl}`);
+            const payload = JSON.stringify({
+                versionCode: info.versionCode,
+                updateNumber: info.updateNumber,
+                url: info.downloadUrl,
+                sha256: info.sha256 || '',
+                size: info.size || -1
+            });
+            if (!NativeBridge.sendToNative('hotUpdateDownload', payload)) {
+                this.pending.delete(info.updateNumber);
+                resolve({
+                    versionCode: info.versionCode, updateNumber: info.updateNumber, ok: false, error: 'bridge unavailable', elapsedMs: 0
+                });
+            }
+        });
+    }
+
+    /**
+     * 暂停下载，已完成的部分保留
+     */
+    public pause(): void {
+        if (HotUpdateDownloader.isNativeAvailable()) {
+            NativeBridge.sendToNative('hotUpdatePause', '');
+        }
+    }
+
+    /**
+     * 进入/离开游戏玩法时调用，游戏进行中下载限速
+     */
+    public static setGameplayActive(active: boolean): void {
+        if (!HotUpdateDownloader.isNativeAvailable()) {
+            return;
+        }
+        try {
+            native.reflection.callStaticMethod(
+                'com/schanyin/tgcf/HotUpdateDownloader',
+                'setGameplayActiveStatic',
+                '(Z)V',
+                active
+            );
+        } catch (error) {
+            warn('[HotUpdateDownloader] 设置限速状态失败:', error);
+        }
+    }
+
+    /**
+     * 实现INativeMessageHandler接口 - 处理原生消息
+     */
+    public handleNativeMessage(command: string, data: string): boolean {
+        if (command === 'hotUpdateProgress') {
+            try {
+                if (this.progressListener) {
+                    this.progressListener(JSON.parse(data));
+                }
+            } catch (error) {
+                warn('[HotUpdateDownloader] 解析下载进度失败:', error);
+            }
+            return true;
+        }
+        if (command !== 'hotUpdateResult') {
+            return false;
+        }
+        try {
+            const result: HotUpdateDownloadResult = JSON.parse(data);
+            if (result.ok) {
+                log(`[HotUpdateDownloader] 热更新${result.updateNumber}下载完成: ${result.path}, 续传${result.resumedBytes}字节`);
+            } else {
+                warn(`[HotUpdateDownloader] 热更新${result.updateNumber}下载失败: ${result.error}`);
+            }
+            const resolve = this.pending.get(result.updateNumber);
+            if (resolve) {
+                this.pending.delete(result.updateNumber);
+                resolve(result);
+            }
+        } catch (error) {
+            warn('[HotUpdateDownloader] 解析下载结果失败:', error);
+        }
+        return true;
+    }
+
+    private ensureRegistered(): void {
+        if (this.registered) {
+            return;
+        }
+        NativeBridge.registerHandler('HotUpdateDownloader', this);
+        this.registered = true;
+        log('[HotUpdateDownloader] 已注册到统一原生桥接管理器');
+    }
+}
@@ -0,0 +1,193 @@
+import { log, warn, native } from 'cc';
+import { NativeBridge, INativeMessageHandler } from './NativeBridgeManager';
+import { NativeHttpClient } from './NativeHttpClient';
+
+/**
+ * 安装进度（原生按固定间隔合并后发送）
+ */
+export interface HotUpdateInstallProgress {
+    updateNumber: number;
+    entries: number;
+    bytesWritten: number;
+    // 已读取的压缩字节数，与archiveSize之比即进度
+    compressedRead: number;
+    archiveSize: number;
+}
+
+/**
+ * 安装结果和开销
+ */
+export interface HotUpdateInstallResult {
+    updateNumber: number;
+    ok: boolean;
+    error?: string;
+    entries: number;
+    copiedFiles: number;
+    patchedFiles: number;
+    // 从当前热更新目录硬链接过来的未变化文件数
+    linkedFiles: number;
+    bytesWritten: number;
+    elapsedMs: number;
+    cpuMs: number;
+}
+
+/**
+ * 热更新包安装
+ * 原生先用构建时写入的公钥验证服务端签名和整包摘要，再在后台流式解压到暂存目录、应用差分并校验哈希，下次启动时切换目录
+ */
+export class HotUpdateInstaller implements INativeMessageHandler {
+
+    private static instance: HotUpdateInstaller = null;
+    // 引擎启动脚本读取该键设置搜索路径
+    private static readonly SEARCH_PATHS_KEY = 'HotUpdateSearchPaths';
+    private registered: boolean = false;
+    private progressListener: ((progress: HotUpdateInstallProgress) => void) | null = null;
+    private pending: Map<number, (result: HotUpdateInstallResult) => void> = new Map();
+
+    /**
+     * 获取单例实例
+     */
+    public static getInstance(): HotUpdateInstaller {
+        if (!HotUpdateInstaller.instance) {
+            HotUpdateInstaller.instance = new HotUpdateInstaller();
+        }
+        return HotUpdateInstaller.instance;
+    }
+
+    /**
+     * 构建是否提供了热更新签名公钥；没有公钥的构建无法验证更新包，不检查也不下载热更新
+     */
+    public static isUpdateKeyConfigured(): boolean {
+        if (!NativeHttpClient.isNativeAvailable()) {
+            return false;
+        }
+        try {
+            return !!native.reflection.callStaticMethod(
+                'com/schanyin/tgcf/HotUpdateInstaller',
+                'isUpdateKeyConfiguredStatic',
+                '()Z'
+            );
+        } catch (error) {
+            warn('[HotUpdateInstaller] 查询热更新公钥失败:', error);
+            return false;
+        }
+    }
+    
+    /**
+     * 当前生效的热更新号，没有时为0
+     */
+    public static getInstalledUpdateNumber(): number {
+        if (!NativeHttpClient.isNativeAvailable()) {
+            return 0;
+        }
+        try {
+            return native.reflection.callStaticMethod(
+                'com/schanyin/tgcf/HotUpdateInstaller',
+                'getInstalledUpdateNumberStatic',
+                '()I'
+            ) || 0;
+        } catch (error) {
+            warn('[HotUpdateInstaller] 获取热更新号失败:', error);
+            return 0;
+        }
+    }
+
+    /**
+     * 把已生效的热更新目录放在搜索路径最前面，并保存给引擎启动脚本
+     */
+    public static applySearchPaths(): void {
+        if (!NativeHttpClient.isNativeAvailable()) {
+            return;
+        }
+        try {
+            const dir: string = native.reflection.callStaticMethod(
+                'com/schanyin/tgcf/HotUpdateInstaller',
+                'getActiveDirStatic',
+                '()Ljava/lang/String;'
+            );
+            if (!dir) {
+                localStorage.removeItem(HotUpdateInstaller.SEARCH_PATHS_KEY);
+                return;
+            }
+            const paths = native.fileUtils.getSearchPaths().filter((path: string) => path !== dir);
+            paths.unshift(dir);
+            native.fileUtils.setSearchPaths(paths);
+            localStorage.setItem(HotUpdateInstaller.SEARCH_PATHS_KEY, JSON.stringify(paths));
+        } catch (error) {
+            warn('[HotUpdateInstaller] 设置热更新搜索路径失败:', error);
+        }
+    }
+
+    /**
+     * 设置进度回调
+     */
+    public setProgressListener(listener: (progress: HotUpdateInstallProgress) => void): void {
+        this.progressListener = listener;
+    }
+
+    /**
+     * 安装下载好的更新包，成功后在下次启动时生效
+     * @param sha256 服务端下发的整包SHA-256
+     * @param size 服务端下发的整包大小
+     * @param signature 服务端签名，缺少或验证失败时原生拒绝安装
+     */
+    public install(path: string, updateNumber: number, sha256: string, size: number,
+                   signature: string): Promise<HotUpdateInstallResult> {
+        this.ensureRegistered();
+        return new Promise((resolve) => {
+            this.pending.set(updateNumber, resolve);
+            const payload = JSON.stringify({ path, updateNumber, sha256, size, signature, deleteArchive: true });
+            if (!NativeBridge.sendToNative('hotUpdateInstall', payload)) {
+                this.pending.delete(updateNumber);
+                resolve({
+                    updateNumber, ok: false, error: 'bridge unavailable', entries: 0, copiedFiles: 0,
+                    patchedFiles: 0, linkedFiles: 0, bytesWritten: 0, elapsedMs: 0, cpuMs: 0
+                });
+            }
+        });
+    }
+
+    /**
+     * 实现INativeMessageHandler接口 - 处理原生消息
+     */
+    public handleNativeMessage(command: string, data: string): boolean {
+        if (command === 'hotUpdateInstallProgress') {
+            try {
+                if (this.progressListener) {
+                    this.progressListener(JSON.parse(data));
+                }
+            } catch (error) {
+                warn('[HotUpdateInstaller] 解析安装进度失败:', error);
+            }
+            return true;
+        }
+        if (command !== 'hotUpdateInstallResult') {
+            return false;
+        }
+        try {
+            const result: HotUpdateInstallResult = JSON.parse(data);
+            if (result.ok) {
+                log(`[HotUpdateInstaller] 热更新${result.updateNumber}已安装，下次启动生效:`, result);
+            } else {
+                warn(`[HotUpdateInstaller] 热更新${result.updateNumber}安装失败: ${result.error}`);
+            }
+            const resolve = this.pending.get(result.updateNumber);
+            if (resolve) {
+                this.pending.delete(result.updateNumber);
+                resolve(result);
+            }
+        } catch (error) {
+            warn('[HotUpdateInstaller] 解析安装结果失败:', error);
+        }
+        return true;
+    }
+
+    private ensureRegistered(): void {
+        if (this.registered) {
+            return;
+        }
+        NativeBridge.registerHandler('HotUpdateInstaller', this);
+        this.registered = true;
+        log('[HotUpdateInstaller] 已注册到统一原生桥接管理器');
+    }
+}
@@ -2,6 +2,7 @@ import { _decorator, Component, sys, log, warn, native, Node, game } from 'cc';
 import { NativeBridge, INativeMessageHandler } from './NativeBridgeManager';
 import { ApiConfig, RiskDetectionRequest, RiskDetectionResponse } from './ApiConfig';
 import { EncryptedApiClient } from './EncryptedApiClient';
+import { DeviceInfoCollector } from './DeviceInfoCollector';
 
 const { ccclass, property } = _decorator;
 
@@ -15,7 +16,9 @@ export class LianyunshanSDK extends Component implements INativeMessageHandler {
     private static instance: LianyunshanSDK = null;
     private deviceToken: string = '';
     private tokenCallbacks: Array<(token: string) => void> = [];
-    private reportCallbacks: Array<(success: boolean, message: string) => void> = [];
+    // 按场景名等待上报结果的回调（原生端对同一场景的重复上报会合并，结果按场景回传）
+    // 按上报请求ID登记的等待回调（同一场景的多次上报各自等待自己的结果）
+    private reportCallbacks: Map<string, { scene: string, callback: (success: boolean, message: string) => void }> = new Map();
     
     /**
      * 获取单例实例
@@ -221,35 +224,58 @@ export class LianyunshanSDK extends Component implements INativeMessageHandler {
     /**
      * 处理场景上报结果
      */
-    private handleReportResult(message: string): void {
-        log('连云山SDK场景上报成功:', message);
-        
-        // 通知所有等待的回调
-        this.reportCallbacks.forEach(callback => {
-            try {
-                callback(true, message);
-            } catch (error) {
-                warn('上报回调执行失败:', error);
-            }
-        });
-        this.reportCallbacks = [];
+    private handleReportResult(data: string): void {
+        log('连云山SDK场景上报成功:', data);
+        this.resolveReportCallbacks(data, true);
     }
     
     /**
      * 处理场景上报错误
      */
-    private handleReportError(errorMsg: string): void {
-        warn('连云山SDK场景上报失败:', errorMsg);
+    private handleReportError(data: string): void {
+        warn('连云山SDK场景上报失败:', data);
+        this.resolveReportCallbacks(data, false);
+    }
+    
+    /**
+     * 通知等待该次上报结果的回调
+     * 原生端回传JSON：{requestId, scene, success, message, collapsed}，按requestId找到对应的请求；
+     * 旧版原生端没有requestId时通知该场景最早的一个请求，无法解析时通知所有等待的回调
+     */
+    private resolveReportCallbacks(data: string, success: boolean): void {
+        let requestId: string = null;
+        let scene: string = null;
+        let message = data;
+        try {
+            const result = JSON.parse(data);
+            requestId = result.requestId || null;
+            scene = result.scene;
+            message = result.message;
+        } catch (error) {
+            // 兼容旧版原生端的纯文本消息
+        }
         
-        // 通知所有等待的回调
-        this.reportCallbacks.forEach(callback => {
+        let requestIds: string[];
+        if (requestId) {
+            requestIds = [requestId];
+        } else if (scene) {
+            const oldest = Array.from(this.reportCallbacks.keys()).find(id => this.reportCallbacks.get(id).scene === scene);
+            requestIds = oldest ? [oldest] : [];
+        } else {
+            requestIds = Array.from(this.reportCallbacks.keys());
+        }
+        requestIds.forEach(id => {
+            const pending = this.reportCallbacks.get(id);
+            if (!pending) {
+                return;
+            }
+            this.reportCallbacks.delete(id);
             try {
-                callback(false, errorMsg);
+                pending.callback(success, message);
             } catch (error) {
-                warn('上报错误回调执行失败:', error);
+                warn('上报回调执行失败:', error);
             }
         });
-        this.reportCallbacks = [];
     }
     
     /**
@@ -264,6 +290,13 @@ export class LianyunshanSDK extends Component implements INativeMessageHandler {
             return this.deviceToken;
         }
         
+        // 设备报告（collectDeviceReport）已附带token时直接使用，不再单独请求
+        const reportedToken = DeviceInfoCollector.getReportedDeviceToken();
+        if (reportedToken) {
+            this.deviceToken = reportedToken;
+            return reportedToken;
+        }
+        
         // 如果是Android原生环境，请求获取token
         if (sys.platform === sys.Platform.ANDROID && sys.isNative) {
             return new Promise<string>((resolve) => {
@@ -324,37 +357,49 @@ export class LianyunshanSDK extends Component implements INativeMessageHandler {
         // 如果是Android原生环境，发送上报请求
         if (sys.platform === sys.Platform.ANDROID && sys.isNative) {
             return new Promise<boolean>((resolve) => {
-                // 添加回调
-                this.reportCallbacks.push((success: boolean, message: string) => {
-                    resolve(success);
-                });
+                let settled = false;
+                const callback = (success: boolean, message: string) => {
+                    if (!settled) {
+                        settled = true;
+                        resolve(success);
+                    }
+                };
+                
+                // 按本次请求ID登记回调，原生端回传结果时带回该ID
+                const requestId = this.generateRequestId();
+                this.reportCallbacks.set(requestId, { scene: sceneName, callback });
+                const request = JSON.stringify({ scene: sceneName, requestId });
+                
+                const removeCallback = () => {
+                    this.reportCallbacks.delete(requestId);
+                };
                 
                 // 设置超时
                 setTimeout(() => {
-                    if (this.reportCallbacks.length > 0) {
-                        this.reportCallbacks = [];
+                    if (!settled) {
+                        removeCallback();
                         warn('连云山场景上报超时');
-                        resolve(false); // 超时返回失败
+                        callback(false, 'timeout'); // 超时返回失败
                     }
                 }, 5000); // 5秒超时
                 
                 // 发送请求
                 try {
-                    const success = NativeBridge.sendToNative('reportLianyunshanScene', sceneName);
+                    const success = NativeBridge.sendToNative('reportLianyunshanScene', request);
                     if (success) {
                         log('已发送连云山场景上报请求:', sceneName);
                     } else {
                         warn('发送连云山场景上报请求失败，尝试直接调用');
                         if (typeof native !== 'undefined' && native.bridge) {
-                            native.bridge.sendToNative('reportLianyunshanScene', sceneName);
+                            native.bridge.sendToNative('reportLianyunshanScene', request);
                         } else {
                             throw new Error('原生桥接不可用');
                         }
                     }
                 } catch (error) {
                     warn('发送连云山场景上报请求失败:', error);
-                    this.reportCallbacks = [];
-                    resolve(false); // 失败返回false
+                    removeCallback();
+                    callback(false, String(error)); // 失败返回false
                 }
             });
         } else {
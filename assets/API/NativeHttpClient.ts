@@ -0,0 +1,313 @@
+import { log, warn, sys, native } from 'cc';
+import { NativeBridge, INativeMessageHandler } from './NativeBridgeManager';
+import { ApiConfig } from './ApiConfig';
+
+/**
+ * 原生响应缓存策略
+ * 缓存键包含Authorization/Cookie/token请求头，带身份的接口按账号分开缓存；
+ * 身份放在请求体里的接口不要启用缓存
+ */
+export interface NativeHttpCachePolicy {
+    // 新鲜期内直接返回缓存（服务端返回Cache-Control: max-age时以服务端为准）
+    maxAgeMs: number;
+    // 过期后该时长内先返回缓存，同时后台重新验证
+    staleMs?: number;
+    // 计算缓存键时忽略的请求参数（如每次都不同的requestId、timeStamp）
+    ignoreParams?: string[];
+    // 响应体code等于该值才缓存
+    successCode?: number;
+}
+
+/**
+ * 原生HTTP请求参数
+ */
+export interface NativeHttpRequest {
+    url: string;
+    method?: string;
+    headers?: Record<string, string>;
+    // 字符串原样发送；对象由原生端在后台线程序列化
+    body?: string | object;
+    // 由原生端对请求体计算签名并放入sign请求头
+    sign?: boolean;
+    // 请求体较大时gzip压缩（需要服务端支持）
+    gzipRequest?: boolean;
+    // 总超时时间（毫秒），默认使用ApiConfig的超时配置
+    timeoutMs?: number;
+    // 响应缓存策略（仅原生环境生效）
+    cache?: NativeHttpCachePolicy;
+    // 由原生端解析JSON响应体并放在响应的json字段（仅原生环境生效，非JSON响应仍只有body）
+    parseJson?: boolean;
+    // 先返回了陈旧缓存、后台重新验证拿到新内容时回调
+    onUpdate?: (response: NativeHttpResponse) => void;
+}
+
+/**
+ * 原生HTTP响应
+ */
+export interface NativeHttpResponse {
+    id: string;
+    status: number;
+    headers: Record<string, string>;
+    body: string;
+    // 请求设置parseJson且响应体是JSON时，原生端解析后的对象（此时body为空字符串）
+    json?: any;
+    elapsedMs: number;
+    error?: string;
+    // 使用缓存时的缓存状态：hit/stale/revalidated/miss/updated/stale-on-error
+    cacheStatus?: string;
+}
+
+/**
+ * 原生HTTP客户端
+ * Android原生环境下请求由原生连接池执行（keep-alive、gzip、按主机限制并发），
+ * 其他环境使用XMLHttpRequest
+ */
+export class NativeHttpClient implements INativeMessageHandler {
+
+    private static instance: NativeHttpClient = null;
+    private nextId: number = 1;
+    private pending: Map<string, { resolve: (response: NativeHttpResponse) => void; timer: any }> = new Map();
+    private updateListeners: Map<string, { onUpdate: (response: NativeHttpResponse) => void; timer: any }> = new Map();
+    private registered: boolean = false;
+
+    /**
+     * 获取单例实例
+     */
+    public static getInstance(): NativeHttpClient {
+        if (!NativeHttpClient.instance) {
+            NativeHttpClient.instance = new NativeHttpClient();
+        }
+        return NativeHttpClient.instance;
+    }
+
+    /**
+     * 当前环境是否使用原生HTTP
+     */
+    public static isNativeAvailable(): boolean {
+        return sys.isNative && sys.platform === sys.Platform.ANDROID;
+    }
+
+    /**
+     * 发送请求，网络错误/超时/取消时也会resolve，通过error字段区分
+     * @param onId 可选，拿到请求ID后回调，用于取消
+     */
+    public request(options: NativeHttpRequest, onId?: (id: string) => void): Promise<NativeHttpResponse> {
+        const id = `http_${Date.now()}_${this.nextId++}`;
+        if (onId) {
+            onId(id);
+        }
+        const timeoutMs = options.timeoutMs || ApiConfig.getTimeout();
+
+        if (!NativeHttpClient.isNativeAvailable()) {
+            return this.requestWithXhr(id, options, timeoutMs);
+        }
+
+        this.ensureRegistered();
+        return new Promise((resolve) => {
+            // 原生端有自己的截止时间，这里多留一些余量兜底桥接消息丢失
+            const timer = setTimeout(() => {
+                if (this.pending.delete(id)) {
+                    warn(`[NativeHttpClient] 等待原生响应超时: ${options.url}`);
+                    resolve({ id, status: 0, headers: {}, body: '', elapsedMs: timeoutMs, error: 'timeout' });
+                }
+            }, timeoutMs + 2000);
+            this.pending.set(id, {
+                resolve: (response: NativeHttpResponse) => {
+                    if (options.onUpdate && response.cacheStatus === 'stale') {
+                        // 重新验证最多再花一个超时时间，之后不再等待
+                        const updateTimer = setTimeout(() => this.updateListeners.delete(id), timeoutMs + 2000);
+                        this.updateListeners.set(id, { onUpdate: options.onUpdate, timer: updateTimer });
+                    }
+                    resolve(response);
+                },
+                timer
+            });
+
+            const payload = JSON.stringify({
+                id,
+                url: options.url,
+                method: options.method || (options.body !== undefined ? 'POST' : 'GET'),
+                headers: options.headers || {},
+                body: options.body,
+                sign: !!options.sign,
+                gzipRequest: !!options.gzipRequest,
+                timeoutMs,
+                cache: options.cache,
+                parseJson: !!options.parseJson
+            });
+            if (!NativeBridge.sendToNative('httpRequest', payload)) {
+                clearTimeout(timer);
+                this.pending.delete(id);
+                warn('[NativeHttpClient] 原生桥接不可用，改用XMLHttpRequest');
+                this.requestWithXhr(id, options, timeoutMs).then(resolve);
+            }
+        });
+    }
+
+    /**
+     * 保存当前接口地址，原生端下次启动时在后台提前解析并建立连接
+     */
+    public static rememberPrewarmUrls(urls: string[]): void {
+        if (!NativeHttpClient.isNativeAvailable()) {
+            return;
+        }
+        try {
+            native.reflection.callStaticMethod(
+                'com/schanyin/tgcf/ConnectionPrewarmer',
+                'setApiUrls',
+                '(Ljava/lang/String;)V',
+                urls.join('\n')
+            );
+        } catch (error) {
+            warn('[NativeHttpClient] 保存预热地址失败:', error);
+        }
+    }
+
+    /**
+     * 启动预热统计：各主机DNS/建连耗时、估计节省的时间和第一次请求耗时
+     */
+    public static getPrewarmStats(): any {
+        if (!NativeHttpClient.isNativeAvailable()) {
+            return null;
+        }
+        try {
+            const json = native.reflection.callStaticMethod(
+                'com/schanyin/tgcf/ConnectionPrewarmer',
+                'getStatsJsonStatic',
+                '()Ljava/lang/String;'
+            );
+            return json ? JSON.parse(json) : null;
+        } catch (error) {
+            warn('[NativeHttpClient] 获取预热统计失败:', error);
+            return null;
+        }
+    }
+
+    /**
+     * 原生估计的网络质量：quality为poor/moderate/good/excellent（还没有样本时为unknown），
+     * 另含rttMs、throughputKbps、adLatencyMs和timeoutScale
+     */
+    public static getNetworkQuality(): any {
+        if (!NativeHttpClient.isNativeAvailable()) {
+            return null;
+        }
+        try {
+            const json = native.reflection.callStaticMethod(
+                'com/schanyin/tgcf/NetworkQualityEstimator',
+                'getQualityJsonStatic',
+                '()Ljava/lang/String;'
+            );
+            return json ? JSON.parse(json) : null;
+        } catch (error) {
+            warn('[NativeHttpClient] 获取网络质量失败:', error);
+            return null;
+        }
+    }
+
+    /**
+     * 取消请求
+     */
+    public cancel(id: string): void {
+        if (NativeHttpClient.isNativeAvailable()) {
+            NativeBridge.sendToNative('httpCancel', id);
+        }
+    }
+
+    /**
+     * 实现INativeMessageHandler接口 - 处理原生消息
+     */
+    public handleNativeMessage(command: string, data: string): boolean {
+        if (command === 'httpCacheUpdated') {
+            this.handleCacheUpdated(data);
+            return true;
+        }
+        if (command !== 'httpResponse') {
+            return false;
+        }
+        try {
+            const response: NativeHttpResponse = JSON.parse(data);
+            const entry = this.pending.get(response.id);
+            if (entry) {
+                this.pending.delete(response.id);
+                clearTimeout(entry.timer);
+                entry.resolve(response);
+            }
+        } catch (error) {
+            warn('[NativeHttpClient] 解析原生响应失败:', error);
+        }
+        return true;
+    }
+
+    /**
+     * 后台重新验证拿到的新内容，通知发起请求时传入的onUpdate
+     */
+    private handleCacheUpdated(data: string): void {
+        try {
+            const response: NativeHttpResponse = JSON.parse(data);
+            const listener = this.updateListeners.get(response.id);
+            if (listener) {
+                this.updateListeners.delete(response.id);
+                clearTimeout(listener.timer);
+                listener.onUpdate(response);
+            }
+        } catch (error) {
+            warn('[NativeHttpClient] 解析缓存更新失败:', error);
+        }
+    }
+
+    private ensureRegistered(): void {
+        if (this.registered) {
+            return;
+        }
+        NativeBridge.registerHandler('NativeHttpClient', this);
+        this.registered = true;
+        log('[NativeHttpClient] 已注册到统一原生桥接管理器');
+    }
+
+    /**
+     * 非原生环境的XMLHttpRequest实现（不支持sign，签名由调用方放入headers）
+     */
+    private requestWithXhr(id: string, options: NativeHttpRequest, timeoutMs: number): Promise<NativeHttpResponse> {
+        return new Promise((resolve) => {
+            const start = Date.now();
+            const fail = (error: string) => {
+                resolve({ id, status: 0, headers: {}, body: '', elapsedMs: Date.now() - start, error });
+            };
+            try {
+                const xhr = new XMLHttpRequest();
+                xhr.timeout = timeoutMs;
+                xhr.ontimeout = () => fail('timeout');
+                xhr.onerror = () => fail('network error');
+                xhr.onreadystatechange = () => {
+                    if (xhr.readyState === 4 && xhr.status !== 0) {
+                        resolve({
+                            id,
+                            status: xhr.status,
+                            headers: {},
+                            body: xhr.responseText,
+                            elapsedMs: Date.now() - start
+                        });
+                    }
+                };
+                const method = options.method || (options.body !== undefined ? 'POST' : 'GET');
+                xhr.open(method, options.url, true);
+                const headers = options.headers || {};
+                for (const key of Object.keys(headers)) {
+                    xhr.setRequestHeader(key, headers[key]);
+                }
+                if (options.body === undefined) {
+                    xhr.send();
+                } else {
+                    if (!headers['Content-Type']) {
+                        xhr.setRequestHeader('Content-Type', 'application/json');
+                    }
+                    xhr.send(typeof options.body === 'string' ? options.body : JSON.stringify(options.body));
+                }
+            } catch (error) {
+                fail(`${error}`);
+            }
+        });
+    }
+}
+
+export const nativeHttpClient = NativeHttpClient.getInstance();
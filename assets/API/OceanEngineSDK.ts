@@ -1,4 +1,4 @@
-import { native } from 'cc';
+import { native, director, Director } from 'cc';
 
 /**
  * 巨量引擎转化SDK接口类
@@ -6,6 +6,31 @@ import { native } from 'cc';
  */
 export class OceanEngineSDK {
     private static readonly TAG = 'OceanEngineSDK';
+    private static firstFrameWatched = false;
+
+    /**
+     * 在引擎第一次绘制完成后通知原生端，转化SDK在此之后于UI线程初始化
+     * （Cocos在独立的GL线程渲染，原生UI线程的vsync回调不代表游戏画面已经出现）
+     */
+    public static watchEngineFirstFrame(): void {
+        if (this.firstFrameWatched) {
+            return;
+        }
+        this.firstFrameWatched = true;
+        director.once(Director.EVENT_AFTER_DRAW, () => {
+            try {
+                if (native.reflection && native.reflection.callStaticMethod) {
+                    native.reflection.callStaticMethod(
+                        'com/schanyin/tgcf/ConversionTracker',
+                        'onEngineFirstFrame',
+                        '()V'
+                    );
+                }
+            } catch (error) {
+                console.error(`${this.TAG} 通知引擎首帧失败:`, error);
+            }
+        });
+    }
 
     /**
      * 获取Android ID
@@ -58,6 +83,26 @@ export class OceanEngineSDK {
         }
     }
 
+    /**
+     * 获取原生转化SDK初始化耗时统计
+     * firstFrameDelayMs: 从请求初始化到引擎首帧的等待；initCostMs: UI线程初始化耗时；readyDelayMs: 从请求到可发送事件的总时长
+     */
+    public static getInitStats(): Record<string, number | boolean> | null {
+        try {
+            if (native.reflection && native.reflection.callStaticMethod) {
+                const json = native.reflection.callStaticMethod(
+                    'com/schanyin/tgcf/ConversionTracker',
+                    'getInitStatsJson',
+                    '()Ljava/lang/String;'
+                );
+                return json ? JSON.parse(json) : null;
+            }
+        } catch (error) {
+            console.error(`${this.TAG} 获取初始化耗时统计失败:`, error);
+        }
+        return null;
+    }
+
     /**
      * 测试巨量SDK集成
      * 输出相关信息用于调试
@@ -72,6 +117,9 @@ export class OceanEngineSDK {
         // 发送启动事件
         this.sendLaunchEvent();
         
+        // 原生初始化耗时
+        console.log(`${this.TAG} 初始化耗时统计:`, this.getInitStats());
+        
         console.log(`${this.TAG} === 测试完成，请查看原生日志确认SDK状态 ===`);
     }
 
@@ -37,6 +37,8 @@ export class PangleAdManager extends Component implements INativeMessageHandler
     private static instance: PangleAdManager = null;
     private callback: PangleAdEventCallback = null;
     private isInitialized: boolean = false;
+    // 等待收益统计查询结果的回调
+    private revenueStatsResolvers: Array<(stats: any) => void> = [];
     
     public static getInstance(): PangleAdManager {
         if (!PangleAdManager.instance) {
@@ -243,6 +245,10 @@ export class PangleAdManager extends Component implements INativeMessageHandler
         }
         
         log(`PangleAdManager处理原生消息: ${command} -> ${data}`);
+        if (command === 'pangleRevenueStats') {
+            this.handleRevenueStats(data);
+            return true;
+        }
         this.handleNativeCallback(command, data);
         return true; // 消息已处理
     }
@@ -258,7 +264,8 @@ export class PangleAdManager extends Component implements INativeMessageHandler
             'pangleAdShowResult',
             'pangleAdClick',
             'pangleAdClose',
-            'pangleAdReady'
+            'pangleAdReady',
+            'pangleRevenueStats'
         ];
         return pangleCommands.includes(command);
     }
@@ -503,6 +510,48 @@ export class PangleAdManager extends Component implements INativeMessageHandler
         });
     }
     
+    /**
+     * 查询原生端广告收益统计（总计、按ADN、按代码位的展示次数/收益/平均eCPM/填充耗时，以及最近展示）
+     * @param recent 返回的最近展示条数
+     */
+    public getRevenueStats(recent: number = 20): Promise<any> {
+        return new Promise((resolve) => {
+            let isResolved = false;
+            const resolver = (stats: any) => {
+                if (!isResolved) {
+                    isResolved = true;
+                    resolve(stats);
+                }
+            };
+            this.revenueStatsResolvers.push(resolver);
+            this.sendToNative('pangleGetRevenueStats', String(recent));
+            
+            // 超时处理
+            setTimeout(() => {
+                const index = this.revenueStatsResolvers.indexOf(resolver);
+                if (index > -1) {
+                    this.revenueStatsResolvers.splice(index, 1);
+                }
+                resolver(null);
+            }, 3000);
+        });
+    }
+    
+    /**
+     * 处理收益统计查询结果
+     */
+    private handleRevenueStats(data: string) {
+        let stats: any = null;
+        try {
+            stats = JSON.parse(data);
+        } catch (e) {
+            warn('解析收益统计失败:', e, data);
+        }
+        const resolvers = this.revenueStatsResolvers;
+        this.revenueStatsResolvers = [];
+        resolvers.forEach(resolver => resolver(stats));
+    }
+    
     /**
      * 销毁广告
      */
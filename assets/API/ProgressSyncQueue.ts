@@ -0,0 +1,124 @@
+import { log, warn } from 'cc';
+import { NativeBridge, INativeMessageHandler } from './NativeBridgeManager';
+import { NativeHttpClient } from './NativeHttpClient';
+import { ApiConfig } from './ApiConfig';
+
+/**
+ * 服务器确认的合成增量
+ */
+export interface ProgressSyncAcked {
+    times: number;
+    goldNumCompose: number;
+    redBagNumCompose: number;
+}
+
+/**
+ * 原生上报结果
+ */
+export interface ProgressSyncResult {
+    ok: boolean;
+    status: number;
+    body: string;
+    error?: string;
+    // 成功时的确认序号和本次确认的增量
+    ack?: number;
+    acked?: ProgressSyncAcked;
+}
+
+/**
+ * 进度上报队列
+ * Android原生环境下上报交给原生后写日志的后台线程发送：排队中的旧上报被新上报替换，失败按退避重试；
+ * 上报成功后从本地合成计数中扣除服务器确认的部分，期间新增的合成数据留到下次上报
+ */
+export class ProgressSyncQueue implements INativeMessageHandler {
+
+    private static instance: ProgressSyncQueue = null;
+    // 已经从本地计数中扣除的最后一次确认序号，原生据此扣除迟到上报中重复的增量
+    private appliedAck: number = 0;
+    private registered: boolean = false;
+    private resultListener: ((result: ProgressSyncResult, data: any) => void) | null = null;
+
+    /**
+     * 获取单例实例
+     */
+    public static getInstance(): ProgressSyncQueue {
+        if (!ProgressSyncQueue.instance) {
+            ProgressSyncQueue.instance = new ProgressSyncQueue();
+        }
+        return ProgressSyncQueue.instance;
+    }
+
+    /**
+     * 当前环境是否由原生排队上报
+     */
+    public static isNativeAvailable(): boolean {
+        return NativeHttpClient.isNativeAvailable();
+    }
+
+    /**
+     * 设置上报结果回调（本地进度已更新后调用，用于刷新界面）
+     */
+    public setResultListener(listener: (result: ProgressSyncResult, data: any) => void): void {
+        this.resultListener = listener;
+    }
+
+    /**
+     * 排队一次上报，立即返回
+     * @param body 上报内容，合成字段为上次确认后的累计值，其余字段为当前值
+     * @returns 是否已交给原生
+     */
+    public enqueue(url: string, headers: Record<string, string>, body: object, timeoutMs: number): boolean {
+        this.ensureRegistered();
+        const payload = JSON.stringify({
+            url,
+            headers,
+            body,
+            timeoutMs,
+            successCode: ApiConfig.BUSINESS_CODE.SUCCESS,
+            appliedAck: this.appliedAck
+        });
+        return NativeBridge.sendToNative('progressSync', payload);
+    }
+
+    /**
+     * 实现INativeMessageHandler接口 - 处理原生消息
+     */
+    public handleNativeMessage(command: string, data: string): boolean {
+        if (command !== 'progressSyncResult') {
+            return false;
+        }
+        try {
+            const result: ProgressSyncResult = JSON.parse(data);
+            let responseData: any = null;
+            if (result.ok) {
+                const response = JSON.parse(result.body);
+                responseData = response.data;
+                ApiConfig.updateServerProgress(responseData);
+                if (result.acked) {
+                    ApiConfig.deductSyncedCompose(result.acked.goldNumCompose, result.acked.redBagNumCompose, result.acked.times);
+                }
+                if (result.ack) {
+                    this.appliedAck = result.ack;
+                }
+                log('[ProgressSyncQueue] 进度上报成功:', responseData);
+            } else {
+                warn('[ProgressSyncQueue] 进度上报失败:', result.error || `HTTP ${result.status}`, result.body);
+            }
+            if (this.resultListener) {
+                this.resultListener(result, responseData);
+            }
+        } catch (error) {
+            warn('[ProgressSyncQueue] 处理上报结果失败:', error);
+        }
+        return true;
+    }
+
+    private ensureRegistered(): void {
+        if (this.registered) {
+            return;
+        }
+        NativeBridge.registerHandler('ProgressSyncQueue', this);
+        this.registered = true;
+        log('[ProgressSyncQueue] 已注册到统一原生桥接管理器');
+    }
+}
@@ -55,6 +55,14 @@ export class RiskDetectionService extends Component {
     private apiClient: EncryptedApiClient = null;
     private autoReportTimer: any = null;
     private lastReportTime: number = 0;
+    // 原生环境下订阅设备状态推送，状态变化时才重新上报
+    private stateSubscribed: boolean = false;
+    
+    // 影响风控结果的设备状态字段及原生检查间隔
+    private static readonly WATCHED_STATE_FIELDS = ['isVPN', 'isWiFi', 'hasNetwork', 'isCharging', 'simCard'];
+    // 进程内不会变化的字段，原生只读取一次并随全量推送带上，不参与定时检查
+    private static readonly STATIC_STATE_FIELDS = ['isRoot', 'debugMode'];
+    private static readonly STATE_CHECK_INTERVAL_MS = 10000;
 
     // 风控上报API端点
     private readonly RISK_DETECTION_ENDPOINT = '/safe/riskDetection';
@@ -273,11 +281,11 @@ export class RiskDetectionService extends Component {
 
     /**
      * 启动自动风控上报
+     * Android原生环境下订阅设备状态增量推送，只在状态变化时上报（两次上报至少间隔autoReportInterval）；
+     * 其他环境按autoReportInterval定时上报
      */
     public startAutoReport(): void {
-        if (this.autoReportTimer) {
-            this.stopAutoReport();
-        }
+        this.stopAutoReport();
         
         log('启动自动风控上报，间隔:', this.autoReportInterval, 'ms');
         
@@ -286,6 +294,17 @@ export class RiskDetectionService extends Component {
             warn('初始风控上报失败:', error);
         });
         
+        if (sys.platform === sys.Platform.ANDROID && sys.isNative) {
+            this.deviceInfoCollector.subscribeDeviceState(
+                RiskDetectionService.WATCHED_STATE_FIELDS,
+                RiskDetectionService.STATE_CHECK_INTERVAL_MS,
+                (changes, full) => this.onDeviceStateChanged(changes, full),
+                RiskDetectionService.STATIC_STATE_FIELDS
+            );
+            this.stateSubscribed = true;
+            return;
+        }
+        
         // 设置定时器
         this.autoReportTimer = setInterval(() => {
             this.performRiskDetection().catch(error => {
@@ -298,11 +317,37 @@ export class RiskDetectionService extends Component {
      * 停止自动风控上报
      */
     public stopAutoReport(): void {
+        if (!this.autoReportTimer && !this.stateSubscribed) {
+            return;
+        }
         if (this.autoReportTimer) {
             clearInterval(this.autoReportTimer);
+            clearTimeout(this.autoReportTimer);
             this.autoReportTimer = null;
-            log('已停止自动风控上报');
         }
+        if (this.stateSubscribed) {
+            this.deviceInfoCollector?.unsubscribeDeviceState();
+            this.stateSubscribed = false;
+        }
+        log('已停止自动风控上报');
+    }
+
+    /**
+     * 设备状态推送回调：全量推送只是增量的基准，不触发上报；
+     * 距上次上报不足autoReportInterval时合并到间隔结束后上报一次
+     */
+    private onDeviceStateChanged(changes: { [field: string]: any }, full: boolean): void {
+        if (full || this.autoReportTimer) {
+            return;
+        }
+        log('设备状态变化，准备风控上报:', changes);
+        const delay = Math.max(0, this.lastReportTime + this.autoReportInterval - Date.now());
+        this.autoReportTimer = setTimeout(() => {
+            this.autoReportTimer = null;
+            this.performRiskDetection().catch(error => {
+                warn('状态变化风控上报失败:', error);
+            });
+        }, delay);
     }
 
     /**
@@ -313,7 +358,7 @@ export class RiskDetectionService extends Component {
         log('设置自动上报间隔为:', this.autoReportInterval, 'ms');
         
         // 如果正在运行，重新启动
-        if (this.autoReportTimer) {
+        if (this.autoReportTimer || this.stateSubscribed) {
             this.startAutoReport();
         }
     }
@@ -1,4 +1,4 @@
-import { _decorator, Component, Node, native } from 'cc';
+import { _decorator, Component, Node, native, director, Director, game, Game } from 'cc';
 const { ccclass, property } = _decorator;
 
 /**
@@ -11,6 +11,57 @@ interface TrackEventConfig {
     defaultAttributes?: Record<string, string>;
 }
 
+/**
+ * 页面停留期间的引擎帧耗时采样
+ * 在Director绘制完成事件中记录相邻两帧的间隔（引擎GL线程实际渲染的帧，而不是系统UI线程的vsync），
+ * 按1ms分桶累计，页面结束时一次性交给原生端计算帧率、卡顿和P95
+ */
+class PageFrameSampler {
+    // 与原生PageTracker的分桶数一致：最后一个桶收集大于等于100ms的帧
+    private static readonly BUCKETS = 101;
+
+    private histogram: number[] = new Array(PageFrameSampler.BUCKETS).fill(0);
+    private lastFrameMs: number = 0;
+    private running: boolean = false;
+
+    public start(): void {
+        this.histogram.fill(0);
+        this.lastFrameMs = 0;
+        if (this.running) {
+            return;
+        }
+        this.running = true;
+        director.on(Director.EVENT_AFTER_DRAW, this.onAfterDraw, this);
+        game.on(Game.EVENT_SHOW, this.onShow, this);
+    }
+
+    /**
+     * 停止采样并返回分桶计数（逗号分隔）
+     */
+    public stop(): string {
+        if (this.running) {
+            this.running = false;
+            director.off(Director.EVENT_AFTER_DRAW, this.onAfterDraw, this);
+            game.off(Game.EVENT_SHOW, this.onShow, this);
+        }
+        return this.histogram.join(',');
+    }
+
+    private onAfterDraw(): void {
+        const now = performance.now();
+        if (this.lastFrameMs > 0) {
+            const bucket = Math.min(PageFrameSampler.BUCKETS - 1, Math.floor(now - this.lastFrameMs));
+            this.histogram[bucket]++;
+        }
+        this.lastFrameMs = now;
+    }
+
+    private onShow(): void {
+        // 后台期间引擎不绘制，回到前台后的第一个间隔不算作一帧
+        this.lastFrameMs = 0;
+    }
+}
+
 /**
  * 埋点事件类型枚举
  */
@@ -93,11 +144,25 @@ export enum TrackEventType {
 export class UmengSDK {
     private static instance: UmengSDK;
     private isInitialized: boolean = false;
+
+    // 当前统计中的页面（场景）名称
+    private currentPageName: string = '';
+    private frameSampler: PageFrameSampler = new PageFrameSampler();
     
     // 友盟SDK配置
     private static readonly UMENG_APPKEY = '6840ffc079267e02107a4583';
     private static readonly UMENG_CHANNEL = 'default';
     
+    // 高频事件采样/限流策略（原生UmengHelper在入队前执行）
+    // mode: always 全量 | sample 1/n采样 | rate 令牌桶限流（perSecond每秒放行数，burst突发上限）
+    // 放行事件会带上sample_weight属性，看板按权重还原实际次数
+    // 只针对实际会连续触发的事件：勾选框反复切换、等待登录时连续点击登录按钮；
+    // 合成等玩法事件走aggregate端上聚合，奖励和广告收益事件需要逐条上报，不做限流
+    private static readonly EVENT_POLICIES: Record<string, { mode: string; n?: number; perSecond?: number; burst?: number }> = {
+        'LoginPage_AuthorisationGrant_Click': { mode: 'rate', perSecond: 1, burst: 3 },
+        'LoginPage_AccessMode_Click': { mode: 'rate', perSecond: 1, burst: 3 }
+    };
+    
     // 埋点事件配置映射
     private static readonly TRACK_EVENT_CONFIGS: Record<TrackEventType, TrackEventConfig> = {
         // 登录相关埋点
@@ -410,6 +475,7 @@ export class UmengSDK {
             UmengSDK.instance = new UmengSDK();
             // Android端友盟SDK已在Application中初始化，这里自动标记为已初始化
             UmengSDK.instance.isInitialized = true;
+            UmengSDK.instance.configureEventPolicies(UmengSDK.EVENT_POLICIES);
             console.log('[UmengSDK] 友盟SDK实例创建完成，Android端已在Application中初始化');
         }
         return UmengSDK.instance;
@@ -429,6 +495,43 @@ export class UmengSDK {
         }
     }
     
+    /**
+     * 配置原生端的事件采样/限流策略（可用服务端下发的配置覆盖默认值）
+     * @param policies 事件ID到策略的映射，"default"键为未配置事件的兜底策略
+     */
+    public configureEventPolicies(policies: Record<string, { mode: string; n?: number; perSecond?: number; burst?: number }>): void {
+        if (native.reflection && native.reflection.callStaticMethod) {
+            try {
+                native.reflection.callStaticMethod(
+                    'com/schanyin/tgcf/UmengHelper',
+                    'configureEventPolicies',
+                    '(Ljava/lang/String;)V',
+                    JSON.stringify(policies)
+                );
+            } catch (error) {
+                console.error('[UmengSDK] 配置事件采样策略失败:', error);
+            }
+        }
+    }
+    
+    /**
+     * 通知原生端用户已同意隐私政策
+     * 原生端据此正式初始化友盟/巨量引擎SDK，并回放同意前缓冲在本地日志中的事件（重复调用无副作用）
+     */
+    public grantPrivacyConsent(): void {
+        if (native.reflection && native.reflection.callStaticMethod) {
+            try {
+                native.reflection.callStaticMethod(
+                    'com/schanyin/tgcf/App',
+                    'grantPrivacyConsent',
+                    '()V'
+                );
+            } catch (error) {
+                console.error('[UmengSDK] 通知隐私政策同意失败:', error);
+            }
+        }
+    }
+    
     /**
      * 获取友盟AppKey
      */
@@ -444,7 +547,7 @@ export class UmengSDK {
     }
     
     /**
-     * 页面开始统计
+     * 页面开始统计（上一个页面未结束时先结束它）
      * @param pageName 页面名称
      */
     public onPageStart(pageName: string): void {
@@ -453,15 +556,23 @@ export class UmengSDK {
             return;
         }
         
+        if (this.currentPageName) {
+            this.onPageEnd(this.currentPageName);
+        }
         console.log(`[UmengSDK] 页面开始: ${pageName}`);
+        this.currentPageName = pageName;
+        this.frameSampler.start();
         
         if (native.reflection && native.reflection.callStaticMethod) {
             try {
+                // 卡顿阈值按游戏目标帧率计算（低端机可能限制在30帧，高刷屏上也不一定跑满刷新率）
+                const targetFrameRate = Math.round(Number(game.frameRate)) || 0;
                 native.reflection.callStaticMethod(
                     'com/schanyin/tgcf/UmengHelper',
                     'onPageStart',
-                    '(Ljava/lang/String;)V',
-                    pageName
+                    '(Ljava/lang/String;I)V',
+                    pageName,
+                    targetFrameRate
                 );
             } catch (error) {
                 console.error('[UmengSDK] 页面开始统计失败:', error);
@@ -470,7 +581,7 @@ export class UmengSDK {
     }
     
     /**
-     * 页面结束统计
+     * 页面结束统计，附带页面停留期间的引擎帧耗时分桶
      * @param pageName 页面名称
      */
     public onPageEnd(pageName: string): void {
@@ -480,14 +591,19 @@ export class UmengSDK {
         }
         
         console.log(`[UmengSDK] 页面结束: ${pageName}`);
+        const frameHistogram = this.frameSampler.stop();
+        if (this.currentPageName === pageName) {
+            this.currentPageName = '';
+        }
         
         if (native.reflection && native.reflection.callStaticMethod) {
             try {
                 native.reflection.callStaticMethod(
                     'com/schanyin/tgcf/UmengHelper',
                     'onPageEnd',
-                    '(Ljava/lang/String;)V',
-                    pageName
+                    '(Ljava/lang/String;Ljava/lang/String;)V',
+                    pageName,
+                    frameHistogram
                 );
             } catch (error) {
                 console.error('[UmengSDK] 页面结束统计失败:', error);
@@ -495,6 +611,15 @@ export class UmengSDK {
         }
     }
     
+    /**
+     * 结束当前页面统计（场景跳转前调用）
+     */
+    public endCurrentPage(): void {
+        if (this.currentPageName) {
+            this.onPageEnd(this.currentPageName);
+        }
+    }
+    
     /**
      * 自定义事件统计
      * @param eventId 事件ID
@@ -510,8 +635,18 @@ export class UmengSDK {
         
         if (native.reflection && native.reflection.callStaticMethod) {
             try {
-                if (attributes && Object.keys(attributes).length > 0) {
-                    // 带属性的事件统计 - 使用自定义的静态方法
+                const encoded = attributes ? UmengSDK.encodeAttributes(attributes) : '';
+                if (encoded) {
+                    // 带属性的事件统计 - 预编码格式，原生端无需JSON解析
+                    native.reflection.callStaticMethod(
+                        'com/schanyin/tgcf/UmengHelper',
+                        'onEventEncoded',
+                        '(Ljava/lang/String;Ljava/lang/String;)V',
+                        eventId,
+                        encoded
+                    );
+                } else if (attributes && Object.keys(attributes).length > 0) {
+                    // 属性中含有分隔符时退回JSON格式
                     const attributesJson = JSON.stringify(attributes);
                     native.reflection.callStaticMethod(
                         'com/schanyin/tgcf/UmengHelper',
@@ -641,6 +776,71 @@ export class UmengSDK {
         }
     }
     
+    /**
+     * 端上聚合记录：高频事件不逐条上报，原生定时输出一条汇总事件（事件ID + "_agg"）
+     * 汇总包含 count、sum、min、max、avg 以及直方图 hist
+     * @param eventId 事件ID
+     * @param value 数值（只计次数时传1）
+     * @param dimensions 聚合维度（取值应为有限集合，避免聚合键过多）
+     */
+    public aggregate(eventId: string, value: number = 1, dimensions?: Record<string, string>): void {
+        if (native.reflection && native.reflection.callStaticMethod) {
+            try {
+                const encoded = dimensions ? UmengSDK.encodeAttributes(dimensions) : '';
+                native.reflection.callStaticMethod(
+                    'com/schanyin/tgcf/UmengHelper',
+                    'aggregate',
+                    '(Ljava/lang/String;Ljava/lang/String;F)V',
+                    eventId,
+                    encoded,
+                    value
+                );
+            } catch (error) {
+                console.error('[UmengSDK] 聚合记录失败:', error);
+            }
+        }
+    }
+    
+    /**
+     * 配置聚合事件的直方图分桶上界
+     * @param eventId 事件ID
+     * @param bounds 升序的分桶上界
+     */
+    public setAggregateBuckets(eventId: string, bounds: number[]): void {
+        if (native.reflection && native.reflection.callStaticMethod) {
+            try {
+                native.reflection.callStaticMethod(
+                    'com/schanyin/tgcf/UmengHelper',
+                    'setAggregateBuckets',
+                    '(Ljava/lang/String;Ljava/lang/String;)V',
+                    eventId,
+                    bounds.join(',')
+                );
+            } catch (error) {
+                console.error('[UmengSDK] 配置聚合分桶失败:', error);
+            }
+        }
+    }
+    
+    /**
+     * 将属性编码为原生UmengHelper的预编码格式
+     * 键值之间用\u001F分隔，键值对之间用\u001E分隔；属性中含有分隔符时返回空字符串
+     */
+    private static encodeAttributes(attributes: Record<string, string>): string {
+        let encoded = '';
+        for (const key in attributes) {
+            const value = String(attributes[key]);
+            if (/[\u001E\u001F]/.test(key) || /[\u001E\u001F]/.test(value)) {
+                return '';
+            }
+            if (encoded) {
+                encoded += '\u001E';
+            }
+            encoded += key + '\u001F' + value;
+        }
+        return encoded;
+    }
+    
     /**
      * 获取SDK状态
      */
@@ -648,6 +848,25 @@ export class UmengSDK {
         return this.isInitialized;
     }
     
+    /**
+     * 获取原生统计管道状态（队列深度、丢弃数、已分发数等）
+     */
+    public getAnalyticsStats(): Record<string, number> | null {
+        if (native.reflection && native.reflection.callStaticMethod) {
+            try {
+                const json = native.reflection.callStaticMethod(
+                    'com/schanyin/tgcf/UmengHelper',
+                    'getAnalyticsStats',
+                    '()Ljava/lang/String;'
+                );
+                return json ? JSON.parse(json) : null;
+            } catch (error) {
+                console.error('[UmengSDK] 获取统计管道状态失败:', error);
+            }
+        }
+        return null;
+    }
+    
     /**
      * 统一埋点追踪方法（简化调用接口）
      * @param eventType 埋点事件类型
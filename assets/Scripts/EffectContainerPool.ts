@@ -1,4 +1,4 @@
-import { _decorator, Component, Node, Prefab, instantiate, director, game, Tween, UIOpacity } from 'cc';
+import { _decorator, Component, Node, Prefab, instantiate, director, game, Tween, UIOpacity, native, sys } from 'cc';
 const { ccclass, property } = _decorator;
 
 @ccclass('EffectContainerPool')
@@ -11,9 +11,12 @@ export class EffectContainerPool extends Component {
     private pool: Node[] = [];
     private activeItems: Set<Node> = new Set();
     
-    // 对象池配置
-    private readonly INITIAL_POOL_SIZE = 3;
-    private readonly MAX_POOL_SIZE = 10;
+    // 对象池配置（按设备分级调整）
+    private INITIAL_POOL_SIZE = 3;
+    private MAX_POOL_SIZE = 10;
+    
+    // 特效质量：0 精简，1 标准，2 完整（由原生设备分级决定）
+    private static effectQuality: number = 2;
     
     protected onLoad(): void {
         // 确保单例
@@ -27,10 +30,49 @@ export class EffectContainerPool extends Component {
         // 设置为常驻节点，场景切换时不销毁
         game.addPersistRootNode(this.node);
         
+        // 根据设备分级调整帧率和对象池大小
+        this.applyDeviceTier();
+        
         // 初始化对象池
         this.initializePool();
     }
     
+    /**
+     * 读取原生设备分级，低端机降低帧率并缩小对象池
+     */
+    private applyDeviceTier(): void {
+        if (!sys.isNative || sys.platform !== sys.Platform.ANDROID) {
+            return;
+        }
+        try {
+            const json = native.reflection.callStaticMethod(
+                'com/schanyin/tgcf/DeviceTierClassifier',
+                'getTierJson',
+                '()Ljava/lang/String;'
+            );
+            if (!json) {
+                return;
+            }
+            const tier = JSON.parse(json);
+            EffectContainerPool.effectQuality = tier.effectQuality;
+            game.frameRate = tier.frameRate;
+            if (tier.effectQuality === 0) {
+                this.INITIAL_POOL_SIZE = 1;
+                this.MAX_POOL_SIZE = 4;
+            }
+            console.log(`📱 设备分级: ${tier.tier}, 帧率: ${tier.frameRate}, 特效质量: ${tier.effectQuality}`);
+        } catch (error) {
+            console.warn('EffectContainerPool: 读取设备分级失败', error);
+        }
+    }
+    
+    /**
+     * 获取特效质量：0 精简，1 标准，2 完整
+     */
+    public static getEffectQuality(): number {
+        return EffectContainerPool.effectQuality;
+    }
+    
     /**
      * 获取单例实例
      */
@@ -1,6 +1,8 @@
 import { _decorator, Component, Label, log, warn, Node,director, find } from 'cc';
 import { ApiConfig, LocalGameProgress, GameSceneData, BaseReq, AjaxResult, GetNextLotteryLayerResponse, AddLotteryResponse } from '../API/ApiConfig';
 import { DeviceInfoCollector } from '../API/DeviceInfoCollector';
+import { ProgressSyncQueue } from '../API/ProgressSyncQueue';
+import { HotUpdateDownloader } from '../API/HotUpdateDownloader';
 import { LuckyDrawButton } from './按钮显现隐藏/LuckyDrawButton';
 import { AudioManager } from './音乐/AudioManager';
 
@@ -195,6 +197,9 @@ export class GameProgressManager extends Component {
             if (!this.localSaveTimer || !this.serverReportTimer) {
                 this.startTimers();
             }
+
+            // 游戏进行中热更新下载限速
+            HotUpdateDownloader.setGameplayActive(true);
             
             // 3. 检查用户登录状态并加载服务器进度
             const userData = ApiConfig.getUserData();
@@ -580,6 +585,7 @@ export class GameProgressManager extends Component {
 
     protected onDestroy(): void {
         this.stopTimers();
+        HotUpdateDownloader.setGameplayActive(false);
         // 最后一次保存本地数据
         this.saveLocalProgress();
     }
@@ -715,6 +721,7 @@ export class GameProgressManager extends Component {
                     const localProgress = ApiConfig.getLocalGameProgress();
                     if (localProgress) {
                         localProgress.serverSceneData = progressData.sceneData;
+                        ApiConfig.markProgressDirty('serverSceneData');
                         ApiConfig.saveLocalProgressToStorage();
                         log('GameProgressManager: 服务端场景数据已保存到本地');
                     }
@@ -824,12 +831,19 @@ export class GameProgressManager extends Component {
         }
 
             log('GameProgressManager: 开始向服务器上报进度...');
+
+            // 原生环境下交给后台线程排队上报，不等待结果
+            if (ProgressSyncQueue.isNativeAvailable() && await this.enqueueNativeProgressSync()) {
+                log('GameProgressManager: 进度上报已排队');
+                return;
+            }
             
-            const response = await this.saveGameProgress();
+            const dto = await this.buildSaveGameProgressDto();
+            const response = await this.saveGameProgress(dto);
             log('GameProgressManager: 进度上报成功:', response);
             
-            // 上报成功后，清空本地合成数据计数器
-            this.resetComposeCounters();
+            // 上报成功后，扣除已上报的合成数据计数
+            this.resetComposeCounters(dto);
             
             // 更新UI显示
             this.updateDisplay();
@@ -841,14 +855,30 @@ export class GameProgressManager extends Component {
     }
 
     /**
-     * 保存游戏进度到服务器
+     * 交给原生进度上报队列
+     * @returns 是否已排队
      */
-    private async saveGameProgress(): Promise<SaveGameProgressVo> {
+    private async enqueueNativeProgressSync(): Promise<boolean> {
         const token = ApiConfig.getUserData()?.access_token;
         if (!token) {
             throw new Error('access_token 缺失');
         }
+        const queue = ProgressSyncQueue.getInstance();
+        queue.setResultListener((result) => {
+            if (result.ok) {
+                this.updateDisplay();
+                this.updateAllSceneDisplays();
+            }
+        });
+        const dto = await this.buildSaveGameProgressDto();
+        const headers = { Authorization: 'Bearer ' + token, 'Content-Type': 'application/json' };
+        return queue.enqueue(ApiConfig.getFullUrl(this.SAVE_ENDPOINT), headers, dto, ApiConfig.getTimeout());
+    }
 
+    /**
+     * 构建保存进度请求数据
+     */
+    private async buildSaveGameProgressDto(): Promise<SaveGameProgressDto> {
         const localProgress = ApiConfig.getLocalGameProgress();
         if (!localProgress) {
             throw new Error('本地进度数据缺失');
@@ -878,6 +908,17 @@ export class GameProgressManager extends Component {
             drawNum: localProgress.drawNum,
             progress: this.buildProgressString()  // 包含场景数据的progress字符串
         };
+        return dto;
+    }
+
+    /**
+     * 保存游戏进度到服务器
+     */
+    private async saveGameProgress(dto: SaveGameProgressDto): Promise<SaveGameProgressVo> {
+        const token = ApiConfig.getUserData()?.access_token;
+        if (!token) {
+            throw new Error('access_token 缺失');
+        }
 
         const url = ApiConfig.getFullUrl(this.SAVE_ENDPOINT);
         const timeout = ApiConfig.getTimeout();
@@ -966,16 +1007,11 @@ export class GameProgressManager extends Component {
 
     /**
      * 重置合成计数器（上报成功后调用）
+     * 只扣除本次上报的数量，上报期间新增的合成数据保留到下次上报
      */
-    private resetComposeCounters(): void {
-        const localProgress = ApiConfig.getLocalGameProgress();
-        if (localProgress) {
-            localProgress.goldNumCompose = 0;
-            localProgress.redBagNumCompose = 0;
-            localProgress.times = 0;
-            ApiConfig.saveLocalProgressToStorage();
-            log('GameProgressManager: 合成计数器已重置');
-        }
+    private resetComposeCounters(sent: SaveGameProgressDto): void {
+        ApiConfig.deductSyncedCompose(sent.goldNumCompose || 0, sent.redBagNumCompose || 0, sent.times || 0);
+        log('GameProgressManager: 合成计数器已重置');
     }
 
     // ======== UI 显示管理 ========
@@ -1332,6 +1368,7 @@ export class GameProgressManager extends Component {
                                     const localProgress = ApiConfig.getLocalGameProgress();
                                     if (localProgress) {
                                         localProgress.drawNum = result.drawNum;
+                                        ApiConfig.markProgressDirty('drawNum');
                                         ApiConfig.saveLocalProgressToStorage();
                                     }
                                     
@@ -5,6 +5,7 @@ import { GameProgressManager } from './GameProgressManager';
 import { RewardEffectController } from './RewardEffectController';
 import { AudioManager } from './音乐/AudioManager';
 import { ApiConfig } from '../API/ApiConfig';
+import { umengSDK } from '../API/UmengSDK';
 const { ccclass, property } = _decorator;
 
 /**
@@ -138,6 +139,15 @@ export class ItemDropGame extends Component {
     }
 
     protected start(): void {
+        // 合成等级聚合按等级分桶（原生端最多15个上界）
+        const levelBounds: number[] = [];
+        for (let level = 1; level < this.itemPrefabs.length && levelBounds.length < 15; level++) {
+            levelBounds.push(level);
+        }
+        if (levelBounds.length > 0) {
+            umengSDK.setAggregateBuckets('Game_Merge', levelBounds);
+        }
+
         // 使用统一的数据恢复方法
         this.scheduleOnce(() => {
             this.unifiedDataRestore();
@@ -708,6 +718,9 @@ export class ItemDropGame extends Component {
         // 记录合成奖励到进度管理器
         //this.progressManager?.recordComposeReward(goldReward, redBagReward, isMaxLevel);
 
+        // 合成等级分布在原生端聚合，定时只上报一条汇总
+        umengSDK.aggregate('Game_Merge', newLevel);
+
         // 检查是否需要播放激励视频广告
         this.checkAndShowRewardAd();
 
@@ -988,8 +1001,10 @@ export class ItemDropGame extends Component {
             }
         }
 
-        // 财神动画完成后显示"+1"效果
-        this.effectController?.showPlusOneEffect();
+        // 财神动画完成后显示"+1"效果（精简特效模式下跳过）
+        if (EffectContainerPool.getEffectQuality() > 0) {
+            this.effectController?.showPlusOneEffect();
+        }
 
         // 财神动画完成后更新财神数量
         this.progressManager?.recordComposeReward(0, 0, true);
@@ -7,6 +7,8 @@ import { LoginService, LoginResponse } from '../API/LoginService';
 import { GameProgressManager } from './GameProgressManager';
 import { OnlineTimeManager } from './任务中心/OnlineTimeManager';
 import { track, TrackEventType, umengSDK } from '../API/UmengSDK';
+import { AssetWarmList } from '../API/AssetWarmList';
+import { OceanEngineSDK } from '../API/OceanEngineSDK';
 
 const { ccclass, property } = _decorator;
 
@@ -59,6 +61,9 @@ export class LoginController extends Component {
         // 添加全局错误处理器
         this.setupGlobalErrorHandlers();
         
+        // 引擎首帧后再初始化巨量引擎转化SDK
+        OceanEngineSDK.watchEngineFirstFrame();
+        
         this.initializeUI();
         this.bindEvents();
         this.initializeWeChatLogin();
@@ -308,6 +313,9 @@ export class LoginController extends Component {
             return;
         }
         
+        // 用户勾选协议并点击登录，视为同意隐私政策
+        umengSDK.grantPrivacyConsent();
+        
         if (this.isLoggingIn) {
             console.log("正在登录中，请稍候...");
             return;
@@ -366,6 +374,9 @@ export class LoginController extends Component {
             return;
         }
         
+        // 用户勾选协议并点击登录，视为同意隐私政策
+        umengSDK.grantPrivacyConsent();
+        
         if (this.isLoggingIn) {
             console.log("正在登录中，请稍候...");
             return;
@@ -653,11 +664,20 @@ export class LoginController extends Component {
             console.log("- 当前场景:", director.getScene()?.name || "未知");
             console.log("- Director 有效性:", !!director);
 
+            // 结束当前页面统计
+            umengSDK.endCurrentPage();
+
             // 使用 Promise 版本的 loadScene（Creator 3.x 推荐）
             const ok = await director.loadScene(this.targetSceneName);
 
             if (ok) {
                 console.log(`✅ 场景跳转成功: ${this.targetSceneName}`);
+
+                // 开始登录后第一个页面的统计，之后由SceneNavigator接续
+                umengSDK.onPageStart(this.targetSceneName);
+
+                // 记录该场景的资源，下次启动在开屏广告期间预热
+                AssetWarmList.recordSceneAssets(this.targetSceneName);
                 
                 // 等待一帧以确保场景完全加载
                 await new Promise(resolve => {
@@ -682,6 +702,7 @@ export class LoginController extends Component {
             try {
                 await director.loadScene("首页");
                 console.log("✅ 成功跳转到默认场景");
+                umengSDK.onPageStart("首页");
                 
                 // 在回退场景中也要执行回调
                 if (onSceneLoaded) {
@@ -1,5 +1,6 @@
 import { _decorator, Component, Node, Button, director } from 'cc';
 import { GameProgressManager } from '../GameProgressManager';
+import { umengSDK } from '../../API/UmengSDK';
 
 const { ccclass, property } = _decorator;
 
@@ -75,12 +76,18 @@ export class SceneNavigator extends Component {
             this.stopAllProgressManagerTimers();
             
        
+            // 结束当前页面统计（原生端上报页面耗时与帧率）
+            umengSDK.endCurrentPage();
+            
             // 执行场景跳转
             const success = await director.loadScene(this.targetSceneName);
             
             if (success) {
                 console.log(`SceneNavigator: 场景跳转成功: ${this.targetSceneName}`);
                 
+                // 开始新页面统计
+                umengSDK.onPageStart(this.targetSceneName);
+                
                 // 检查是否需要初始化游戏进度和恢复场景状态
                 if (this.shouldInitializeProgress()) {
                     await this.initializeGameProgressAfterNavigation();
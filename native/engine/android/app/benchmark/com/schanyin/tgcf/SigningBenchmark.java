@@ -0,0 +1,97 @@
+package com.schanyin.tgcf;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 签名性能基准（独立JVM程序，不打进APK，只依赖javax.crypto）
+ * 对比SigningService的做法（每线程复用Mac）与每次签名重新创建Mac，以及SHA-256摘要的耗时；
+ * 使用随机测试密钥，不涉及真实签名密钥
+ *
+ * 运行：
+ *   javac -encoding UTF-8 -d /tmp/bench native/engine/android/app/benchmark/com/schanyin/tgcf/SigningBenchmark.java
+ *   java -cp /tmp/bench com.schanyin.tgcf.SigningBenchmark [iterations] [payloadBytes]
+ */
+public class SigningBenchmark {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    // 防止JIT把结果当成无用计算消除
+    private static int sink;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int payloadBytes = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+
+        byte[] keyBytes = new byte[32];
+        new java.security.SecureRandom().nextBytes(keyBytes);
+        final SecretKeySpec key = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+
+        StringBuilder sb = new StringBuilder(payloadBytes);
+        for (int i = 0; i < payloadBytes; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        final String payload = sb.toString();
+
+        final Mac reused = Mac.getInstance(HMAC_ALGORITHM);
+        reused.init(key);
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+        Task reusedMac = new Task() {
+            @Override
+            public String run() {
+                return toHex(reused.doFinal(payload.getBytes(UTF_8)));
+            }
+        };
+        Task newMacPerSign = new Task() {
+            @Override
+            public String run() throws Exception {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(key);
+                return toHex(mac.doFinal(payload.getBytes(UTF_8)));
+            }
+        };
+        Task sha256 = new Task() {
+            @Override
+            public String run() {
+                return toHex(digest.digest(payload.getBytes(UTF_8)));
+            }
+        };
+
+        System.out.println("iterations=" + iterations + ", payloadBytes=" + payloadBytes);
+        report("HmacSHA256 每线程复用Mac", reusedMac, iterations);
+        report("HmacSHA256 每次新建Mac", newMacPerSign, iterations);
+        report("SHA-256", sha256, iterations);
+    }
+
+    private interface Task {
+        String run() throws Exception;
+    }
+
+    private static void report(String name, Task task, int iterations) throws Exception {
+        // 预热，让JIT编译完成
+        for (int i = 0; i < Math.max(10_000, iterations / 10); i++) {
+            sink += task.run().length();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += task.run().length();
+        }
+        long elapsedNs = System.nanoTime() - start;
+        System.out.println(String.format("%-24s %8d ns/op", name, elapsedNs / iterations));
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int v = bytes[i] & 0xff;
+            out[i * 2] = HEX_DIGITS[v >>> 4];
+            out[i * 2 + 1] = HEX_DIGITS[v & 0x0f];
+        }
+        return new String(out);
+    }
+}
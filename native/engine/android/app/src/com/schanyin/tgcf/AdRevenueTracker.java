@@ -0,0 +1,238 @@
+package com.schanyin.tgcf;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 广告收益统计
+ * 固定容量的环形缓冲区保存最近的广告展示，另外按ADN和代码位累计展示次数、收益、平均eCPM和填充耗时。
+ * 每次展示只做数组写入和一次Map查找；累计数据可以通过桥接查询，并定时批量上报到统计
+ * eCPM和收益的单位与聚合SDK返回的eCPM一致（分）
+ */
+public class AdRevenueTracker {
+    private static final String TAG = "AdRevenueTracker";
+
+    public static final int AD_TYPE_SPLASH = 1;
+    public static final int AD_TYPE_REWARD = 2;
+
+    // 环形缓冲区容量
+    private static final int RING_CAPACITY = 128;
+    // ADN/代码位的上限，超出后归入"other"
+    private static final int MAX_GROUPS = 32;
+    private static final String OTHER_GROUP = "other";
+    // 累计多少次展示后批量上报一次
+    private static final int FLUSH_BATCH_SIZE = 10;
+
+    // 批量上报事件ID
+    static final String EVENT_AD_REVENUE = "Ad_Revenue";
+
+    /**
+     * 累计数据
+     */
+    private static final class Aggregate {
+        long count;
+        double ecpmSum;
+        long fillLatencySum;
+        long fillCount;
+
+        void add(double ecpm, long fillLatencyMs) {
+            count++;
+            ecpmSum += ecpm;
+            if (fillLatencyMs >= 0) {
+                fillLatencySum += fillLatencyMs;
+                fillCount++;
+            }
+        }
+
+        void reset() {
+            count = 0;
+            ecpmSum = 0;
+            fillLatencySum = 0;
+            fillCount = 0;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("count", count);
+            json.put("revenue", ecpmSum / 1000);
+            json.put("avgEcpm", count > 0 ? ecpmSum / count : 0);
+            json.put("avgFillMs", fillCount > 0 ? fillLatencySum / fillCount : -1);
+            return json;
+        }
+    }
+
+    private static AdRevenueTracker instance;
+
+    // 环形缓冲区，以下字段由synchronized保护
+    private final long[] ringTimestamps = new long[RING_CAPACITY];
+    private final int[] ringAdTypes = new int[RING_CAPACITY];
+    private final double[] ringEcpm = new double[RING_CAPACITY];
+    private final long[] ringFillLatency = new long[RING_CAPACITY];
+    private final String[] ringAdn = new String[RING_CAPACITY];
+    private final String[] ringSlot = new String[RING_CAPACITY];
+    private long ringWritten = 0;
+
+    private final Aggregate total = new Aggregate();
+    private final Map<String, Aggregate> byAdn = new HashMap<>();
+    private final Map<String, Aggregate> bySlot = new HashMap<>();
+    // 自上次上报以来按ADN累计的数据
+    private final Map<String, Aggregate> pendingByAdn = new HashMap<>();
+    private int pendingImpressions = 0;
+
+    public static synchronized AdRevenueTracker getInstance() {
+        if (instance == null) {
+            instance = new AdRevenueTracker();
+        }
+        return instance;
+    }
+
+    private AdRevenueTracker() {}
+
+    /**
+     * 记录一次广告展示（在展示回调中调用）
+     * @param ecpm SDK返回的eCPM字符串，无法解析时按0计
+     * @param fillLatencyMs 从请求加载到加载成功的耗时，未知时传-1
+     */
+    public void recordImpression(int adType, String ecpm, String sdkName, String slotId, long fillLatencyMs) {
+        double ecpmValue = parseEcpm(ecpm);
+        boolean shouldFlush;
+        synchronized (this) {
+            String adn = groupKey(byAdn, sdkName);
+            String slot = groupKey(bySlot, slotId);
+
+            int index = (int) (ringWritten % RING_CAPACITY);
+            ringTimestamps[index] = System.currentTimeMillis();
+            ringAdTypes[index] = adType;
+            ringEcpm[index] = ecpmValue;
+            ringFillLatency[index] = fillLatencyMs;
+            ringAdn[index] = adn;
+            ringSlot[index] = slot;
+            ringWritten++;
+
+            total.add(ecpmValue, fillLatencyMs);
+            aggregateOf(byAdn, adn).add(ecpmValue, fillLatencyMs);
+            aggregateOf(bySlot, slot).add(ecpmValue, fillLatencyMs);
+            aggregateOf(pendingByAdn, adn).add(ecpmValue, fillLatencyMs);
+            pendingImpressions++;
+            shouldFlush = pendingImpressions >= FLUSH_BATCH_SIZE;
+        }
+        if (shouldFlush) {
+            flush();
+        }
+    }
+
+    /**
+     * 把自上次上报以来的数据按ADN各上报一条汇总事件（onPause时也会调用）
+     */
+    public void flush() {
+        List<Map<String, Object>> summaries;
+        synchronized (this) {
+            if (pendingImpressions == 0) {
+                return;
+            }
+            summaries = new ArrayList<>(pendingByAdn.size());
+            for (Map.Entry<String, Aggregate> entry : pendingByAdn.entrySet()) {
+                Aggregate agg = entry.getValue();
+                if (agg.count == 0) {
+                    continue;
+                }
+                // 次数、收益和eCPM按数值上报，看板可以直接求和、求均值
+                Map<String, Object> summary = new HashMap<>();
+                summary.put("adn", entry.getKey());
+                summary.put("count", agg.count);
+                summary.put("revenue", roundDecimal(agg.ecpmSum / 1000));
+                summary.put("avg_ecpm", roundDecimal(agg.ecpmSum / agg.count));
+                summary.put("avg_fill_ms", agg.fillCount > 0 ? agg.fillLatencySum / agg.fillCount : -1L);
+                summaries.add(summary);
+                agg.reset();
+            }
+            pendingImpressions = 0;
+        }
+        for (Map<String, Object> summary : summaries) {
+            UmengHelper.onEventWithMap(EVENT_AD_REVENUE, summary);
+        }
+    }
+
+    /**
+     * 收益统计JSON：总计、按ADN、按代码位以及最近recentLimit次展示
+     */
+    public synchronized String getStatsJson(int recentLimit) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("total", total.toJson());
+            json.put("adn", groupsToJson(byAdn));
+            json.put("slot", groupsToJson(bySlot));
+
+            JSONArray recent = new JSONArray();
+            int available = (int) Math.min(ringWritten, RING_CAPACITY);
+            int limit = Math.min(Math.max(0, recentLimit), available);
+            for (int i = 0; i < limit; i++) {
+                int index = (int) ((ringWritten - 1 - i) % RING_CAPACITY);
+                JSONObject item = new JSONObject();
+                item.put("time", ringTimestamps[index]);
+                item.put("adType", ringAdTypes[index]);
+                item.put("adn", ringAdn[index]);
+                item.put("slot", ringSlot[index]);
+                item.put("ecpm", ringEcpm[index]);
+                item.put("fillMs", ringFillLatency[index]);
+                recent.put(item);
+            }
+            json.put("recent", recent);
+        } catch (JSONException e) {
+            Log.e(TAG, "构造收益统计JSON失败", e);
+        }
+        return json.toString();
+    }
+
+    private static JSONObject groupsToJson(Map<String, Aggregate> groups) throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Aggregate> entry : groups.entrySet()) {
+            json.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return json;
+    }
+
+    /**
+     * 分组名：已有分组或未达上限时使用原名，否则归入other
+     */
+    private static String groupKey(Map<String, Aggregate> groups, String name) {
+        String key = name != null && !name.isEmpty() ? name : "unknown";
+        if (groups.containsKey(key) || groups.size() < MAX_GROUPS) {
+            return key;
+        }
+        return OTHER_GROUP;
+    }
+
+    private static Aggregate aggregateOf(Map<String, Aggregate> groups, String key) {
+        Aggregate agg = groups.get(key);
+        if (agg == null) {
+            agg = new Aggregate();
+            groups.put(key, agg);
+        }
+        return agg;
+    }
+
+    private static double parseEcpm(String ecpm) {
+        if (ecpm == null || ecpm.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(ecpm);
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "eCPM解析失败: " + ecpm);
+            return 0;
+        }
+    }
+
+    private static double roundDecimal(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
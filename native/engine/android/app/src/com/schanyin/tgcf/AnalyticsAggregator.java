@@ -0,0 +1,210 @@
+package com.schanyin.tgcf;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端上统计聚合器
+ * 按 事件ID + 维度 聚合次数、求和、最值和固定分桶直方图，数据存放在预分配的基本类型数组中，
+ * 每隔固定时间以及切到后台时，每个聚合键只输出一条汇总事件
+ */
+public class AnalyticsAggregator {
+    private static final String TAG = "AnalyticsAggregator";
+
+    // 聚合键上限，超出后新键的数据被丢弃并计数，保证内存有界
+    private static final int MAX_KEYS = 128;
+    // 默认直方图分桶上界（最后一个桶收集大于最大上界的值）
+    private static final double[] DEFAULT_BOUNDS = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024};
+    private static final int MAX_BUCKETS = 16;
+    // 默认汇总间隔
+    private static final long FLUSH_INTERVAL_SECONDS = 60;
+
+    // 汇总事件ID后缀
+    static final String SUMMARY_SUFFIX = "_agg";
+
+    /**
+     * 汇总输出接口
+     */
+    public interface SummarySink {
+        void emit(String eventId, Map<String, Object> attributes);
+    }
+
+    private final SummarySink sink;
+
+    // 事件ID -> (维度 -> 槽位)，两级查找，记录时不拼接键字符串
+    private final Map<String, Map<String, Integer>> slots = new HashMap<>();
+    private final String[] slotEventIds = new String[MAX_KEYS];
+    private final String[] slotDimensions = new String[MAX_KEYS];
+    private final long[] counts = new long[MAX_KEYS];
+    private final double[] sums = new double[MAX_KEYS];
+    private final double[] mins = new double[MAX_KEYS];
+    private final double[] maxs = new double[MAX_KEYS];
+    private final int[] histograms = new int[MAX_KEYS * MAX_BUCKETS];
+    private int usedSlots = 0;
+    private long droppedRecords = 0;
+
+    // 事件ID -> 分桶上界
+    private final Map<String, double[]> bucketBounds = new HashMap<>();
+
+    private ScheduledFuture<?> flushTask;
+
+    public AnalyticsAggregator(SummarySink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * 配置某个事件的直方图分桶上界（升序，最多MAX_BUCKETS-1个）
+     */
+    public synchronized void setBucketBounds(String eventId, double[] bounds) {
+        if (bounds == null || bounds.length == 0 || bounds.length >= MAX_BUCKETS) {
+            Log.e(TAG, "分桶配置无效: " + eventId);
+            return;
+        }
+        double[] copy = Arrays.copyOf(bounds, bounds.length);
+        Arrays.sort(copy);
+        bucketBounds.put(eventId, copy);
+    }
+
+    /**
+     * 记录一次数值
+     * @param eventId 事件ID
+     * @param dimensions 维度（预编码格式，可为空字符串）
+     * @param value 数值（只计次数时传1）
+     */
+    public synchronized void record(String eventId, String dimensions, double value) {
+        String dims = dimensions != null ? dimensions : "";
+        Map<String, Integer> eventSlots = slots.get(eventId);
+        Integer slot = eventSlots != null ? eventSlots.get(dims) : null;
+        if (slot == null) {
+            if (usedSlots >= MAX_KEYS) {
+                droppedRecords++;
+                return;
+            }
+            if (eventSlots == null) {
+                eventSlots = new HashMap<>();
+                slots.put(eventId, eventSlots);
+            }
+            slot = usedSlots++;
+            eventSlots.put(dims, slot);
+            slotEventIds[slot] = eventId;
+            slotDimensions[slot] = dims;
+            mins[slot] = value;
+            maxs[slot] = value;
+        }
+        int i = slot;
+        counts[i]++;
+        sums[i] += value;
+        if (value < mins[i]) mins[i] = value;
+        if (value > maxs[i]) maxs[i] = value;
+        histograms[i * MAX_BUCKETS + bucketOf(eventId, value)]++;
+
+        if (flushTask == null) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * 输出所有聚合键的汇总事件并清空
+     */
+    public void flush() {
+        Map<String, Object>[] summaries;
+        String[] eventIds;
+        int n;
+        long dropped;
+        synchronized (this) {
+            n = usedSlots;
+            if (n == 0) {
+                return;
+            }
+            summaries = newSummaryArray(n);
+            eventIds = new String[n];
+            for (int i = 0; i < n; i++) {
+                summaries[i] = buildSummary(i);
+                eventIds[i] = slotEventIds[i] + SUMMARY_SUFFIX;
+            }
+            dropped = droppedRecords;
+            reset();
+        }
+        // 锁外输出，避免阻塞记录线程
+        for (int i = 0; i < n; i++) {
+            sink.emit(eventIds[i], summaries[i]);
+        }
+        Log.d(TAG, "统计聚合汇总输出: " + n + "条" + (dropped > 0 ? "，超限丢弃: " + dropped : ""));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object>[] newSummaryArray(int n) {
+        return (Map<String, Object>[]) new Map[n];
+    }
+
+    /**
+     * 汇总属性：维度为字符串（分类），次数和统计值为数值，友盟看板可以直接求和、求均值
+     */
+    private Map<String, Object> buildSummary(int slot) {
+        Map<String, Object> summary = new HashMap<>();
+        UmengHelper.fillFromEncoded(slotDimensions[slot], summary);
+        long count = counts[slot];
+        summary.put("count", count);
+        summary.put("sum", sums[slot]);
+        summary.put("min", mins[slot]);
+        summary.put("max", maxs[slot]);
+        summary.put("avg", count > 0 ? sums[slot] / count : 0d);
+        summary.put("hist", formatHistogram(slot));
+        return summary;
+    }
+
+    private String formatHistogram(int slot) {
+        int bucketCount = boundsOf(slotEventIds[slot]).length + 1;
+        StringBuilder sb = new StringBuilder(bucketCount * 3);
+        int base = slot * MAX_BUCKETS;
+        for (int b = 0; b < bucketCount; b++) {
+            if (b > 0) sb.append(',');
+            sb.append(histograms[base + b]);
+        }
+        return sb.toString();
+    }
+
+    private int bucketOf(String eventId, double value) {
+        double[] bounds = boundsOf(eventId);
+        for (int b = 0; b < bounds.length; b++) {
+            if (value <= bounds[b]) {
+                return b;
+            }
+        }
+        return bounds.length;
+    }
+
+    private double[] boundsOf(String eventId) {
+        double[] bounds = bucketBounds.get(eventId);
+        return bounds != null ? bounds : DEFAULT_BOUNDS;
+    }
+
+    private void reset() {
+        slots.clear();
+        Arrays.fill(slotEventIds, 0, usedSlots, null);
+        Arrays.fill(slotDimensions, 0, usedSlots, null);
+        Arrays.fill(counts, 0, usedSlots, 0);
+        Arrays.fill(sums, 0, usedSlots, 0);
+        Arrays.fill(histograms, 0, usedSlots * MAX_BUCKETS, 0);
+        usedSlots = 0;
+        droppedRecords = 0;
+    }
+
+    private void scheduleFlush() {
+        flushTask = NativeExecutors.scheduled().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (Exception e) {
+                    Log.e(TAG, "统计聚合汇总失败: " + e.getMessage(), e);
+                }
+            }
+        }, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+}
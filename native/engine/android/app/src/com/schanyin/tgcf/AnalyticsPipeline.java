@@ -0,0 +1,280 @@
+package com.schanyin.tgcf;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 统计事件异步管道
+ * 调用方把事件写入有界无锁环形队列后立即返回，由单独的消费线程批量取出并交给友盟，
+ * 队列满时丢弃新事件并计数，不阻塞游戏线程；消费线程空闲等待时，新事件入队会立即唤醒它
+ */
+public class AnalyticsPipeline {
+    private static final String TAG = "AnalyticsPipeline";
+
+    // 队列容量（必须为2的幂）
+    private static final int CAPACITY = 1024;
+    // 每批最多处理的事件数
+    private static final int BATCH_SIZE = 64;
+    // 消费线程空闲时的最长等待间隔（有新事件或flush请求时会被提前唤醒）
+    private static final long IDLE_PARK_NS = 500_000_000L;
+
+    /**
+     * 事件分发接口，由消费线程调用
+     */
+    public interface Dispatcher {
+        void dispatch(Event event);
+    }
+
+    /**
+     * 队列中的事件
+     * 属性三选一：JSON字符串（兼容旧接口）、预编码字符串、键值数组
+     */
+    public static final class Event {
+        public final String eventId;
+        public final String attributesJson;
+        public final String encodedAttributes;
+        public final String[] keys;
+        public final String[] values;
+        // 带数值类型的属性（友盟按数值属性做求和/均值），入队后不再修改
+        public final Map<String, Object> attributeMap;
+        // 采样权重，<=0 表示不附加
+        public final int sampleWeight;
+
+        public Event(String eventId, String attributesJson) {
+            this(eventId, attributesJson, null, null, null, 0);
+        }
+
+        public Event(String eventId, String attributesJson, String encodedAttributes, String[] keys, String[] values,
+                     int sampleWeight) {
+            this(eventId, attributesJson, encodedAttributes, keys, values, null, sampleWeight);
+        }
+
+        public Event(String eventId, Map<String, Object> attributeMap, int sampleWeight) {
+            this(eventId, null, null, null, null, attributeMap, sampleWeight);
+        }
+
+        private Event(String eventId, String attributesJson, String encodedAttributes, String[] keys, String[] values,
+                      Map<String, Object> attributeMap, int sampleWeight) {
+            this.eventId = eventId;
+            this.attributesJson = attributesJson;
+            this.encodedAttributes = encodedAttributes;
+            this.keys = keys;
+            this.values = values;
+            this.attributeMap = attributeMap;
+            this.sampleWeight = sampleWeight;
+        }
+
+        public boolean hasAttributes() {
+            return attributesJson != null || encodedAttributes != null || keys != null || attributeMap != null;
+        }
+    }
+
+    private final int mask = CAPACITY - 1;
+    private final AtomicReferenceArray<Event> buffer = new AtomicReferenceArray<>(CAPACITY);
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private final AtomicLong tail = new AtomicLong();
+    // 只由消费线程写入
+    private volatile long head = 0;
+
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final Dispatcher dispatcher;
+    private final Thread consumer;
+    // 消费线程即将或正在等待时为true，生产者据此决定是否唤醒，避免每个事件都调用unpark
+    private volatile boolean consumerIdle = false;
+
+    // flush同步：请求代数与已完成代数
+    private final Object flushLock = new Object();
+    private long flushRequested = 0;
+    private long flushCompleted = 0;
+
+    public AnalyticsPipeline(Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, i);
+        }
+        consumer = NativeExecutors.newThreadFactory("analytics").newThread(new Runnable() {
+            @Override
+            public void run() {
+                consumeLoop();
+            }
+        });
+        consumer.start();
+    }
+
+    /**
+     * 写入事件，立即返回
+     * @return 队列已满被丢弃时返回false
+     */
+    public boolean offer(Event event) {
+        while (true) {
+            long pos = tail.get();
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer.lazySet(index, event);
+                    sequences.lazySet(index, pos + 1);
+                    enqueuedCount.incrementAndGet();
+                    if (consumerIdle) {
+                        LockSupport.unpark(consumer);
+                    }
+                    return true;
+                }
+            } else if (diff < 0) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+            // diff > 0：其他生产者已占用该位置，重试
+        }
+    }
+
+    /**
+     * 请求消费线程立即分发队列中的事件，不等待（可在主线程调用）
+     */
+    public void requestFlush() {
+        synchronized (flushLock) {
+            ++flushRequested;
+        }
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * 请求立即分发队列中的事件，最多等待timeoutMs毫秒（只在后台线程调用）
+     */
+    public boolean flush(long timeoutMs) {
+        long target;
+        synchronized (flushLock) {
+            target = ++flushRequested;
+        }
+        LockSupport.unpark(consumer);
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (flushLock) {
+            while (flushCompleted < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    Log.w(TAG, "统计事件flush超时，剩余: " + getQueueDepth());
+                    return false;
+                }
+                try {
+                    flushLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 当前排队中的事件数
+     */
+    public long getQueueDepth() {
+        return Math.max(0, tail.get() - head);
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 管道统计信息JSON
+     */
+    public String getStatsJson() {
+        return getStats().toString();
+    }
+
+    /**
+     * 管道统计信息
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("queueDepth", getQueueDepth());
+            json.put("capacity", CAPACITY);
+            json.put("enqueued", enqueuedCount.get());
+            json.put("dropped", droppedCount.get());
+            json.put("dispatched", dispatchedCount.get());
+            json.put("batches", batchCount.get());
+        } catch (JSONException e) {
+            Log.e(TAG, "构造管道统计JSON失败", e);
+        }
+        return json;
+    }
+
+    private Event poll() {
+        long pos = head;
+        int index = (int) (pos & mask);
+        long diff = sequences.get(index) - (pos + 1);
+        if (diff < 0) {
+            return null;
+        }
+        Event event = buffer.get(index);
+        buffer.lazySet(index, null);
+        sequences.lazySet(index, pos + CAPACITY);
+        head = pos + 1;
+        return event;
+    }
+
+    private void consumeLoop() {
+        while (true) {
+            long flushTarget;
+            synchronized (flushLock) {
+                flushTarget = flushRequested;
+            }
+
+            int drained = drainBatch();
+            while (drained == BATCH_SIZE) {
+                drained = drainBatch();
+            }
+
+            synchronized (flushLock) {
+                if (flushCompleted < flushTarget) {
+                    flushCompleted = flushTarget;
+                    flushLock.notifyAll();
+                }
+                if (flushRequested != flushTarget) {
+                    continue;
+                }
+            }
+
+            // 先声明空闲再检查队列：检查之后入队的生产者一定能看到consumerIdle并唤醒
+            consumerIdle = true;
+            if (getQueueDepth() == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NS);
+            }
+            consumerIdle = false;
+        }
+    }
+
+    private int drainBatch() {
+        int count = 0;
+        Event event;
+        while (count < BATCH_SIZE && (event = poll()) != null) {
+            try {
+                dispatcher.dispatch(event);
+                dispatchedCount.incrementAndGet();
+            } catch (Exception e) {
+                Log.e(TAG, "统计事件分发失败: " + event.eventId + ", " + e.getMessage());
+            }
+            count++;
+        }
+        if (count > 0) {
+            batchCount.incrementAndGet();
+            Log.d(TAG, "统计事件批量分发: " + count + "条，剩余: " + getQueueDepth());
+        }
+        return count;
+    }
+}
@@ -3,17 +3,17 @@ package com.schanyin.tgcf;
 import android.app.Application;
 import android.app.Activity;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import java.lang.ref.WeakReference;
+
 // 连云山安全SDK导入
 import com.volcengine.mobsecBiz.metasec.listener.ITokenObserver;
 import com.volcengine.mobsecBiz.metasec.ml.MSConfig;
 import com.volcengine.mobsecBiz.metasec.ml.MSManagerUtils;
 
-// 巨量引擎转化SDK导入
-import com.bytedance.ads.convert.BDConvert;
-import com.bytedance.ads.convert.config.BDConvertConfig;
-
 // 友盟SDK导入
 import com.umeng.commonsdk.UMConfigure;
 import com.umeng.analytics.MobclickAgent;
@@ -31,8 +31,13 @@ public class App extends Application {
     static String licenseStr = "hEZDnvsUMmI80ySwYyi/ItamN4NExeCzkKXphUVH9QHs+RtES/UXRAv5DhEoy0ElRw5o+pwvr6MpfsoUi8WrCPRMDQuZl9folC3q0vvdXomntZRzei8Kic0dByaFj0wuaZQFmBRYk3j8S+MhuHT4CLOkkL86WwjGZk5bbFqSzz3R6Ii0CF0Ubs94MhNIWHkAN2kxRxI0frNoWgBbOXH0I7GjZf3SaFChE/fqBWfZiHblIvI5qzY+cg5j1B3lVkNDIN7z4CCIzDXR9KtpgTBXdNDLrFGFGpSeIyNvtBG9FA6/q4SS";
     static String channel = "juliang"; // 渠道信息，可根据实际情况修改
     
-    // 设备token存储
-    private static String deviceToken = "";
+    // 隐私政策同意状态
+    private static final String PREFS_CONSENT = "privacy_consent";
+    private static final String KEY_CONSENT_GRANTED = "granted";
+    private static volatile boolean consentGranted = false;
+    
+    // 同意前启动的Activity，同意后用于初始化巨量引擎转化SDK
+    private static WeakReference<Activity> pendingConvertActivity;
     
     @Override
     public void onCreate() {
@@ -40,6 +45,12 @@ public class App extends Application {
         instance = this;
         Log.e(TAG, "=== App onCreate 开始 ===");
         
+        // 切换到上次运行中安装好的热更新，必须在引擎加载资源之前
+        HotUpdateInstaller.applyPendingUpdate(this);
+        
+        // 后台计算设备分级，供广告预加载和JS端画质选择使用
+        DeviceTierClassifier.classifyAsync(this);
+        
         // 友盟SDK预初始化（合规要求）
         // 预初始化函数不会采集设备信息，也不会向友盟后台上报数据
         UMConfigure.preInit(this, UMENG_APPKEY, UMENG_CHANNEL);
@@ -53,9 +64,25 @@ public class App extends Application {
         // 必须在初始化之后立即调用，避免缺失APP启动时的风险识别能力
         MSManagerUtils.initToken(appID);
         
-        // 初始化友盟SDK（正式初始化）
-        // 注意：在实际应用中，应该在用户同意隐私政策后再调用此方法
-        initUmengSDK(this);
+        // 后台计算签名证书和APK摘要，供登录和接口签名使用
+        AppIntegrityService.start(this);
+        
+        // 后台加载接口响应缓存，冷启动时版本/配置请求可以先用缓存
+        HttpResponseCache.getInstance().open(this);
+        
+        // 用户同意隐私政策后才正式初始化友盟SDK
+        // 同意前的统计事件写入本地日志，同意后回放；上次未回放完的日志也在这里恢复
+        consentGranted = getSharedPreferences(PREFS_CONSENT, MODE_PRIVATE).getBoolean(KEY_CONSENT_GRANTED, false);
+        EventJournal.getInstance().open(this, consentGranted);
+        if (consentGranted) {
+            initUmengSDK(this);
+            startJournalReplay();
+        } else {
+            Log.e(TAG, "用户尚未同意隐私政策，友盟SDK延后初始化");
+        }
+        
+        // 后台预解析并预连接接口地址，广告域名在用户同意隐私政策后才预解析
+        ConnectionPrewarmer.getInstance().start(this, consentGranted);
         
         // 巨量引擎转化SDK将在Activity启动时初始化
         
@@ -86,6 +113,7 @@ public class App extends Application {
             UMConfigure.setLogEnabled(true);
             
             // 选择AUTO页面采集模式
+            // 不随设备分级调整：游戏只有一个Activity，AUTO模式只自动采集这一个页面，开销很小
             MobclickAgent.setPageCollectionMode(MobclickAgent.PageMode.AUTO);
             
             Log.e(TAG, "友盟SDK正式初始化成功");
@@ -95,26 +123,78 @@ public class App extends Application {
         }
     }
     
-
-    
     /**
-     * 初始化巨量引擎转化SDK（需要在Activity中调用）
+     * 初始化巨量引擎转化SDK（需要在Activity的UI线程中调用）
+     * 实际初始化在引擎首帧之后于UI线程进行，见ConversionTracker
      */
     public static void initOceanEngineSDK(Activity activity) {
-        Log.e(TAG, "开始初始化巨量引擎转化SDK...");
-        
-        try {
-            // 创建SDK配置
-            BDConvertConfig config = new BDConvertConfig();
-            config.setEnableLog(true);  // 开启日志
-            // 初始化SDK（会自动发送启动事件）
-            BDConvert.INSTANCE.init(activity, config, activity);
-            
-            Log.e(TAG, "巨量引擎转化SDK初始化成功");
-            
-        } catch (Exception e) {
-            Log.e(TAG, "巨量引擎转化SDK初始化失败: " + e.getMessage(), e);
+        if (!consentGranted) {
+            // 同意隐私政策后再初始化（初始化会自动发送启动事件）
+            pendingConvertActivity = new WeakReference<>(activity);
+            Log.e(TAG, "用户尚未同意隐私政策，巨量引擎转化SDK延后初始化");
+            return;
         }
+        ConversionTracker.getInstance().start(activity);
+    }
+    
+    /**
+     * 用户同意隐私政策（JS在用户勾选协议并点击登录时调用）
+     * 记录同意状态，初始化友盟和巨量引擎转化SDK，然后回放同意前缓冲的事件
+     */
+    public static void grantPrivacyConsent() {
+        synchronized (App.class) {
+            if (consentGranted) {
+                return;
+            }
+            consentGranted = true;
+        }
+        instance.getSharedPreferences(PREFS_CONSENT, MODE_PRIVATE).edit()
+            .putBoolean(KEY_CONSENT_GRANTED, true)
+            .apply();
+        Log.e(TAG, "用户已同意隐私政策，开始初始化统计SDK");
+        
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                instance.initUmengSDK(instance);
+                Activity activity = pendingConvertActivity != null ? pendingConvertActivity.get() : null;
+                pendingConvertActivity = null;
+                if (activity != null && !activity.isFinishing()) {
+                    initOceanEngineSDK(activity);
+                }
+                startJournalReplay();
+            }
+        });
+    }
+    
+    /**
+     * 是否已同意隐私政策
+     */
+    public static boolean hasPrivacyConsent() {
+        return consentGranted;
+    }
+    
+    /**
+     * 回放隐私同意前缓冲的事件
+     */
+    private static void startJournalReplay() {
+        EventJournal.getInstance().startReplay(new EventJournal.ReplayTarget() {
+            @Override
+            public void replay(int channel, AnalyticsPipeline.Event event) {
+                if (channel == EventJournal.CHANNEL_UMENG) {
+                    UmengHelper.replayEvent(event);
+                } else if (channel == EventJournal.CHANNEL_CONVERT) {
+                    ConversionTracker.getInstance().send(event.eventId);
+                }
+            }
+
+            @Override
+            public boolean awaitDispatched(long timeoutMs) {
+                // 两个通道都确认分发后才推进回放进度
+                return UmengHelper.awaitDispatched(timeoutMs)
+                    && ConversionTracker.getInstance().awaitDispatched(timeoutMs);
+            }
+        });
     }
     
     /**
@@ -124,9 +204,14 @@ public class App extends Application {
         Log.e(TAG, "开始初始化连云山安全SDK...");
         
         try {
-            MSConfig.Builder builder = new MSConfig.Builder(appID, licenseStr, MSConfig.COLLECT_MODE_DEFAULT);
             // 正常采集模式：MSConfig.COLLECT_MODE_DEFAULT
-            // 基础采集模式：MSConfig.COLLECT_MODE_ML_MINIMIZE
+            // 基础采集模式：MSConfig.COLLECT_MODE_ML_MINIMIZE（低端机使用，减少启动期采集开销）
+            // 这里不能等待后台分级完成，使用上次保存的分级，首次启动按正常采集
+            int tier = DeviceTierClassifier.getLastKnownTier(context, DeviceTierClassifier.TIER_MID);
+            boolean minimize = tier == DeviceTierClassifier.TIER_LOW;
+            Log.e(TAG, "设备分级: " + tier + ", 连云山采集模式: " + (minimize ? "基础采集" : "正常采集"));
+            MSConfig.Builder builder = new MSConfig.Builder(appID, licenseStr,
+                minimize ? MSConfig.COLLECT_MODE_ML_MINIMIZE : MSConfig.COLLECT_MODE_DEFAULT);
             
             MSConfig config = builder
                 .setChannel(channel)
@@ -135,7 +220,7 @@ public class App extends Application {
                     public void onTokenLoaded(String token) {
                         // 此为回调方法，在SDK获取到设备token之后主动回调
                         Log.e(TAG, "连云山SDK获取到设备token: " + (token != null ? token.substring(0, Math.min(20, token.length())) + "..." : "null"));
-                        deviceToken = token != null ? token : "";
+                        MetaSecTokenCache.getInstance().update(token);
                         
                         // 通知Cocos Creator端token已获取
                         notifyTokenLoaded(token);
@@ -153,39 +238,37 @@ public class App extends Application {
     }
     
     /**
-     * 获取设备token
+     * 获取设备token（读取缓存，不阻塞；缓存为空或过期时后台刷新）
      */
     public static String getDeviceToken() {
-        try {
-            // 主动获取token方式
-            com.volcengine.mobsecBiz.metasec.ml.MSManager mgr = MSManagerUtils.get(appID);
-            if (mgr != null) {
-                String token = mgr.getToken();
-                if (token != null && !token.isEmpty()) {
-                    deviceToken = token;
-                    return token;
-                }
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "获取设备token失败: " + e.getMessage(), e);
-        }
-        
-        return deviceToken;
+        return MetaSecTokenCache.getInstance().getToken();
     }
     
     /**
-     * 主动上报风控数据
+     * 等待设备token，最多等待timeoutMs毫秒（不可在UI线程调用）
+     * @return 已获取的token，超时返回当前值（可能为空）
      */
-    public static void reportScene(String sceneName) {
+    public static String awaitDeviceToken(long timeoutMs) {
+        return MetaSecTokenCache.getInstance().awaitToken(timeoutMs);
+    }
+    
+    /**
+     * 主动上报风控数据（同步调用SDK，桥接命令请通过RiskSceneReporter异步上报）
+     * @return SDK已初始化且上报未抛出异常时返回true
+     */
+    public static boolean reportScene(String sceneName) {
         try {
             com.volcengine.mobsecBiz.metasec.ml.MSManager mgr = MSManagerUtils.get(appID);
             if (mgr != null) {
                 mgr.report(sceneName);
                 Log.e(TAG, "连云山SDK上报场景: " + sceneName);
+                return true;
             }
+            Log.e(TAG, "连云山SDK未初始化，无法上报场景: " + sceneName);
         } catch (Exception e) {
             Log.e(TAG, "连云山SDK上报失败: " + e.getMessage(), e);
         }
+        return false;
     }
     
     /**
@@ -205,14 +288,16 @@ public class App extends Application {
     
     /**
      * 手动发送启动事件（用于测试）
+     * 异步发送，转化SDK初始化完成前排队
      */
     public static void sendLaunchEvent(Context context) {
-        try {
-            BDConvert.INSTANCE.sendLaunchEvent(context);
-            Log.e(TAG, "手动发送启动事件成功");
-        } catch (Exception e) {
-            Log.e(TAG, "手动发送启动事件失败: " + e.getMessage(), e);
+        // 同意隐私政策前写入本地日志，同意后回放
+        if (EventJournal.getInstance().append(EventJournal.CHANNEL_CONVERT,
+                new AnalyticsPipeline.Event(ConversionTracker.EVENT_LAUNCH, null))) {
+            Log.e(TAG, "启动事件已缓冲，等待用户同意隐私政策");
+            return;
         }
+        ConversionTracker.getInstance().send(ConversionTracker.EVENT_LAUNCH);
     }
     
     /**
@@ -42,12 +42,6 @@ import android.content.IntentFilter;
 import android.hardware.Sensor;
 import android.hardware.SensorManager;
 
-// 添加签名相关导入
-import android.content.pm.PackageManager;
-import android.content.pm.PackageInfo;
-import android.content.pm.Signature;
-import java.security.MessageDigest;
-
 // 添加微信SDK导入
 import com.tencent.mm.opensdk.openapi.IWXAPI;
 import com.tencent.mm.opensdk.openapi.WXAPIFactory;
@@ -69,7 +63,7 @@ import android.widget.FrameLayout;
 
 // 巨量引擎转化SDK已在App.java中初始化，无需在Activity中处理
 
-public class AppActivity extends CocosActivity {
+public class AppActivity extends CocosActivity implements ScriptSender {
 
     private static final String TAG = "AppActivity";
     
@@ -79,6 +73,9 @@ public class AppActivity extends CocosActivity {
     
     // 穿山甲广告管理器
     private PangleAdManager pangleAdManager;
+    
+    // 设备状态增量推送通道
+    private DeviceStateChannel deviceStateChannel;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -91,7 +88,10 @@ public class AppActivity extends CocosActivity {
         
         Log.e(TAG, "SDKWrapper 初始化完成");
         
-        // 初始化巨量引擎转化SDK
+        // 监听SIM卡变化，运营商信息只在订阅变化时重新解析
+        CarrierResolver.getInstance(this).startListening();
+        
+        // 初始化巨量引擎转化SDK（首帧后在后台线程初始化，不阻塞启动）
         App.initOceanEngineSDK(this);
         
         // 初始化微信SDK
@@ -203,6 +203,30 @@ public class AppActivity extends CocosActivity {
                 Log.e(TAG, "处理getNetworkInfo命令");
                 handleGetNetworkInfo();
                 break;
+            case "collectDeviceReport":
+                Log.e(TAG, "处理collectDeviceReport命令");
+                handleCollectDeviceReport(data);
+                break;
+            case "subscribeDeviceState":
+                Log.e(TAG, "处理subscribeDeviceState命令");
+                getDeviceStateChannel().subscribe(data);
+                break;
+            case "resyncDeviceState":
+                Log.e(TAG, "处理resyncDeviceState命令");
+                getDeviceStateChannel().requestResync();
+                break;
+            case "unsubscribeDeviceState":
+                Log.e(TAG, "处理unsubscribeDeviceState命令");
+                getDeviceStateChannel().unsubscribe();
+                break;
+            case "getAppIntegrity":
+                Log.e(TAG, "处理getAppIntegrity命令");
+                handleGetAppIntegrity();
+                break;
+            case "getDeviceTier":
+                Log.e(TAG, "处理getDeviceTier命令");
+                handleGetDeviceTier();
+                break;
             case "getLianyunshanToken":
                 Log.e(TAG, "处理getLianyunshanToken命令");
                 handleGetLianyunshanToken();
@@ -239,6 +263,28 @@ public class AppActivity extends CocosActivity {
                 Log.e(TAG, "处理pangleDestroyAd命令");
                 handlePangleDestroyAd();
                 break;
+            case "pangleGetRevenueStats":
+                Log.e(TAG, "处理pangleGetRevenueStats命令");
+                handlePangleGetRevenueStats(data);
+                break;
+            case "httpRequest":
+                handleHttpRequest(data);
+                break;
+            case "httpCancel":
+                NativeHttpClient.getInstance().cancel(data);
+                break;
+            case "progressSync":
+                ProgressJournal.getInstance().enqueueSync(data, this);
+                break;
+            case "hotUpdateDownload":
+                HotUpdateDownloader.getInstance().start(data, this);
+                break;
+            case "hotUpdatePause":
+                HotUpdateDownloader.getInstance().pause();
+                break;
+            case "hotUpdateInstall":
+                HotUpdateInstaller.getInstance().install(data, this);
+                break;
             default:
                 Log.w(TAG, "未知命令: " + command);
                 break;
@@ -246,15 +292,16 @@ public class AppActivity extends CocosActivity {
     }
 
     // 发送消息到JS的安全方法
-    private void sendToScript(String command, String data) {
+    @Override
+    public void sendToScript(String command, String data) {
         try {
             CocosHelper.runOnGameThread(new Runnable() {
                 @Override
                 public void run() {
                     try {
                         // 构建JS回调代码，触发我们在JS端注册的回调函数
-                        String escapeCmd = command.replace("'", "\\'");
-                        String escapeData = data.replace("'", "\\'");
+                        String escapeCmd = escapeJsString(command);
+                        String escapeData = escapeJsString(data);
                         
                         String jsCode = String.format(
                             "if(typeof native !== 'undefined' && native.bridge && native.bridge.onNative){" +
@@ -282,38 +329,33 @@ public class AppActivity extends CocosActivity {
         }
     }
 
+    /**
+     * 转义为JS单引号字符串字面量的内容（反斜杠需先转义，否则JSON里的\"会被JS吃掉）
+     */
+    private static String escapeJsString(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\'': sb.append("\\'"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\u2028': sb.append("\\u2028"); break;
+                case '\u2029': sb.append("\\u2029"); break;
+                default: sb.append(c); break;
+            }
+        }
+        return sb.toString();
+    }
+
     private void handleGetDeviceInfo() {
         try {
-            JSONObject deviceInfo = new JSONObject();
-            
-            // 设备标识信息
-            deviceInfo.put("androidId", getAndroidId());
-            deviceInfo.put("simCard", getSimCardInfo());
-            deviceInfo.put("deviceId", getCustomDeviceId());
-            
-            // 设备硬件信息
-            deviceInfo.put("brand", Build.BRAND);
-            deviceInfo.put("model", Build.MODEL);
-            deviceInfo.put("osVersion", Build.VERSION.RELEASE);
-            deviceInfo.put("platform", "Android");
-            
-            // 网络信息
-            deviceInfo.put("ipAddress", getIPAddress());
-            deviceInfo.put("hasNetwork", hasNetworkConnection());
-            deviceInfo.put("isWiFi", isWiFiConnected());
-            deviceInfo.put("isVPN", isVPNConnected());
-            
-            // 设备状态
-            deviceInfo.put("hasGyroscope", hasGyroscope());
-            deviceInfo.put("isCharging", isDeviceCharging());
-            deviceInfo.put("isRoot", isDeviceRooted());
-            deviceInfo.put("debugMode", isAppInDebugMode());
-            
-            // 时间戳
-            deviceInfo.put("updateTime", System.currentTimeMillis());
-            
             // 发送到JS
-            sendToScript("deviceInfoResult", deviceInfo.toString());
+            sendToScript("deviceInfoResult", buildDeviceInfo().toString());
             
         } catch (JSONException e) {
             Log.e(TAG, "创建设备信息JSON失败", e);
@@ -321,6 +363,38 @@ public class AppActivity extends CocosActivity {
         }
     }
 
+    private JSONObject buildDeviceInfo() throws JSONException {
+        JSONObject deviceInfo = new JSONObject();
+        
+        // 设备标识信息
+        deviceInfo.put("androidId", getAndroidId());
+        deviceInfo.put("simCard", getSimCardInfo());
+        deviceInfo.put("carrierId", CarrierResolver.getInstance(this).getCarrierId());
+        deviceInfo.put("deviceId", getCustomDeviceId());
+        
+        // 设备硬件信息
+        deviceInfo.put("brand", Build.BRAND);
+        deviceInfo.put("model", Build.MODEL);
+        deviceInfo.put("osVersion", Build.VERSION.RELEASE);
+        deviceInfo.put("platform", "Android");
+        
+        // 网络信息
+        deviceInfo.put("ipAddress", getIPAddress());
+        deviceInfo.put("hasNetwork", hasNetworkConnection());
+        deviceInfo.put("isWiFi", isWiFiConnected());
+        deviceInfo.put("isVPN", isVPNConnected());
+        
+        // 设备状态
+        deviceInfo.put("hasGyroscope", hasGyroscope());
+        deviceInfo.put("isCharging", isDeviceCharging());
+        deviceInfo.put("isRoot", isDeviceRooted());
+        deviceInfo.put("debugMode", isAppInDebugMode());
+        
+        // 时间戳
+        deviceInfo.put("updateTime", System.currentTimeMillis());
+        return deviceInfo;
+    }
+
     private void handleGetAndroidId() {
         String androidId = getAndroidId();
         sendToScript("androidIdResult", androidId);
@@ -359,130 +433,233 @@ public class AppActivity extends CocosActivity {
 
     private void handleGetNetworkInfo() {
         try {
-            JSONObject networkInfo = new JSONObject();
-            networkInfo.put("hasNetwork", hasNetworkConnection());
-            networkInfo.put("isWiFi", isWiFiConnected());
-            networkInfo.put("isVPN", isVPNConnected());
-            networkInfo.put("ipAddress", getIPAddress());
-            
-            sendToScript("networkInfoResult", networkInfo.toString());
+            sendToScript("networkInfoResult", buildNetworkInfo().toString());
         } catch (JSONException e) {
             Log.e(TAG, "获取网络信息失败", e);
         }
     }
 
+    private JSONObject buildNetworkInfo() throws JSONException {
+        JSONObject networkInfo = new JSONObject();
+        networkInfo.put("hasNetwork", hasNetworkConnection());
+        networkInfo.put("isWiFi", isWiFiConnected());
+        networkInfo.put("isVPN", isVPNConnected());
+        networkInfo.put("ipAddress", getIPAddress());
+        return networkInfo;
+    }
+
     private void handleGetSystemInfo() {
         try {
-            JSONObject systemInfo = new JSONObject();
-            systemInfo.put("osVersion", Build.VERSION.RELEASE);
-            systemInfo.put("apiLevel", Build.VERSION.SDK_INT);
-            systemInfo.put("buildVersion", Build.VERSION.INCREMENTAL);
-            systemInfo.put("debugMode", isAppInDebugMode());
-            systemInfo.put("isRoot", isDeviceRooted());
-            
-            sendToScript("systemInfoResult", systemInfo.toString());
+            sendToScript("systemInfoResult", buildSystemInfo().toString());
         } catch (JSONException e) {
             Log.e(TAG, "获取系统信息失败", e);
         }
     }
 
-    // 获取Android ID
-    private String getAndroidId() {
-        try {
-            return Settings.Secure.getString(getContentResolver(), Settings.Secure.ANDROID_ID);
-        } catch (Exception e) {
-            Log.e(TAG, "获取Android ID失败", e);
-            return "unknown";
+    private JSONObject buildSystemInfo() throws JSONException {
+        JSONObject systemInfo = new JSONObject();
+        systemInfo.put("osVersion", Build.VERSION.RELEASE);
+        systemInfo.put("apiLevel", Build.VERSION.SDK_INT);
+        systemInfo.put("buildVersion", Build.VERSION.INCREMENTAL);
+        systemInfo.put("debugMode", isAppInDebugMode());
+        systemInfo.put("isRoot", isDeviceRooted());
+        return systemInfo;
+    }
+
+    // ===== 设备状态推送 =====
+    
+    private synchronized DeviceStateChannel getDeviceStateChannel() {
+        if (deviceStateChannel == null) {
+            deviceStateChannel = new DeviceStateChannel(new DeviceStateChannel.FieldReader() {
+                @Override
+                public Object readField(String field) {
+                    return readDeviceField(field);
+                }
+            }, this);
+        }
+        return deviceStateChannel;
+    }
+    
+    /**
+     * 按字段名读取单个设备状态，字段名与deviceInfoResult中的键保持一致
+     */
+    private Object readDeviceField(String field) {
+        switch (field) {
+            case "androidId":
+                return getAndroidId();
+            case "simCard":
+                return getSimCardInfo();
+            case "carrierId":
+                return CarrierResolver.getInstance(this).getCarrierId();
+            case "ipAddress":
+                return getIPAddress();
+            case "hasNetwork":
+                return hasNetworkConnection();
+            case "isWiFi":
+                return isWiFiConnected();
+            case "isVPN":
+                return isVPNConnected();
+            case "isCharging":
+                return isDeviceCharging();
+            case "batteryLevel":
+                return getBatteryLevel();
+            case "isRoot":
+                return isDeviceRooted();
+            case "debugMode":
+                return isAppInDebugMode();
+            case "hasGyroscope":
+                return hasGyroscope();
+            default:
+                Log.w(TAG, "未知设备状态字段: " + field);
+                return null;
         }
     }
 
-    // 获取SIM卡信息
-    private String getSimCardInfo() {
-        try {
-            TelephonyManager telephonyManager = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
-            if (telephonyManager != null) {
-                // 优先使用SIM卡运营商信息，更准确
-                String simOperatorName = telephonyManager.getSimOperatorName();
-                if (simOperatorName != null && !simOperatorName.isEmpty() && !"null".equals(simOperatorName)) {
-                    // 处理常见的运营商名称映射
-                    String operatorName = mapOperatorName(simOperatorName);
-                    Log.d(TAG, "SIM运营商名称: " + simOperatorName + " -> " + operatorName);
-                    return operatorName;
+    // ===== 批量设备报告 =====
+    
+    // collectDeviceReport 字段掩码
+    private static final int REPORT_DEVICE = 1;
+    private static final int REPORT_ANDROID_ID = 1 << 1;
+    private static final int REPORT_SIM = 1 << 2;
+    private static final int REPORT_NETWORK = 1 << 3;
+    private static final int REPORT_SYSTEM = 1 << 4;
+    private static final int REPORT_TOKEN = 1 << 5;
+    private static final int REPORT_ALL = REPORT_DEVICE | REPORT_ANDROID_ID | REPORT_SIM
+            | REPORT_NETWORK | REPORT_SYSTEM | REPORT_TOKEN;
+    
+    // 等待连云山token的默认时长
+    private static final long REPORT_TOKEN_TIMEOUT_MS = 3000;
+    // 单个字段组采集的最长等待时间
+    private static final long REPORT_FIELD_TIMEOUT_MS = 2000;
+    // 设备报告汇总线程和字段采集线程（与io()分开，见handleCollectDeviceReport）
+    private static final java.util.concurrent.ExecutorService REPORT_EXECUTOR = NativeExecutors.newPool("device-report", 1);
+    private static final java.util.concurrent.ExecutorService REPORT_FIELD_EXECUTOR = NativeExecutors.newPool("device-field", 3);
+    
+    /**
+     * 处理批量设备报告命令
+     * 一次桥接往返返回所有请求的字段，各字段在后台线程并行采集
+     * @param data JSON: {"fields": 掩码, "tokenTimeoutMs": 等待token的最长时间}，为空时采集全部
+     */
+    private void handleCollectDeviceReport(String data) {
+        int fields = REPORT_ALL;
+        long tokenTimeoutMs = REPORT_TOKEN_TIMEOUT_MS;
+        if (data != null && !data.trim().isEmpty()) {
+            try {
+                JSONObject request = new JSONObject(data);
+                fields = request.optInt("fields", REPORT_ALL);
+                tokenTimeoutMs = request.optLong("tokenTimeoutMs", REPORT_TOKEN_TIMEOUT_MS);
+            } catch (JSONException e) {
+                Log.w(TAG, "设备报告参数解析失败，采集全部字段: " + e.getMessage());
+            }
+        }
+        
+        final int requestedFields = fields;
+        final long deadline = android.os.SystemClock.elapsedRealtime() + Math.max(0, tokenTimeoutMs);
+        final long startTime = android.os.SystemClock.elapsedRealtime();
+        
+        // 汇总任务和字段采集任务使用各自的线程池，都不占用io()：
+        // 汇总任务要阻塞等待字段结果和token，而token刷新、日志回放等任务都在io()上
+        REPORT_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                java.util.Map<String, java.util.concurrent.Future<?>> futures = new java.util.LinkedHashMap<>();
+                final JSONObject report = new JSONObject();
+                
+                if ((requestedFields & REPORT_DEVICE) != 0) {
+                    futures.put("device", REPORT_FIELD_EXECUTOR.submit(new java.util.concurrent.Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            return putReportField(report, "device", buildDeviceInfo());
+                        }
+                    }));
+                }
+                if ((requestedFields & REPORT_ANDROID_ID) != 0) {
+                    putReportFieldSafe(report, "androidId", getAndroidId());
+                }
+                if ((requestedFields & REPORT_SIM) != 0) {
+                    putReportFieldSafe(report, "simCard", getSimCardInfo());
+                    putReportFieldSafe(report, "carrierId", CarrierResolver.getInstance(AppActivity.this).getCarrierId());
+                }
+                if ((requestedFields & REPORT_NETWORK) != 0) {
+                    futures.put("network", REPORT_FIELD_EXECUTOR.submit(new java.util.concurrent.Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            return putReportField(report, "network", buildNetworkInfo());
+                        }
+                    }));
+                }
+                if ((requestedFields & REPORT_SYSTEM) != 0) {
+                    futures.put("system", REPORT_FIELD_EXECUTOR.submit(new java.util.concurrent.Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            return putReportField(report, "system", buildSystemInfo());
+                        }
+                    }));
                 }
                 
-                // 备用方案：使用网络运营商信息
-                String networkOperatorName = telephonyManager.getNetworkOperatorName();
-                if (networkOperatorName != null && !networkOperatorName.isEmpty() && !"null".equals(networkOperatorName)) {
-                    String operatorName = mapOperatorName(networkOperatorName);
-                    Log.d(TAG, "网络运营商名称: " + networkOperatorName + " -> " + operatorName);
-                    return operatorName;
+                // token在当前线程等待，其余字段并行采集
+                if ((requestedFields & REPORT_TOKEN) != 0) {
+                    long waitMs = deadline - android.os.SystemClock.elapsedRealtime();
+                    String token = App.awaitDeviceToken(Math.max(0, waitMs));
+                    putReportFieldSafe(report, "token", token != null ? token : "");
+                    putReportFieldSafe(report, "tokenTimedOut", token == null || token.isEmpty());
                 }
                 
-                // 最后尝试通过运营商代码获取
-                String simOperator = telephonyManager.getSimOperator();
-                if (simOperator != null && simOperator.length() >= 5) {
-                    String operatorName = getOperatorNameByCode(simOperator);
-                    Log.d(TAG, "运营商代码: " + simOperator + " -> " + operatorName);
-                    return operatorName;
+                // 各字段采集有独立上限，超时或失败的字段写入failedFields，不静默丢弃
+                org.json.JSONArray failedFields = new org.json.JSONArray();
+                for (java.util.Map.Entry<String, java.util.concurrent.Future<?>> entry : futures.entrySet()) {
+                    try {
+                        entry.getValue().get(REPORT_FIELD_TIMEOUT_MS, java.util.concurrent.TimeUnit.MILLISECONDS);
+                    } catch (Exception e) {
+                        entry.getValue().cancel(true);
+                        failedFields.put(entry.getKey());
+                        Log.e(TAG, "设备报告字段采集失败: " + entry.getKey() + ", " + e, e);
+                    }
                 }
+                
+                putReportFieldSafe(report, "failedFields", failedFields);
+                putReportFieldSafe(report, "fields", requestedFields);
+                putReportFieldSafe(report, "costMs", android.os.SystemClock.elapsedRealtime() - startTime);
+                
+                String payload;
+                synchronized (report) {
+                    payload = report.toString();
+                }
+                Log.d(TAG, "设备报告采集完成，耗时: " + (android.os.SystemClock.elapsedRealtime() - startTime) + "ms");
+                sendToScript("deviceReportResult", payload);
             }
-        } catch (Exception e) {
-            Log.e(TAG, "获取SIM卡信息失败", e);
-        }
-        return "无SIM卡";
+        });
     }
     
-    // 运营商名称映射
-    private String mapOperatorName(String originalName) {
-        if (originalName == null || originalName.isEmpty()) {
-            return "未知运营商";
+    // JSONObject非线程安全，并行采集的结果统一加锁写入
+    private static Object putReportField(JSONObject report, String key, Object value) throws JSONException {
+        synchronized (report) {
+            report.put(key, value);
         }
-        
-        String name = originalName.toLowerCase();
-        if (name.contains("china mobile") || name.contains("cmcc") || name.contains("中国移动")) {
-            return "中国移动";
-        } else if (name.contains("china unicom") || name.contains("unicom") || name.contains("中国联通")) {
-            return "中国联通";
-        } else if (name.contains("china telecom") || name.contains("telecom") || name.contains("中国电信")) {
-            return "中国电信";
-        } else if (name.contains("china broadcasting") || name.contains("中国广电")) {
-            return "中国广电";
-        }
-        
-        return originalName; // 返回原始名称
+        return value;
     }
     
-    // 根据运营商代码获取运营商名称
-    private String getOperatorNameByCode(String operatorCode) {
-        if (operatorCode == null || operatorCode.length() < 5) {
-            return "未知运营商";
-        }
-        
-        // 中国的MCC是460
-        if (operatorCode.startsWith("460")) {
-            String mnc = operatorCode.substring(3);
-            switch (mnc) {
-                case "00":
-                case "02":
-                case "07":
-                case "08":
-                    return "中国移动";
-                case "01":
-                case "06":
-                case "09":
-                    return "中国联通";
-                case "03":
-                case "05":
-                case "11":
-                    return "中国电信";
-                case "12":
-                    return "中国广电";
-                default:
-                    return "未知运营商(" + operatorCode + ")";
-            }
+    private static void putReportFieldSafe(JSONObject report, String key, Object value) {
+        try {
+            putReportField(report, key, value);
+        } catch (JSONException e) {
+            Log.e(TAG, "写入设备报告字段失败: " + key, e);
         }
-        
-        return "未知运营商(" + operatorCode + ")";
+    }
+
+    // 获取Android ID
+    private String getAndroidId() {
+        try {
+            return Settings.Secure.getString(getContentResolver(), Settings.Secure.ANDROID_ID);
+        } catch (Exception e) {
+            Log.e(TAG, "获取Android ID失败", e);
+            return "unknown";
+        }
+    }
+
+    // 获取SIM卡信息
+    private String getSimCardInfo() {
+        return CarrierResolver.getInstance(this).getDisplayName();
     }
 
     // 获取设备ID
@@ -609,13 +786,30 @@ public class AppActivity extends CocosActivity {
         }
     }
 
-    // 检查是否Root
+    // Root检测结果，进程内不会变化，只检测一次
+    private volatile Boolean deviceRooted;
+
+    // 检查是否Root（结果缓存，不重复启动su进程）
     private boolean isDeviceRooted() {
+        Boolean rooted = deviceRooted;
+        if (rooted == null) {
+            rooted = detectRoot();
+            deviceRooted = rooted;
+        }
+        return rooted;
+    }
+
+    private static boolean detectRoot() {
+        Process process = null;
         try {
-            Process process = Runtime.getRuntime().exec("su");
+            process = Runtime.getRuntime().exec("su");
             return true;
         } catch (Exception e) {
             return false;
+        } finally {
+            if (process != null) {
+                process.destroy();
+            }
         }
     }
 
@@ -627,33 +821,37 @@ public class AppActivity extends CocosActivity {
     // ===== 微信登录相关方法 =====
     
     /**
-     * 获取应用的MD5签名 - 用于微信开放平台配置
+     * 处理设备分级请求：已分级时直接回复，否则在后台完成探测后再回复，不在游戏线程做CPU探测和文件读取
      */
-    private String getAppSignatureMD5() {
-        try {
-            PackageInfo packageInfo = getPackageManager().getPackageInfo(
-                getPackageName(), PackageManager.GET_SIGNATURES);
-            Signature[] signatures = packageInfo.signatures;
-            if (signatures.length > 0) {
-                MessageDigest md = MessageDigest.getInstance("MD5");
-                md.update(signatures[0].toByteArray());
-                byte[] digest = md.digest();
-                StringBuilder sb = new StringBuilder();
-                for (byte b : digest) {
-                    sb.append(String.format("%02x", b));
+    private void handleGetDeviceTier() {
+        DeviceTierClassifier.Result tier = DeviceTierClassifier.getResult();
+        if (tier != null) {
+            sendToScript("deviceTierResult", tier.toJson());
+            return;
+        }
+        NativeExecutors.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                sendToScript("deviceTierResult", DeviceTierClassifier.classify(AppActivity.this).toJson());
+            }
+        });
+    }
+
+    /**
+     * 处理应用完整性摘要请求，摘要未就绪时在后台线程计算（APK摘要只在这里按需计算）
+     */
+    private void handleGetAppIntegrity() {
+        NativeExecutors.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                AppIntegrityService.Digests digests = AppIntegrityService.awaitDigestsWithApk();
+                if (digests != null) {
+                    sendToScript("appIntegrityResult", digests.toJson());
+                } else {
+                    sendToScript("appIntegrityError", "应用摘要服务未启动");
                 }
-                String md5Signature = sb.toString();
-                Log.e(TAG, "=== 应用MD5签名信息 ===");
-                Log.e(TAG, "包名: " + getPackageName());
-                Log.e(TAG, "MD5签名: " + md5Signature);
-                Log.e(TAG, "请将此MD5签名配置到微信开放平台");
-                Log.e(TAG, "=======================");
-                return md5Signature;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "获取MD5签名失败: " + e.getMessage(), e);
-        }
-        return "";
+        });
     }
     
     /**
@@ -708,8 +906,7 @@ public class AppActivity extends CocosActivity {
     private void handleWeChatLogin() {
         Log.e(TAG, "=== 开始处理微信登录命令 ===");
         
-        // 获取并打印MD5签名，用于配置微信开放平台
-        String md5Signature = getAppSignatureMD5();
+        // MD5签名由AppIntegrityService在启动时后台计算并打印，此处不再重复计算
         
         if (mWxApi == null) {
             Log.e(TAG, "微信SDK未初始化");
@@ -865,12 +1062,56 @@ public class AppActivity extends CocosActivity {
             pangleAdManager.destroyAd();
         }
     }
+    
+    // 收益统计默认返回的最近展示条数
+    private static final int REVENUE_RECENT_DEFAULT = 20;
+    
+    /**
+     * 处理广告收益统计查询，data为最近展示条数（可为空）
+     */
+    private void handlePangleGetRevenueStats(String data) {
+        int recent = REVENUE_RECENT_DEFAULT;
+        if (data != null && !data.trim().isEmpty()) {
+            try {
+                recent = Integer.parseInt(data.trim());
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "收益统计条数参数无效: " + data);
+            }
+        }
+        sendToScript("pangleRevenueStats", AdRevenueTracker.getInstance().getStatsJson(recent));
+    }
+
+    /**
+     * 处理原生HTTP请求，解析和网络请求都在HTTP线程池中进行，结果以httpResponse回传；
+     * 先返回了陈旧缓存的请求在后台重新验证得到新内容时，再以httpCacheUpdated回传
+     */
+    private void handleHttpRequest(String data) {
+        NativeHttpClient.getInstance().enqueueJson(data, new NativeHttpClient.Callback() {
+            @Override
+            public void onComplete(NativeHttpClient.Response response) {
+                sendToScript("httpResponse", response.toJson());
+            }
+        }, new NativeHttpClient.Callback() {
+            @Override
+            public void onComplete(NativeHttpClient.Response response) {
+                sendToScript("httpCacheUpdated", response.toJson());
+            }
+        });
+    }
 
     @Override
     protected void onResume() {
         super.onResume();
         SDKWrapper.shared().onResume();
         
+        if (deviceStateChannel != null) {
+            deviceStateChannel.resume();
+        }
+        
+        PageTracker.getInstance().onAppResume();
+        
+        HotUpdateDownloader.getInstance().setForeground(true);
+        
         // 巨量引擎转化SDK已在init时自动处理生命周期，无需手动调用
     }
 
@@ -879,6 +1120,31 @@ public class AppActivity extends CocosActivity {
         super.onPause();
         SDKWrapper.shared().onPause();
         
+        if (deviceStateChannel != null) {
+            deviceStateChannel.pause();
+        }
+        
+        // 后台时间不计入页面时长
+        PageTracker.getInstance().onAppPause();
+        
+        // 后台时热更新下载不限速
+        HotUpdateDownloader.getInstance().setForeground(false);
+        
+        // 广告收益汇总随统计事件一起上报
+        AdRevenueTracker.getInstance().flush();
+        
+        // 把排队中的统计事件交给友盟
+        UmengHelper.flush();
+
+        // 进入后台时写入排队中的进度，并把键值存储的映射页刷到磁盘，避免系统掉电丢失
+        NativeExecutors.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                ProgressJournal.getInstance().flush();
+                NativeKVStore.syncAll();
+            }
+        });
+
         // 巨量引擎转化SDK已在init时自动处理生命周期，无需手动调用
     }
 
@@ -952,35 +1218,77 @@ public class AppActivity extends CocosActivity {
         super.onLowMemory();
     }
     
+    // getLianyunshanToken在首个token到达前的最长等待时间
+    private static final long TOKEN_WAIT_TIMEOUT_MS = 3000;
+    
     /**
      * 处理获取连云山设备token请求
      */
     private void handleGetLianyunshanToken() {
         try {
+            // 缓存中有token时直接返回，不在游戏线程上调用SDK
             String token = App.getDeviceToken();
-            sendToScript("lianyunshanTokenResult", token != null ? token : "");
-            Log.e(TAG, "连云山设备token获取成功: " + (token != null ? token.substring(0, Math.min(20, token.length())) + "..." : "null"));
+            if (token != null && !token.isEmpty()) {
+                sendTokenResult(token);
+                return;
+            }
         } catch (Exception e) {
             Log.e(TAG, "获取连云山设备token失败: " + e.getMessage(), e);
             sendToScript("lianyunshanTokenError", "获取token失败: " + e.getMessage());
+            return;
         }
+        
+        // 首个token尚未到达，在后台等待
+        NativeExecutors.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                sendTokenResult(App.awaitDeviceToken(TOKEN_WAIT_TIMEOUT_MS));
+            }
+        });
+    }
+    
+    private void sendTokenResult(String token) {
+        sendToScript("lianyunshanTokenResult", token != null ? token : "");
+        Log.e(TAG, "连云山设备token获取成功: " + (token != null ? token.substring(0, Math.min(20, token.length())) + "..." : "null"));
     }
     
     /**
      * 处理连云山场景上报请求
+     * @param data JSON：{scene, requestId}，结果回传时带回requestId；兼容直接传场景名
      */
-    private void handleReportLianyunshanScene(String sceneName) {
-        try {
-            if (sceneName == null || sceneName.trim().isEmpty()) {
-                sceneName = "default_scene";
+    private void handleReportLianyunshanScene(String data) {
+        String sceneName = data;
+        String requestId = "";
+        if (data != null && data.trim().startsWith("{")) {
+            try {
+                JSONObject request = new JSONObject(data);
+                sceneName = request.optString("scene", "");
+                requestId = request.optString("requestId", "");
+            } catch (Exception e) {
+                Log.e(TAG, "连云山场景上报参数解析失败: " + e.getMessage());
             }
-            
-            App.reportScene(sceneName);
-            sendToScript("lianyunshanReportResult", "场景上报成功: " + sceneName);
-            Log.e(TAG, "连云山场景上报成功: " + sceneName);
-        } catch (Exception e) {
-            Log.e(TAG, "连云山场景上报失败: " + e.getMessage(), e);
-            sendToScript("lianyunshanReportError", "场景上报失败: " + e.getMessage());
         }
+        if (sceneName == null || sceneName.trim().isEmpty()) {
+            sceneName = "default_scene";
+        }
+        
+        // 后台上报，SDK调用完成后再把真实结果回传给JS
+        final String reportRequestId = requestId;
+        RiskSceneReporter.getInstance().report(sceneName, new RiskSceneReporter.Callback() {
+            @Override
+            public void onComplete(String scene, boolean success, String message, boolean collapsed) {
+                try {
+                    JSONObject result = new JSONObject();
+                    result.put("requestId", reportRequestId);
+                    result.put("scene", scene);
+                    result.put("success", success);
+                    result.put("message", message);
+                    result.put("collapsed", collapsed);
+                    sendToScript(success ? "lianyunshanReportResult" : "lianyunshanReportError", result.toString());
+                } catch (Exception e) {
+                    Log.e(TAG, "连云山场景上报结果回传失败: " + e.getMessage(), e);
+                }
+            }
+        });
     }
 }
\ No newline at end of file
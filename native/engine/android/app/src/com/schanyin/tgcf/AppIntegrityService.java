@@ -0,0 +1,225 @@
+package com.schanyin.tgcf;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.Signature;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * 应用完整性摘要服务
+ * 进程启动后在后台线程计算一次签名证书的MD5/SHA-256并缓存，登录等流程直接读取缓存；
+ * APK摘要需要读取整个安装包，只在首次请求时在调用线程计算，失败不影响证书摘要
+ */
+public class AppIntegrityService {
+    private static final String TAG = "AppIntegrityService";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int APK_READ_BUFFER = 64 * 1024;
+
+    // 证书摘要和APK摘要分别计算、分别发布，各自为null表示尚未计算
+    private static volatile String[] certDigests;
+    private static volatile String[] apkDigests;
+    private static volatile long certCostMs;
+    private static volatile long apkCostMs;
+    private static Context appContext;
+    private static boolean started = false;
+
+    /**
+     * 摘要结果（不可变），APK摘要未计算时为空字符串
+     */
+    public static final class Digests {
+        public final String certMd5;
+        public final String certSha256;
+        public final String apkMd5;
+        public final String apkSha256;
+        public final long costMs;
+
+        Digests(String certMd5, String certSha256, String apkMd5, String apkSha256, long costMs) {
+            this.certMd5 = certMd5;
+            this.certSha256 = certSha256;
+            this.apkMd5 = apkMd5;
+            this.apkSha256 = apkSha256;
+            this.costMs = costMs;
+        }
+
+        public String toJson() {
+            JSONObject json = new JSONObject();
+            try {
+                json.put("certMd5", certMd5);
+                json.put("certSha256", certSha256);
+                json.put("apkMd5", apkMd5);
+                json.put("apkSha256", apkSha256);
+                json.put("costMs", costMs);
+            } catch (JSONException e) {
+                Log.e(TAG, "构造摘要JSON失败", e);
+            }
+            return json.toString();
+        }
+    }
+
+    private AppIntegrityService() {}
+
+    /**
+     * 在后台线程开始计算证书摘要（重复调用无副作用）
+     */
+    public static synchronized void start(final Context context) {
+        if (started) {
+            return;
+        }
+        started = true;
+        appContext = context.getApplicationContext();
+        NativeExecutors.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                ensureCertDigests();
+            }
+        });
+    }
+
+    /**
+     * 获取已计算的摘要（不含尚未计算的部分），证书摘要尚未完成时返回null
+     */
+    public static Digests getDigests() {
+        String[] cert = certDigests;
+        if (cert == null) {
+            return null;
+        }
+        String[] apk = apkDigests;
+        return new Digests(cert[0], cert[1], apk != null ? apk[0] : "", apk != null ? apk[1] : "",
+            certCostMs + apkCostMs);
+    }
+
+    /**
+     * 获取证书摘要，尚未完成时在当前线程计算（不可在UI线程调用）
+     */
+    public static Digests awaitDigests() {
+        ensureCertDigests();
+        return getDigests();
+    }
+
+    /**
+     * 获取证书和APK摘要，尚未完成时在当前线程计算（读取整个APK，不可在UI线程调用）
+     * APK读取失败时APK摘要为空字符串，下次调用重试
+     */
+    public static Digests awaitDigestsWithApk() {
+        ensureCertDigests();
+        ensureApkDigests();
+        return getDigests();
+    }
+
+    /**
+     * 获取签名证书MD5（供JS通过反射调用），尚未完成时返回空字符串
+     */
+    public static String getSignatureMD5() {
+        String[] cert = certDigests;
+        return cert != null ? cert[0] : "";
+    }
+
+    /**
+     * 获取已计算摘要的JSON（供JS通过反射调用），尚未完成时返回空字符串
+     */
+    public static String getDigestsJson() {
+        Digests current = getDigests();
+        return current != null ? current.toJson() : "";
+    }
+
+    // 同一时刻只有一个线程计算，其余调用方在锁上等待计算结果，不依赖线程池中其他任务
+    private static synchronized void ensureCertDigests() {
+        if (certDigests != null || appContext == null) {
+            return;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        String certMd5 = "";
+        String certSha256 = "";
+        try {
+            byte[] cert = getSigningCertificate(appContext);
+            if (cert != null) {
+                certMd5 = toHex(MessageDigest.getInstance("MD5").digest(cert));
+                certSha256 = toHex(MessageDigest.getInstance("SHA-256").digest(cert));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "计算证书摘要失败: " + e.getMessage(), e);
+        }
+        certCostMs = SystemClock.elapsedRealtime() - startTime;
+        certDigests = new String[] {certMd5, certSha256};
+        Log.e(TAG, "=== 应用签名信息 ===");
+        Log.e(TAG, "包名: " + appContext.getPackageName());
+        Log.e(TAG, "MD5签名: " + certMd5 + "（请将此MD5签名配置到微信开放平台）");
+        Log.e(TAG, "SHA-256签名: " + certSha256 + ", 证书摘要耗时: " + certCostMs + "ms");
+    }
+
+    private static synchronized void ensureApkDigests() {
+        if (apkDigests != null || appContext == null) {
+            return;
+        }
+        String apkPath = appContext.getApplicationInfo().sourceDir;
+        if (apkPath == null) {
+            apkDigests = new String[] {"", ""};
+            return;
+        }
+        long startTime = SystemClock.elapsedRealtime();
+        InputStream in = null;
+        try {
+            // APK只读取一遍，同时更新两个摘要
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            in = new FileInputStream(apkPath);
+            byte[] buffer = new byte[APK_READ_BUFFER];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md5.update(buffer, 0, read);
+                sha256.update(buffer, 0, read);
+            }
+            apkCostMs = SystemClock.elapsedRealtime() - startTime;
+            apkDigests = new String[] {toHex(md5.digest()), toHex(sha256.digest())};
+            Log.d(TAG, "APK摘要计算完成，耗时: " + apkCostMs + "ms");
+        } catch (Exception e) {
+            Log.e(TAG, "计算APK摘要失败: " + e.getMessage(), e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static byte[] getSigningCertificate(Context context) throws PackageManager.NameNotFoundException {
+        PackageManager pm = context.getPackageManager();
+        Signature[] signatures;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            PackageInfo packageInfo = pm.getPackageInfo(context.getPackageName(), PackageManager.GET_SIGNING_CERTIFICATES);
+            signatures = packageInfo.signingInfo != null ? packageInfo.signingInfo.getApkContentsSigners() : null;
+        } else {
+            PackageInfo packageInfo = pm.getPackageInfo(context.getPackageName(), PackageManager.GET_SIGNATURES);
+            signatures = packageInfo.signatures;
+        }
+        if (signatures == null || signatures.length == 0) {
+            return null;
+        }
+        return signatures[0].toByteArray();
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int v = bytes[i] & 0xff;
+            out[i * 2] = HEX_DIGITS[v >>> 4];
+            out[i * 2 + 1] = HEX_DIGITS[v & 0x0f];
+        }
+        return new String(out);
+    }
+}
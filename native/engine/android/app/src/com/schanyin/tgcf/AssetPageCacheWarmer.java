@@ -0,0 +1,179 @@
+package com.schanyin.tgcf;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 开屏广告期间的资源页缓存预热
+ * 开屏广告展示时游戏进程基本空闲，在后台线程按JS记录的列表顺序读取第一个场景的资源文件（场景、预制体、贴图等），
+ * 让它们进入系统页缓存，广告关闭后加载场景时不再冷读存储；
+ * 读取量和耗时都有上限，广告一关闭立即停止
+ */
+public class AssetPageCacheWarmer {
+    private static final String TAG = "AssetPageCacheWarmer";
+
+    private static final String PREFS_NAME = "asset_warmer";
+    private static final String KEY_PATHS = "paths";
+
+    // 单次预热最多读取的字节数和耗时
+    private static final long MAX_BYTES = 24L * 1024 * 1024;
+    private static final long MAX_DURATION_MS = 4000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 预热结束事件ID
+    static final String EVENT_WARM = "Asset_Warm";
+
+    private static AssetPageCacheWarmer instance;
+
+    private final ExecutorService worker =
+        Executors.newSingleThreadExecutor(NativeExecutors.newThreadFactory("asset-warm"));
+    private volatile boolean running = false;
+    private volatile boolean stopRequested = false;
+
+    public static synchronized AssetPageCacheWarmer getInstance() {
+        if (instance == null) {
+            instance = new AssetPageCacheWarmer();
+        }
+        return instance;
+    }
+
+    private AssetPageCacheWarmer() {}
+
+    /**
+     * 开始预热（开屏广告开始展示时调用），已在预热中时忽略
+     */
+    public void start(final Context context) {
+        synchronized (this) {
+            if (running) {
+                return;
+            }
+            running = true;
+            stopRequested = false;
+        }
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    warm(context);
+                } finally {
+                    running = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * 停止预热（开屏广告关闭或展示失败时调用），正在读取的文件读完当前缓冲区后停止
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * 保存要预热的资源路径（相对资源根目录，多个路径以换行分隔），下次展示开屏广告时生效
+     */
+    public static void setWarmListStatic(String paths) {
+        Context context = App.getContext();
+        if (context == null || paths == null) {
+            return;
+        }
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .putString(KEY_PATHS, paths.trim())
+            .apply();
+    }
+
+    private void warm(Context context) {
+        List<String> paths = loadPaths(context);
+        if (paths.isEmpty()) {
+            Log.d(TAG, "没有预热列表，跳过");
+            return;
+        }
+        String activeDir = HotUpdateInstaller.getActiveDirStatic();
+        AssetManager assets = context.getAssets();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long startedAt = SystemClock.elapsedRealtime();
+        long bytes = 0;
+        int files = 0;
+        int missing = 0;
+        String stoppedBy = "done";
+        for (String path : paths) {
+            if (stopRequested) {
+                stoppedBy = "ad_closed";
+                break;
+            }
+            if (bytes >= MAX_BYTES) {
+                stoppedBy = "byte_budget";
+                break;
+            }
+            if (SystemClock.elapsedRealtime() - startedAt >= MAX_DURATION_MS) {
+                stoppedBy = "time_budget";
+                break;
+            }
+            InputStream in = null;
+            try {
+                // 热更新目录中的文件优先于APK内资源，与引擎的搜索路径一致
+                File updated = activeDir.isEmpty() ? null : new File(activeDir, path);
+                if (updated != null && updated.exists()) {
+                    in = new FileInputStream(updated);
+                } else {
+                    in = assets.open(path, AssetManager.ACCESS_STREAMING);
+                }
+                int n;
+                while (!stopRequested && bytes < MAX_BYTES && (n = in.read(buffer)) > 0) {
+                    bytes += n;
+                }
+                files++;
+            } catch (FileNotFoundException e) {
+                missing++;
+            } catch (IOException e) {
+                Log.w(TAG, "预热读取失败: " + path + ", " + e.getMessage());
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+        if (stopRequested && "done".equals(stoppedBy)) {
+            stoppedBy = "ad_closed";
+        }
+        long elapsedMs = SystemClock.elapsedRealtime() - startedAt;
+        Log.d(TAG, "资源预热结束(" + stoppedBy + "): " + files + "个文件, " + bytes + "字节, " + elapsedMs + "ms");
+        String[] keys = {"files", "missing", "bytes", "elapsed_ms", "stopped_by"};
+        String[] values = {Integer.toString(files), Integer.toString(missing), Long.toString(bytes),
+            Long.toString(elapsedMs), stoppedBy};
+        UmengHelper.onEventWithKeyValues(EVENT_WARM, keys, values);
+    }
+
+    private static List<String> loadPaths(Context context) {
+        String saved = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getString(KEY_PATHS, "");
+        List<String> paths = new ArrayList<>();
+        for (String path : saved.split("\n")) {
+            String trimmed = path.trim();
+            if (trimmed.startsWith("@assets/")) {
+                trimmed = trimmed.substring("@assets/".length());
+            }
+            while (trimmed.startsWith("/")) {
+                trimmed = trimmed.substring(1);
+            }
+            if (!trimmed.isEmpty()) {
+                paths.add(trimmed);
+            }
+        }
+        return paths;
+    }
+}
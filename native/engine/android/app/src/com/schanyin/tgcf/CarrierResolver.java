@@ -0,0 +1,253 @@
+package com.schanyin.tgcf;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 运营商解析服务
+ * 使用预先构建的MCC/MNC对照表解析运营商，只解析一次并缓存，
+ * SIM卡/订阅变化时才重新解析
+ */
+public class CarrierResolver {
+    private static final String TAG = "CarrierResolver";
+
+    // 运营商ID（稳定整数，用于统计维度，不可修改已有取值）
+    public static final int CARRIER_NONE = 0;       // 无SIM卡
+    public static final int CARRIER_MOBILE = 1;     // 中国移动
+    public static final int CARRIER_UNICOM = 2;     // 中国联通
+    public static final int CARRIER_TELECOM = 3;    // 中国电信
+    public static final int CARRIER_BROADCAST = 4;  // 中国广电
+    public static final int CARRIER_OTHER = 99;     // 其他/未知运营商
+
+    private static final String NAME_NONE = "无SIM卡";
+    private static final String NAME_UNKNOWN = "未知运营商";
+
+    // 中国MCC
+    private static final String MCC_CHINA = "460";
+
+    // MNC(00-99) -> 运营商ID，类加载时构建，之后只读
+    private static final byte[] MNC_TABLE = buildMncTable();
+
+    // 运营商ID -> 显示名称
+    private static final String[] CARRIER_NAMES = {
+        NAME_NONE, "中国移动", "中国联通", "中国电信", "中国广电"
+    };
+
+    private static CarrierResolver instance;
+
+    private final Context context;
+    private volatile CarrierInfo cached;
+    // 缓存代数，每次失效加一；解析开始前的代数与写回时不一致说明期间发生过失效，结果不写入缓存
+    private final AtomicInteger generation = new AtomicInteger();
+    private boolean listening = false;
+
+    /**
+     * 运营商解析结果（不可变）
+     */
+    public static final class CarrierInfo {
+        public final int carrierId;
+        public final String displayName;
+        public final String operatorCode;
+
+        CarrierInfo(int carrierId, String displayName, String operatorCode) {
+            this.carrierId = carrierId;
+            this.displayName = displayName;
+            this.operatorCode = operatorCode;
+        }
+    }
+
+    private CarrierResolver(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized CarrierResolver getInstance(Context context) {
+        if (instance == null) {
+            instance = new CarrierResolver(context);
+        }
+        return instance;
+    }
+
+    private static byte[] buildMncTable() {
+        byte[] table = new byte[100];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (byte) CARRIER_OTHER;
+        }
+        // 中国移动（含铁通、物联网号段）
+        int[] mobile = {0, 2, 4, 7, 8, 13, 20};
+        // 中国联通
+        int[] unicom = {1, 6, 9, 10};
+        // 中国电信
+        int[] telecom = {3, 5, 11};
+        // 中国广电
+        int[] broadcast = {12, 15};
+        for (int mnc : mobile) table[mnc] = CARRIER_MOBILE;
+        for (int mnc : unicom) table[mnc] = CARRIER_UNICOM;
+        for (int mnc : telecom) table[mnc] = CARRIER_TELECOM;
+        for (int mnc : broadcast) table[mnc] = CARRIER_BROADCAST;
+        return table;
+    }
+
+    /**
+     * 开始监听SIM卡/订阅变化，需在主线程调用
+     */
+    public synchronized void startListening() {
+        if (listening) {
+            return;
+        }
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
+                SubscriptionManager subscriptionManager = (SubscriptionManager)
+                    context.getSystemService(Context.TELEPHONY_SUBSCRIPTION_SERVICE);
+                if (subscriptionManager != null) {
+                    subscriptionManager.addOnSubscriptionsChangedListener(
+                        new SubscriptionManager.OnSubscriptionsChangedListener() {
+                            @Override
+                            public void onSubscriptionsChanged() {
+                                invalidate();
+                            }
+                        });
+                    listening = true;
+                }
+            } else {
+                context.registerReceiver(new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context ctx, Intent intent) {
+                        invalidate();
+                    }
+                }, new IntentFilter("android.intent.action.SIM_STATE_CHANGED"));
+                listening = true;
+            }
+            Log.d(TAG, "运营商变化监听已注册");
+        } catch (Exception e) {
+            Log.e(TAG, "注册运营商变化监听失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 使缓存失效，下次读取时重新解析
+     */
+    public synchronized void invalidate() {
+        if (cached != null) {
+            Log.d(TAG, "订阅变化，运营商缓存失效");
+        }
+        generation.incrementAndGet();
+        cached = null;
+    }
+
+    /**
+     * 获取运营商信息（已缓存时不做任何系统调用）
+     */
+    public CarrierInfo getCarrierInfo() {
+        CarrierInfo info = cached;
+        if (info == null) {
+            int startGeneration = generation.get();
+            info = resolve();
+            synchronized (this) {
+                // 解析期间订阅变化时，本次结果可能已过期，只返回给调用方，不写入缓存
+                if (generation.get() == startGeneration) {
+                    cached = info;
+                }
+            }
+        }
+        return info;
+    }
+
+    public int getCarrierId() {
+        return getCarrierInfo().carrierId;
+    }
+
+    public String getDisplayName() {
+        return getCarrierInfo().displayName;
+    }
+
+    private CarrierInfo resolve() {
+        try {
+            TelephonyManager telephonyManager = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
+            if (telephonyManager != null) {
+                // 优先使用SIM卡运营商代码，直接查表
+                String simOperator = telephonyManager.getSimOperator();
+                CarrierInfo info = resolveByCode(simOperator);
+                if (info != null) {
+                    Log.d(TAG, "运营商代码: " + simOperator + " -> " + info.displayName);
+                    return info;
+                }
+
+                // 备用方案：按运营商名称匹配
+                String simOperatorName = telephonyManager.getSimOperatorName();
+                info = resolveByName(simOperatorName, simOperator);
+                if (info != null) {
+                    Log.d(TAG, "SIM运营商名称: " + simOperatorName + " -> " + info.displayName);
+                    return info;
+                }
+
+                String networkOperatorName = telephonyManager.getNetworkOperatorName();
+                info = resolveByName(networkOperatorName, telephonyManager.getNetworkOperator());
+                if (info != null) {
+                    Log.d(TAG, "网络运营商名称: " + networkOperatorName + " -> " + info.displayName);
+                    return info;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "获取SIM卡信息失败", e);
+        }
+        return new CarrierInfo(CARRIER_NONE, NAME_NONE, "");
+    }
+
+    /**
+     * 根据MCC/MNC代码查表
+     */
+    static CarrierInfo resolveByCode(String operatorCode) {
+        if (operatorCode == null || operatorCode.length() < 5) {
+            return null;
+        }
+        if (!operatorCode.startsWith(MCC_CHINA)) {
+            return new CarrierInfo(CARRIER_OTHER, NAME_UNKNOWN + "(" + operatorCode + ")", operatorCode);
+        }
+        int mnc = parseMnc(operatorCode);
+        int carrierId = mnc >= 0 && mnc < MNC_TABLE.length ? MNC_TABLE[mnc] : CARRIER_OTHER;
+        if (carrierId == CARRIER_OTHER) {
+            return new CarrierInfo(CARRIER_OTHER, NAME_UNKNOWN + "(" + operatorCode + ")", operatorCode);
+        }
+        return new CarrierInfo(carrierId, CARRIER_NAMES[carrierId], operatorCode);
+    }
+
+    private static int parseMnc(String operatorCode) {
+        // 只取MNC的前两位，兼容三位MNC的写法
+        char c1 = operatorCode.charAt(3);
+        char c2 = operatorCode.charAt(4);
+        if (c1 < '0' || c1 > '9' || c2 < '0' || c2 > '9') {
+            return -1;
+        }
+        return (c1 - '0') * 10 + (c2 - '0');
+    }
+
+    /**
+     * 根据运营商名称匹配（代码不可用时的备用方案）
+     */
+    static CarrierInfo resolveByName(String originalName, String operatorCode) {
+        if (originalName == null || originalName.isEmpty() || "null".equals(originalName)) {
+            return null;
+        }
+        String code = operatorCode != null ? operatorCode : "";
+        String name = originalName.toLowerCase();
+        if (name.contains("china mobile") || name.contains("cmcc") || name.contains("中国移动")) {
+            return new CarrierInfo(CARRIER_MOBILE, CARRIER_NAMES[CARRIER_MOBILE], code);
+        } else if (name.contains("unicom") || name.contains("中国联通")) {
+            return new CarrierInfo(CARRIER_UNICOM, CARRIER_NAMES[CARRIER_UNICOM], code);
+        } else if (name.contains("telecom") || name.contains("中国电信")) {
+            return new CarrierInfo(CARRIER_TELECOM, CARRIER_NAMES[CARRIER_TELECOM], code);
+        } else if (name.contains("china broadcasting") || name.contains("cbn") || name.contains("中国广电")) {
+            return new CarrierInfo(CARRIER_BROADCAST, CARRIER_NAMES[CARRIER_BROADCAST], code);
+        }
+        // 返回原始名称
+        return new CarrierInfo(CARRIER_OTHER, originalName, code);
+    }
+}
@@ -0,0 +1,308 @@
+package com.schanyin.tgcf;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.InetAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 启动时的连接预热
+ * 进程启动后在后台线程解析接口和广告域名，并通过NativeHttpClient向接口地址发一次HEAD请求，
+ * 建好的keep-alive连接留在连接池中供第一次真实请求复用；
+ * 预热时连发两次HEAD，两次耗时之差即建连开销，加上DNS耗时作为第一次请求节省时间的估计，
+ * 并记录每个主机第一次真实请求的耗时，便于和未预热时对比
+ */
+public class ConnectionPrewarmer {
+    private static final String TAG = "ConnectionPrewarmer";
+
+    private static final String PREFS_NAME = "connection_prewarm";
+    private static final String KEY_API_URLS = "api_urls";
+
+    // JS端尚未同步过ApiConfig时使用的默认接口地址（与ApiConfig的production环境一致）
+    private static final String DEFAULT_API_URL = "http://101.133.145.244:7071";
+    // 穿山甲/聚合广告使用的域名，广告SDK有自己的网络栈，这里只做DNS预解析
+    private static final String[] AD_HOSTS = {
+        "api-access.pangolin-sdk-toutiao.com",
+        "is.snssdk.com",
+        "sf3-fe-tos.pglstatp-toutiao.com",
+    };
+
+    private static final long WARM_TIMEOUT_MS = 5000;
+    // 预热请求的ID，NativeHttpClient据此不把预热请求计为第一次请求
+    static final String REQUEST_ID = "prewarm";
+    // 预热完成事件ID
+    static final String EVENT_PREWARM = "Net_Prewarm";
+
+    /**
+     * 单个主机的预热结果，由ConnectionPrewarmer的锁保护
+     */
+    private static final class HostStats {
+        final String host;
+        long dnsMs = -1;
+        // 第一次HEAD（含建连）和第二次HEAD（复用连接）的耗时
+        long coldMs = -1;
+        long warmMs = -1;
+        boolean warmed = false;
+        String error;
+        // 第一次真实请求的耗时，及发起时预热是否已经完成
+        long firstRequestMs = -1;
+        boolean firstRequestWarm = false;
+
+        HostStats(String host) {
+            this.host = host;
+        }
+
+        long estimatedSavedMs() {
+            long saved = Math.max(0, dnsMs);
+            if (coldMs >= 0 && warmMs >= 0) {
+                saved += Math.max(0, coldMs - warmMs);
+            }
+            return saved;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("host", host);
+            json.put("dnsMs", dnsMs);
+            json.put("coldMs", coldMs);
+            json.put("warmMs", warmMs);
+            json.put("warmed", warmed);
+            json.put("estimatedSavedMs", estimatedSavedMs());
+            json.put("firstRequestMs", firstRequestMs);
+            json.put("firstRequestWarm", firstRequestWarm);
+            if (error != null) {
+                json.put("error", error);
+            }
+            return json;
+        }
+    }
+
+    private static ConnectionPrewarmer instance;
+
+    private final Map<String, HostStats> hosts = new LinkedHashMap<>();
+    private long startedAt = 0;
+    private long finishedAt = 0;
+    // 还有主机未记录第一次请求时为true，请求路径上只读这个标记
+    private volatile boolean awaitingFirstRequests = false;
+
+    public static synchronized ConnectionPrewarmer getInstance() {
+        if (instance == null) {
+            instance = new ConnectionPrewarmer();
+        }
+        return instance;
+    }
+
+    private ConnectionPrewarmer() {}
+
+    /**
+     * 在后台线程开始预热（App.onCreate调用）
+     * 广告域名只在用户已同意隐私政策时预解析
+     */
+    public void start(final Context context, final boolean includeAdHosts) {
+        final List<String> apiUrls = loadApiUrls(context);
+        synchronized (this) {
+            if (startedAt != 0) {
+                return;
+            }
+            startedAt = SystemClock.elapsedRealtime();
+            for (String url : apiUrls) {
+                String host = hostOf(url);
+                if (host != null) {
+                    hosts.put(host, new HostStats(host));
+                }
+            }
+            awaitingFirstRequests = !hosts.isEmpty();
+        }
+        NativeExecutors.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String url : apiUrls) {
+                    warmApi(url);
+                }
+                if (includeAdHosts) {
+                    for (String host : AD_HOSTS) {
+                        resolveAdHost(host);
+                    }
+                }
+                synchronized (ConnectionPrewarmer.this) {
+                    finishedAt = SystemClock.elapsedRealtime();
+                }
+                Log.d(TAG, "连接预热完成: " + getStatsJson());
+            }
+        });
+    }
+
+    /**
+     * 保存JS端当前的接口地址，下次启动时预热（多个地址以换行分隔）
+     */
+    public static void setApiUrls(String urls) {
+        Context context = App.getContext();
+        if (context == null || urls == null) {
+            return;
+        }
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .putString(KEY_API_URLS, urls.trim())
+            .apply();
+    }
+
+    /**
+     * NativeHttpClient每次请求完成后调用，记录各主机第一次真实请求的耗时
+     */
+    public void onRequestCompleted(String host, long elapsedMs, boolean success) {
+        if (!awaitingFirstRequests || !success) {
+            return;
+        }
+        HostStats reported = null;
+        synchronized (this) {
+            HostStats stats = hosts.get(host);
+            if (stats == null || stats.firstRequestMs >= 0) {
+                return;
+            }
+            stats.firstRequestMs = elapsedMs;
+            stats.firstRequestWarm = stats.warmed;
+            boolean pending = false;
+            for (HostStats s : hosts.values()) {
+                if (isApiHost(s) && s.firstRequestMs < 0) {
+                    pending = true;
+                }
+            }
+            awaitingFirstRequests = pending;
+            reported = stats;
+        }
+        report(reported);
+    }
+
+    /**
+     * 供JS通过反射调用
+     */
+    public static String getStatsJsonStatic() {
+        return getInstance().getStatsJson();
+    }
+
+    /**
+     * 预热统计JSON
+     */
+    public synchronized String getStatsJson() {
+        JSONObject json = new JSONObject();
+        try {
+            JSONArray array = new JSONArray();
+            for (HostStats stats : hosts.values()) {
+                array.put(stats.toJson());
+            }
+            json.put("hosts", array);
+            json.put("durationMs", finishedAt > 0 ? finishedAt - startedAt : -1);
+        } catch (JSONException e) {
+            Log.e(TAG, "构造预热统计JSON失败", e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * 解析域名并用两次HEAD请求建立并测量keep-alive连接
+     */
+    private void warmApi(String url) {
+        String host = hostOf(url);
+        if (host == null) {
+            return;
+        }
+        long dnsMs = resolve(host);
+        Map<String, String> headers = new HashMap<>();
+        NativeHttpClient client = NativeHttpClient.getInstance();
+        NativeHttpClient.Response cold = client.execute(new NativeHttpClient.Request(
+            REQUEST_ID, "HEAD", url, headers, null, false, false, WARM_TIMEOUT_MS, null));
+        NativeHttpClient.Response warm = null;
+        if (cold.error == null) {
+            warm = client.execute(new NativeHttpClient.Request(
+                REQUEST_ID, "HEAD", url, headers, null, false, false, WARM_TIMEOUT_MS, null));
+        }
+        synchronized (this) {
+            HostStats stats = hosts.get(host);
+            if (stats == null) {
+                return;
+            }
+            stats.dnsMs = dnsMs;
+            // 任何HTTP状态码都说明连接已经建立
+            stats.coldMs = cold.error == null ? cold.elapsedMs : -1;
+            stats.warmMs = warm != null && warm.error == null ? warm.elapsedMs : -1;
+            stats.warmed = cold.error == null;
+            stats.error = cold.error;
+        }
+    }
+
+    private void resolveAdHost(String host) {
+        long dnsMs = resolve(host);
+        synchronized (this) {
+            HostStats stats = new HostStats(host);
+            stats.dnsMs = dnsMs;
+            stats.warmed = dnsMs >= 0;
+            hosts.put(host, stats);
+        }
+    }
+
+    /**
+     * DNS解析耗时，失败返回-1（IP地址直接返回0）
+     */
+    private static long resolve(String host) {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            InetAddress.getAllByName(host);
+            return SystemClock.elapsedRealtime() - start;
+        } catch (Exception e) {
+            Log.w(TAG, "DNS预解析失败: " + host + ", " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private void report(HostStats stats) {
+        String[] keys = {"host", "dns_ms", "cold_ms", "warm_ms", "saved_ms", "first_request_ms", "first_request_warm"};
+        String[] values = {stats.host, Long.toString(stats.dnsMs), Long.toString(stats.coldMs),
+            Long.toString(stats.warmMs), Long.toString(stats.estimatedSavedMs()),
+            Long.toString(stats.firstRequestMs), Boolean.toString(stats.firstRequestWarm)};
+        UmengHelper.onEventWithKeyValues(EVENT_PREWARM, keys, values);
+    }
+
+    private static boolean isApiHost(HostStats stats) {
+        for (String adHost : AD_HOSTS) {
+            if (adHost.equals(stats.host)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> loadApiUrls(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String saved = prefs.getString(KEY_API_URLS, "");
+        List<String> urls = new ArrayList<>();
+        for (String url : saved.split("\n")) {
+            if (!url.trim().isEmpty()) {
+                urls.add(url.trim());
+            }
+        }
+        if (urls.isEmpty()) {
+            urls.add(DEFAULT_API_URL);
+        }
+        return urls;
+    }
+
+    private static String hostOf(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (Exception e) {
+            Log.w(TAG, "预热地址无效: " + url);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.schanyin.tgcf;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.bytedance.ads.convert.BDConvert;
+import com.bytedance.ads.convert.config.BDConvertConfig;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 巨量引擎转化SDK初始化与事件队列
+ * 引擎渲染出第一帧（JS在Director绘制完成事件中通知）后在UI线程初始化SDK，
+ * SDK要求在主线程初始化并注册Activity生命周期回调，推迟到首帧之后不占用启动和首帧时间；
+ * 初始化完成前产生的转化事件按顺序排队，初始化完成后在后台串行线程依次发送
+ */
+public class ConversionTracker {
+    private static final String TAG = "ConversionTracker";
+
+    // 转化事件名
+    public static final String EVENT_LAUNCH = "launch";
+
+    // 初始化完成前最多排队的事件数
+    private static final int MAX_PENDING_EVENTS = 32;
+    // JS未通知引擎首帧时的兜底等待时间
+    private static final long FIRST_FRAME_TIMEOUT_MS = 5000;
+
+    private static ConversionTracker instance;
+
+    // 事件发送串行线程，保证事件顺序
+    private final ExecutorService executor =
+        Executors.newSingleThreadExecutor(NativeExecutors.newThreadFactory("convert"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // 以下字段由synchronized保护
+    private final ArrayDeque<String> pendingEvents = new ArrayDeque<>();
+    private WeakReference<Activity> activityRef;
+    private boolean started = false;
+    private boolean engineFrameRendered = false;
+    private boolean initScheduled = false;
+    private boolean initialized = false;
+    private int droppedEvents = 0;
+
+    // 耗时统计（毫秒）
+    private volatile long startRequestedAt = 0;
+    private volatile long firstFrameDelayMs = -1;
+    private volatile long initCostMs = -1;
+    private volatile long readyDelayMs = -1;
+    private volatile boolean initSucceeded = false;
+
+    public static synchronized ConversionTracker getInstance() {
+        if (instance == null) {
+            instance = new ConversionTracker();
+        }
+        return instance;
+    }
+
+    private ConversionTracker() {}
+
+    /**
+     * 请求初始化，引擎首帧渲染后在UI线程执行（需要在UI线程调用，重复调用无副作用）
+     */
+    public void start(final Activity activity) {
+        boolean frameReady;
+        synchronized (this) {
+            if (started) {
+                return;
+            }
+            started = true;
+            activityRef = new WeakReference<>(activity);
+            frameReady = engineFrameRendered;
+        }
+        startRequestedAt = SystemClock.elapsedRealtime();
+        if (frameReady) {
+            // 同意隐私政策时引擎早已渲染
+            scheduleInit();
+        } else {
+            // JS没有通知首帧（例如脚本加载失败）时兜底初始化
+            mainHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    scheduleInit();
+                }
+            }, FIRST_FRAME_TIMEOUT_MS);
+        }
+        Log.e(TAG, "巨量引擎转化SDK将在引擎首帧后初始化");
+    }
+
+    /**
+     * 引擎渲染出第一帧（JS在第一次Director.EVENT_AFTER_DRAW时通过反射调用，运行在GL线程）
+     */
+    public static void onEngineFirstFrame() {
+        ConversionTracker tracker = getInstance();
+        boolean shouldInit;
+        synchronized (tracker) {
+            if (tracker.engineFrameRendered) {
+                return;
+            }
+            tracker.engineFrameRendered = true;
+            shouldInit = tracker.started;
+        }
+        if (shouldInit) {
+            tracker.scheduleInit();
+        }
+    }
+
+    private void scheduleInit() {
+        synchronized (this) {
+            if (initScheduled) {
+                return;
+            }
+            initScheduled = true;
+        }
+        if (startRequestedAt > 0) {
+            firstFrameDelayMs = SystemClock.elapsedRealtime() - startRequestedAt;
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                initSdk();
+            }
+        });
+    }
+
+    /**
+     * 发送转化事件，初始化完成前排队
+     */
+    public void send(final String eventName) {
+        synchronized (this) {
+            if (!initialized) {
+                if (pendingEvents.size() >= MAX_PENDING_EVENTS) {
+                    droppedEvents++;
+                    Log.e(TAG, "转化事件排队已满，丢弃: " + eventName);
+                    return;
+                }
+                pendingEvents.addLast(eventName);
+                return;
+            }
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                dispatch(eventName);
+            }
+        });
+    }
+
+    /**
+     * 等待已提交的转化事件发送完成，最多等待timeoutMs毫秒（日志回放确认进度时调用）
+     * @return 没有未发送的事件时返回true；尚未初始化且有排队事件或等待超时返回false
+     */
+    public boolean awaitDispatched(long timeoutMs) {
+        synchronized (this) {
+            if (!initialized) {
+                return pendingEvents.isEmpty();
+            }
+        }
+        Future<?> marker = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                // 串行线程上排在已提交事件之后，执行到这里说明之前的事件都已发送
+            }
+        });
+        try {
+            marker.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 初始化耗时统计JSON（供JS通过反射调用）
+     */
+    public static String getInitStatsJson() {
+        ConversionTracker tracker = getInstance();
+        JSONObject json = new JSONObject();
+        try {
+            synchronized (tracker) {
+                json.put("initialized", tracker.initialized);
+                json.put("pendingEvents", tracker.pendingEvents.size());
+                json.put("droppedEvents", tracker.droppedEvents);
+            }
+            json.put("succeeded", tracker.initSucceeded);
+            json.put("firstFrameDelayMs", tracker.firstFrameDelayMs);
+            json.put("initCostMs", tracker.initCostMs);
+            json.put("readyDelayMs", tracker.readyDelayMs);
+        } catch (JSONException e) {
+            Log.e(TAG, "构造初始化统计JSON失败", e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * 在UI线程初始化SDK，然后把排队的事件交给发送线程
+     */
+    private void initSdk() {
+        Activity activity;
+        synchronized (this) {
+            activity = activityRef != null ? activityRef.get() : null;
+        }
+        if (activity == null || activity.isFinishing() || activity.isDestroyed()) {
+            // SDK需要存活的Activity注册生命周期回调，Activity已销毁时不初始化
+            Log.e(TAG, "Activity已销毁，跳过巨量引擎转化SDK初始化");
+            return;
+        }
+        long begin = SystemClock.elapsedRealtime();
+        try {
+            BDConvertConfig config = new BDConvertConfig();
+            // 只在调试包中开启SDK日志
+            config.setEnableLog((activity.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+            // 初始化SDK（会自动发送启动事件）
+            BDConvert.INSTANCE.init(activity, config, activity);
+            initSucceeded = true;
+        } catch (Exception e) {
+            Log.e(TAG, "巨量引擎转化SDK初始化失败: " + e.getMessage(), e);
+        }
+        long end = SystemClock.elapsedRealtime();
+        initCostMs = end - begin;
+        readyDelayMs = end - startRequestedAt;
+        Log.e(TAG, "巨量引擎转化SDK初始化" + (initSucceeded ? "成功" : "失败") + ", 首帧等待" + firstFrameDelayMs
+            + "ms, 初始化耗时" + initCostMs + "ms");
+
+        // 按顺序发送排队的事件；之后的事件提交到发送线程，排在这些事件之后
+        final String[] pending;
+        synchronized (this) {
+            pending = pendingEvents.toArray(new String[0]);
+            pendingEvents.clear();
+            initialized = true;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String eventName : pending) {
+                    dispatch(eventName);
+                }
+            }
+        });
+    }
+
+    private void dispatch(String eventName) {
+        if (!EVENT_LAUNCH.equals(eventName)) {
+            Log.e(TAG, "未知的转化事件: " + eventName);
+            return;
+        }
+        Context context = App.getContext();
+        try {
+            BDConvert.INSTANCE.sendLaunchEvent(context);
+            Log.e(TAG, "发送启动事件成功");
+        } catch (Exception e) {
+            Log.e(TAG, "发送启动事件失败: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.schanyin.tgcf;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备状态增量推送通道
+ * JS订阅关心的字段后，原生定时检查并只推送发生变化的字段，
+ * 每次推送带递增版本号，JS发现版本不连续时可请求全量同步。
+ * 不会变化的字段（如isRoot、debugMode）作为静态字段只读取一次，只在全量推送中带上，不参与定时检查；
+ * 字段读取可能涉及系统服务调用，检查和全量同步都在独立的单线程中进行，定时线程只负责投递
+ */
+public class DeviceStateChannel {
+    private static final String TAG = "DeviceStateChannel";
+
+    private static final long DEFAULT_INTERVAL_MS = 5000;
+    private static final long MIN_INTERVAL_MS = 1000;
+
+    /**
+     * 字段读取接口，由持有设备信息的一方实现（需线程安全）
+     */
+    public interface FieldReader {
+        Object readField(String field);
+    }
+
+    private final FieldReader reader;
+    private final ScriptSender sender;
+
+    private final ExecutorService worker = NativeExecutors.newPool("device-state", 1);
+
+    private String[] fields = new String[0];
+    private Object[] lastValues = new Object[0];
+    private String[] staticFields = new String[0];
+    // 静态字段的值，进程内只读取一次
+    private final Map<String, Object> staticValues = new HashMap<>();
+    private long version = 0;
+    private long intervalMs = DEFAULT_INTERVAL_MS;
+    private boolean subscribed = false;
+    private boolean paused = false;
+    private ScheduledFuture<?> pollTask;
+
+    // 统计：实际推送次数与检查次数
+    private long pushCount = 0;
+    private long pollCount = 0;
+
+    public DeviceStateChannel(FieldReader reader, ScriptSender sender) {
+        this.reader = reader;
+        this.sender = sender;
+    }
+
+    /**
+     * 订阅字段
+     * @param data JSON: {"fields": ["isWiFi", ...], "staticFields": ["isRoot", ...], "intervalMs": 5000}
+     */
+    public synchronized void subscribe(String data) {
+        try {
+            JSONObject request = new JSONObject(data);
+            JSONArray array = request.getJSONArray("fields");
+            String[] newFields = new String[array.length()];
+            for (int i = 0; i < newFields.length; i++) {
+                newFields[i] = array.getString(i);
+            }
+            JSONArray staticArray = request.optJSONArray("staticFields");
+            String[] newStaticFields = new String[staticArray != null ? staticArray.length() : 0];
+            for (int i = 0; i < newStaticFields.length; i++) {
+                newStaticFields[i] = staticArray.getString(i);
+            }
+            fields = newFields;
+            lastValues = new Object[newFields.length];
+            staticFields = newStaticFields;
+            intervalMs = Math.max(MIN_INTERVAL_MS, request.optLong("intervalMs", DEFAULT_INTERVAL_MS));
+            subscribed = true;
+            Log.d(TAG, "订阅设备状态字段: " + array + ", 间隔: " + intervalMs + "ms");
+        } catch (JSONException e) {
+            Log.e(TAG, "设备状态订阅参数解析失败: " + e.getMessage());
+            sender.sendToScript("deviceStateError", "订阅参数错误: " + e.getMessage());
+            return;
+        }
+        // 订阅后先推送一次全量，作为增量的基准
+        requestResync();
+        schedule();
+    }
+
+    /**
+     * 在后台线程推送全量状态（JS检测到版本缺口时调用，不阻塞桥接线程）
+     */
+    public void requestResync() {
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                resync();
+            }
+        });
+    }
+
+    /**
+     * 取消订阅
+     */
+    public synchronized void unsubscribe() {
+        subscribed = false;
+        cancel();
+        Log.d(TAG, "取消设备状态订阅，检查次数: " + pollCount + ", 推送次数: " + pushCount);
+    }
+
+    /**
+     * 推送全量状态（包括静态字段），在worker线程中调用
+     */
+    synchronized void resync() {
+        if (!subscribed) {
+            return;
+        }
+        try {
+            JSONObject values = new JSONObject();
+            for (int i = 0; i < fields.length; i++) {
+                Object value = reader.readField(fields[i]);
+                lastValues[i] = value;
+                values.put(fields[i], value != null ? value : JSONObject.NULL);
+            }
+            for (String field : staticFields) {
+                if (!staticValues.containsKey(field)) {
+                    staticValues.put(field, reader.readField(field));
+                }
+                Object value = staticValues.get(field);
+                values.put(field, value != null ? value : JSONObject.NULL);
+            }
+            version++;
+            push(true, values);
+        } catch (JSONException e) {
+            Log.e(TAG, "构造全量设备状态失败", e);
+        }
+    }
+
+    /**
+     * 检查字段变化，只推送变化的部分；无变化时不产生任何消息
+     */
+    synchronized void poll() {
+        if (!subscribed) {
+            return;
+        }
+        pollCount++;
+        JSONObject changes = null;
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                Object value = reader.readField(fields[i]);
+                if (!valueEquals(lastValues[i], value)) {
+                    if (changes == null) {
+                        changes = new JSONObject();
+                    }
+                    changes.put(fields[i], value != null ? value : JSONObject.NULL);
+                    lastValues[i] = value;
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "构造设备状态增量失败", e);
+            return;
+        }
+        if (changes != null) {
+            version++;
+            push(false, changes);
+        }
+    }
+
+    /**
+     * 切到后台时暂停检查
+     */
+    public synchronized void pause() {
+        paused = true;
+        cancel();
+    }
+
+    /**
+     * 回到前台时立即检查一次并恢复定时检查
+     */
+    public synchronized void resume() {
+        paused = false;
+        if (!subscribed) {
+            return;
+        }
+        submitPoll();
+        schedule();
+    }
+
+    private void push(boolean full, JSONObject values) {
+        JSONObject message = new JSONObject();
+        try {
+            message.put("version", version);
+            message.put("full", full);
+            message.put("fields", values);
+        } catch (JSONException e) {
+            Log.e(TAG, "构造设备状态消息失败", e);
+            return;
+        }
+        pushCount++;
+        sender.sendToScript("deviceStateUpdate", message.toString());
+    }
+
+    private void schedule() {
+        cancel();
+        if (paused) {
+            return;
+        }
+        // 定时线程只投递，实际读取在worker线程
+        pollTask = NativeExecutors.scheduled().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                submitPoll();
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void submitPoll() {
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll();
+                } catch (Exception e) {
+                    Log.e(TAG, "设备状态检查失败: " + e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    private void cancel() {
+        if (pollTask != null) {
+            pollTask.cancel(false);
+            pollTask = null;
+        }
+    }
+
+    private static boolean valueEquals(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
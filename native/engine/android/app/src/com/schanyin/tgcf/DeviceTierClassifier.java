@@ -0,0 +1,293 @@
+package com.schanyin.tgcf;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+
+/**
+ * 设备性能分级
+ * 根据内存、CPU核数与主频、系统版本以及一次短暂的JVM计算探测给设备分级，
+ * 结果按系统指纹缓存在SharedPreferences中，同一设备只探测一次。
+ * 分级用于选择SDK采集模式、广告预加载深度以及JS端的帧率和特效质量
+ */
+public class DeviceTierClassifier {
+    private static final String TAG = "DeviceTierClassifier";
+
+    public static final int TIER_LOW = 0;
+    public static final int TIER_MID = 1;
+    public static final int TIER_HIGH = 2;
+
+    private static final String PREFS_NAME = "device_tier";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_TIER = "tier";
+    private static final String KEY_PROBE_SCORE = "probe_score";
+
+    // 计算探测时长上限
+    private static final long PROBE_DURATION_NS = 8_000_000L;
+
+    private static volatile Result result;
+
+    /**
+     * 分级结果（不可变）
+     */
+    public static final class Result {
+        public final int tier;
+        public final long totalMemMb;
+        public final int cpuCores;
+        public final int maxCpuFreqMhz;
+        public final int probeScore;
+        public final boolean fromCache;
+
+        Result(int tier, long totalMemMb, int cpuCores, int maxCpuFreqMhz, int probeScore, boolean fromCache) {
+            this.tier = tier;
+            this.totalMemMb = totalMemMb;
+            this.cpuCores = cpuCores;
+            this.maxCpuFreqMhz = maxCpuFreqMhz;
+            this.probeScore = probeScore;
+            this.fromCache = fromCache;
+        }
+
+        /**
+         * 推荐帧率
+         */
+        public int getFrameRate() {
+            return tier == TIER_LOW ? 30 : 60;
+        }
+
+        /**
+         * 推荐特效质量：0 精简，1 标准，2 完整
+         */
+        public int getEffectQuality() {
+            return tier;
+        }
+
+        /**
+         * 推荐广告预加载深度
+         */
+        public int getAdPoolDepth() {
+            return tier + 1;
+        }
+
+        public String toJson() {
+            JSONObject json = new JSONObject();
+            try {
+                json.put("tier", tier);
+                json.put("frameRate", getFrameRate());
+                json.put("effectQuality", getEffectQuality());
+                json.put("adPoolDepth", getAdPoolDepth());
+                json.put("totalMemMb", totalMemMb);
+                json.put("cpuCores", cpuCores);
+                json.put("maxCpuFreqMhz", maxCpuFreqMhz);
+                json.put("apiLevel", Build.VERSION.SDK_INT);
+                json.put("probeScore", probeScore);
+            } catch (JSONException e) {
+                Log.e(TAG, "构造设备分级JSON失败", e);
+            }
+            return json.toString();
+        }
+    }
+
+    private DeviceTierClassifier() {}
+
+    /**
+     * 获取设备分级（首次调用时计算，之后直接返回缓存）
+     */
+    public static Result classify(Context context) {
+        Result current = result;
+        if (current == null) {
+            synchronized (DeviceTierClassifier.class) {
+                current = result;
+                if (current == null) {
+                    current = load(context.getApplicationContext());
+                    result = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在后台线程计算设备分级（App.onCreate中调用，探测和cpufreq读取不占用主线程）
+     */
+    public static void classifyAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        NativeExecutors.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                classify(appContext);
+            }
+        });
+    }
+
+    /**
+     * 获取已计算的分级，尚未完成时返回null（不阻塞）
+     */
+    public static Result getResult() {
+        return result;
+    }
+
+    /**
+     * 读取上次保存的分级（只读取SharedPreferences，不做探测，可在主线程调用）
+     * 从未分级或系统指纹变化时返回defaultTier
+     */
+    public static int getLastKnownTier(Context context, int defaultTier) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (Build.FINGERPRINT.equals(prefs.getString(KEY_FINGERPRINT, null))) {
+            return prefs.getInt(KEY_TIER, defaultTier);
+        }
+        return defaultTier;
+    }
+
+    /**
+     * 获取分级JSON（供JS通过反射调用，在游戏线程执行，不做探测）
+     * 尚未计算完成时返回上次保存的分级并在后台开始计算，从未分级时返回空字符串
+     */
+    public static String getTierJson() {
+        Result current = result;
+        if (current == null) {
+            Context context = App.getContext();
+            if (context == null) {
+                return "";
+            }
+            classifyAsync(context);
+            current = lastKnownResult(context);
+            if (current == null) {
+                return "";
+            }
+        }
+        return current.toJson();
+    }
+
+    /**
+     * 用上次保存的分级构造结果（只读取SharedPreferences），从未分级或系统指纹变化时返回null
+     */
+    private static Result lastKnownResult(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (!Build.FINGERPRINT.equals(prefs.getString(KEY_FINGERPRINT, null)) || !prefs.contains(KEY_TIER)) {
+            return null;
+        }
+        return new Result(prefs.getInt(KEY_TIER, TIER_MID), 0, Runtime.getRuntime().availableProcessors(), 0,
+            prefs.getInt(KEY_PROBE_SCORE, 0), true);
+    }
+
+    private static Result load(Context context) {
+        long totalMemMb = readTotalMemMb(context);
+        int cpuCores = Runtime.getRuntime().availableProcessors();
+        int maxFreqMhz = readMaxCpuFreqMhz(cpuCores);
+
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        if (Build.FINGERPRINT.equals(prefs.getString(KEY_FINGERPRINT, null))) {
+            Result cached = new Result(prefs.getInt(KEY_TIER, TIER_MID), totalMemMb, cpuCores, maxFreqMhz,
+                prefs.getInt(KEY_PROBE_SCORE, 0), true);
+            Log.d(TAG, "使用缓存的设备分级: " + cached.tier);
+            return cached;
+        }
+
+        int probeScore = runComputeProbe();
+        int tier = computeTier(totalMemMb, cpuCores, maxFreqMhz, Build.VERSION.SDK_INT, probeScore);
+        prefs.edit()
+            .putString(KEY_FINGERPRINT, Build.FINGERPRINT)
+            .putInt(KEY_TIER, tier)
+            .putInt(KEY_PROBE_SCORE, probeScore)
+            .apply();
+
+        Log.e(TAG, "设备分级完成: tier=" + tier + ", 内存=" + totalMemMb + "MB, 核数=" + cpuCores
+            + ", 主频=" + maxFreqMhz + "MHz, API=" + Build.VERSION.SDK_INT + ", 探测分=" + probeScore);
+        return new Result(tier, totalMemMb, cpuCores, maxFreqMhz, probeScore, false);
+    }
+
+    /**
+     * 综合各项指标打分，每项0-2分
+     */
+    static int computeTier(long totalMemMb, int cpuCores, int maxFreqMhz, int apiLevel, int probeScore) {
+        // 内存是低端机的硬性门槛
+        if (totalMemMb > 0 && totalMemMb <= 3072) {
+            return TIER_LOW;
+        }
+
+        int score = 0;
+        score += totalMemMb >= 8192 ? 2 : totalMemMb >= 6144 ? 1 : 0;
+        score += cpuCores >= 8 ? 2 : cpuCores >= 6 ? 1 : 0;
+        score += maxFreqMhz >= 2600 ? 2 : maxFreqMhz >= 2000 ? 1 : 0;
+        score += apiLevel >= Build.VERSION_CODES.R ? 2 : apiLevel >= Build.VERSION_CODES.O ? 1 : 0;
+        score += probeScore >= 400 ? 2 : probeScore >= 150 ? 1 : 0;
+
+        if (score >= 8) {
+            return TIER_HIGH;
+        } else if (score >= 4) {
+            return TIER_MID;
+        }
+        return TIER_LOW;
+    }
+
+    private static long readTotalMemMb(Context context) {
+        try {
+            ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+            ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+            am.getMemoryInfo(memoryInfo);
+            return memoryInfo.totalMem / (1024 * 1024);
+        } catch (Exception e) {
+            Log.e(TAG, "获取内存信息失败: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private static int readMaxCpuFreqMhz(int cpuCores) {
+        int maxKhz = 0;
+        for (int i = 0; i < cpuCores; i++) {
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new FileReader("/sys/devices/system/cpu/cpu" + i + "/cpufreq/cpuinfo_max_freq"));
+                String line = reader.readLine();
+                if (line != null) {
+                    maxKhz = Math.max(maxKhz, Integer.parseInt(line.trim()));
+                }
+            } catch (Exception e) {
+                // 部分设备不开放cpufreq节点，忽略
+            } finally {
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (Exception ignored) {
+                    }
+                }
+            }
+        }
+        return maxKhz / 1000;
+    }
+
+    /**
+     * 短暂的计算探测：在固定时长内执行整数/浮点混合运算，返回每毫秒完成的轮数
+     */
+    private static int runComputeProbe() {
+        long start = SystemClock.elapsedRealtimeNanos();
+        long deadline = start + PROBE_DURATION_NS;
+        long rounds = 0;
+        long acc = 17;
+        double f = 1.0;
+        long now;
+        do {
+            for (int i = 0; i < 1000; i++) {
+                acc = acc * 31 + (acc >>> 7) ^ i;
+                f = f * 1.0000001 + 0.5;
+            }
+            rounds++;
+            now = SystemClock.elapsedRealtimeNanos();
+        } while (now < deadline);
+        // 防止运算被优化掉
+        if (acc == 0 && f == 0) {
+            Log.d(TAG, "probe");
+        }
+        long elapsedMs = Math.max(1, (now - start) / 1_000_000L);
+        return (int) (rounds / elapsedMs);
+    }
+}
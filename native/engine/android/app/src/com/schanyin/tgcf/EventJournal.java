@@ -0,0 +1,491 @@
+package com.schanyin.tgcf;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+
+/**
+ * 隐私同意前的统计事件日志
+ * 用户同意隐私政策之前，友盟和巨量引擎事件追加写入内存映射文件（只写内存，不触发系统调用），
+ * 同意并完成SDK初始化后按批次回放；进程崩溃后重新打开时校验每条记录，截断写了一半的尾部记录。
+ * 文件映射和崩溃恢复在日志专用线程执行，打开期间的事件先暂存在内存中；
+ * 回放进度只在SDK确认批次已分发后才写入文件，进程中途被杀时未确认的批次下次重新回放
+ *
+ * 文件格式：头部 [magic int][version int][已回放偏移 int][保留 int]，
+ * 记录 [长度 int][CRC32 int][通道 byte][属性类型 byte][采样权重 int][事件ID长度 short][事件ID][属性长度 int][属性]
+ * 长度最后写入，长度为0表示日志结尾
+ */
+public class EventJournal {
+    private static final String TAG = "EventJournal";
+
+    // 事件通道
+    public static final int CHANNEL_UMENG = 1;
+    public static final int CHANNEL_CONVERT = 2;
+
+    // 属性类型
+    static final int KIND_NONE = 0;
+    static final int KIND_JSON = 1;
+    static final int KIND_ENCODED = 2;
+
+    private static final String FILE_NAME = "analytics_journal.bin";
+    private static final int FILE_SIZE = 256 * 1024;
+    private static final int MAGIC = 0x454A4E4C;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int OFFSET_REPLAYED = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    // 每批回放的记录数，批次之间等待统计管道消化
+    private static final int REPLAY_BATCH_SIZE = 64;
+    private static final long REPLAY_BATCH_WAIT_MS = 500;
+    // 回放结束前等待最后批次分发确认的次数（每次最多REPLAY_BATCH_WAIT_MS）
+    private static final int REPLAY_CONFIRM_ATTEMPTS = 20;
+    // 打开期间内存暂存的记录上限
+    private static final int MAX_PENDING_RECORDS = 256;
+    // 批量清零用的零块
+    private static final byte[] ZERO_BLOCK = new byte[8192];
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // 状态：缓冲中（未同意）、回放中、直通、打开中（文件尚未映射，事件暂存内存）
+    private static final int STATE_BUFFERING = 0;
+    private static final int STATE_REPLAYING = 1;
+    private static final int STATE_LIVE = 2;
+    private static final int STATE_OPENING = 3;
+
+    /**
+     * 回放目标，按通道把事件交给对应SDK
+     */
+    public interface ReplayTarget {
+        void replay(int channel, AnalyticsPipeline.Event event);
+
+        /**
+         * 等待已回放的事件分发完成
+         * @return 全部确认分发返回true，超时或SDK未就绪返回false
+         */
+        boolean awaitDispatched(long timeoutMs);
+    }
+
+    private static EventJournal instance;
+
+    // 打开、恢复和回放都在该线程串行执行，不占用主线程和io线程池
+    private final ExecutorService executor = NativeExecutors.newPool("event-journal", 1);
+
+    private volatile int state = STATE_LIVE;
+    private File file;
+    private MappedByteBuffer buffer;
+    private int writeOffset = HEADER_SIZE;
+    private int replayOffset = HEADER_SIZE;
+    private final CRC32 crc = new CRC32();
+    private byte[] checksumScratch = new byte[1024];
+    // 打开期间暂存的记录负载
+    private final List<byte[]> pendingRecords = new ArrayList<>();
+
+    private long appendedCount = 0;
+    private long droppedCount = 0;
+    private long replayedCount = 0;
+    private int recoveredCount = 0;
+    private int truncatedBytes = 0;
+
+    public static synchronized EventJournal getInstance() {
+        if (instance == null) {
+            instance = new EventJournal();
+        }
+        return instance;
+    }
+
+    private EventJournal() {}
+
+    /**
+     * 打开日志（App.onCreate中调用）
+     * 主线程只检查文件是否存在，映射和崩溃恢复提交到日志线程；
+     * 未同意隐私政策时进入缓冲状态；已同意但上次有未回放完的记录时进入回放等待状态
+     * @param consented 是否已同意隐私政策
+     */
+    public synchronized void open(Context context, final boolean consented) {
+        file = new File(context.getFilesDir(), FILE_NAME);
+        if (consented && !file.exists()) {
+            state = STATE_LIVE;
+            return;
+        }
+        state = STATE_OPENING;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                openMapped(consented);
+            }
+        });
+    }
+
+    private void openMapped(boolean consented) {
+        MappedByteBuffer mapped;
+        try {
+            boolean fresh = !file.exists() || file.length() == 0;
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(FILE_SIZE);
+                mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+            } finally {
+                // 映射建立后关闭文件不影响映射
+                raf.close();
+            }
+            // 打开中append只写暂存列表，恢复不需要持锁
+            recover(mapped, fresh);
+        } catch (Exception e) {
+            Log.e(TAG, "打开统计事件日志失败，事件将直接上报: " + e.getMessage(), e);
+            synchronized (this) {
+                if (!pendingRecords.isEmpty()) {
+                    Log.e(TAG, "打开期间暂存的统计事件丢弃: " + pendingRecords.size() + "条");
+                    droppedCount += pendingRecords.size();
+                    pendingRecords.clear();
+                }
+                buffer = null;
+                state = STATE_LIVE;
+            }
+            return;
+        }
+        synchronized (this) {
+            buffer = mapped;
+            for (int i = 0; i < pendingRecords.size(); i++) {
+                writeRecord(pendingRecords.get(i));
+            }
+            pendingRecords.clear();
+            if (consented && replayOffset >= writeOffset) {
+                // 已同意且没有待回放的记录
+                discard();
+                state = STATE_LIVE;
+            } else {
+                // 未同意时缓冲；已同意时继续缓冲新事件，等待回放以保证顺序
+                state = consented ? STATE_REPLAYING : STATE_BUFFERING;
+            }
+            Log.e(TAG, "统计事件日志已打开: 恢复" + recoveredCount + "条，截断" + truncatedBytes + "字节，待回放"
+                + (writeOffset - replayOffset) + "字节");
+        }
+    }
+
+    /**
+     * 是否需要写入日志（未同意或回放尚未追上）
+     */
+    public boolean isBuffering() {
+        return state != STATE_LIVE;
+    }
+
+    /**
+     * 缓冲事件
+     * @return true 已由日志接管（写入或因空间不足丢弃）；false 应直接上报
+     */
+    public boolean append(int channel, AnalyticsPipeline.Event event) {
+        if (state == STATE_LIVE) {
+            return false;
+        }
+        int kind = KIND_NONE;
+        String attributes = null;
+        if (event.attributeMap != null) {
+            // JSON保留数值类型，回放时按数值属性上报
+            kind = KIND_JSON;
+            attributes = new JSONObject(event.attributeMap).toString();
+        } else if (event.keys != null) {
+            kind = KIND_ENCODED;
+            attributes = encode(event.keys, event.values);
+        } else if (event.encodedAttributes != null) {
+            kind = KIND_ENCODED;
+            attributes = event.encodedAttributes;
+        } else if (event.attributesJson != null) {
+            kind = KIND_JSON;
+            attributes = event.attributesJson;
+        }
+        byte[] id = event.eventId.getBytes(UTF_8);
+        byte[] attrs = attributes != null ? attributes.getBytes(UTF_8) : new byte[0];
+        if (id.length > Short.MAX_VALUE) {
+            Log.e(TAG, "事件ID过长，丢弃");
+            return true;
+        }
+        // 负载在锁外编码，锁内只做一次批量拷贝
+        ByteBuffer payload = ByteBuffer.allocate(1 + 1 + 4 + 2 + id.length + 4 + attrs.length);
+        payload.put((byte) channel);
+        payload.put((byte) kind);
+        payload.putInt(event.sampleWeight);
+        payload.putShort((short) id.length);
+        payload.put(id);
+        payload.putInt(attrs.length);
+        payload.put(attrs);
+
+        synchronized (this) {
+            if (state == STATE_LIVE) {
+                // 回放刚好完成，交给调用方直接上报
+                return false;
+            }
+            if (state == STATE_OPENING) {
+                if (pendingRecords.size() >= MAX_PENDING_RECORDS) {
+                    droppedCount++;
+                } else {
+                    pendingRecords.add(payload.array());
+                }
+                return true;
+            }
+            writeRecord(payload.array());
+        }
+        return true;
+    }
+
+    /**
+     * 写入一条记录，调用方持有锁且buffer已映射
+     */
+    private void writeRecord(byte[] payload) {
+        if (buffer == null || writeOffset + RECORD_HEADER_SIZE + payload.length > FILE_SIZE) {
+            droppedCount++;
+            return;
+        }
+        buffer.position(writeOffset + RECORD_HEADER_SIZE);
+        buffer.put(payload);
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        buffer.putInt(writeOffset + 4, (int) crc.getValue());
+        // 长度最后写入，作为记录的提交标记
+        buffer.putInt(writeOffset, payload.length);
+        writeOffset += RECORD_HEADER_SIZE + payload.length;
+        appendedCount++;
+    }
+
+    /**
+     * 开始在日志线程按批次回放（SDK初始化完成后调用）
+     * 排在打开任务之后执行；回放期间新事件继续写入日志，回放追上写入位置后切换为直通
+     */
+    public synchronized void startReplay(final ReplayTarget target) {
+        if (state == STATE_LIVE) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (EventJournal.this) {
+                    if (state == STATE_LIVE) {
+                        // 打开失败或已同意且没有待回放的记录
+                        return;
+                    }
+                    state = STATE_REPLAYING;
+                }
+                try {
+                    replayLoop(target);
+                } catch (Exception e) {
+                    Log.e(TAG, "统计事件回放失败: " + e.getMessage(), e);
+                    synchronized (EventJournal.this) {
+                        state = STATE_LIVE;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 日志状态（供调试使用）
+     */
+    public synchronized JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("state", state);
+            json.put("appended", appendedCount);
+            json.put("dropped", droppedCount);
+            json.put("replayed", replayedCount);
+            json.put("recovered", recoveredCount);
+            json.put("truncatedBytes", truncatedBytes);
+            json.put("pendingBytes", writeOffset - replayOffset);
+            json.put("pendingRecords", pendingRecords.size());
+        } catch (JSONException e) {
+            Log.e(TAG, "构造日志统计JSON失败", e);
+        }
+        return json;
+    }
+
+    private void replayLoop(ReplayTarget target) throws InterruptedException {
+        int[] channels = new int[REPLAY_BATCH_SIZE];
+        List<AnalyticsPipeline.Event> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+        // 已确认分发的偏移，只有它会写入文件
+        int confirmedOffset;
+        synchronized (this) {
+            confirmedOffset = replayOffset;
+        }
+        while (true) {
+            batch.clear();
+            int batchEnd;
+            synchronized (this) {
+                while (batch.size() < REPLAY_BATCH_SIZE && replayOffset < writeOffset) {
+                    int length = buffer.getInt(replayOffset);
+                    channels[batch.size()] = buffer.get(replayOffset + RECORD_HEADER_SIZE);
+                    batch.add(readEvent(replayOffset + RECORD_HEADER_SIZE, length));
+                    replayOffset += RECORD_HEADER_SIZE + length;
+                }
+                batchEnd = replayOffset;
+            }
+            if (batch.isEmpty()) {
+                if (confirmedOffset < batchEnd) {
+                    if (!awaitConfirmed(target)) {
+                        synchronized (this) {
+                            // 保留日志文件，未确认的记录下次启动重新回放（可能重复，但不丢失）
+                            Log.e(TAG, "统计事件回放未确认分发，保留" + (writeOffset - confirmedOffset)
+                                + "字节待下次回放");
+                            buffer = null;
+                            state = STATE_LIVE;
+                        }
+                        return;
+                    }
+                    confirmedOffset = batchEnd;
+                }
+                synchronized (this) {
+                    if (replayOffset < writeOffset) {
+                        // 确认期间又有新事件写入，继续回放
+                        continue;
+                    }
+                    Log.e(TAG, "统计事件回放完成: " + replayedCount + "条，空间不足丢弃: " + droppedCount + "条");
+                    discard();
+                    state = STATE_LIVE;
+                    return;
+                }
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                target.replay(channels[i], batch.get(i));
+            }
+            boolean confirmed = target.awaitDispatched(REPLAY_BATCH_WAIT_MS);
+            synchronized (this) {
+                replayedCount += batch.size();
+                if (confirmed) {
+                    // 记录已确认的回放进度，进程在回放中途被杀时不重复上报已分发的批次；
+                    // 未确认时不推进，后续批次确认后一并推进（分发队列按顺序处理）
+                    confirmedOffset = batchEnd;
+                    buffer.putInt(OFFSET_REPLAYED, confirmedOffset);
+                }
+            }
+        }
+    }
+
+    /**
+     * 回放到结尾后等待最后几批分发确认，确认后写入进度
+     */
+    private boolean awaitConfirmed(ReplayTarget target) {
+        for (int i = 0; i < REPLAY_CONFIRM_ATTEMPTS; i++) {
+            if (target.awaitDispatched(REPLAY_BATCH_WAIT_MS)) {
+                synchronized (this) {
+                    buffer.putInt(OFFSET_REPLAYED, replayOffset);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private AnalyticsPipeline.Event readEvent(int payloadStart, int length) {
+        buffer.position(payloadStart + 1);
+        int kind = buffer.get();
+        int weight = buffer.getInt();
+        byte[] id = new byte[buffer.getShort()];
+        buffer.get(id);
+        byte[] attrs = new byte[buffer.getInt()];
+        buffer.get(attrs);
+        String eventId = new String(id, UTF_8);
+        String attributes = attrs.length > 0 ? new String(attrs, UTF_8) : null;
+        return new AnalyticsPipeline.Event(eventId,
+            kind == KIND_JSON ? attributes : null,
+            kind == KIND_ENCODED ? attributes : null,
+            null, null, weight);
+    }
+
+    /**
+     * 崩溃恢复：从头校验记录，遇到长度越界或校验和不符的记录即视为写了一半的尾部，清零截断
+     * @param fresh 新建的文件（setLength扩展的部分已经是0，不需要清零）
+     */
+    private void recover(MappedByteBuffer buffer, boolean fresh) {
+        if (buffer.getInt(0) != MAGIC) {
+            // 新文件或无法识别的格式，重新初始化
+            if (!fresh) {
+                zero(buffer, 0, FILE_SIZE);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(OFFSET_REPLAYED, HEADER_SIZE);
+            writeOffset = HEADER_SIZE;
+            replayOffset = HEADER_SIZE;
+            return;
+        }
+        int pos = HEADER_SIZE;
+        int count = 0;
+        while (pos + RECORD_HEADER_SIZE <= FILE_SIZE) {
+            int length = buffer.getInt(pos);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || pos + RECORD_HEADER_SIZE + length > FILE_SIZE
+                || buffer.getInt(pos + 4) != checksum(buffer, pos + RECORD_HEADER_SIZE, length)) {
+                truncatedBytes = FILE_SIZE - pos;
+                zero(buffer, pos, FILE_SIZE);
+                Log.e(TAG, "日志尾部记录损坏，已截断，偏移: " + pos);
+                break;
+            }
+            pos += RECORD_HEADER_SIZE + length;
+            count++;
+        }
+        writeOffset = pos;
+        int replayed = buffer.getInt(OFFSET_REPLAYED);
+        replayOffset = replayed >= HEADER_SIZE && replayed <= writeOffset ? replayed : HEADER_SIZE;
+        recoveredCount = count;
+    }
+
+    /**
+     * 全部回放完成，删除日志文件
+     */
+    private void discard() {
+        buffer = null;
+        writeOffset = HEADER_SIZE;
+        replayOffset = HEADER_SIZE;
+        if (file != null && file.exists() && !file.delete()) {
+            Log.e(TAG, "删除统计事件日志失败");
+        }
+    }
+
+    /**
+     * 批量拷贝到暂存数组后计算CRC，避免逐字节读取映射内存
+     */
+    private int checksum(ByteBuffer source, int start, int length) {
+        if (checksumScratch.length < length) {
+            checksumScratch = new byte[length];
+        }
+        source.position(start);
+        source.get(checksumScratch, 0, length);
+        crc.reset();
+        crc.update(checksumScratch, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private static void zero(ByteBuffer target, int from, int to) {
+        target.position(from);
+        int remaining = to - from;
+        while (remaining > 0) {
+            int n = Math.min(remaining, ZERO_BLOCK.length);
+            target.put(ZERO_BLOCK, 0, n);
+            remaining -= n;
+        }
+    }
+
+    private static String encode(String[] keys, String[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                sb.append(UmengHelper.ATTR_PAIR_SEPARATOR);
+            }
+            sb.append(keys[i]).append(UmengHelper.ATTR_KV_SEPARATOR).append(values[i]);
+        }
+        return sb.toString();
+    }
+}
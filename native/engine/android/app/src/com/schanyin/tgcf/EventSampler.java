@@ -0,0 +1,228 @@
+package com.schanyin.tgcf;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 统计事件采样与限流
+ * 按事件ID配置策略：全量、1/N采样或令牌桶限流。
+ * 放行的事件带上采样权重（代表的原始事件数），便于看板按权重还原。
+ * 未单独配置的事件按default策略为每个事件ID各建一份计数和令牌桶，互不影响
+ */
+public class EventSampler {
+    private static final String TAG = "EventSampler";
+
+    // admit返回值：被抑制
+    public static final int SUPPRESSED = 0;
+    // admit返回值：放行且不需要附加权重（全量策略或未配置）
+    public static final int UNWEIGHTED = -1;
+
+    private static final String MODE_ALWAYS = "always";
+    private static final String MODE_SAMPLE = "sample";
+    private static final String MODE_RATE = "rate";
+    private static final String DEFAULT_KEY = "default";
+    // 按default策略创建的事件ID数上限，超出后的事件ID共用一份溢出策略
+    private static final int MAX_DEFAULT_INSTANCES = 256;
+
+    /**
+     * 单个事件的策略与计数
+     */
+    static final class Policy {
+        final String mode;
+        final int sampleN;
+        final double permitsPerSecond;
+        final double burst;
+
+        // 采样计数
+        final AtomicLong seen = new AtomicLong();
+        // 自上次放行以来被抑制的次数（用于计算权重）
+        final AtomicLong pendingSuppressed = new AtomicLong();
+        final AtomicLong suppressed = new AtomicLong();
+        final AtomicLong admitted = new AtomicLong();
+
+        // 令牌桶状态，由synchronized保护
+        private double tokens;
+        private long lastRefillNs;
+
+        /**
+         * 以本策略为模板创建一份独立计数的新策略
+         */
+        Policy copy() {
+            return new Policy(mode, sampleN, permitsPerSecond, burst);
+        }
+
+        Policy(String mode, int sampleN, double permitsPerSecond, double burst) {
+            this.mode = mode;
+            this.sampleN = Math.max(1, sampleN);
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = Math.max(1, burst);
+            this.tokens = this.burst;
+            this.lastRefillNs = SystemClock.elapsedRealtimeNanos();
+        }
+
+        int admit() {
+            boolean pass;
+            if (MODE_SAMPLE.equals(mode)) {
+                pass = seen.getAndIncrement() % sampleN == 0;
+            } else if (MODE_RATE.equals(mode)) {
+                pass = tryAcquire();
+            } else {
+                admitted.incrementAndGet();
+                return UNWEIGHTED;
+            }
+            if (!pass) {
+                suppressed.incrementAndGet();
+                pendingSuppressed.incrementAndGet();
+                return SUPPRESSED;
+            }
+            admitted.incrementAndGet();
+            // 权重 = 本次放行事件 + 之前被抑制的事件
+            return (int) Math.min(Integer.MAX_VALUE, pendingSuppressed.getAndSet(0) + 1);
+        }
+
+        private synchronized boolean tryAcquire() {
+            long now = SystemClock.elapsedRealtimeNanos();
+            tokens = Math.min(burst, tokens + (now - lastRefillNs) * permitsPerSecond / 1e9);
+            lastRefillNs = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * default策略模板及按事件ID创建的实例，配置更新时整体替换
+     */
+    private static final class DefaultPolicies {
+        final Policy template;
+        final ConcurrentHashMap<String, Policy> instances = new ConcurrentHashMap<>();
+        // 事件ID数超过上限后共用的策略
+        final Policy overflow;
+
+        DefaultPolicies(Policy template) {
+            this.template = template;
+            this.overflow = template.copy();
+        }
+
+        Policy forEvent(String eventId) {
+            Policy policy = instances.get(eventId);
+            if (policy != null) {
+                return policy;
+            }
+            if (instances.size() >= MAX_DEFAULT_INSTANCES) {
+                return overflow;
+            }
+            Policy created = template.copy();
+            Policy existing = instances.putIfAbsent(eventId, created);
+            return existing != null ? existing : created;
+        }
+    }
+
+    private volatile Map<String, Policy> policies = new HashMap<>();
+    private volatile DefaultPolicies defaultPolicies = null;
+    private final AtomicLong totalSuppressed = new AtomicLong();
+
+    /**
+     * 加载策略配置，替换现有策略
+     * 格式：{"item_drop": {"mode": "sample", "n": 10},
+     *       "item_merge": {"mode": "rate", "perSecond": 2, "burst": 5},
+     *       "default": {"mode": "always"}}
+     */
+    public void configure(String json) throws JSONException {
+        JSONObject config = new JSONObject(json);
+        Map<String, Policy> parsed = new HashMap<>();
+        Policy parsedDefault = null;
+        Iterator<String> keys = config.keys();
+        while (keys.hasNext()) {
+            String eventId = keys.next();
+            JSONObject item = config.getJSONObject(eventId);
+            Policy policy = new Policy(
+                item.optString("mode", MODE_ALWAYS),
+                item.optInt("n", 1),
+                item.optDouble("perSecond", 1),
+                item.optDouble("burst", 1));
+            if (DEFAULT_KEY.equals(eventId)) {
+                parsedDefault = policy;
+            } else {
+                parsed.put(eventId, policy);
+            }
+        }
+        policies = parsed;
+        defaultPolicies = parsedDefault != null ? new DefaultPolicies(parsedDefault) : null;
+        Log.d(TAG, "统计事件策略已加载: " + parsed.size() + "条");
+    }
+
+    /**
+     * 判断事件是否放行
+     * @return SUPPRESSED 被抑制；UNWEIGHTED 放行且无权重；其他值为放行事件的采样权重
+     */
+    public int admit(String eventId) {
+        Policy policy = policies.get(eventId);
+        if (policy == null) {
+            DefaultPolicies defaults = defaultPolicies;
+            if (defaults == null) {
+                return UNWEIGHTED;
+            }
+            policy = defaults.forEvent(eventId);
+        }
+        int result = policy.admit();
+        if (result == SUPPRESSED) {
+            totalSuppressed.incrementAndGet();
+        }
+        return result;
+    }
+
+    public long getTotalSuppressed() {
+        return totalSuppressed.get();
+    }
+
+    /**
+     * 各事件的放行/抑制计数
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("totalSuppressed", totalSuppressed.get());
+            JSONObject perEvent = new JSONObject();
+            for (Map.Entry<String, Policy> entry : policies.entrySet()) {
+                Policy policy = entry.getValue();
+                JSONObject item = new JSONObject();
+                item.put("mode", policy.mode);
+                item.put("admitted", policy.admitted.get());
+                item.put("suppressed", policy.suppressed.get());
+                perEvent.put(entry.getKey(), item);
+            }
+            json.put("events", perEvent);
+            DefaultPolicies defaults = defaultPolicies;
+            if (defaults != null) {
+                // default策略的计数为各事件ID实例与溢出策略之和
+                long admitted = defaults.overflow.admitted.get();
+                long suppressed = defaults.overflow.suppressed.get();
+                for (Policy policy : defaults.instances.values()) {
+                    admitted += policy.admitted.get();
+                    suppressed += policy.suppressed.get();
+                }
+                JSONObject item = new JSONObject();
+                item.put("mode", defaults.template.mode);
+                item.put("events", defaults.instances.size());
+                item.put("admitted", admitted);
+                item.put("suppressed", suppressed);
+                json.put(DEFAULT_KEY, item);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "构造采样统计JSON失败", e);
+        }
+        return json;
+    }
+}
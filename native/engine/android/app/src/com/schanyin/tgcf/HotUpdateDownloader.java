@@ -0,0 +1,858 @@
+package com.schanyin.tgcf;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * 热更新包下载器
+ * 服务端支持Range时把文件分块并行下载，写入预分配的.part文件；每块完成后把块的CRC记录到分块表并原子写盘，
+ * 进程被杀后按分块表续传（续传前重新校验已完成块的CRC，并用If-Range确认服务端文件未变化）；
+ * 全部完成后校验整体SHA-256再改名为正式文件。文件按 热更新号_下载地址哈希 命名，地址变化时不会误用旧文件，
+ * 已存在的正式文件重新校验后才复用。
+ * 游戏进行中按限速下载，不与游戏抢带宽；进度按固定间隔合并后发给JS
+ */
+public class HotUpdateDownloader {
+    private static final String TAG = "HotUpdateDownloader";
+
+    static final String DOWNLOAD_DIR = "hot_update";
+    private static final String PART_SUFFIX = ".part";
+    private static final String MAP_SUFFIX = ".map.json";
+    private static final String FILE_SUFFIX = ".zip";
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int PARALLEL_CHUNKS = 3;
+    private static final int CHUNK_ATTEMPTS = 3;
+    private static final long RETRY_BASE_MS = 1000;
+    private static final int CONNECT_TIMEOUT_MS = 10000;
+    private static final int READ_TIMEOUT_MS = 20000;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    // 游戏进行中的总下载速度上限
+    private static final long GAMEPLAY_LIMIT_BYTES_PER_SEC = 256 * 1024;
+    // 进度事件的最小间隔
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    static final String EVENT_PROGRESS = "hotUpdateProgress";
+    static final String EVENT_RESULT = "hotUpdateResult";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 下载任务参数
+     */
+    static final class Task {
+        final int versionCode;
+        final int updateNumber;
+        final String url;
+        // 整包的SHA-256（十六进制），缺少时拒绝下载
+        final String sha256;
+        // 可选，整包大小，用于在服务端不返回长度时校验
+        final long size;
+
+        Task(int versionCode, int updateNumber, String url, String sha256, long size) {
+            this.versionCode = versionCode;
+            this.updateNumber = updateNumber;
+            this.url = url;
+            this.sha256 = sha256;
+            this.size = size;
+        }
+
+        /**
+         * 解析{"versionCode","updateNumber","url","sha256","size"}
+         */
+        static Task fromJson(String data) throws JSONException {
+            JSONObject json = new JSONObject(data);
+            String sha256 = json.optString("sha256", "");
+            return new Task(json.getInt("versionCode"), json.getInt("updateNumber"), json.getString("url"),
+                sha256.isEmpty() ? null : sha256.toLowerCase(), json.optLong("size", -1));
+        }
+
+        boolean sameAs(Task other) {
+            return other != null && updateNumber == other.updateNumber && url.equals(other.url);
+        }
+
+        /**
+         * 本地文件名（不含后缀）：热更新号_下载地址哈希
+         */
+        String fileKey() {
+            return fileKeyOf(updateNumber, url);
+        }
+    }
+
+    /**
+     * 分块表：各块完成时的CRC（未完成为-1），由下载线程共同更新，修改和写盘都在表的锁内
+     */
+    private static final class ChunkMap {
+        final String url;
+        final String validator;
+        final long length;
+        final int chunkSize;
+        final long[] crcs;
+
+        ChunkMap(String url, String validator, long length, int chunkSize) {
+            this.url = url;
+            this.validator = validator;
+            this.length = length;
+            this.chunkSize = chunkSize;
+            int count = (int) ((length + chunkSize - 1) / chunkSize);
+            this.crcs = new long[count];
+            for (int i = 0; i < count; i++) {
+                crcs[i] = -1;
+            }
+        }
+
+        long chunkStart(int index) {
+            return (long) index * chunkSize;
+        }
+
+        long chunkEnd(int index) {
+            return Math.min(length, chunkStart(index) + chunkSize) - 1;
+        }
+
+        synchronized long completedBytes() {
+            long bytes = 0;
+            for (int i = 0; i < crcs.length; i++) {
+                if (crcs[i] >= 0) {
+                    bytes += chunkEnd(i) - chunkStart(i) + 1;
+                }
+            }
+            return bytes;
+        }
+
+        /**
+         * 写入临时文件后改名，进程在任何时刻被杀都不会留下半个分块表
+         */
+        synchronized void save(File file) {
+            try {
+                JSONObject json = new JSONObject();
+                json.put("url", url);
+                json.put("validator", validator);
+                json.put("length", length);
+                json.put("chunkSize", chunkSize);
+                JSONArray array = new JSONArray();
+                for (long crc : crcs) {
+                    array.put(crc);
+                }
+                json.put("crcs", array);
+                File tmp = new File(file.getPath() + ".tmp");
+                FileOutputStream out = new FileOutputStream(tmp);
+                try {
+                    out.write(json.toString().getBytes(UTF_8));
+                    out.getFD().sync();
+                } finally {
+                    out.close();
+                }
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("rename failed");
+                }
+            } catch (JSONException | IOException e) {
+                Log.w(TAG, "保存分块表失败: " + e.getMessage());
+            }
+        }
+
+        static ChunkMap load(File file) {
+            if (!file.exists()) {
+                return null;
+            }
+            try {
+                byte[] data = new byte[(int) file.length()];
+                FileInputStream in = new FileInputStream(file);
+                try {
+                    int read = 0;
+                    while (read < data.length) {
+                        int n = in.read(data, read, data.length - read);
+                        if (n < 0) {
+                            break;
+                        }
+                        read += n;
+                    }
+                } finally {
+                    in.close();
+                }
+                JSONObject json = new JSONObject(new String(data, UTF_8));
+                ChunkMap map = new ChunkMap(json.getString("url"), json.optString("validator", ""),
+                    json.getLong("length"), json.getInt("chunkSize"));
+                JSONArray array = json.getJSONArray("crcs");
+                if (array.length() != map.crcs.length) {
+                    return null;
+                }
+                for (int i = 0; i < array.length(); i++) {
+                    map.crcs[i] = array.getLong(i);
+                }
+                return map;
+            } catch (JSONException | IOException e) {
+                Log.w(TAG, "分块表无效，重新下载: " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 服务端在续传时返回了整个文件（文件已变化或不支持Range），只能重新下载
+     */
+    private static final class RestartException extends IOException {
+        RestartException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 下载被暂停或被新任务替换
+     */
+    private static final class CancelledException extends IOException {
+        CancelledException() {
+            super("cancelled");
+        }
+    }
+
+    private static HotUpdateDownloader instance;
+
+    private final File dir;
+    private final ExecutorService coordinator =
+        Executors.newSingleThreadExecutor(NativeExecutors.newThreadFactory("hot-update-main"));
+    private final ExecutorService chunkWorkers =
+        Executors.newFixedThreadPool(PARALLEL_CHUNKS, NativeExecutors.newThreadFactory("hot-update"));
+
+    // 以下字段由synchronized保护
+    private Task current;
+    private ScriptSender sender;
+
+    private volatile boolean cancelled = false;
+    // 一个块最终失败后让同一轮的其他块尽快结束
+    private volatile boolean abortChunks = false;
+    private volatile boolean gameplayActive = false;
+    private volatile boolean foreground = true;
+
+    // 限速令牌桶，由bucketLock保护
+    private final Object bucketLock = new Object();
+    private long tokens = GAMEPLAY_LIMIT_BYTES_PER_SEC;
+    private long lastRefillAt = SystemClock.elapsedRealtime();
+
+    // 进度
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final AtomicLong lastProgressAt = new AtomicLong();
+    private volatile long totalBytes = -1;
+    private volatile long sessionStartAt = 0;
+    private volatile long sessionStartBytes = 0;
+
+    public static synchronized HotUpdateDownloader getInstance() {
+        if (instance == null) {
+            instance = new HotUpdateDownloader(App.getContext());
+        }
+        return instance;
+    }
+
+    private HotUpdateDownloader(Context context) {
+        dir = new File(context.getFilesDir(), DOWNLOAD_DIR);
+    }
+
+    /**
+     * 开始或继续下载；同一版本已在下载时只更新回调对象，其他版本在下载时先停止它
+     */
+    public void start(String data, ScriptSender sender) {
+        final Task task;
+        try {
+            task = Task.fromJson(data);
+        } catch (JSONException e) {
+            Log.e(TAG, "下载参数解析失败: " + e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            this.sender = sender;
+            if (task.sameAs(current)) {
+                Log.d(TAG, "热更新" + task.updateNumber + "已在下载中");
+                return;
+            }
+            if (current != null) {
+                Log.d(TAG, "停止下载热更新" + current.updateNumber + "，改为下载热更新" + task.updateNumber);
+                cancelled = true;
+            }
+            current = task;
+        }
+        coordinator.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (HotUpdateDownloader.this) {
+                    if (current != task) {
+                        return;
+                    }
+                    cancelled = false;
+                }
+                runTask(task);
+                synchronized (HotUpdateDownloader.this) {
+                    if (current == task) {
+                        current = null;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 暂停当前下载，分块表保留，下次start同一版本时续传
+     */
+    public synchronized void pause() {
+        if (current != null) {
+            cancelled = true;
+            current = null;
+        }
+    }
+
+    /**
+     * 游戏进行中时限速（JS在进入/离开游戏场景时调用）
+     */
+    public void setGameplayActive(boolean active) {
+        gameplayActive = active;
+    }
+
+    /**
+     * 切到后台时不限速（AppActivity.onPause/onResume调用）
+     */
+    public void setForeground(boolean foreground) {
+        this.foreground = foreground;
+    }
+
+    /**
+     * 已下载完成的更新包（未重新校验），不存在时返回null
+     */
+    public File getDownloadedFile(int updateNumber, String url) {
+        File file = new File(dir, fileKeyOf(updateNumber, url) + FILE_SUFFIX);
+        return file.exists() ? file : null;
+    }
+
+    static String fileKeyOf(int updateNumber, String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                sb.append(String.format("%02x", hash[i]));
+            }
+            return updateNumber + "_" + sb;
+        } catch (java.security.NoSuchAlgorithmException e) {
+            return updateNumber + "_" + Integer.toHexString(url.hashCode());
+        }
+    }
+
+    /**
+     * 供JS通过反射调用
+     */
+    public static void setGameplayActiveStatic(boolean active) {
+        getInstance().setGameplayActive(active);
+    }
+
+    private void runTask(Task task) {
+        long startedAt = SystemClock.elapsedRealtime();
+        if (task.sha256 == null) {
+            // 没有服务端下发的摘要就无法确认下载内容，不下载
+            Log.e(TAG, "热更新" + task.updateNumber + "缺少sha256，拒绝下载");
+            sendResult(task, false, "sha256 missing", null, 0, startedAt);
+            return;
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            sendResult(task, false, "mkdir failed", null, 0, startedAt);
+            return;
+        }
+        String key = task.fileKey();
+        deleteStaleDownloads(key);
+        File target = new File(dir, key + FILE_SUFFIX);
+        File part = new File(dir, key + PART_SUFFIX);
+        File mapFile = new File(dir, key + MAP_SUFFIX);
+        if (target.exists()) {
+            // 上次下载完成的文件可能被截断或替换过，校验通过才复用
+            try {
+                verify(task, target);
+                Log.d(TAG, "热更新" + task.updateNumber + "已下载");
+                sendResult(task, true, null, target, 0, startedAt);
+                return;
+            } catch (IOException e) {
+                Log.w(TAG, "已下载的热更新" + task.updateNumber + "校验失败，重新下载: " + e.getMessage());
+            }
+        }
+        try {
+            long resumed;
+            try {
+                resumed = download(task, part, mapFile);
+            } catch (RestartException e) {
+                Log.w(TAG, "无法续传，重新下载: " + e.getMessage());
+                part.delete();
+                mapFile.delete();
+                resumed = download(task, part, mapFile);
+            }
+            verify(task, part);
+            target.delete();
+            if (!part.renameTo(target)) {
+                throw new IOException("rename failed");
+            }
+            mapFile.delete();
+            sendProgress(task, true);
+            Log.d(TAG, "热更新" + task.updateNumber + "下载完成，续传" + resumed + "字节，耗时"
+                + (SystemClock.elapsedRealtime() - startedAt) + "ms");
+            sendResult(task, true, null, target, resumed, startedAt);
+        } catch (CancelledException e) {
+            Log.d(TAG, "热更新" + task.updateNumber + "下载已暂停，已完成" + downloadedBytes.get() + "字节");
+        } catch (IOException e) {
+            Log.e(TAG, "热更新" + task.updateNumber + "下载失败: " + e.getMessage());
+            sendResult(task, false, e.getMessage(), null, 0, startedAt);
+        }
+    }
+
+    /**
+     * 删除其他热更新号或其他下载地址留下的文件（正式文件、.part和分块表），避免旧文件一直占用空间
+     */
+    private void deleteStaleDownloads(String key) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String name = child.getName();
+            boolean download = name.endsWith(FILE_SUFFIX) || name.endsWith(PART_SUFFIX)
+                || name.endsWith(MAP_SUFFIX) || name.endsWith(MAP_SUFFIX + ".tmp");
+            if (download && child.isFile() && !name.startsWith(key + ".")) {
+                Log.d(TAG, "删除旧的下载文件: " + name);
+                child.delete();
+            }
+        }
+    }
+
+    /**
+     * 下载到.part文件
+     * @return 从上次中断处续传的字节数
+     */
+    private long download(Task task, File part, File mapFile) throws IOException {
+        HttpURLConnection probe = open(task.url, "bytes=0-0", null);
+        long length;
+        boolean ranged;
+        String validator;
+        try {
+            int status = probe.getResponseCode();
+            validator = validatorOf(probe);
+            ranged = status == HttpURLConnection.HTTP_PARTIAL;
+            if (ranged) {
+                length = totalFromContentRange(probe.getHeaderField("Content-Range"));
+            } else if (status == HttpURLConnection.HTTP_OK) {
+                length = probe.getContentLength();
+            } else {
+                throw new IOException("HTTP " + status);
+            }
+        } finally {
+            probe.disconnect();
+        }
+        if (task.size > 0 && length > 0 && task.size != length) {
+            throw new IOException("size mismatch: " + length + " != " + task.size);
+        }
+        if (!ranged || length <= 0) {
+            // 不支持Range时只能整包顺序下载，无法续传
+            return downloadWhole(task, part, length);
+        }
+
+        ChunkMap map = ChunkMap.load(mapFile);
+        if (map == null || !map.url.equals(task.url) || map.length != length
+                || !map.validator.equals(validator) || !part.exists()) {
+            part.delete();
+            map = new ChunkMap(task.url, validator, length, CHUNK_SIZE);
+            map.save(mapFile);
+        }
+        RandomAccessFile raf = new RandomAccessFile(part, "rw");
+        try {
+            if (raf.length() != length) {
+                raf.setLength(length);
+            }
+            FileChannel channel = raf.getChannel();
+            revalidateChunks(map, channel);
+            long resumed = map.completedBytes();
+            startSession(length, resumed);
+            abortChunks = false;
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < map.crcs.length; i++) {
+                if (map.crcs[i] < 0) {
+                    futures.add(chunkWorkers.submit(new ChunkDownload(task, map, mapFile, channel, i)));
+                }
+            }
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (failure == null || failure instanceof CancelledException) {
+                        failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                    }
+                    // 一块失败后让其余块尽快结束，已完成的块保留在分块表中
+                    abortChunks = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancelledException();
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            channel.force(true);
+            return resumed;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 续传前重新计算已完成块的CRC，与分块表不一致（写盘未完成就被杀）的块重新下载
+     */
+    private void revalidateChunks(ChunkMap map, FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        int invalid = 0;
+        for (int i = 0; i < map.crcs.length; i++) {
+            if (map.crcs[i] < 0) {
+                continue;
+            }
+            crc.reset();
+            long pos = map.chunkStart(i);
+            long end = map.chunkEnd(i) + 1;
+            while (pos < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(BUFFER_SIZE, end - pos));
+                int n = channel.read(buffer, pos);
+                if (n <= 0) {
+                    break;
+                }
+                crc.update(buffer.array(), 0, n);
+                pos += n;
+            }
+            if (pos < end || crc.getValue() != map.crcs[i]) {
+                map.crcs[i] = -1;
+                invalid++;
+            }
+        }
+        if (invalid > 0) {
+            Log.w(TAG, invalid + "个已完成的块校验失败，重新下载");
+        }
+    }
+
+    /**
+     * 下载单个块，失败时按退避重试
+     */
+    private final class ChunkDownload implements Callable<Void> {
+        private final Task task;
+        private final ChunkMap map;
+        private final File mapFile;
+        private final FileChannel channel;
+        private final int index;
+
+        ChunkDownload(Task task, ChunkMap map, File mapFile, FileChannel channel, int index) {
+            this.task = task;
+            this.map = map;
+            this.mapFile = mapFile;
+            this.channel = channel;
+            this.index = index;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            long backoff = RETRY_BASE_MS;
+            for (int attempt = 1; ; attempt++) {
+                // 排队期间下载已暂停或其他块已失败时不再发起请求
+                if (cancelled || abortChunks) {
+                    throw new CancelledException();
+                }
+                try {
+                    long crc = downloadChunk();
+                    synchronized (map) {
+                        map.crcs[index] = crc;
+                        map.save(mapFile);
+                    }
+                    return null;
+                } catch (CancelledException | RestartException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (attempt >= CHUNK_ATTEMPTS || cancelled || abortChunks) {
+                        throw e;
+                    }
+                    Log.w(TAG, "块" + index + "下载失败，" + backoff + "ms后重试: " + e.getMessage());
+                    SystemClock.sleep(backoff);
+                    backoff *= 2;
+                }
+            }
+        }
+
+        private long downloadChunk() throws IOException {
+            long start = map.chunkStart(index);
+            long end = map.chunkEnd(index);
+            HttpURLConnection conn = open(task.url, "bytes=" + start + "-" + end, map.validator);
+            long written = 0;
+            try {
+                int status = conn.getResponseCode();
+                if (status == HttpURLConnection.HTTP_OK) {
+                    throw new RestartException("server returned full content for range");
+                }
+                if (status != HttpURLConnection.HTTP_PARTIAL) {
+                    throw new IOException("HTTP " + status);
+                }
+                CRC32 crc = new CRC32();
+                InputStream in = conn.getInputStream();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long expected = end - start + 1;
+                while (written < expected) {
+                    if (cancelled || abortChunks) {
+                        throw new CancelledException();
+                    }
+                    int n = in.read(buffer, 0, (int) Math.min(buffer.length, expected - written));
+                    if (n < 0) {
+                        throw new IOException("unexpected end of chunk " + index);
+                    }
+                    throttle(n);
+                    ByteBuffer src = ByteBuffer.wrap(buffer, 0, n);
+                    long pos = start + written;
+                    while (src.hasRemaining()) {
+                        pos += channel.write(src, pos);
+                    }
+                    crc.update(buffer, 0, n);
+                    written += n;
+                    downloadedBytes.addAndGet(n);
+                    sendProgress(task, false);
+                }
+                return crc.getValue();
+            } catch (IOException e) {
+                // 未完成的部分不计入进度，重试时重新下载整块
+                downloadedBytes.addAndGet(-written);
+                throw e;
+            } finally {
+                conn.disconnect();
+            }
+        }
+    }
+
+    /**
+     * 服务端不支持Range时顺序下载整个文件
+     */
+    private long downloadWhole(Task task, File part, long length) throws IOException {
+        startSession(length, 0);
+        HttpURLConnection conn = open(task.url, null, null);
+        try {
+            int status = conn.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + status);
+            }
+            InputStream in = conn.getInputStream();
+            FileOutputStream out = new FileOutputStream(part);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    if (cancelled) {
+                        throw new CancelledException();
+                    }
+                    throttle(n);
+                    out.write(buffer, 0, n);
+                    downloadedBytes.addAndGet(n);
+                    sendProgress(task, false);
+                }
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } finally {
+            conn.disconnect();
+        }
+        return 0;
+    }
+
+    /**
+     * 校验大小和SHA-256，不一致时删除文件，下次从头下载
+     */
+    private void verify(Task task, File file) throws IOException {
+        if (task.size > 0 && file.length() != task.size) {
+            long actual = file.length();
+            file.delete();
+            throw new IOException("size mismatch: " + actual + " != " + task.size);
+        }
+        if (task.sha256 == null) {
+            return;
+        }
+        String actual = sha256Of(file);
+        if (!task.sha256.equals(actual)) {
+            file.delete();
+            throw new IOException("sha256 mismatch: " + actual);
+        }
+    }
+
+    static String sha256Of(File file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            FileInputStream in = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static HttpURLConnection open(String url, String range, String validator) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(READ_TIMEOUT_MS);
+        // 分块校验依赖原始字节，不接受压缩传输
+        conn.setRequestProperty("Accept-Encoding", "identity");
+        if (range != null) {
+            conn.setRequestProperty("Range", range);
+        }
+        if (validator != null && !validator.isEmpty()) {
+            // 文件在服务端变化时返回200整包而不是206，据此判断不能续传
+            conn.setRequestProperty("If-Range", validator);
+        }
+        return conn;
+    }
+
+    private static String validatorOf(HttpURLConnection conn) {
+        String etag = conn.getHeaderField("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        String lastModified = conn.getHeaderField("Last-Modified");
+        return lastModified != null ? lastModified : "";
+    }
+
+    /**
+     * 解析Content-Range: bytes 0-0/12345中的总长度，未知时返回-1
+     */
+    private static long totalFromContentRange(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 游戏进行中且在前台时按令牌桶限速，令牌最多累积一秒的量
+     */
+    private void throttle(int bytes) throws CancelledException {
+        if (!gameplayActive || !foreground) {
+            return;
+        }
+        long waitMs;
+        synchronized (bucketLock) {
+            long now = SystemClock.elapsedRealtime();
+            tokens = Math.min(GAMEPLAY_LIMIT_BYTES_PER_SEC,
+                tokens + (now - lastRefillAt) * GAMEPLAY_LIMIT_BYTES_PER_SEC / 1000);
+            lastRefillAt = now;
+            tokens -= bytes;
+            waitMs = tokens < 0 ? -tokens * 1000 / GAMEPLAY_LIMIT_BYTES_PER_SEC : 0;
+        }
+        if (waitMs > 0) {
+            SystemClock.sleep(waitMs);
+        }
+        if (cancelled) {
+            throw new CancelledException();
+        }
+    }
+
+    private void startSession(long length, long resumed) {
+        totalBytes = length;
+        downloadedBytes.set(resumed);
+        sessionStartBytes = resumed;
+        sessionStartAt = SystemClock.elapsedRealtime();
+        lastProgressAt.set(0);
+    }
+
+    /**
+     * 发送进度，距上次发送不足PROGRESS_INTERVAL_MS时跳过（force为true时总是发送）
+     */
+    private void sendProgress(Task task, boolean force) {
+        long now = SystemClock.elapsedRealtime();
+        long last = lastProgressAt.get();
+        if (!force && (now - last < PROGRESS_INTERVAL_MS || !lastProgressAt.compareAndSet(last, now))) {
+            return;
+        }
+        lastProgressAt.set(now);
+        long downloaded = downloadedBytes.get();
+        long elapsed = Math.max(1, now - sessionStartAt);
+        JSONObject json = new JSONObject();
+        try {
+            json.put("versionCode", task.versionCode);
+            json.put("updateNumber", task.updateNumber);
+            json.put("downloaded", downloaded);
+            json.put("total", totalBytes);
+            json.put("speedKbps", (downloaded - sessionStartBytes) * 8 / elapsed);
+            json.put("throttled", gameplayActive && foreground);
+        } catch (JSONException e) {
+            Log.e(TAG, "构造下载进度JSON失败", e);
+        }
+        send(EVENT_PROGRESS, json.toString());
+    }
+
+    private void sendResult(Task task, boolean ok, String error, File file, long resumedBytes, long startedAt) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("versionCode", task.versionCode);
+            json.put("updateNumber", task.updateNumber);
+            json.put("ok", ok);
+            if (ok) {
+                json.put("path", file.getAbsolutePath());
+                json.put("size", file.length());
+                json.put("resumedBytes", resumedBytes);
+            } else {
+                json.put("error", error);
+            }
+            json.put("elapsedMs", SystemClock.elapsedRealtime() - startedAt);
+        } catch (JSONException e) {
+            Log.e(TAG, "构造下载结果JSON失败", e);
+        }
+        send(EVENT_RESULT, json.toString());
+    }
+
+    private void send(String command, String data) {
+        ScriptSender target;
+        synchronized (this) {
+            target = sender;
+        }
+        if (target != null) {
+            target.sendToScript(command, data);
+        }
+    }
+}
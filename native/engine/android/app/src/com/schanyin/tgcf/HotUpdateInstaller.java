@@ -0,0 +1,782 @@
+package com.schanyin.tgcf;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 热更新包安装
+ * 解压前先校验更新包来源：服务端随版本信息下发整包的SHA-256、大小和签名，签名用构建时写入清单的公钥验证，
+ * 缺少签名、签名不符或文件与签名的摘要不一致时拒绝安装（包内manifest只能发现传输损坏，不能证明包的来源）。
+ * 在后台线程用ZipInputStream顺序解压下载好的更新包，每个文件经固定大小的缓冲区直接写入暂存目录并同时计算SHA-256，
+ * 不把整包或整个文件读入内存；.tgdiff条目按差分格式以当前资源（已安装的热更新目录或APK内资源）为基准生成新文件。
+ * 解压完成后按包内manifest.json校验每个文件的哈希，再把当前热更新目录中未变化的文件硬链接到暂存目录（不占额外空间），
+ * 最后写入待切换标记；下次启动时App.onCreate在引擎加载资源前用两次rename完成切换。
+ *
+ * 签名内容："热更新号\n整包sha256(小写十六进制)\n整包大小"，算法SHA256withECDSA，签名为Base64。
+ * 包内manifest.json：{"updateNumber":n,"files":{"相对路径":"sha256",...},"deleted":["相对路径",...]}
+ * 差分格式（条目名为目标路径加.tgdiff）：
+ *   "TGDF" + 版本(1字节) + 目标长度(8字节)，之后是若干操作，直到结束操作：
+ *   1 = COPY：基准偏移(8字节) + 长度(4字节)；2 = INSERT：长度(4字节) + 数据；0 = 结束
+ */
+public class HotUpdateInstaller {
+    private static final String TAG = "HotUpdateInstaller";
+
+    private static final String ACTIVE_DIR = "active";
+    private static final String STAGING_PREFIX = "staging_";
+    private static final String RETIRED_PREFIX = "retired_";
+    private static final String PENDING_FILE = "pending.json";
+    // 安装目录中记录热更新号的文件
+    private static final String INFO_FILE = ".hotupdate.json";
+    private static final String MANIFEST_ENTRY = "manifest.json";
+    private static final String DIFF_SUFFIX = ".tgdiff";
+
+    // 热更新签名公钥（X.509 DER的Base64，EC P-256）所在的清单meta-data，由发布构建写入，私钥只保存在发布服务器上；
+    // 没有公钥的构建不检查也不安装任何热更新
+    private static final String META_UPDATE_PUBLIC_KEY = "com.schanyin.tgcf.HOT_UPDATE_PUBLIC_KEY";
+    private static final String SIGNATURE_ALGORITHM = "SHA256withECDSA";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_MANIFEST_BYTES = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    private static final int DIFF_MAGIC = 0x54474446; // "TGDF"
+    private static final int DIFF_VERSION = 1;
+    private static final int OP_END = 0;
+    private static final int OP_COPY = 1;
+    private static final int OP_INSERT = 2;
+
+    static final String EVENT_PROGRESS = "hotUpdateInstallProgress";
+    static final String EVENT_RESULT = "hotUpdateInstallResult";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 安装统计，随结果发给JS
+     */
+    private static final class Stats {
+        int entries = 0;
+        int copiedFiles = 0;
+        int patchedFiles = 0;
+        int linkedFiles = 0;
+        long bytesWritten = 0;
+        long compressedRead = 0;
+    }
+
+    /**
+     * 统计已读取的压缩字节数，用于计算进度
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * 写文件并计算SHA-256
+     */
+    private static final class HashingWriter {
+        final FileOutputStream out;
+        final MessageDigest digest;
+        long bytes = 0;
+
+        HashingWriter(File file) throws IOException {
+            out = new FileOutputStream(file);
+            digest = newSha256();
+        }
+
+        void write(byte[] buffer, int off, int len) throws IOException {
+            out.write(buffer, off, len);
+            digest.update(buffer, off, len);
+            bytes += len;
+        }
+
+        String close() throws IOException {
+            try {
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            return toHex(digest.digest());
+        }
+
+        void abort() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 差分的基准文件：已安装的热更新目录中的文件可随机读取；APK内资源只能顺序读，向后跳转时重新打开
+     */
+    private static final class BaseFile {
+        private final RandomAccessFile file;
+        private final AssetManager assets;
+        private final String assetPath;
+        private InputStream assetStream;
+        private long assetPos = 0;
+
+        BaseFile(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+            this.assets = null;
+            this.assetPath = null;
+        }
+
+        BaseFile(AssetManager assets, String assetPath) {
+            this.file = null;
+            this.assets = assets;
+            this.assetPath = assetPath;
+        }
+
+        void copy(long offset, int length, byte[] buffer, HashingWriter writer) throws IOException {
+            if (file != null) {
+                file.seek(offset);
+                while (length > 0) {
+                    int n = file.read(buffer, 0, Math.min(buffer.length, length));
+                    if (n < 0) {
+                        throw new EOFException("base file too short");
+                    }
+                    writer.write(buffer, 0, n);
+                    length -= n;
+                }
+                return;
+            }
+            if (assetStream == null || offset < assetPos) {
+                close();
+                assetStream = assets.open(assetPath, AssetManager.ACCESS_STREAMING);
+                assetPos = 0;
+            }
+            while (assetPos < offset) {
+                long skipped = assetStream.skip(offset - assetPos);
+                if (skipped <= 0) {
+                    throw new EOFException("base asset too short");
+                }
+                assetPos += skipped;
+            }
+            while (length > 0) {
+                int n = assetStream.read(buffer, 0, Math.min(buffer.length, length));
+                if (n < 0) {
+                    throw new EOFException("base asset too short");
+                }
+                writer.write(buffer, 0, n);
+                assetPos += n;
+                length -= n;
+            }
+        }
+
+        void close() {
+            try {
+                if (file != null) {
+                    file.close();
+                }
+                if (assetStream != null) {
+                    assetStream.close();
+                    assetStream = null;
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static HotUpdateInstaller instance;
+
+    private final Context context;
+    private final File root;
+    // 构建提供的签名公钥，没有时为空字符串
+    private final String updatePublicKey;
+    private final ExecutorService worker =
+        Executors.newSingleThreadExecutor(NativeExecutors.newThreadFactory("hot-update-install"));
+    private ScriptSender sender;
+    private long lastProgressAt = 0;
+
+    public static synchronized HotUpdateInstaller getInstance() {
+        if (instance == null) {
+            instance = new HotUpdateInstaller(App.getContext());
+        }
+        return instance;
+    }
+
+    private HotUpdateInstaller(Context context) {
+        this.context = context;
+        this.root = new File(context.getFilesDir(), HotUpdateDownloader.DOWNLOAD_DIR);
+        this.updatePublicKey = readUpdatePublicKey(context);
+    }
+
+    private static String readUpdatePublicKey(Context context) {
+        try {
+            ApplicationInfo info = context.getPackageManager()
+                .getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+            Bundle meta = info.metaData;
+            String key = meta != null ? meta.getString(META_UPDATE_PUBLIC_KEY) : null;
+            return key != null ? key.trim() : "";
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(TAG, "读取热更新公钥失败: " + e.getMessage());
+            return "";
+        }
+    }
+
+    /**
+     * 供JS通过反射调用：构建是否提供了热更新签名公钥，没有时JS不检查也不下载热更新
+     */
+    public static boolean isUpdateKeyConfiguredStatic() {
+        return !getInstance().updatePublicKey.isEmpty();
+    }
+
+    /**
+     * 在后台安装更新包
+     * @param data {"path":"更新包路径","updateNumber":n,"sha256":"整包摘要","size":整包大小,
+     *             "signature":"服务端签名","deleteArchive":true}
+     */
+    public void install(String data, ScriptSender sender) {
+        final JSONObject request;
+        try {
+            request = new JSONObject(data);
+        } catch (JSONException e) {
+            Log.e(TAG, "安装参数解析失败: " + e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            this.sender = sender;
+        }
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                runInstall(request);
+            }
+        });
+    }
+
+    /**
+     * 供JS通过反射调用：当前生效的热更新号，没有时返回0
+     */
+    public static int getInstalledUpdateNumberStatic() {
+        JSONObject info = readJson(new File(getInstance().activeDir(), INFO_FILE));
+        return info != null ? info.optInt("updateNumber", 0) : 0;
+    }
+
+    /**
+     * 供JS通过反射调用：热更新资源目录（作为搜索路径加在APK资源之前），未安装时返回空字符串
+     */
+    public static String getActiveDirStatic() {
+        File active = getInstance().activeDir();
+        return new File(active, INFO_FILE).exists() ? active.getAbsolutePath() + "/" : "";
+    }
+
+    /**
+     * 启动时切换到已安装好的更新（App.onCreate中、引擎加载资源前调用）
+     * 依次 active -> retired_x、staging_n -> active，每一步都是同一目录下的rename；
+     * 任一步中断后再次启动时从中断处继续
+     */
+    public static void applyPendingUpdate(final Context context) {
+        File root = new File(context.getFilesDir(), HotUpdateDownloader.DOWNLOAD_DIR);
+        File pendingFile = new File(root, PENDING_FILE);
+        JSONObject pending = readJson(pendingFile);
+        if (pending == null) {
+            return;
+        }
+        File staging = new File(root, pending.optString("staging"));
+        File active = new File(root, ACTIVE_DIR);
+        int updateNumber = pending.optInt("updateNumber");
+        if (staging.exists() && new File(staging, INFO_FILE).exists()) {
+            if (active.exists()) {
+                File retired = new File(root, RETIRED_PREFIX + System.currentTimeMillis());
+                if (!active.renameTo(retired)) {
+                    Log.e(TAG, "切换热更新失败，保留当前版本");
+                    return;
+                }
+            }
+            if (!staging.renameTo(active)) {
+                Log.e(TAG, "切换热更新失败: " + staging);
+                return;
+            }
+            Log.d(TAG, "已切换到热更新" + updateNumber);
+        } else {
+            JSONObject info = readJson(new File(active, INFO_FILE));
+            if (info == null || info.optInt("updateNumber") != updateNumber) {
+                Log.w(TAG, "待切换的热更新目录不存在: " + staging);
+            }
+        }
+        pendingFile.delete();
+        // 旧版本目录在后台删除，不影响启动
+        NativeExecutors.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] children = new File(context.getFilesDir(), HotUpdateDownloader.DOWNLOAD_DIR).listFiles();
+                if (children == null) {
+                    return;
+                }
+                for (File child : children) {
+                    if (child.getName().startsWith(RETIRED_PREFIX)) {
+                        deleteRecursively(child);
+                    }
+                }
+            }
+        });
+    }
+
+    private File activeDir() {
+        return new File(root, ACTIVE_DIR);
+    }
+
+    private void runInstall(JSONObject request) {
+        long startedAt = SystemClock.elapsedRealtime();
+        long cpuStartedAt = SystemClock.currentThreadTimeMillis();
+        int updateNumber = request.optInt("updateNumber");
+        File archive = new File(request.optString("path"));
+        File staging = new File(root, STAGING_PREFIX + updateNumber);
+        Stats stats = new Stats();
+        String error = null;
+        try {
+            if (!archive.exists()) {
+                throw new IOException("archive not found: " + archive);
+            }
+            verifyArchive(request, updateNumber, archive, updatePublicKey);
+            // 暂存目录可能是上次安装中断留下的，从头重新解压
+            deleteRecursively(staging);
+            if (!staging.mkdirs()) {
+                throw new IOException("mkdir failed: " + staging);
+            }
+            Map<String, String> hashes = new HashMap<>();
+            JSONObject manifest = extract(archive, staging, updateNumber, hashes, stats);
+            if (manifest == null) {
+                throw new IOException("manifest.json missing");
+            }
+            if (manifest.optInt("updateNumber", updateNumber) != updateNumber) {
+                throw new IOException("manifest updateNumber mismatch: " + manifest.optInt("updateNumber"));
+            }
+            verify(manifest, hashes);
+            linkUnchanged(staging, manifest, stats);
+            JSONObject info = new JSONObject();
+            info.put("updateNumber", updateNumber);
+            info.put("files", hashes.size());
+            info.put("installedAt", System.currentTimeMillis());
+            writeJson(new File(staging, INFO_FILE), info);
+            JSONObject pending = new JSONObject();
+            pending.put("staging", staging.getName());
+            pending.put("updateNumber", updateNumber);
+            writeJson(new File(root, PENDING_FILE), pending);
+            if (request.optBoolean("deleteArchive", true)) {
+                archive.delete();
+            }
+        } catch (IOException | JSONException e) {
+            error = e.getMessage();
+            Log.e(TAG, "安装热更新" + updateNumber + "失败: " + error);
+            deleteRecursively(staging);
+            // 安装失败的包（损坏或内容不符）不能再被下载器当作已下载复用
+            if (request.optBoolean("deleteArchive", true)) {
+                archive.delete();
+            }
+        }
+        long elapsedMs = SystemClock.elapsedRealtime() - startedAt;
+        long cpuMs = SystemClock.currentThreadTimeMillis() - cpuStartedAt;
+        JSONObject result = new JSONObject();
+        try {
+            result.put("updateNumber", updateNumber);
+            result.put("ok", error == null);
+            if (error != null) {
+                result.put("error", error);
+            }
+            result.put("entries", stats.entries);
+            result.put("copiedFiles", stats.copiedFiles);
+            result.put("patchedFiles", stats.patchedFiles);
+            result.put("linkedFiles", stats.linkedFiles);
+            result.put("bytesWritten", stats.bytesWritten);
+            result.put("elapsedMs", elapsedMs);
+            result.put("cpuMs", cpuMs);
+        } catch (JSONException e) {
+            Log.e(TAG, "构造安装结果JSON失败", e);
+        }
+        Log.d(TAG, "热更新" + updateNumber + "安装" + (error == null ? "完成" : "失败") + ": " + result);
+        send(EVENT_RESULT, result.toString());
+    }
+
+    /**
+     * 解压前校验更新包：服务端下发的摘要、大小和签名必须齐全，签名用内置公钥验证通过，
+     * 且本地文件与签名的摘要和大小一致，任一条件不满足都拒绝安装
+     */
+    private static void verifyArchive(JSONObject request, int updateNumber, File archive, String publicKey) throws IOException {
+        String sha256 = request.optString("sha256", "").toLowerCase();
+        long size = request.optLong("size", -1);
+        String signature = request.optString("signature", "");
+        if (sha256.isEmpty() || size <= 0 || signature.isEmpty()) {
+            throw new IOException("update signature missing");
+        }
+        if (publicKey.isEmpty()) {
+            throw new IOException("update public key not configured");
+        }
+        boolean valid;
+        try {
+            PublicKey key = KeyFactory.getInstance("EC").generatePublic(
+                new X509EncodedKeySpec(Base64.decode(publicKey, Base64.NO_WRAP)));
+            Signature verifier = Signature.getInstance(SIGNATURE_ALGORITHM);
+            verifier.initVerify(key);
+            verifier.update((updateNumber + "\n" + sha256 + "\n" + size).getBytes(UTF_8));
+            valid = verifier.verify(Base64.decode(signature, Base64.DEFAULT));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new IOException("update signature check failed: " + e.getMessage(), e);
+        }
+        if (!valid) {
+            throw new IOException("update signature invalid");
+        }
+        if (archive.length() != size) {
+            throw new IOException("archive size mismatch: " + archive.length() + " != " + size);
+        }
+        String actual = HotUpdateDownloader.sha256Of(archive);
+        if (!sha256.equals(actual)) {
+            throw new IOException("archive sha256 mismatch: " + actual);
+        }
+    }
+
+    /**
+     * 顺序解压所有条目，返回manifest（包内没有时为null）
+     */
+    private JSONObject extract(File archive, File staging, int updateNumber, Map<String, String> hashes, Stats stats)
+            throws IOException, JSONException {
+        String stagingPath = staging.getCanonicalPath() + File.separator;
+        long archiveSize = archive.length();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        JSONObject manifest = null;
+        CountingInputStream counting = new CountingInputStream(new FileInputStream(archive));
+        ZipInputStream zip = new ZipInputStream(new BufferedInputStream(counting, BUFFER_SIZE));
+        try {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                stats.entries++;
+                if (MANIFEST_ENTRY.equals(name)) {
+                    manifest = new JSONObject(new String(readBounded(zip, buffer), UTF_8));
+                    continue;
+                }
+                boolean patch = name.endsWith(DIFF_SUFFIX);
+                String path = patch ? name.substring(0, name.length() - DIFF_SUFFIX.length()) : name;
+                File target = new File(staging, path);
+                // 拒绝解压到暂存目录之外的条目
+                if (!target.getCanonicalPath().startsWith(stagingPath)) {
+                    throw new IOException("illegal entry: " + name);
+                }
+                File parent = target.getParentFile();
+                if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                    throw new IOException("mkdir failed: " + parent);
+                }
+                HashingWriter writer = new HashingWriter(target);
+                try {
+                    if (patch) {
+                        applyDiff(zip, path, buffer, writer);
+                        stats.patchedFiles++;
+                    } else {
+                        int n;
+                        while ((n = zip.read(buffer)) > 0) {
+                            writer.write(buffer, 0, n);
+                        }
+                        stats.copiedFiles++;
+                    }
+                } catch (IOException e) {
+                    writer.abort();
+                    throw new IOException(path + ": " + e.getMessage(), e);
+                }
+                hashes.put(path, writer.close());
+                stats.bytesWritten += writer.bytes;
+                stats.compressedRead = counting.count;
+                maybeSendProgress(updateNumber, stats, archiveSize);
+            }
+        } finally {
+            zip.close();
+        }
+        return manifest;
+    }
+
+    /**
+     * 按差分生成新文件，基准优先取已安装的热更新目录，其次是APK内资源
+     */
+    private void applyDiff(InputStream in, String path, byte[] buffer, HashingWriter writer) throws IOException {
+        DataInputStream diff = new DataInputStream(in);
+        if (diff.readInt() != DIFF_MAGIC || diff.readUnsignedByte() != DIFF_VERSION) {
+            throw new IOException("invalid diff header");
+        }
+        long targetLength = diff.readLong();
+        File installed = new File(activeDir(), path);
+        BaseFile base = installed.exists() ? new BaseFile(installed) : new BaseFile(context.getAssets(), path);
+        try {
+            while (true) {
+                int op = diff.readUnsignedByte();
+                if (op == OP_END) {
+                    break;
+                } else if (op == OP_COPY) {
+                    long offset = diff.readLong();
+                    int length = diff.readInt();
+                    base.copy(offset, length, buffer, writer);
+                } else if (op == OP_INSERT) {
+                    int length = diff.readInt();
+                    while (length > 0) {
+                        int n = diff.read(buffer, 0, Math.min(buffer.length, length));
+                        if (n < 0) {
+                            throw new EOFException("truncated insert");
+                        }
+                        writer.write(buffer, 0, n);
+                        length -= n;
+                    }
+                } else {
+                    throw new IOException("unknown diff op: " + op);
+                }
+            }
+        } finally {
+            base.close();
+        }
+        if (writer.bytes != targetLength) {
+            throw new IOException("patched length " + writer.bytes + " != " + targetLength);
+        }
+    }
+
+    /**
+     * 每个文件的SHA-256必须与manifest一致，manifest中的文件必须都在包内
+     */
+    private static void verify(JSONObject manifest, Map<String, String> hashes) throws IOException {
+        JSONObject files = manifest.optJSONObject("files");
+        if (files == null) {
+            throw new IOException("manifest has no files");
+        }
+        Iterator<String> keys = files.keys();
+        while (keys.hasNext()) {
+            String path = keys.next();
+            String actual = hashes.get(path);
+            if (actual == null) {
+                throw new IOException("missing file: " + path);
+            }
+            if (!actual.equalsIgnoreCase(files.optString(path))) {
+                throw new IOException("hash mismatch: " + path);
+            }
+        }
+        for (String path : hashes.keySet()) {
+            if (!files.has(path)) {
+                throw new IOException("file not in manifest: " + path);
+            }
+        }
+    }
+
+    /**
+     * 当前热更新目录中没有被替换或删除的文件硬链接到暂存目录，链接失败时复制
+     */
+    private void linkUnchanged(File staging, JSONObject manifest, Stats stats) throws IOException {
+        File active = activeDir();
+        if (!active.exists()) {
+            return;
+        }
+        Set<String> deleted = new HashSet<>();
+        JSONArray deletedJson = manifest.optJSONArray("deleted");
+        if (deletedJson != null) {
+            for (int i = 0; i < deletedJson.length(); i++) {
+                deleted.add(deletedJson.optString(i));
+            }
+        }
+        linkDir(active, "", staging, deleted, stats);
+    }
+
+    private void linkDir(File dir, String prefix, File staging, Set<String> deleted, Stats stats) throws IOException {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String path = prefix + child.getName();
+            if (child.isDirectory()) {
+                linkDir(child, path + "/", staging, deleted, stats);
+                continue;
+            }
+            File target = new File(staging, path);
+            if (INFO_FILE.equals(path) || deleted.contains(path) || target.exists()) {
+                continue;
+            }
+            File parent = target.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("mkdir failed: " + parent);
+            }
+            try {
+                android.system.Os.link(child.getAbsolutePath(), target.getAbsolutePath());
+            } catch (Exception e) {
+                copyFile(child, target);
+                stats.bytesWritten += child.length();
+            }
+            stats.linkedFiles++;
+        }
+    }
+
+    private void maybeSendProgress(int updateNumber, Stats stats, long archiveSize) {
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastProgressAt < PROGRESS_INTERVAL_MS) {
+            return;
+        }
+        lastProgressAt = now;
+        JSONObject json = new JSONObject();
+        try {
+            json.put("updateNumber", updateNumber);
+            json.put("entries", stats.entries);
+            json.put("bytesWritten", stats.bytesWritten);
+            json.put("compressedRead", stats.compressedRead);
+            json.put("archiveSize", archiveSize);
+        } catch (JSONException e) {
+            Log.e(TAG, "构造安装进度JSON失败", e);
+        }
+        send(EVENT_PROGRESS, json.toString());
+    }
+
+    private void send(String command, String data) {
+        ScriptSender target;
+        synchronized (this) {
+            target = sender;
+        }
+        if (target != null) {
+            target.sendToScript(command, data);
+        }
+    }
+
+    private static byte[] readBounded(InputStream in, byte[] buffer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+            if (out.size() > MAX_MANIFEST_BYTES) {
+                throw new IOException("manifest too large");
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void copyFile(File from, File to) throws IOException {
+        FileInputStream in = new FileInputStream(from);
+        try {
+            FileOutputStream out = new FileOutputStream(to);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeJson(File file, JSONObject json) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(json.toString().getBytes(UTF_8));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("rename failed: " + file);
+        }
+    }
+
+    private static JSONObject readJson(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                return new JSONObject(new String(readBounded(in, new byte[4096]), UTF_8));
+            } finally {
+                in.close();
+            }
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "读取" + file.getName() + "失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static MessageDigest newSha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,591 @@
+package com.schanyin.tgcf;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 原生HTTP响应缓存
+ * 按接口地址和规范化后的请求参数缓存响应体，内存和磁盘两级，均按最近使用淘汰并限制总大小；
+ * 未过期直接返回缓存；过期但在可陈旧期内先返回缓存，同时在后台带ETag/Last-Modified重新验证，
+ * 内容有变化时通过更新回调通知；网络失败时退回缓存
+ */
+public class HttpResponseCache {
+    private static final String TAG = "HttpResponseCache";
+
+    private static final String CACHE_DIR = "http_cache";
+    private static final String FILE_SUFFIX = ".json";
+    // 内存缓存总大小上限（按字符数近似）
+    private static final long MEMORY_CAP_BYTES = 512 * 1024;
+    // 磁盘缓存总大小上限
+    private static final long DISK_CAP_BYTES = 4 * 1024 * 1024;
+    // 单个响应超过该大小不缓存
+    private static final int MAX_ENTRY_BYTES = 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // 响应的缓存状态，回传给JS的cacheStatus字段
+    public static final String STATUS_HIT = "hit";
+    public static final String STATUS_STALE = "stale";
+    public static final String STATUS_REVALIDATED = "revalidated";
+    public static final String STATUS_MISS = "miss";
+    public static final String STATUS_UPDATED = "updated";
+    public static final String STATUS_STALE_ON_ERROR = "stale-on-error";
+
+    /**
+     * 请求的缓存策略，来自桥接请求的cache字段
+     */
+    public static final class Policy {
+        // 新鲜期（服务端返回Cache-Control: max-age时以服务端为准）
+        final long maxAgeMs;
+        // 过期后仍可先返回缓存的时长
+        final long staleMs;
+        // 计算缓存键时忽略的参数（如requestId、timeStamp）
+        final List<String> ignoreParams;
+        // 响应体JSON的code等于该值才缓存，未配置时不检查
+        final Integer successCode;
+
+        Policy(long maxAgeMs, long staleMs, List<String> ignoreParams, Integer successCode) {
+            this.maxAgeMs = maxAgeMs;
+            this.staleMs = staleMs;
+            this.ignoreParams = ignoreParams;
+            this.successCode = successCode;
+        }
+
+        /**
+         * 解析{"maxAgeMs","staleMs","ignoreParams":[],"successCode"}
+         */
+        static Policy fromJson(JSONObject json) {
+            List<String> ignore = new ArrayList<>();
+            JSONArray array = json.optJSONArray("ignoreParams");
+            if (array != null) {
+                for (int i = 0; i < array.length(); i++) {
+                    ignore.add(array.optString(i));
+                }
+            }
+            return new Policy(
+                Math.max(0, json.optLong("maxAgeMs", 0)),
+                Math.max(0, json.optLong("staleMs", 0)),
+                ignore,
+                json.has("successCode") ? Integer.valueOf(json.optInt("successCode")) : null);
+        }
+    }
+
+    /**
+     * 缓存条目（不可变）
+     */
+    private static final class Entry {
+        final String key;
+        final String url;
+        final String body;
+        final String etag;
+        final String lastModified;
+        final String contentType;
+        // 写入/重新验证的时间（墙上时间，跨启动有效）
+        final long storedAt;
+        final long maxAgeMs;
+
+        Entry(String key, String url, String body, String etag, String lastModified, String contentType,
+              long storedAt, long maxAgeMs) {
+            this.key = key;
+            this.url = url;
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.storedAt = storedAt;
+            this.maxAgeMs = maxAgeMs;
+        }
+
+        Entry withStoredAt(long time, long newMaxAgeMs) {
+            return new Entry(key, url, body, etag, lastModified, contentType, time, newMaxAgeMs);
+        }
+
+        long size() {
+            return body.length() * 2L + 256;
+        }
+
+        NativeHttpClient.Response toResponse(String id, String cacheStatus, long elapsedMs) {
+            Map<String, String> headers = new HashMap<>();
+            if (etag != null) {
+                headers.put("etag", etag);
+            }
+            if (lastModified != null) {
+                headers.put("last-modified", lastModified);
+            }
+            if (contentType != null) {
+                headers.put("content-type", contentType);
+            }
+            headers.put("age", String.valueOf(Math.max(0, (System.currentTimeMillis() - storedAt) / 1000)));
+            return new NativeHttpClient.Response(id, 200, headers, body, null, elapsedMs, cacheStatus);
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("url", url);
+            json.put("body", body);
+            json.put("etag", etag != null ? etag : "");
+            json.put("lastModified", lastModified != null ? lastModified : "");
+            json.put("contentType", contentType != null ? contentType : "");
+            json.put("storedAt", storedAt);
+            json.put("maxAgeMs", maxAgeMs);
+            return json;
+        }
+
+        static Entry fromJson(String key, JSONObject json) {
+            return new Entry(key,
+                json.optString("url"),
+                json.optString("body"),
+                emptyToNull(json.optString("etag")),
+                emptyToNull(json.optString("lastModified")),
+                emptyToNull(json.optString("contentType")),
+                json.optLong("storedAt"),
+                json.optLong("maxAgeMs"));
+        }
+    }
+
+    private static HttpResponseCache instance;
+
+    private File cacheDir;
+    // 内存LRU（访问顺序），以下字段由synchronized保护
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes = 0;
+    // 磁盘索引：键 -> 文件大小，访问顺序即淘汰顺序
+    private final LinkedHashMap<String, Long> diskIndex = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes = 0;
+    private boolean indexLoaded = false;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+    private final AtomicLong revalidatedCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong updatedCount = new AtomicLong();
+
+    public static synchronized HttpResponseCache getInstance() {
+        if (instance == null) {
+            instance = new HttpResponseCache();
+        }
+        return instance;
+    }
+
+    private HttpResponseCache() {}
+
+    /**
+     * 在后台加载磁盘索引并把最近使用的条目读入内存，冷启动时第一次请求即可直接命中（App.onCreate调用）
+     */
+    public void open(final Context context) {
+        NativeExecutors.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                ensureIndexLoaded(context);
+                List<String> keys;
+                synchronized (HttpResponseCache.this) {
+                    keys = new ArrayList<>(diskIndex.keySet());
+                }
+                // 从最近使用的开始预读，直到内存上限
+                long loaded = 0;
+                for (int i = keys.size() - 1; i >= 0 && loaded < MEMORY_CAP_BYTES; i--) {
+                    Entry entry = readFromDisk(keys.get(i));
+                    // 预读期间已有请求写入的新内容不覆盖
+                    if (entry != null && putMemoryIfAbsent(entry)) {
+                        loaded += entry.size();
+                    }
+                }
+                Log.d(TAG, "响应缓存已加载，磁盘条目: " + keys.size() + "，预读: " + loaded + "字节");
+            }
+        });
+    }
+
+    /**
+     * 按缓存策略执行请求（在HTTP工作线程中调用）
+     * @param callback 首个结果（可能来自缓存）
+     * @param onUpdate 先返回了陈旧缓存且后台重新验证得到新内容时回调，可为null
+     */
+    public void execute(NativeHttpClient client, NativeHttpClient.Request request,
+                        NativeHttpClient.Callback callback, NativeHttpClient.Callback onUpdate) {
+        ensureIndexLoaded(App.getContext());
+        long start = System.currentTimeMillis();
+        String key = keyFor(request);
+        Entry entry = get(key);
+
+        if (entry != null) {
+            long age = start - entry.storedAt;
+            if (age >= 0 && age <= entry.maxAgeMs) {
+                hitCount.incrementAndGet();
+                callback.onComplete(entry.toResponse(request.id, STATUS_HIT, System.currentTimeMillis() - start));
+                return;
+            }
+            if (age >= 0 && age <= entry.maxAgeMs + request.cache.staleMs) {
+                // 先返回陈旧内容，再在当前线程重新验证
+                staleCount.incrementAndGet();
+                callback.onComplete(entry.toResponse(request.id, STATUS_STALE, System.currentTimeMillis() - start));
+                NativeHttpClient.Response fresh = revalidate(client, request, key, entry);
+                if (onUpdate != null && STATUS_UPDATED.equals(fresh.cacheStatus)) {
+                    onUpdate.onComplete(fresh);
+                }
+                return;
+            }
+        }
+        callback.onComplete(revalidate(client, request, key, entry));
+    }
+
+    /**
+     * 清空缓存（例如切换账号或环境时）
+     */
+    public void clear() {
+        List<String> keys;
+        synchronized (this) {
+            memory.clear();
+            memoryBytes = 0;
+            keys = new ArrayList<>(diskIndex.keySet());
+            diskIndex.clear();
+            diskBytes = 0;
+        }
+        for (String key : keys) {
+            fileFor(key).delete();
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public synchronized JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("hit", hitCount.get());
+            json.put("stale", staleCount.get());
+            json.put("revalidated", revalidatedCount.get());
+            json.put("miss", missCount.get());
+            json.put("updated", updatedCount.get());
+            json.put("memoryEntries", memory.size());
+            json.put("memoryBytes", memoryBytes);
+            json.put("diskEntries", diskIndex.size());
+            json.put("diskBytes", diskBytes);
+        } catch (JSONException e) {
+            Log.e(TAG, "构造缓存统计JSON失败", e);
+        }
+        return json;
+    }
+
+    /**
+     * 带条件请求头访问网络，304时刷新缓存时间，200时按策略写入缓存，失败时退回缓存
+     */
+    private NativeHttpClient.Response revalidate(NativeHttpClient client, NativeHttpClient.Request request,
+                                                 String key, Entry entry) {
+        Map<String, String> conditional = new HashMap<>();
+        if (entry != null) {
+            if (entry.etag != null) {
+                conditional.put("If-None-Match", entry.etag);
+            }
+            if (entry.lastModified != null) {
+                conditional.put("If-Modified-Since", entry.lastModified);
+            }
+        }
+        // 缓存请求的任务已占用主机并发名额
+        NativeHttpClient.Response response = client.executeAdmitted(request.withHeaders(conditional));
+        long now = System.currentTimeMillis();
+
+        if (entry != null && response.error == null && response.status == 304) {
+            revalidatedCount.incrementAndGet();
+            Entry refreshed = entry.withStoredAt(now, freshnessOf(response, request.cache));
+            store(refreshed);
+            return refreshed.toResponse(request.id, STATUS_REVALIDATED, response.elapsedMs);
+        }
+        if (response.error != null || response.status >= 500) {
+            if (entry != null) {
+                Log.w(TAG, "重新验证失败，返回缓存: " + request.url + ", " + response.error);
+                return entry.toResponse(request.id, STATUS_STALE_ON_ERROR, response.elapsedMs);
+            }
+            return response;
+        }
+        if (response.status != 200 || !isCacheable(response, request.cache)) {
+            return response;
+        }
+
+        boolean unchanged = entry != null && entry.body.equals(response.body);
+        Entry stored = new Entry(key, request.url, response.body,
+            response.headers.get("etag"), response.headers.get("last-modified"), response.headers.get("content-type"),
+            now, freshnessOf(response, request.cache));
+        store(stored);
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return response.withCacheStatus(STATUS_MISS);
+        }
+        // 服务端不支持条件请求时内容相同也视为重新验证成功
+        if (unchanged) {
+            revalidatedCount.incrementAndGet();
+            return response.withCacheStatus(STATUS_REVALIDATED);
+        }
+        updatedCount.incrementAndGet();
+        return response.withCacheStatus(STATUS_UPDATED);
+    }
+
+    private static boolean isCacheable(NativeHttpClient.Response response, Policy policy) {
+        String cacheControl = response.headers.get("cache-control");
+        if (cacheControl != null && cacheControl.contains("no-store")) {
+            return false;
+        }
+        if (response.body.length() > MAX_ENTRY_BYTES) {
+            return false;
+        }
+        if (policy.successCode != null) {
+            try {
+                JSONObject json = new JSONObject(response.body);
+                return json.optInt("code", Integer.MIN_VALUE) == policy.successCode;
+            } catch (JSONException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 新鲜期：服务端max-age优先，否则使用请求策略
+     */
+    private static long freshnessOf(NativeHttpClient.Response response, Policy policy) {
+        String cacheControl = response.headers.get("cache-control");
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                String d = directive.trim();
+                if (d.startsWith("max-age=")) {
+                    try {
+                        return Long.parseLong(d.substring(8)) * 1000;
+                    } catch (NumberFormatException e) {
+                        break;
+                    }
+                }
+            }
+        }
+        return policy.maxAgeMs;
+    }
+
+    // 标识用户身份的请求头，参与缓存键计算，不同账号的响应互不命中
+    private static final String[] IDENTITY_HEADERS = {"Authorization", "Cookie", "token"};
+
+    /**
+     * 缓存键：方法、地址、身份请求头和去掉忽略参数后按键排序的请求体
+     */
+    private static String keyFor(NativeHttpClient.Request request) {
+        String normalized = request.body != null ? request.body : "";
+        if (request.body != null) {
+            try {
+                normalized = normalize(new JSONObject(request.body), request.cache.ignoreParams).toString();
+            } catch (JSONException e) {
+                // 非JSON请求体按原文计算
+            }
+        }
+        StringBuilder identity = new StringBuilder();
+        for (String name : IDENTITY_HEADERS) {
+            String value = headerIgnoreCase(request.headers, name);
+            if (value != null) {
+                identity.append(name).append('=').append(value).append('\n');
+            }
+        }
+        return SigningService.sha256(request.method + " " + request.url + "\n" + identity + normalized);
+    }
+
+    private static String headerIgnoreCase(Map<String, String> headers, String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static JSONObject normalize(JSONObject json, List<String> ignore) throws JSONException {
+        TreeMap<String, Object> sorted = new TreeMap<>();
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (ignore.contains(key)) {
+                continue;
+            }
+            Object value = json.get(key);
+            sorted.put(key, value instanceof JSONObject ? normalize((JSONObject) value, ignore) : value);
+        }
+        // org.json保持插入顺序，按排序后的顺序写入
+        JSONObject out = new JSONObject();
+        for (Map.Entry<String, Object> e : sorted.entrySet()) {
+            out.put(e.getKey(), e.getValue());
+        }
+        return out;
+    }
+
+    private Entry get(String key) {
+        synchronized (this) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                diskIndex.get(key);
+                return entry;
+            }
+            if (!diskIndex.containsKey(key)) {
+                return null;
+            }
+            diskIndex.get(key);
+        }
+        Entry entry = readFromDisk(key);
+        if (entry != null) {
+            putMemory(entry);
+        }
+        return entry;
+    }
+
+    private void store(Entry entry) {
+        putMemory(entry);
+        byte[] data;
+        try {
+            data = entry.toJson().toString().getBytes(UTF_8);
+        } catch (JSONException e) {
+            Log.e(TAG, "序列化缓存条目失败", e);
+            return;
+        }
+        File file = fileFor(entry.key);
+        File tmp = new File(cacheDir, entry.key + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(data);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("rename failed");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "写入缓存文件失败: " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long old = diskIndex.put(entry.key, (long) data.length);
+            diskBytes += data.length - (old != null ? old : 0);
+            Iterator<Map.Entry<String, Long>> it = diskIndex.entrySet().iterator();
+            while (diskBytes > DISK_CAP_BYTES && it.hasNext()) {
+                Map.Entry<String, Long> eldest = it.next();
+                if (eldest.getKey().equals(entry.key)) {
+                    continue;
+                }
+                diskBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                it.remove();
+            }
+        }
+        for (String key : evicted) {
+            fileFor(key).delete();
+        }
+    }
+
+    private synchronized boolean putMemoryIfAbsent(Entry entry) {
+        if (memory.containsKey(entry.key)) {
+            return false;
+        }
+        putMemory(entry);
+        return true;
+    }
+
+    private synchronized void putMemory(Entry entry) {
+        Entry old = memory.put(entry.key, entry);
+        memoryBytes += entry.size() - (old != null ? old.size() : 0);
+        Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator();
+        while (memoryBytes > MEMORY_CAP_BYTES && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getKey().equals(entry.key)) {
+                continue;
+            }
+            memoryBytes -= eldest.getValue().size();
+            it.remove();
+        }
+    }
+
+    private Entry readFromDisk(String key) {
+        File file = fileFor(key);
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return Entry.fromJson(key, new JSONObject(new String(out.toByteArray(), UTF_8)));
+            } finally {
+                in.close();
+            }
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "读取缓存文件失败，丢弃: " + key);
+            synchronized (this) {
+                Long size = diskIndex.remove(key);
+                if (size != null) {
+                    diskBytes -= size;
+                }
+            }
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * 扫描缓存目录建立索引，按文件修改时间恢复淘汰顺序，并清理残留的临时文件
+     */
+    private synchronized void ensureIndexLoaded(Context context) {
+        if (indexLoaded) {
+            return;
+        }
+        indexLoaded = true;
+        cacheDir = new File(context.getFilesDir(), CACHE_DIR);
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.e(TAG, "创建缓存目录失败");
+            return;
+        }
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new java.util.Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(FILE_SUFFIX)) {
+                diskIndex.put(name.substring(0, name.length() - FILE_SUFFIX.length()), file.length());
+                diskBytes += file.length();
+            } else {
+                file.delete();
+            }
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(cacheDir, key + FILE_SUFFIX);
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,181 @@
+package com.schanyin.tgcf;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.volcengine.mobsecBiz.metasec.ml.MSManager;
+import com.volcengine.mobsecBiz.metasec.ml.MSManagerUtils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 连云山设备token缓存
+ * 读取只访问一个volatile引用，不加锁；token过期或接近过期时发起刷新，
+ * 同一时刻只有一次SDK调用，并发调用方共享同一次刷新的结果；
+ * 没有未过期token时可以带截止时间阻塞等待（每次过期后都可以重新等待）；超过有效期的token不再返回
+ */
+public class MetaSecTokenCache {
+    private static final String TAG = "MetaSecTokenCache";
+
+    // token有效期：SDK会在token变化时回调，这里保证长时间没有回调时主动再取一次
+    private static final long TOKEN_TTL_MS = 20 * 60 * 1000L;
+    // 超过有效期的该比例后，读取时在后台提前刷新
+    private static final double REFRESH_AHEAD_RATIO = 0.8;
+
+    /**
+     * 缓存条目（不可变）
+     */
+    private static final class Entry {
+        final String token;
+        final long fetchedAt;
+
+        Entry(String token, long fetchedAt) {
+            this.token = token;
+            this.fetchedAt = fetchedAt;
+        }
+
+        long age(long now) {
+            return now - fetchedAt;
+        }
+
+        boolean isExpired(long now) {
+            return token.isEmpty() || age(now) > TOKEN_TTL_MS;
+        }
+    }
+
+    private static final Entry EMPTY = new Entry("", 0);
+
+    private static MetaSecTokenCache instance;
+
+    private final String appId;
+    // 刷新使用独立线程：awaitToken的调用方可能是io线程，刷新不能排在它们后面
+    private final ExecutorService refreshExecutor = NativeExecutors.newPool("metasec-token", 1);
+    private volatile Entry current = EMPTY;
+    private final AtomicReference<FutureTask<String>> inflight = new AtomicReference<>();
+    // 新token到达时notifyAll，唤醒awaitToken中的等待方
+    private final Object tokenLock = new Object();
+
+    public static synchronized MetaSecTokenCache getInstance() {
+        if (instance == null) {
+            instance = new MetaSecTokenCache(App.appID);
+        }
+        return instance;
+    }
+
+    private MetaSecTokenCache(String appId) {
+        this.appId = appId;
+    }
+
+    /**
+     * 读取当前token（不阻塞，可能为空字符串）
+     * 没有token、已过期或接近过期时在后台发起刷新；已过期时返回空字符串
+     */
+    public String getToken() {
+        Entry entry = current;
+        long now = SystemClock.elapsedRealtime();
+        if (entry.token.isEmpty() || entry.age(now) > TOKEN_TTL_MS * REFRESH_AHEAD_RATIO) {
+            refreshAsync();
+        }
+        return entry.isExpired(now) ? "" : entry.token;
+    }
+
+    /**
+     * 获取未过期的token，必要时等待刷新或SDK观察者回调新token，最多等待timeoutMs毫秒（不可在UI线程调用）
+     * @return 超时时返回当前未过期的token，没有则返回空字符串
+     */
+    public String awaitToken(long timeoutMs) {
+        long deadline = SystemClock.elapsedRealtime() + timeoutMs;
+        Entry entry = current;
+        if (!entry.isExpired(SystemClock.elapsedRealtime())) {
+            return entry.token;
+        }
+        try {
+            String token = refreshAsync().get(Math.max(0, deadline - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS);
+            if (token != null && !token.isEmpty()) {
+                return token;
+            }
+            // SDK暂时没有token，等待观察者回调新token
+            synchronized (tokenLock) {
+                while (true) {
+                    long now = SystemClock.elapsedRealtime();
+                    if (!current.isExpired(now) || now >= deadline) {
+                        break;
+                    }
+                    tokenLock.wait(deadline - now);
+                }
+            }
+        } catch (TimeoutException e) {
+            Log.w(TAG, "等待设备token超时");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.e(TAG, "刷新设备token失败: " + e.getMessage(), e);
+        }
+        entry = current;
+        return entry.isExpired(SystemClock.elapsedRealtime()) ? "" : entry.token;
+    }
+
+    /**
+     * SDK观察者回调token时更新缓存（任意线程）
+     */
+    public void update(String token) {
+        if (token == null || token.isEmpty()) {
+            return;
+        }
+        synchronized (tokenLock) {
+            current = new Entry(token, SystemClock.elapsedRealtime());
+            tokenLock.notifyAll();
+        }
+    }
+
+    /**
+     * 发起刷新；已有刷新在进行时直接返回该次刷新
+     */
+    private FutureTask<String> refreshAsync() {
+        while (true) {
+            FutureTask<String> running = inflight.get();
+            if (running != null) {
+                return running;
+            }
+            FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+                @Override
+                public String call() {
+                    return fetchFromSdk();
+                }
+            }) {
+                @Override
+                protected void done() {
+                    inflight.compareAndSet(this, null);
+                }
+            };
+            if (inflight.compareAndSet(null, task)) {
+                refreshExecutor.execute(task);
+                return task;
+            }
+        }
+    }
+
+    /**
+     * 从SDK读取token，失败时返回空字符串（不返回缓存中可能已过期的旧token）
+     */
+    private String fetchFromSdk() {
+        try {
+            MSManager mgr = MSManagerUtils.get(appId);
+            if (mgr != null) {
+                String token = mgr.getToken();
+                if (token != null && !token.isEmpty()) {
+                    update(token);
+                    return token;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "获取设备token失败: " + e.getMessage(), e);
+        }
+        return "";
+    }
+}
@@ -0,0 +1,97 @@
+package com.schanyin.tgcf;
+
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 原生后台线程池
+ * 统一管理桥接命令使用的后台线程，避免在UI线程或游戏线程上做耗时操作
+ */
+public final class NativeExecutors {
+    private static final String TAG = "NativeExecutors";
+
+    // IO线程数：设备信息采集等任务多为系统服务IPC，线程数不宜过多
+    private static final int IO_POOL_SIZE = 4;
+
+    private static volatile ExecutorService ioExecutor;
+    private static volatile ScheduledExecutorService scheduledExecutor;
+
+    private NativeExecutors() {}
+
+    /**
+     * 获取IO后台线程池（懒加载）
+     */
+    public static ExecutorService io() {
+        if (ioExecutor == null) {
+            synchronized (NativeExecutors.class) {
+                if (ioExecutor == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                        IO_POOL_SIZE, IO_POOL_SIZE,
+                        30, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        newThreadFactory("native-io"));
+                    executor.allowCoreThreadTimeOut(true);
+                    ioExecutor = executor;
+                    Log.d(TAG, "IO线程池已创建，线程数: " + IO_POOL_SIZE);
+                }
+            }
+        }
+        return ioExecutor;
+    }
+
+    /**
+     * 获取定时任务线程（单线程，任务需保持轻量）
+     */
+    public static ScheduledExecutorService scheduled() {
+        if (scheduledExecutor == null) {
+            synchronized (NativeExecutors.class) {
+                if (scheduledExecutor == null) {
+                    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, newThreadFactory("native-timer"));
+                    executor.setRemoveOnCancelPolicy(true);
+                    scheduledExecutor = executor;
+                    Log.d(TAG, "定时任务线程已创建");
+                }
+            }
+        }
+        return scheduledExecutor;
+    }
+
+    /**
+     * 创建独立的固定大小线程池（空闲线程30秒后回收）
+     * 需要在后台任务中等待子任务结果时使用：io()中的任务不能阻塞等待同样提交到io()的任务，否则线程池繁忙时会互相等待
+     */
+    public static ExecutorService newPool(String prefix, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            threads, threads,
+            30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            newThreadFactory(prefix));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 创建带名称前缀的后台线程工厂
+     */
+    public static ThreadFactory newThreadFactory(final String prefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + "-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,827 @@
+package com.schanyin.tgcf;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 原生HTTP客户端
+ * 所有请求共用系统HttpURLConnection的keep-alive连接池，按主机限制并发数
+ * （超出并发的请求在主机队列中排队，不占用工作线程）；
+ * 请求体为对象时的序列化、签名、gzip压缩/解压和JSON响应解析都在后台线程完成，
+ * 每个请求有总截止时间（包含排队时间）并支持按ID取消。
+ * JS通过httpRequest/httpCancel桥接命令调用，结果以httpResponse回传
+ */
+public class NativeHttpClient {
+    private static final String TAG = "NativeHttpClient";
+
+    // 工作线程数与连接池上限
+    private static final int POOL_SIZE = 8;
+    // 单个主机的最大并发请求数
+    private static final int MAX_CONCURRENT_PER_HOST = 4;
+    static final long DEFAULT_TIMEOUT_MS = 15000;
+    // 请求体超过该大小且请求方允许时才gzip压缩
+    private static final int GZIP_MIN_BYTES = 1024;
+    private static final int READ_BUFFER = 8 * 1024;
+    // 请求解析前就收到取消时记录的ID上限
+    private static final int MAX_EARLY_CANCELS = 64;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 请求
+     */
+    public static final class Request {
+        public final String id;
+        public final String method;
+        public final String url;
+        public final Map<String, String> headers;
+        public final String body;
+        // 是否由原生端计算签名并放入sign请求头
+        public final boolean sign;
+        // 是否允许gzip压缩请求体（需要服务端支持Content-Encoding: gzip）
+        public final boolean gzipRequest;
+        public final long timeoutMs;
+        // 响应缓存策略，为null时不使用缓存
+        public final HttpResponseCache.Policy cache;
+        // 是否在原生端解析JSON响应体（回传时放在json字段，JS不再解析字符串）
+        public final boolean parseJson;
+
+        public Request(String id, String method, String url, Map<String, String> headers, String body,
+                       boolean sign, boolean gzipRequest, long timeoutMs, HttpResponseCache.Policy cache) {
+            this(id, method, url, headers, body, sign, gzipRequest, timeoutMs, cache, false);
+        }
+
+        public Request(String id, String method, String url, Map<String, String> headers, String body,
+                       boolean sign, boolean gzipRequest, long timeoutMs, HttpResponseCache.Policy cache,
+                       boolean parseJson) {
+            this.id = id;
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.body = body;
+            this.sign = sign;
+            this.gzipRequest = gzipRequest;
+            this.timeoutMs = timeoutMs;
+            this.cache = cache;
+            this.parseJson = parseJson;
+        }
+
+        /**
+         * 追加请求头后的副本
+         */
+        public Request withHeaders(Map<String, String> extra) {
+            if (extra.isEmpty()) {
+                return this;
+            }
+            Map<String, String> merged = new HashMap<>(headers);
+            merged.putAll(extra);
+            return new Request(id, method, url, merged, body, sign, gzipRequest, timeoutMs, cache, parseJson);
+        }
+
+        /**
+         * 解析桥接请求：{"id","method","url","headers":{},"body":对象或字符串,"sign","gzipRequest","timeoutMs","cache":{},"parseJson"}
+         * body为对象时在这里序列化（后台线程），为字符串时原样发送
+         */
+        public static Request fromJson(String json) throws JSONException {
+            JSONObject obj = new JSONObject(json);
+            Map<String, String> headers = new HashMap<>();
+            JSONObject headerJson = obj.optJSONObject("headers");
+            if (headerJson != null) {
+                Iterator<String> keys = headerJson.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    headers.put(key, headerJson.optString(key));
+                }
+            }
+            JSONObject cacheJson = obj.optJSONObject("cache");
+            Object bodyValue = obj.opt("body");
+            String body = bodyValue == null || bodyValue == JSONObject.NULL ? null : bodyValue.toString();
+            return new Request(
+                obj.optString("id"),
+                obj.optString("method", body != null ? "POST" : "GET").toUpperCase(),
+                obj.getString("url"),
+                headers,
+                body,
+                obj.optBoolean("sign", false),
+                obj.optBoolean("gzipRequest", false),
+                obj.optLong("timeoutMs", DEFAULT_TIMEOUT_MS),
+                cacheJson != null ? HttpResponseCache.Policy.fromJson(cacheJson) : null,
+                obj.optBoolean("parseJson", false));
+        }
+    }
+
+    /**
+     * 响应
+     */
+    public static final class Response {
+        public final String id;
+        public final int status;
+        public final Map<String, String> headers;
+        public final String body;
+        public final String error;
+        public final long elapsedMs;
+        // 使用缓存时的缓存状态（见HttpResponseCache.STATUS_*），未使用缓存时为null
+        public final String cacheStatus;
+        // 回传时是否把响应体解析为JSON放在json字段
+        final boolean embedJson;
+        // 请求是否可能已经到达服务端；为false表示失败发生在发送请求之前（排队超时、DNS或连接失败等），重发不会重复提交
+        public final boolean requestSent;
+
+        public Response(String id, int status, Map<String, String> headers, String body, String error, long elapsedMs) {
+            this(id, status, headers, body, error, elapsedMs, null);
+        }
+
+        public Response(String id, int status, Map<String, String> headers, String body, String error, long elapsedMs,
+                        String cacheStatus) {
+            this(id, status, headers, body, error, elapsedMs, cacheStatus, false, true);
+        }
+
+        private Response(String id, int status, Map<String, String> headers, String body, String error, long elapsedMs,
+                         String cacheStatus, boolean embedJson, boolean requestSent) {
+            this.id = id;
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.error = error;
+            this.elapsedMs = elapsedMs;
+            this.cacheStatus = cacheStatus;
+            this.embedJson = embedJson;
+            this.requestSent = requestSent;
+        }
+
+        public Response withCacheStatus(String status) {
+            return new Response(id, this.status, headers, body, error, elapsedMs, status, embedJson, requestSent);
+        }
+
+        Response withEmbeddedJson() {
+            return new Response(id, status, headers, body, error, elapsedMs, cacheStatus, true, requestSent);
+        }
+
+        static Response failure(String id, String error, long elapsedMs) {
+            return failure(id, error, elapsedMs, false);
+        }
+
+        static Response failure(String id, String error, long elapsedMs, boolean requestSent) {
+            return new Response(id, 0, new HashMap<String, String>(), "", error, elapsedMs, null, false, requestSent);
+        }
+
+        public boolean isSuccessful() {
+            return error == null && status >= 200 && status < 300;
+        }
+
+        public String toJson() {
+            JSONObject json = new JSONObject();
+            try {
+                json.put("id", id);
+                json.put("status", status);
+                json.put("headers", new JSONObject(headers));
+                Object parsed = embedJson ? parseBody(body) : null;
+                if (parsed != null) {
+                    // 解析后的对象直接嵌入回传JSON，JS只解析一次
+                    json.put("json", parsed);
+                    json.put("body", "");
+                } else {
+                    json.put("body", body);
+                }
+                json.put("elapsedMs", elapsedMs);
+                if (error != null) {
+                    json.put("error", error);
+                }
+                if (cacheStatus != null) {
+                    json.put("cacheStatus", cacheStatus);
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "构造响应JSON失败", e);
+            }
+            return json.toString();
+        }
+
+        private static Object parseBody(String body) {
+            if (body == null || body.isEmpty()) {
+                return null;
+            }
+            try {
+                Object value = new JSONTokener(body).nextValue();
+                return value instanceof JSONObject || value instanceof JSONArray ? value : null;
+            } catch (JSONException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 结果回调（在工作线程中调用）
+     */
+    public interface Callback {
+        void onComplete(Response response);
+    }
+
+    /**
+     * 进行中的请求
+     */
+    public static final class Call {
+        final Request request;
+        // 创建时间，截止时间从这里开始计算（包含排队时间）
+        final long startedAt = SystemClock.elapsedRealtime();
+        volatile boolean cancelled = false;
+        volatile boolean timedOut = false;
+        volatile HttpURLConnection connection;
+        volatile ScheduledFuture<?> deadlineTask;
+        // 在主机队列中等待时的队列和任务，由主机队列的锁保护
+        HostGate gate;
+        Runnable queuedTask;
+        Callback callback;
+
+        Call(Request request) {
+            this.request = request;
+        }
+
+        long deadline() {
+            return startedAt + Math.max(1, request.timeoutMs);
+        }
+
+        /**
+         * 断开进行中的连接；不取消线程池中的任务：未开始执行的任务开始后会检查cancelled并正常结束，
+         * 由任务的finally释放主机名额并回调
+         */
+        void abort() {
+            HttpURLConnection conn = connection;
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    /**
+     * 单个主机的并发控制：超出并发上限的任务排队，有任务结束时再提交到线程池，排队期间不占用工作线程
+     */
+    static final class HostGate {
+        int active = 0;
+        final ArrayDeque<Call> waiting = new ArrayDeque<>();
+    }
+
+    private static NativeHttpClient instance;
+
+    private final ExecutorService executor;
+    private final Map<String, HostGate> hostGates = new ConcurrentHashMap<>();
+    private final Map<String, Call> activeCalls = new ConcurrentHashMap<>();
+    // 请求还没解析出ID时就收到的取消
+    private final Set<String> earlyCancels = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    public static synchronized NativeHttpClient getInstance() {
+        if (instance == null) {
+            instance = new NativeHttpClient();
+        }
+        return instance;
+    }
+
+    private NativeHttpClient() {
+        // 系统HttpURLConnection的连接池配置
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(POOL_SIZE));
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            POOL_SIZE, POOL_SIZE,
+            30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            NativeExecutors.newThreadFactory("native-http"));
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+    }
+
+    /**
+     * 解析桥接请求JSON并异步执行（JSON解析也在工作线程中进行）
+     */
+    public void enqueueJson(String requestJson, Callback callback) {
+        enqueueJson(requestJson, callback, null);
+    }
+
+    /**
+     * 解析桥接请求JSON并异步执行
+     * @param onUpdate 请求带缓存策略且先返回了陈旧缓存时，后台重新验证得到的新内容通过它回调，可为null
+     */
+    public void enqueueJson(final String requestJson, final Callback callback, final Callback onUpdate) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Request request;
+                try {
+                    request = Request.fromJson(requestJson);
+                } catch (JSONException e) {
+                    Log.e(TAG, "HTTP请求参数解析失败: " + e.getMessage());
+                    callback.onComplete(Response.failure(extractId(requestJson), "invalid request: " + e.getMessage(), 0));
+                    return;
+                }
+                final Callback resultCallback = request.parseJson ? embedJson(callback) : callback;
+                final Callback updateCallback = request.parseJson && onUpdate != null ? embedJson(onUpdate) : onUpdate;
+                if (request.cache != null) {
+                    // 缓存请求整体占用一个主机并发名额，重新验证时不再重复申请
+                    admit(new Call(request), resultCallback, new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                HttpResponseCache.getInstance().execute(NativeHttpClient.this, request,
+                                    resultCallback, updateCallback);
+                            } catch (Exception e) {
+                                Log.e(TAG, "缓存请求失败: " + e.getMessage(), e);
+                            }
+                        }
+                    });
+                } else {
+                    enqueueCall(new Call(request), resultCallback);
+                }
+            }
+        });
+    }
+
+    /**
+     * 异步执行请求
+     */
+    public Call enqueue(Request request, final Callback callback) {
+        Call call = new Call(request);
+        enqueueCall(call, callback);
+        return call;
+    }
+
+    /**
+     * 取消请求，回调收到error为"cancelled"的响应；排队中的请求直接出队
+     */
+    public boolean cancel(String id) {
+        Call call = id != null ? activeCalls.get(id) : null;
+        if (call == null) {
+            if (id != null && !id.isEmpty()) {
+                // 请求可能还在等待解析，解析后立即取消
+                if (earlyCancels.size() >= MAX_EARLY_CANCELS) {
+                    earlyCancels.clear();
+                }
+                earlyCancels.add(id);
+            }
+            return false;
+        }
+        call.cancelled = true;
+        if (!dequeue(call, "cancelled")) {
+            call.abort();
+        }
+        return true;
+    }
+
+    /**
+     * 同步执行请求（不可在UI线程或游戏线程调用），等待主机并发名额时阻塞调用线程
+     */
+    public Response execute(Request request) {
+        Call call = new Call(request);
+        URL url;
+        try {
+            url = new URL(request.url);
+        } catch (IOException e) {
+            failureCount.incrementAndGet();
+            return Response.failure(request.id, "invalid url: " + request.url, 0);
+        }
+        HostGate gate = gateFor(url);
+        synchronized (gate) {
+            while (gate.active >= MAX_CONCURRENT_PER_HOST) {
+                long remaining = call.deadline() - SystemClock.elapsedRealtime();
+                if (remaining <= 0) {
+                    return finishWithError(call, call.startedAt, "timeout");
+                }
+                try {
+                    gate.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return finishWithError(call, call.startedAt, "cancelled");
+                }
+            }
+            gate.active++;
+        }
+        try {
+            return executeAdmitted(call);
+        } finally {
+            release(gate);
+        }
+    }
+
+    /**
+     * 已持有主机并发名额时同步执行（HttpResponseCache在缓存请求的任务中重新验证时调用）
+     */
+    Response executeAdmitted(Request request) {
+        return executeAdmitted(new Call(request));
+    }
+
+    private Response executeAdmitted(Call call) {
+        Request request = call.request;
+        if (request.id != null && !request.id.isEmpty()) {
+            activeCalls.put(request.id, call);
+        }
+        try {
+            return executeCall(call);
+        } finally {
+            if (request.id != null) {
+                activeCalls.remove(request.id, call);
+            }
+        }
+    }
+
+    /**
+     * 客户端统计信息
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("requests", requestCount.get());
+            json.put("failures", failureCount.get());
+            json.put("cancelled", cancelledCount.get());
+            json.put("active", activeCalls.size());
+            json.put("bytesSent", bytesSent.get());
+            json.put("bytesReceived", bytesReceived.get());
+            json.put("cache", HttpResponseCache.getInstance().getStats());
+        } catch (JSONException e) {
+            Log.e(TAG, "构造HTTP统计JSON失败", e);
+        }
+        return json;
+    }
+
+    private void enqueueCall(final Call call, final Callback callback) {
+        admit(call, callback, new Runnable() {
+            @Override
+            public void run() {
+                Response response = executeCall(call);
+                complete(callback, response);
+            }
+        });
+    }
+
+    /**
+     * 登记请求并按主机并发限制提交；未取得名额时排队，截止时间到达仍在排队的请求直接以超时结束
+     */
+    private void admit(final Call call, final Callback callback, final Runnable work) {
+        final String id = call.request.id;
+        if (id != null && !id.isEmpty()) {
+            if (earlyCancels.remove(id)) {
+                complete(callback, finishWithError(call, call.startedAt, "cancelled"));
+                return;
+            }
+            activeCalls.put(id, call);
+        }
+        URL url;
+        try {
+            url = new URL(call.request.url);
+        } catch (IOException e) {
+            unregister(call);
+            failureCount.incrementAndGet();
+            complete(callback, Response.failure(id, "invalid url: " + call.request.url, 0));
+            return;
+        }
+        final HostGate gate = gateFor(url);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    work.run();
+                } finally {
+                    unregister(call);
+                    release(gate);
+                }
+            }
+        };
+        synchronized (gate) {
+            call.callback = callback;
+            if (gate.active < MAX_CONCURRENT_PER_HOST) {
+                gate.active++;
+                executor.submit(task);
+                return;
+            }
+            call.gate = gate;
+            call.queuedTask = task;
+            gate.waiting.addLast(call);
+        }
+        // 排队期间的截止时间（开始执行后由executeCall自己的截止时间接管）
+        NativeExecutors.scheduled().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (dequeue(call, "timeout")) {
+                    call.timedOut = true;
+                }
+            }
+        }, Math.max(1, call.deadline() - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 把仍在主机队列中的请求移出并以error结束
+     * @return 请求在排队且已移出返回true；已开始执行或已结束返回false
+     */
+    private boolean dequeue(Call call, String error) {
+        HostGate gate = call.gate;
+        if (gate == null) {
+            return false;
+        }
+        Callback callback;
+        synchronized (gate) {
+            if (call.queuedTask == null || !gate.waiting.remove(call)) {
+                return false;
+            }
+            call.queuedTask = null;
+            callback = call.callback;
+        }
+        unregister(call);
+        complete(callback, finishWithError(call, call.startedAt, error));
+        return true;
+    }
+
+    /**
+     * 释放主机并发名额，有排队任务时直接交给它
+     */
+    private void release(HostGate gate) {
+        synchronized (gate) {
+            Call next = gate.waiting.pollFirst();
+            if (next == null) {
+                gate.active--;
+                // 唤醒同步execute中等待名额的线程
+                gate.notifyAll();
+                return;
+            }
+            // 名额直接转交
+            Runnable task = next.queuedTask;
+            next.queuedTask = null;
+            executor.submit(task);
+        }
+    }
+
+    private void unregister(Call call) {
+        String id = call.request.id;
+        if (id != null && !id.isEmpty()) {
+            activeCalls.remove(id, call);
+        }
+    }
+
+    private static void complete(Callback callback, Response response) {
+        try {
+            callback.onComplete(response);
+        } catch (Exception e) {
+            Log.e(TAG, "HTTP回调失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static Callback embedJson(final Callback callback) {
+        return new Callback() {
+            @Override
+            public void onComplete(Response response) {
+                callback.onComplete(response.withEmbeddedJson());
+            }
+        };
+    }
+
+    /**
+     * 执行请求（调用方已取得主机并发名额）
+     */
+    private Response executeCall(final Call call) {
+        Request request = call.request;
+        long start = call.startedAt;
+        long deadline = call.deadline();
+        requestCount.incrementAndGet();
+
+        URL url;
+        try {
+            url = new URL(request.url);
+        } catch (IOException e) {
+            failureCount.incrementAndGet();
+            return Response.failure(request.id, "invalid url: " + request.url, 0);
+        }
+        if (call.cancelled || SystemClock.elapsedRealtime() >= deadline) {
+            return finishWithError(call, start, call.cancelled ? "cancelled" : "timeout");
+        }
+
+        // 截止时间到达时断开连接，避免单次读超时无法限制总耗时
+        call.deadlineTask = NativeExecutors.scheduled().schedule(new Runnable() {
+            @Override
+            public void run() {
+                call.timedOut = true;
+                call.abort();
+            }
+        }, Math.max(1, deadline - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS);
+
+        HttpURLConnection conn = null;
+        // 开始写请求体（无请求体时开始等待响应）后，失败的请求可能已被服务端处理
+        boolean requestStarted = false;
+        try {
+            if (call.cancelled) {
+                return finishWithError(call, start, "cancelled");
+            }
+            long networkStart = SystemClock.elapsedRealtime();
+            // 请求体发送完成的时间，首字节耗时从这里算起，不含上传耗时
+            long sentAt = networkStart;
+            long uploadBytes = 0;
+            int remaining = (int) Math.max(1, deadline - networkStart);
+            conn = (HttpURLConnection) url.openConnection();
+            call.connection = conn;
+            // 取消可能发生在连接对象登记之前，此时abort断不开连接，需要再检查一次
+            if (call.cancelled || call.timedOut) {
+                return finishWithError(call, start, call.cancelled ? "cancelled" : "timeout");
+            }
+            conn.setConnectTimeout(remaining);
+            conn.setReadTimeout(remaining);
+            conn.setRequestMethod(request.method);
+            conn.setUseCaches(false);
+            // 自行声明gzip并解压，便于统计实际传输字节数
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            for (Map.Entry<String, String> header : request.headers.entrySet()) {
+                conn.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            if (request.body != null) {
+                byte[] payload = request.body.getBytes(UTF_8);
+                if (request.sign) {
+                    String signature = SigningService.sign(request.body);
+                    if (signature == null || signature.isEmpty()) {
+                        // 与JS端一致：签名失败时不发送请求
+                        Log.e(TAG, "请求签名失败，不发送: " + request.url);
+                        return finishWithError(call, start, "sign failed");
+                    }
+                    conn.setRequestProperty("sign", signature);
+                }
+                if (request.headers.get("Content-Type") == null) {
+                    conn.setRequestProperty("Content-Type", "application/json");
+                }
+                if (request.gzipRequest && payload.length >= GZIP_MIN_BYTES) {
+                    payload = gzip(payload);
+                    conn.setRequestProperty("Content-Encoding", "gzip");
+                }
+                conn.setDoOutput(true);
+                conn.setFixedLengthStreamingMode(payload.length);
+                OutputStream out = conn.getOutputStream();
+                requestStarted = true;
+                try {
+                    out.write(payload);
+                } finally {
+                    out.close();
+                }
+                bytesSent.addAndGet(payload.length);
+                uploadBytes = payload.length;
+                sentAt = SystemClock.elapsedRealtime();
+            }
+
+            requestStarted = true;
+            int status = conn.getResponseCode();
+            long headersAt = SystemClock.elapsedRealtime();
+            Map<String, String> headers = new HashMap<>();
+            for (Map.Entry<String, List<String>> entry : conn.getHeaderFields().entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null && !entry.getValue().isEmpty()) {
+                    headers.put(entry.getKey().toLowerCase(), entry.getValue().get(0));
+                }
+            }
+            InputStream raw = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            String body = "";
+            long wireBytes = 0;
+            if (raw != null) {
+                CountingInputStream counting = new CountingInputStream(raw);
+                InputStream in = counting;
+                if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+                    in = new GZIPInputStream(in);
+                }
+                body = readFully(in);
+                wireBytes = counting.count;
+                bytesReceived.addAndGet(wireBytes);
+            }
+            long now = SystemClock.elapsedRealtime();
+            long elapsed = now - start;
+            NetworkQualityEstimator.getInstance().onHttpSample(headersAt - sentAt, uploadBytes, wireBytes, now - headersAt);
+            if (!ConnectionPrewarmer.REQUEST_ID.equals(request.id)) {
+                ConnectionPrewarmer.getInstance().onRequestCompleted(url.getHost(), elapsed, status < 500);
+            }
+            return new Response(request.id, status, headers, body, null, elapsed);
+        } catch (Exception e) {
+            String error = call.cancelled ? "cancelled" : call.timedOut ? "timeout" : e.getClass().getSimpleName() + ": " + e.getMessage();
+            if (!call.cancelled) {
+                Log.e(TAG, "HTTP请求失败: " + request.url + ", " + error);
+                NetworkQualityEstimator.getInstance().onHttpFailure(SystemClock.elapsedRealtime() - start);
+            }
+            return finishWithError(call, start, error, requestStarted);
+        } finally {
+            ScheduledFuture<?> deadlineTask = call.deadlineTask;
+            if (deadlineTask != null) {
+                deadlineTask.cancel(false);
+            }
+            call.connection = null;
+        }
+    }
+
+    private Response finishWithError(Call call, long start, String error) {
+        return finishWithError(call, start, error, false);
+    }
+
+    private Response finishWithError(Call call, long start, String error, boolean requestSent) {
+        if ("cancelled".equals(error)) {
+            cancelledCount.incrementAndGet();
+        } else {
+            failureCount.incrementAndGet();
+        }
+        return Response.failure(call.request.id, error, SystemClock.elapsedRealtime() - start, requestSent);
+    }
+
+    private HostGate gateFor(URL url) {
+        String host = url.getHost() + ":" + url.getPort();
+        HostGate gate = hostGates.get(host);
+        if (gate == null) {
+            HostGate created = new HostGate();
+            HostGate existing = ((ConcurrentHashMap<String, HostGate>) hostGates).putIfAbsent(host, created);
+            gate = existing != null ? existing : created;
+        }
+        return gate;
+    }
+
+    private String readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[READ_BUFFER];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 统计实际从网络读取的字节数（gzip解压之前）
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        try {
+            gzip.write(data);
+        } finally {
+            gzip.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static String extractId(String requestJson) {
+        try {
+            return new JSONObject(requestJson).optString("id");
+        } catch (JSONException e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,564 @@
+package com.schanyin.tgcf;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 内存映射的键值存储
+ * 文件以内存映射方式打开，每次写入只在末尾追加一条记录（键、类型、值），写入是一次内存拷贝，不阻塞调用线程；
+ * 文件头中的已提交长度在记录写完后更新，进程崩溃时未提交的记录被忽略，打开时逐条校验CRC恢复。
+ * 失效记录超过一半时压缩：把有效记录写入临时文件，sync后原子替换原文件
+ */
+public class NativeKVStore {
+    private static final String TAG = "NativeKVStore";
+
+    // 默认存储，保存游戏进度
+    public static final String STORE_GAME = "game";
+
+    private static final String STORE_DIR = "kv";
+    private static final String FILE_SUFFIX = ".kv";
+    private static final String TMP_SUFFIX = ".kv.tmp";
+
+    // 文件头：magic(4) + 版本(4) + 已提交长度(4) + 保留(20)
+    private static final int MAGIC = 0x54474B56; // "TGKV"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int OFFSET_DATA_END = 8;
+    // 记录：crc(4) + 类型(1) + 键长度(2) + 值长度(4) + 键 + 值
+    private static final int RECORD_OVERHEAD = 11;
+
+    private static final int PAGE_SIZE = 4096;
+    private static final int INITIAL_CAPACITY = 16 * PAGE_SIZE;
+    // 文件小于该大小时不压缩
+    private static final int COMPACT_MIN_BYTES = 64 * 1024;
+
+    private static final byte TYPE_DELETE = 0;
+    private static final byte TYPE_LONG = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_BOOLEAN = 3;
+    private static final byte TYPE_STRING = 4;
+    // JSON对象/数组，按字符串保存，读取时还原
+    private static final byte TYPE_JSON = 5;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 内存中的值及其记录大小
+     */
+    private static final class Value {
+        final byte type;
+        final Object value;
+        final int recordSize;
+
+        Value(byte type, Object value, int recordSize) {
+            this.type = type;
+            this.value = value;
+            this.recordSize = recordSize;
+        }
+    }
+
+    private static final Map<String, NativeKVStore> stores = new HashMap<>();
+
+    private final String name;
+    private final File file;
+    private final File tmpFile;
+    // 以下字段由synchronized保护
+    private final Map<String, Value> values = new HashMap<>();
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int dataEnd;
+    private long liveBytes = 0;
+    private boolean dirty = false;
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * 获取（首次时打开）指定名称的存储
+     */
+    public static synchronized NativeKVStore get(String name) {
+        NativeKVStore store = stores.get(name);
+        if (store == null) {
+            store = new NativeKVStore(App.getContext(), name);
+            stores.put(name, store);
+        }
+        return store;
+    }
+
+    private NativeKVStore(Context context, String name) {
+        this.name = name;
+        File dir = new File(context.getFilesDir(), STORE_DIR);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "创建存储目录失败: " + dir);
+        }
+        file = new File(dir, name + FILE_SUFFIX);
+        tmpFile = new File(dir, name + TMP_SUFFIX);
+        open();
+    }
+
+    // ---------- 类型化读写 ----------
+
+    public synchronized long getLong(String key, long defaultValue) {
+        Value v = values.get(key);
+        if (v == null) {
+            return defaultValue;
+        }
+        if (v.value instanceof Number) {
+            return ((Number) v.value).longValue();
+        }
+        return defaultValue;
+    }
+
+    public synchronized double getDouble(String key, double defaultValue) {
+        Value v = values.get(key);
+        return v != null && v.value instanceof Number ? ((Number) v.value).doubleValue() : defaultValue;
+    }
+
+    public synchronized boolean getBoolean(String key, boolean defaultValue) {
+        Value v = values.get(key);
+        return v != null && v.value instanceof Boolean ? (Boolean) v.value : defaultValue;
+    }
+
+    public synchronized String getString(String key, String defaultValue) {
+        Value v = values.get(key);
+        return v != null && (v.type == TYPE_STRING || v.type == TYPE_JSON) ? (String) v.value : defaultValue;
+    }
+
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    public void putLong(String key, long value) {
+        put(key, TYPE_LONG, value);
+    }
+
+    public void putDouble(String key, double value) {
+        put(key, TYPE_DOUBLE, value);
+    }
+
+    public void putBoolean(String key, boolean value) {
+        put(key, TYPE_BOOLEAN, value);
+    }
+
+    public void putString(String key, String value) {
+        if (value == null) {
+            remove(key);
+        } else {
+            put(key, TYPE_STRING, value);
+        }
+    }
+
+    public void remove(String key) {
+        put(key, TYPE_DELETE, null);
+    }
+
+    /**
+     * 批量写入JSON对象中的字段：数字/布尔/字符串按原类型保存，对象和数组按JSON保存，null删除该键
+     * 与当前值相同的字段不写入
+     * @return 实际写入的字段数
+     */
+    public synchronized int putAll(JSONObject json) {
+        int written = 0;
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = json.opt(key);
+            byte type;
+            Object stored;
+            if (value == null || value == JSONObject.NULL) {
+                type = TYPE_DELETE;
+                stored = null;
+            } else if (value instanceof Boolean) {
+                type = TYPE_BOOLEAN;
+                stored = value;
+            } else if (value instanceof Integer || value instanceof Long) {
+                type = TYPE_LONG;
+                stored = ((Number) value).longValue();
+            } else if (value instanceof Number) {
+                type = TYPE_DOUBLE;
+                stored = ((Number) value).doubleValue();
+            } else if (value instanceof JSONObject || value instanceof JSONArray) {
+                type = TYPE_JSON;
+                stored = value.toString();
+            } else {
+                type = TYPE_STRING;
+                stored = value.toString();
+            }
+            if (put(key, type, stored)) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 所有键值转为JSON对象
+     */
+    public synchronized JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Value> entry : values.entrySet()) {
+            Value v = entry.getValue();
+            try {
+                if (v.type == TYPE_JSON) {
+                    json.put(entry.getKey(), new JSONTokener((String) v.value).nextValue());
+                } else {
+                    json.put(entry.getKey(), v.value);
+                }
+            } catch (JSONException e) {
+                Log.w(TAG, "值转换JSON失败: " + entry.getKey());
+            }
+        }
+        return json;
+    }
+
+    /**
+     * 把映射页刷到磁盘（进入后台时调用），进程崩溃不需要这一步，只防止系统掉电
+     */
+    public synchronized void sync() {
+        if (dirty && buffer != null) {
+            buffer.force();
+            dirty = false;
+        }
+    }
+
+    /**
+     * 存储统计
+     */
+    public synchronized JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("name", name);
+            json.put("keys", values.size());
+            json.put("fileBytes", capacity);
+            json.put("dataBytes", dataEnd);
+            json.put("liveBytes", liveBytes);
+        } catch (JSONException e) {
+            Log.e(TAG, "构造存储统计JSON失败", e);
+        }
+        return json;
+    }
+
+    // ---------- JS桥接（native.reflection只支持String/int/float/boolean参数） ----------
+
+    /**
+     * 批量写入游戏存储，json为只包含变化字段的对象，返回实际写入的字段数
+     */
+    public static int putAllStatic(String json) {
+        try {
+            return get(STORE_GAME).putAll(new JSONObject(json));
+        } catch (JSONException e) {
+            Log.e(TAG, "批量写入参数解析失败: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * 读取游戏存储的全部内容（JSON对象字符串）
+     */
+    public static String getAllStatic() {
+        return get(STORE_GAME).toJson().toString();
+    }
+
+    public static void removeStatic(String key) {
+        get(STORE_GAME).remove(key);
+    }
+
+    public static String getStringStatic(String key, String defaultValue) {
+        return get(STORE_GAME).getString(key, defaultValue);
+    }
+
+    public static void putStringStatic(String key, String value) {
+        get(STORE_GAME).putString(key, value);
+    }
+
+    public static int getIntStatic(String key, int defaultValue) {
+        return (int) get(STORE_GAME).getLong(key, defaultValue);
+    }
+
+    public static void putIntStatic(String key, int value) {
+        get(STORE_GAME).putLong(key, value);
+    }
+
+    public static boolean getBooleanStatic(String key, boolean defaultValue) {
+        return get(STORE_GAME).getBoolean(key, defaultValue);
+    }
+
+    public static void putBooleanStatic(String key, boolean value) {
+        get(STORE_GAME).putBoolean(key, value);
+    }
+
+    /**
+     * 刷新所有已打开的存储（AppActivity.onPause调用）
+     */
+    public static void syncAll() {
+        NativeKVStore[] opened;
+        synchronized (NativeKVStore.class) {
+            opened = stores.values().toArray(new NativeKVStore[0]);
+        }
+        for (NativeKVStore store : opened) {
+            store.sync();
+        }
+    }
+
+    // ---------- 文件格式 ----------
+
+    /**
+     * 追加一条记录；值与当前值相同时不写入
+     * @return 是否写入
+     */
+    private synchronized boolean put(String key, byte type, Object value) {
+        Value current = values.get(key);
+        if (type == TYPE_DELETE ? current == null : current != null && current.type == type && current.value.equals(value)) {
+            return false;
+        }
+        if (buffer == null) {
+            Log.e(TAG, "存储未打开，写入失败: " + key);
+            return false;
+        }
+        byte[] record = encode(key, type, value);
+        try {
+            ensureCapacity(record.length);
+        } catch (IllegalStateException e) {
+            Log.e(TAG, "写入失败: " + key + ", " + e.getMessage());
+            return false;
+        }
+        buffer.position(dataEnd);
+        buffer.put(record);
+        // 记录写完后再更新已提交长度
+        dataEnd += record.length;
+        buffer.putInt(OFFSET_DATA_END, dataEnd);
+        dirty = true;
+        apply(key, type, value, record.length);
+        return true;
+    }
+
+    private void apply(String key, byte type, Object value, int recordSize) {
+        Value old = type == TYPE_DELETE ? values.remove(key) : values.put(key, new Value(type, value, recordSize));
+        if (old != null) {
+            liveBytes -= old.recordSize;
+        }
+        if (type != TYPE_DELETE) {
+            liveBytes += recordSize;
+        }
+    }
+
+    private byte[] encode(String key, byte type, Object value) {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        byte[] valueBytes;
+        switch (type) {
+            case TYPE_LONG:
+                valueBytes = ByteBuffer.allocate(8).putLong((Long) value).array();
+                break;
+            case TYPE_DOUBLE:
+                valueBytes = ByteBuffer.allocate(8).putDouble((Double) value).array();
+                break;
+            case TYPE_BOOLEAN:
+                valueBytes = new byte[] {(byte) ((Boolean) value ? 1 : 0)};
+                break;
+            case TYPE_STRING:
+            case TYPE_JSON:
+                valueBytes = ((String) value).getBytes(UTF_8);
+                break;
+            default:
+                valueBytes = new byte[0];
+                break;
+        }
+        if (keyBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("key too long: " + key.length());
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + keyBytes.length + valueBytes.length);
+        record.position(4);
+        record.put(type);
+        record.putShort((short) keyBytes.length);
+        record.putInt(valueBytes.length);
+        record.put(keyBytes);
+        record.put(valueBytes);
+        crc.reset();
+        crc.update(record.array(), 4, record.capacity() - 4);
+        record.putInt(0, (int) crc.getValue());
+        return record.array();
+    }
+
+    /**
+     * 打开文件并逐条校验记录，遇到损坏或未提交的记录时截断到此处
+     */
+    private synchronized void open() {
+        if (tmpFile.exists()) {
+            // 上次压缩在替换前中断，原文件仍然完整
+            tmpFile.delete();
+        }
+        try {
+            boolean fresh = !file.exists() || file.length() < HEADER_SIZE;
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+            capacity = fresh ? INITIAL_CAPACITY : (int) Math.max(file.length(), INITIAL_CAPACITY);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                if (!fresh) {
+                    Log.w(TAG, "存储文件头无效，重新创建: " + name);
+                }
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                dataEnd = HEADER_SIZE;
+                buffer.putInt(OFFSET_DATA_END, dataEnd);
+                return;
+            }
+            int committed = buffer.getInt(OFFSET_DATA_END);
+            if (committed < HEADER_SIZE || committed > capacity) {
+                committed = HEADER_SIZE;
+            }
+            dataEnd = replay(committed);
+            if (dataEnd != committed) {
+                Log.w(TAG, "存储记录损坏，截断到: " + dataEnd + " / " + committed);
+                buffer.putInt(OFFSET_DATA_END, dataEnd);
+            }
+            Log.d(TAG, "存储已打开: " + name + ", 键数: " + values.size() + ", 数据: " + dataEnd + "字节");
+        } catch (IOException e) {
+            Log.e(TAG, "打开存储失败: " + name + ", " + e.getMessage(), e);
+            buffer = null;
+        }
+    }
+
+    /**
+     * 从头重放记录到内存，返回最后一条有效记录的结束位置
+     */
+    private int replay(int committed) {
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_OVERHEAD <= committed) {
+            int storedCrc = buffer.getInt(pos);
+            byte type = buffer.get(pos + 4);
+            int keyLen = buffer.getShort(pos + 5);
+            int valueLen = buffer.getInt(pos + 7);
+            int size = RECORD_OVERHEAD + keyLen + valueLen;
+            if (keyLen < 0 || valueLen < 0 || pos + size > committed || pos + size < pos) {
+                break;
+            }
+            byte[] body = new byte[size - 4];
+            buffer.position(pos + 4);
+            buffer.get(body);
+            crc.reset();
+            crc.update(body, 0, body.length);
+            if ((int) crc.getValue() != storedCrc) {
+                break;
+            }
+            String key = new String(body, 7, keyLen, UTF_8);
+            apply(key, type, decode(type, body, 7 + keyLen, valueLen), size);
+            pos += size;
+        }
+        return pos;
+    }
+
+    private static Object decode(byte type, byte[] data, int offset, int length) {
+        switch (type) {
+            case TYPE_LONG:
+                return ByteBuffer.wrap(data, offset, 8).getLong();
+            case TYPE_DOUBLE:
+                return ByteBuffer.wrap(data, offset, 8).getDouble();
+            case TYPE_BOOLEAN:
+                return data[offset] != 0;
+            case TYPE_STRING:
+            case TYPE_JSON:
+                return new String(data, offset, length, UTF_8);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 确保末尾有足够空间：失效记录较多时先压缩，否则扩大映射
+     */
+    private void ensureCapacity(int recordSize) {
+        if (dataEnd + recordSize <= capacity) {
+            return;
+        }
+        if (dataEnd >= COMPACT_MIN_BYTES && liveBytes * 2 < dataEnd - HEADER_SIZE) {
+            compact();
+            if (dataEnd + recordSize <= capacity) {
+                return;
+            }
+        }
+        int needed = dataEnd + recordSize;
+        int newCapacity = capacity;
+        while (newCapacity < needed) {
+            newCapacity *= 2;
+        }
+        try {
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+            capacity = newCapacity;
+        } catch (IOException e) {
+            throw new IllegalStateException("扩展存储文件失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 把有效记录写入临时文件，sync后重命名替换原文件，再重新映射
+     * 重命名之前中断时原文件不受影响，之后中断时新文件已经完整
+     */
+    private void compact() {
+        int before = dataEnd;
+        try {
+            int size = HEADER_SIZE;
+            for (Value v : values.values()) {
+                size += v.recordSize;
+            }
+            int newCapacity = INITIAL_CAPACITY;
+            while (newCapacity < size * 2) {
+                newCapacity *= 2;
+            }
+            ByteBuffer out = ByteBuffer.allocate(size);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(size);
+            out.position(HEADER_SIZE);
+            for (Map.Entry<String, Value> entry : values.entrySet()) {
+                out.put(encode(entry.getKey(), entry.getValue().type, entry.getValue().value));
+            }
+            RandomAccessFile tmp = new RandomAccessFile(tmpFile, "rw");
+            try {
+                tmp.setLength(newCapacity);
+                tmp.write(out.array());
+                tmp.getFD().sync();
+            } finally {
+                tmp.close();
+            }
+            channel.close();
+            raf.close();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("rename failed");
+            }
+            raf = new RandomAccessFile(file, "rw");
+            channel = raf.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+            capacity = newCapacity;
+            dataEnd = size;
+            liveBytes = size - HEADER_SIZE;
+            dirty = false;
+            Log.d(TAG, "存储已压缩: " + name + ", " + before + " -> " + size + "字节");
+        } catch (IOException e) {
+            Log.e(TAG, "压缩存储失败: " + e.getMessage(), e);
+            tmpFile.delete();
+            // 原文件仍然有效，重新打开
+            values.clear();
+            liveBytes = 0;
+            open();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.schanyin.tgcf;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * 网络质量估计
+ * 不主动探测，只从NativeHttpClient的请求（小请求的首字节耗时、大响应的下载吞吐）和广告加载耗时被动采样，
+ * 用指数加权平均平滑后分为差/一般/良好/优秀四档；档位变化需要越过阈值一定幅度并连续多次确认，避免来回抖动。
+ * PangleAdManager据此调整开屏加载超时和激励视频预加载数量，JS据此调整接口超时
+ */
+public class NetworkQualityEstimator {
+    private static final String TAG = "NetworkQualityEstimator";
+
+    public static final int QUALITY_UNKNOWN = 0;
+    public static final int QUALITY_POOR = 1;
+    public static final int QUALITY_MODERATE = 2;
+    public static final int QUALITY_GOOD = 3;
+    public static final int QUALITY_EXCELLENT = 4;
+
+    private static final String[] QUALITY_NAMES = {"unknown", "poor", "moderate", "good", "excellent"};
+
+    // 首字节耗时阈值：小于[0]为优秀，小于[1]为良好，小于[2]为一般，否则为差
+    // 只用请求体和响应体都很小的请求采样，近似往返时延（仍包含服务端处理时间）
+    private static final long[] RTT_THRESHOLDS_MS = {150, 400, 1200};
+    // 广告加载耗时阈值（含竞价，只在没有HTTP样本时使用）
+    private static final long[] AD_LATENCY_THRESHOLDS_MS = {800, 1500, 3000};
+    // 下载吞吐低于该值时最高只能为一般/差
+    private static final double THROUGHPUT_MODERATE_KBPS = 700;
+    private static final double THROUGHPUT_POOR_KBPS = 150;
+    // 吞吐样本的最小响应体大小，太小的响应测不出带宽
+    static final int MIN_THROUGHPUT_BYTES = 16 * 1024;
+    // 作为往返时延样本的最大请求体/响应体大小，更大的请求首字节耗时主要取决于传输和服务端处理
+    private static final int MAX_RTT_SAMPLE_BYTES = 2 * 1024;
+
+    // 指数加权平均系数
+    private static final double EWMA_ALPHA = 0.3;
+    // 切换档位时阈值放宽的比例
+    private static final double HYSTERESIS_MARGIN = 0.2;
+    // 新档位需要连续确认的样本数
+    private static final int CONFIRM_SAMPLES = 3;
+    // 超过该时间没有新样本时丢弃历史估计（期间可能切换了网络），由新样本直接决定档位
+    private static final long SAMPLE_EXPIRE_MS = 5 * 60 * 1000L;
+
+    private static NetworkQualityEstimator instance;
+
+    // 以下字段由synchronized保护
+    private double rttMs = -1;
+    private double throughputKbps = -1;
+    private double adLatencyMs = -1;
+    private long rttSamples = 0;
+    private long throughputSamples = 0;
+    private long adSamples = 0;
+    private long lastSampleAt = 0;
+    private int candidate = QUALITY_UNKNOWN;
+    private int candidateCount = 0;
+    private boolean switchImmediately = true;
+    private volatile int quality = QUALITY_UNKNOWN;
+
+    public static synchronized NetworkQualityEstimator getInstance() {
+        if (instance == null) {
+            instance = new NetworkQualityEstimator();
+        }
+        return instance;
+    }
+
+    private NetworkQualityEstimator() {}
+
+    /**
+     * HTTP请求样本（在HTTP工作线程中调用）
+     * 请求体和响应体都很小时首字节耗时计为往返时延样本，响应体足够大时计为吞吐样本，其他请求不采样
+     * @param ttfbMs 从请求体发送完成到收到响应头的耗时
+     * @param requestBytes 实际发送的请求体字节数
+     * @param bodyBytes 响应体字节数
+     * @param bodyReadMs 读取响应体的耗时
+     */
+    public void onHttpSample(long ttfbMs, long requestBytes, long bodyBytes, long bodyReadMs) {
+        boolean rttSample = requestBytes <= MAX_RTT_SAMPLE_BYTES && bodyBytes <= MAX_RTT_SAMPLE_BYTES;
+        boolean throughputSample = bodyBytes >= MIN_THROUGHPUT_BYTES && bodyReadMs > 0;
+        if (!rttSample && !throughputSample) {
+            return;
+        }
+        synchronized (this) {
+            expireIfIdle();
+            if (rttSample) {
+                rttMs = ewma(rttMs, ttfbMs);
+                rttSamples++;
+            }
+            if (throughputSample) {
+                throughputKbps = ewma(throughputKbps, bodyBytes * 8.0 / bodyReadMs);
+                throughputSamples++;
+            }
+            evaluate();
+        }
+    }
+
+    /**
+     * HTTP请求超时或连接失败，按耗时计为一个很慢的样本
+     */
+    public void onHttpFailure(long elapsedMs) {
+        synchronized (this) {
+            expireIfIdle();
+            rttMs = ewma(rttMs, Math.max(elapsedMs, RTT_THRESHOLDS_MS[2] * 2));
+            rttSamples++;
+            evaluate();
+        }
+    }
+
+    /**
+     * 广告加载耗时样本（加载成功回调中调用）
+     */
+    public void onAdLoadSample(long latencyMs) {
+        if (latencyMs < 0) {
+            return;
+        }
+        synchronized (this) {
+            expireIfIdle();
+            adLatencyMs = ewma(adLatencyMs, latencyMs);
+            adSamples++;
+            evaluate();
+        }
+    }
+
+    /**
+     * 当前档位（QUALITY_*），无锁读取
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * 接口超时的缩放系数：网络越差超时越长；网络好或还没有样本时为1，不会短于原有超时
+     */
+    public static float getTimeoutScale() {
+        switch (getInstance().quality) {
+            case QUALITY_POOR:
+                return 2.0f;
+            case QUALITY_MODERATE:
+                return 1.3f;
+            default:
+                return 1.0f;
+        }
+    }
+
+    /**
+     * 供JS通过反射调用
+     */
+    public static String getQualityJsonStatic() {
+        return getInstance().getQualityJson();
+    }
+
+    /**
+     * 当前估计值JSON
+     */
+    public synchronized String getQualityJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("quality", QUALITY_NAMES[quality]);
+            json.put("level", quality);
+            json.put("rttMs", Math.round(rttMs));
+            json.put("throughputKbps", Math.round(throughputKbps));
+            json.put("adLatencyMs", Math.round(adLatencyMs));
+            json.put("rttSamples", rttSamples);
+            json.put("throughputSamples", throughputSamples);
+            json.put("adSamples", adSamples);
+            json.put("timeoutScale", getTimeoutScale());
+        } catch (JSONException e) {
+            Log.e(TAG, "构造网络质量JSON失败", e);
+        }
+        return json.toString();
+    }
+
+    public static String nameOf(int quality) {
+        return QUALITY_NAMES[quality];
+    }
+
+    /**
+     * 按当前估计值计算档位，连续确认后才切换
+     */
+    private void evaluate() {
+        int current = quality;
+        int raw = classify(current);
+        if (raw == current) {
+            candidateCount = 0;
+            return;
+        }
+        if (raw != candidate) {
+            candidate = raw;
+            candidateCount = 0;
+        }
+        candidateCount++;
+        // 第一次得出档位或历史估计过期后不需要确认
+        if (switchImmediately || candidateCount >= CONFIRM_SAMPLES) {
+            quality = raw;
+            candidateCount = 0;
+            switchImmediately = false;
+            Log.d(TAG, "网络质量: " + QUALITY_NAMES[current] + " -> " + QUALITY_NAMES[raw] + ", " + getQualityJson());
+        }
+    }
+
+    private int classify(int current) {
+        int level;
+        if (rttSamples > 0) {
+            level = levelOf(rttMs, RTT_THRESHOLDS_MS, current);
+            if (throughputSamples > 0) {
+                if (throughputKbps < THROUGHPUT_POOR_KBPS) {
+                    level = QUALITY_POOR;
+                } else if (throughputKbps < THROUGHPUT_MODERATE_KBPS) {
+                    level = Math.min(level, QUALITY_MODERATE);
+                }
+            }
+        } else if (adSamples > 0) {
+            level = levelOf(adLatencyMs, AD_LATENCY_THRESHOLDS_MS, current);
+        } else {
+            level = QUALITY_UNKNOWN;
+        }
+        return level;
+    }
+
+    /**
+     * 按阈值分档；与当前档位相邻的阈值向有利于保持当前档位的方向放宽
+     */
+    private static int levelOf(double value, long[] thresholds, int current) {
+        int level = QUALITY_POOR;
+        for (int i = thresholds.length - 1; i >= 0; i--) {
+            // thresholds[i]是QUALITY_EXCELLENT - i档与下一档的分界
+            int better = QUALITY_EXCELLENT - i;
+            double threshold = thresholds[i];
+            if (current != QUALITY_UNKNOWN) {
+                if (current >= better) {
+                    threshold *= 1 + HYSTERESIS_MARGIN;
+                } else {
+                    threshold *= 1 - HYSTERESIS_MARGIN;
+                }
+            }
+            if (value < threshold) {
+                level = better;
+            }
+        }
+        return level;
+    }
+
+    private double ewma(double current, double sample) {
+        return current < 0 ? sample : current + EWMA_ALPHA * (sample - current);
+    }
+
+    /**
+     * 长时间没有样本时丢弃历史估计，档位保留到新样本到达
+     */
+    private void expireIfIdle() {
+        long now = SystemClock.elapsedRealtime();
+        if (lastSampleAt > 0 && now - lastSampleAt > SAMPLE_EXPIRE_MS) {
+            rttMs = -1;
+            throughputKbps = -1;
+            adLatencyMs = -1;
+            rttSamples = 0;
+            throughputSamples = 0;
+            adSamples = 0;
+            candidateCount = 0;
+            switchImmediately = true;
+        }
+        lastSampleAt = now;
+    }
+}
@@ -0,0 +1,185 @@
+package com.schanyin.tgcf;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 页面耗时与帧率统计
+ * 用elapsedRealtimeNanos记录页面进入/退出时间，扣除切到后台的时间；
+ * 帧数、卡顿帧数和帧耗时P95来自JS端在引擎Director绘制完成事件中采集的帧间隔分桶
+ * （Cocos在独立的GL线程渲染，UI线程的Choreographer回调反映不了游戏画面的帧率），
+ * 卡顿阈值按页面开始时JS端传入的游戏目标帧率（game.frameRate）计算，而不是屏幕刷新率，
+ * 每次页面访问只上报一条事件（Page_Visit）
+ */
+public class PageTracker {
+    private static final String TAG = "PageTracker";
+
+    // 页面访问事件ID
+    static final String EVENT_PAGE_VISIT = "Page_Visit";
+
+    // 帧耗时直方图：1ms一个桶，最后一个桶收集大于等于FRAME_BUCKETS-1毫秒的帧（与JS端一致）
+    private static final int FRAME_BUCKETS = 101;
+    // 帧耗时超过目标帧间隔的该倍数记为卡顿
+    private static final double JANK_FACTOR = 1.5;
+    // JS端未传目标帧率时的默认值
+    private static final int DEFAULT_TARGET_FRAME_RATE = 60;
+
+    private static PageTracker instance;
+
+    // 当前页面状态，由synchronized保护
+    private String pageName;
+    // 当前页面卡顿阈值对应的最小分桶（桶下界不小于阈值的帧记为卡顿）
+    private int jankBucket = jankBucketFor(DEFAULT_TARGET_FRAME_RATE);
+    private long pageStartNs;
+    private long backgroundNs;
+    private long pausedAtNs;
+    private boolean paused = false;
+
+    public static synchronized PageTracker getInstance() {
+        if (instance == null) {
+            instance = new PageTracker();
+        }
+        return instance;
+    }
+
+    private PageTracker() {
+    }
+
+    /**
+     * 目标帧率对应的卡顿分桶：帧耗时不小于目标帧间隔的JANK_FACTOR倍记为卡顿
+     */
+    private static int jankBucketFor(int targetFrameRate) {
+        int frameRate = targetFrameRate > 0 ? targetFrameRate : DEFAULT_TARGET_FRAME_RATE;
+        int bucket = (int) Math.ceil(1000.0 / frameRate * JANK_FACTOR);
+        return Math.min(bucket, FRAME_BUCKETS - 1);
+    }
+
+    /**
+     * 页面进入（上一个页面未结束时先结束它，不带帧统计）
+     * @param targetFrameRate 游戏目标帧率（game.frameRate），不大于0时按60帧计算卡顿
+     */
+    public void onPageStart(String name, int targetFrameRate) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        int bucket = jankBucketFor(targetFrameRate);
+        synchronized (this) {
+            if (pageName != null) {
+                endPageLocked(now, null);
+            }
+            pageName = name;
+            jankBucket = bucket;
+            pageStartNs = now;
+            backgroundNs = 0;
+            pausedAtNs = now;
+        }
+    }
+
+    /**
+     * 页面退出，与当前页面名称不符时忽略
+     * @param frameHistogram 引擎帧耗时分桶计数（逗号分隔），为空时不上报帧统计
+     */
+    public void onPageEnd(String name, String frameHistogram) {
+        long now = SystemClock.elapsedRealtimeNanos();
+        synchronized (this) {
+            if (pageName == null || !pageName.equals(name)) {
+                Log.w(TAG, "页面结束与当前页面不符: " + name + ", 当前: " + pageName);
+                return;
+            }
+            endPageLocked(now, parseHistogram(frameHistogram));
+        }
+    }
+
+    /**
+     * 应用切到后台（Activity.onPause中调用），后台时间不计入页面时长
+     */
+    public synchronized void onAppPause() {
+        if (paused) {
+            return;
+        }
+        paused = true;
+        pausedAtNs = SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * 应用回到前台（Activity.onResume中调用）
+     */
+    public synchronized void onAppResume() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        if (pageName != null) {
+            backgroundNs += SystemClock.elapsedRealtimeNanos() - Math.max(pausedAtNs, pageStartNs);
+        }
+    }
+
+    private void endPageLocked(long now, int[] histogram) {
+        long background = backgroundNs;
+        if (paused) {
+            background += now - Math.max(pausedAtNs, pageStartNs);
+        }
+        long foregroundMs = Math.max(0, now - pageStartNs - background) / 1_000_000L;
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("page", pageName);
+        attributes.put("duration_ms", foregroundMs);
+        attributes.put("background_ms", background / 1_000_000L);
+        String frameLog = "";
+        if (histogram != null) {
+            int frameCount = 0;
+            int jankyFrames = 0;
+            for (int b = 0; b < FRAME_BUCKETS; b++) {
+                frameCount += histogram[b];
+                if (b >= jankBucket) {
+                    jankyFrames += histogram[b];
+                }
+            }
+            int p95 = percentileMs(histogram, frameCount, 0.95);
+            attributes.put("frames", frameCount);
+            attributes.put("janky_frames", jankyFrames);
+            attributes.put("p95_frame_ms", p95);
+            attributes.put("fps", foregroundMs > 0 ? Math.round(frameCount * 1000.0 / foregroundMs) : 0L);
+            frameLog = ", 帧数" + frameCount + ", 卡顿" + jankyFrames + ", P95 " + p95 + "ms";
+        }
+        // 时长和帧统计按数值上报，看板可以直接求均值
+        UmengHelper.onEventWithMap(EVENT_PAGE_VISIT, attributes);
+        Log.d(TAG, "页面访问: " + pageName + ", 前台" + foregroundMs + "ms" + frameLog);
+
+        pageName = null;
+    }
+
+    private static int[] parseHistogram(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return null;
+        }
+        int[] histogram = new int[FRAME_BUCKETS];
+        String[] parts = encoded.split(",");
+        try {
+            for (int b = 0; b < parts.length && b < FRAME_BUCKETS; b++) {
+                histogram[b] = Integer.parseInt(parts[b]);
+            }
+        } catch (NumberFormatException e) {
+            Log.e(TAG, "帧耗时分桶格式错误: " + e.getMessage());
+            return null;
+        }
+        return histogram;
+    }
+
+    private static int percentileMs(int[] histogram, int frameCount, double percentile) {
+        if (frameCount == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(frameCount * percentile);
+        long seen = 0;
+        for (int b = 0; b < FRAME_BUCKETS; b++) {
+            seen += histogram[b];
+            if (seen >= target) {
+                // 桶上界
+                return b + 1;
+            }
+        }
+        return FRAME_BUCKETS;
+    }
+}
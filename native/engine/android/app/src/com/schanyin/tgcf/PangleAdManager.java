@@ -21,7 +21,10 @@ import org.json.JSONObject;
 import org.json.JSONException;
 
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
 import android.os.Bundle;
+import android.os.SystemClock;
 
 /**
  * 穿山甲开屏广告管理器
@@ -42,6 +45,40 @@ public class PangleAdManager {
     private FrameLayout splashContainer;
     private TTRewardVideoAd currentRewardAd; // 当前激励视频广告
     
+    // 填充耗时：从请求加载到加载成功（毫秒），-1表示未知
+    private long splashLoadStartedAt = 0;
+    private long rewardLoadStartedAt = 0;
+    private volatile long splashFillLatencyMs = -1;
+    private volatile long rewardFillLatencyMs = -1;
+    
+    // 开屏广告加载超时（毫秒），网络较差时适当放宽
+    private static final int SPLASH_LOAD_TIMEOUT_MS = 3500;
+    private static final int SPLASH_LOAD_TIMEOUT_MODERATE_MS = 4000;
+    private static final int SPLASH_LOAD_TIMEOUT_POOR_MS = 5000;
+    // 预加载的激励视频超过该时间不再使用
+    private static final long REWARD_PRELOAD_TTL_MS = 30 * 60 * 1000L;
+    // 预加载超过该时间仍未缓存完成（也没有失败回调）时不再计入进行中的数量
+    private static final long REWARD_PRELOAD_TIMEOUT_MS = 60 * 1000L;
+    
+    /**
+     * 预加载完成（已缓存）的激励视频
+     */
+    private static final class PreloadedReward {
+        final TTRewardVideoAd ad;
+        final long loadedAt;
+        final long fillLatencyMs;
+        
+        PreloadedReward(TTRewardVideoAd ad, long loadedAt, long fillLatencyMs) {
+            this.ad = ad;
+            this.loadedAt = loadedAt;
+            this.fillLatencyMs = fillLatencyMs;
+        }
+    }
+    
+    // 激励视频预加载池，数量由网络质量决定，以下字段由rewardPool的锁保护
+    private final ArrayDeque<PreloadedReward> rewardPool = new ArrayDeque<>();
+    private int rewardPreloadsInFlight = 0;
+    
     private PangleAdManager() {}
     
     public static synchronized PangleAdManager getInstance() {
@@ -96,6 +133,16 @@ public class PangleAdManager {
                 Log.d(TAG, "穿山甲SDK初始化成功");
                 isInitialized = true;
                 sendInitResult(true, "初始化成功");
+                // 初始化后立即预加载，第一次激励视频请求也能直接展示
+                final Activity act = activity;
+                if (act != null) {
+                    act.runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            preloadRewardAds();
+                        }
+                    });
+                }
             }
 
             @Override
@@ -297,11 +344,15 @@ public class PangleAdManager {
      * 加载开屏广告
      */
     private void loadSplashAd(Activity act) {
+        splashLoadStartedAt = SystemClock.elapsedRealtime();
+        splashFillLatencyMs = -1;
         TTAdNative adNativeLoader = TTAdSdk.getAdManager().createAdNative(act);
         adNativeLoader.loadSplashAd(buildSplashAdslot(), new TTAdNative.CSJSplashAdListener() {
             @Override
             public void onSplashLoadSuccess(CSJSplashAd csjSplashAd) {
-                Log.d(TAG, "开屏广告加载成功");
+                splashFillLatencyMs = SystemClock.elapsedRealtime() - splashLoadStartedAt;
+                Log.d(TAG, "开屏广告加载成功，填充耗时: " + splashFillLatencyMs + "ms");
+                NetworkQualityEstimator.getInstance().onAdLoadSample(splashFillLatencyMs);
                 currentSplashAd = csjSplashAd;
                 sendAdLoadResult(true, "广告加载成功");
             }
@@ -324,7 +375,21 @@ public class PangleAdManager {
                 Log.e(TAG, "开屏广告渲染失败: " + csjAdError.getMsg());
                 sendAdRenderResult(false, "广告渲染失败: " + csjAdError.getMsg());
             }
-        }, 3500);
+        }, splashLoadTimeoutMs());
+    }
+    
+    /**
+     * 按网络质量决定开屏广告加载超时
+     */
+    private static int splashLoadTimeoutMs() {
+        switch (NetworkQualityEstimator.getInstance().getQuality()) {
+            case NetworkQualityEstimator.QUALITY_POOR:
+                return SPLASH_LOAD_TIMEOUT_POOR_MS;
+            case NetworkQualityEstimator.QUALITY_MODERATE:
+                return SPLASH_LOAD_TIMEOUT_MODERATE_MS;
+            default:
+                return SPLASH_LOAD_TIMEOUT_MS;
+        }
     }
     
     /**
@@ -350,6 +415,8 @@ public class PangleAdManager {
                     String sdkName = showEcpm.getSdkName();  //展示广告的adn名称
                     String slotId = showEcpm.getSlotId(); //展示广告的代码位ID
                     Log.d(TAG, "广告展示信息 - ECPM: " + ecpm + ", SDK: " + sdkName + ", SlotID: " + slotId);
+                    AdRevenueTracker.getInstance().recordImpression(AdRevenueTracker.AD_TYPE_REWARD,
+                        ecpm, sdkName, slotId, rewardFillLatencyMs);
                 }
                 sendRewardAdShowResult(true, "广告开始展示");
             }
@@ -365,6 +432,8 @@ public class PangleAdManager {
                 //广告关闭
                 Log.d(TAG, "激励视频广告关闭");
                 sendRewardAdCloseResult();
+                // 用户看完一个激励视频后很可能再看，网络较好时提前加载下一个
+                preloadRewardAds();
             }
 
             @Override
@@ -411,7 +480,23 @@ public class PangleAdManager {
     /**
      * 加载激励视频广告
      */
-    private void loadRewardAd(Activity act) {
+    private void loadRewardAd(final Activity act) {
+        final PreloadedReward preloaded = pollPreloadedReward();
+        if (preloaded != null) {
+            Log.d(TAG, "使用预加载的激励视频广告");
+            rewardFillLatencyMs = preloaded.fillLatencyMs;
+            currentRewardAd = preloaded.ad;
+            sendRewardAdLoadResult(true, "广告加载成功");
+            act.runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    showRewardAd(act, preloaded.ad);
+                }
+            });
+            return;
+        }
+        rewardLoadStartedAt = SystemClock.elapsedRealtime();
+        rewardFillLatencyMs = -1;
         TTAdNative adNativeLoader = TTAdSdk.getAdManager().createAdNative(act);
         /** 这里为激励视频的简单功能，如需使用复杂功能，如gromore的服务端奖励验证，请参考demo中的AdUtils.kt类中激励部分 */
         adNativeLoader.loadRewardVideoAd(buildRewardAdslot(), new TTAdNative.RewardVideoAdListener() {
@@ -425,7 +510,9 @@ public class PangleAdManager {
             @Override
             public void onRewardVideoAdLoad(TTRewardVideoAd ttRewardVideoAd) {
                 //广告加载成功
-                Log.d(TAG, "激励视频广告加载成功");
+                rewardFillLatencyMs = SystemClock.elapsedRealtime() - rewardLoadStartedAt;
+                Log.d(TAG, "激励视频广告加载成功，填充耗时: " + rewardFillLatencyMs + "ms");
+                NetworkQualityEstimator.getInstance().onAdLoadSample(rewardFillLatencyMs);
                 currentRewardAd = ttRewardVideoAd;
                 sendRewardAdLoadResult(true, "广告加载成功");
             }
@@ -445,6 +532,123 @@ public class PangleAdManager {
         });
     }
     
+    /**
+     * 激励视频预加载数量：网络优秀时2个，良好时1个，还没有网络采样时（启动后第一次）1个，
+     * 其他情况不预加载，按需加载；同时不超过设备分级推荐的预加载深度（低端机最多1个）
+     */
+    private static int rewardPoolDepth() {
+        int depth;
+        switch (NetworkQualityEstimator.getInstance().getQuality()) {
+            case NetworkQualityEstimator.QUALITY_EXCELLENT:
+                depth = 2;
+                break;
+            case NetworkQualityEstimator.QUALITY_GOOD:
+            case NetworkQualityEstimator.QUALITY_UNKNOWN:
+                depth = 1;
+                break;
+            default:
+                depth = 0;
+                break;
+        }
+        DeviceTierClassifier.Result tier = DeviceTierClassifier.getResult();
+        return tier != null ? Math.min(depth, tier.getAdPoolDepth()) : depth;
+    }
+    
+    /**
+     * 取出一个未过期的预加载激励视频，没有时返回null
+     */
+    private PreloadedReward pollPreloadedReward() {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (rewardPool) {
+            PreloadedReward reward;
+            while ((reward = rewardPool.pollFirst()) != null) {
+                if (now - reward.loadedAt < REWARD_PRELOAD_TTL_MS) {
+                    return reward;
+                }
+                Log.d(TAG, "预加载的激励视频已过期，丢弃");
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * 按网络质量把激励视频预加载池补足
+     */
+    private void preloadRewardAds() {
+        final Activity act = activity;
+        if (!isInitialized || act == null) {
+            return;
+        }
+        int toLoad;
+        int depth = rewardPoolDepth();
+        synchronized (rewardPool) {
+            toLoad = depth - rewardPool.size() - rewardPreloadsInFlight;
+            if (toLoad <= 0) {
+                return;
+            }
+            rewardPreloadsInFlight += toLoad;
+        }
+        Log.d(TAG, "预加载激励视频: " + toLoad + "个，网络质量: "
+            + NetworkQualityEstimator.nameOf(NetworkQualityEstimator.getInstance().getQuality()));
+        for (int i = 0; i < toLoad; i++) {
+            final long startedAt = SystemClock.elapsedRealtime();
+            final boolean[] settled = {false};
+            // 只返回onRewardVideoAdLoad而迟迟不缓存的加载，超时后释放进行中的名额
+            NativeExecutors.scheduled().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (rewardPool) {
+                        if (settled[0]) {
+                            return;
+                        }
+                        settled[0] = true;
+                        rewardPreloadsInFlight--;
+                    }
+                    Log.w(TAG, "激励视频预加载超时未缓存");
+                }
+            }, REWARD_PRELOAD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            TTAdNative adNativeLoader = TTAdSdk.getAdManager().createAdNative(act);
+            adNativeLoader.loadRewardVideoAd(buildRewardAdslot(), new TTAdNative.RewardVideoAdListener() {
+                private long fillLatencyMs = -1;
+                
+                @Override
+                public void onError(int errorCode, String errorMsg) {
+                    Log.e(TAG, "激励视频预加载失败: " + errorCode + ", " + errorMsg);
+                    synchronized (rewardPool) {
+                        if (!settled[0]) {
+                            settled[0] = true;
+                            rewardPreloadsInFlight--;
+                        }
+                    }
+                }
+
+                @Override
+                public void onRewardVideoAdLoad(TTRewardVideoAd ttRewardVideoAd) {
+                    fillLatencyMs = SystemClock.elapsedRealtime() - startedAt;
+                    NetworkQualityEstimator.getInstance().onAdLoadSample(fillLatencyMs);
+                }
+
+                @Override
+                public void onRewardVideoCached() {
+                    // 已废弃，使用onRewardVideoCached(TTRewardVideoAd ttRewardVideoAd)
+                }
+
+                @Override
+                public void onRewardVideoCached(TTRewardVideoAd ttRewardVideoAd) {
+                    synchronized (rewardPool) {
+                        if (!settled[0]) {
+                            settled[0] = true;
+                            rewardPreloadsInFlight--;
+                        }
+                        // 超时后才缓存完成的广告同样可用，放入池中
+                        rewardPool.addLast(new PreloadedReward(ttRewardVideoAd, SystemClock.elapsedRealtime(), fillLatencyMs));
+                    }
+                    Log.d(TAG, "激励视频预加载完成，填充耗时: " + fillLatencyMs + "ms");
+                }
+            });
+        }
+    }
+    
     /**
      * 展示开屏广告
      */
@@ -555,6 +759,9 @@ public class PangleAdManager {
             public void onSplashAdShow(CSJSplashAd csjSplashAd) {
                 Log.d(TAG, "开屏广告展示");
                 
+                // 广告展示期间预热第一个场景的资源文件
+                AssetPageCacheWarmer.getInstance().start(activity != null ? activity : App.getContext());
+                
                 // 获取展示广告相关信息，需要在show回调之后进行获取
                 String ecpmInfo = "";
                 MediationBaseManager manager = splashAd.getMediationManager();
@@ -565,6 +772,8 @@ public class PangleAdManager {
                     String slotId = showEcpm.getSlotId(); //展示广告的代码位ID
                     ecpmInfo = String.format("ecpm:%s, sdk:%s, slotId:%s", ecpm, sdkName, slotId);
                     Log.d(TAG, "广告展示信息: " + ecpmInfo);
+                    AdRevenueTracker.getInstance().recordImpression(AdRevenueTracker.AD_TYPE_SPLASH,
+                        ecpm, sdkName, slotId, splashFillLatencyMs);
                 }
                 
                 sendAdShowResult(true, "广告展示成功", ecpmInfo);
@@ -579,6 +788,7 @@ public class PangleAdManager {
             @Override
             public void onSplashAdClose(CSJSplashAd csjSplashAd, int closeType) {
                 Log.d(TAG, "开屏广告关闭, 关闭类型: " + closeType);
+                AssetPageCacheWarmer.getInstance().stop();
                 
                 // 清理广告视图和恢复游戏界面
                 if (activity != null && container != null) {
@@ -621,6 +831,7 @@ public class PangleAdManager {
             Log.d(TAG, "开屏广告已调用showSplashView");
         } catch (Exception e) {
             Log.e(TAG, "展示开屏广告时出错: " + e.getMessage());
+            AssetPageCacheWarmer.getInstance().stop();
             sendAdShowResult(false, "展示广告异常: " + e.getMessage());
         }
     }
@@ -0,0 +1,371 @@
+package com.schanyin.tgcf;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 游戏进度的后写日志
+ * 本地保存：JS只把变化的字段交给日志就返回，日志在内存中排队，定时或进入后台时合并后写入NativeKVStore，
+ * 同一字段多次修改只写最后一次；
+ * 服务器上报：由单个后台线程发送，排队中的旧上报被新上报替换（上报内容是累计值）。
+ * 上报带有合成增量且不是幂等的，只有请求确定没有发出（排队超时、DNS或连接失败）时才按退避重试，
+ * 已发出的请求无论超时还是5xx都不重发，交给JS下次上报；重试期间有新上报时直接改发新的
+ */
+public class ProgressJournal {
+    private static final String TAG = "ProgressJournal";
+
+    // 第一次写入后延迟多久落盘
+    private static final long FLUSH_DELAY_MS = 1000;
+
+    private static final int SYNC_MAX_ATTEMPTS = 5;
+    private static final long SYNC_RETRY_BASE_MS = 2000;
+    private static final long SYNC_RETRY_MAX_MS = 60 * 1000L;
+    // 上报请求体中的增量字段（上次确认后新增的合成数据），其余字段为绝对值
+    private static final String[] DELTA_FIELDS = {"times", "goldNumCompose", "redBagNumCompose"};
+    // 保留最近的确认记录数，用于从迟到的上报中扣除已确认的增量
+    private static final int MAX_ACK_HISTORY = 16;
+
+    static final String EVENT_SYNC_RESULT = "progressSyncResult";
+
+    private static ProgressJournal instance;
+
+    // 本地写入，由synchronized保护；只保存原始JSON，解析和合并在落盘时进行，不占用调用线程
+    private List<String> pendingBatches = new ArrayList<>();
+    private boolean flushScheduled = false;
+    private long recordedBatches = 0;
+    private long flushedFields = 0;
+    private long coalescedFields = 0;
+    private long flushCount = 0;
+
+    // 服务器上报，由synchronized保护
+    private final ExecutorService syncWorker =
+        Executors.newSingleThreadExecutor(NativeExecutors.newThreadFactory("progress-sync"));
+    private JSONObject queuedSync;
+    private boolean syncRunning = false;
+    private ScriptSender sender;
+    private int ackSeq = 0;
+    private final Map<Integer, JSONObject> ackHistory = new LinkedHashMap<>();
+    private long syncEnqueued = 0;
+    private long syncSuperseded = 0;
+    private long syncSent = 0;
+    private long syncRetries = 0;
+    private long syncSucceeded = 0;
+    private long syncFailed = 0;
+
+    public static synchronized ProgressJournal getInstance() {
+        if (instance == null) {
+            instance = new ProgressJournal();
+        }
+        return instance;
+    }
+
+    private ProgressJournal() {}
+
+    // ---------- 本地写入 ----------
+
+    /**
+     * 记录一批变化的字段（JSON对象，null表示删除），立即返回
+     */
+    public void record(String json) {
+        synchronized (this) {
+            pendingBatches.add(json);
+            recordedBatches++;
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        NativeExecutors.scheduled().schedule(new Runnable() {
+            @Override
+            public void run() {
+                NativeExecutors.io().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                });
+            }
+        }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 合并排队中的字段并写入NativeKVStore
+     * @return 写入的字段数
+     */
+    public int flush() {
+        List<String> batches;
+        synchronized (this) {
+            flushScheduled = false;
+            if (pendingBatches.isEmpty()) {
+                return 0;
+            }
+            batches = pendingBatches;
+            pendingBatches = new ArrayList<>();
+        }
+        JSONObject merged = new JSONObject();
+        int total = 0;
+        for (String batch : batches) {
+            try {
+                JSONObject fields = new JSONObject(batch);
+                Iterator<String> keys = fields.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    merged.put(key, fields.opt(key));
+                    total++;
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "进度字段解析失败，丢弃该批: " + e.getMessage());
+            }
+        }
+        int written = NativeKVStore.get(NativeKVStore.STORE_GAME).putAll(merged);
+        synchronized (this) {
+            flushedFields += written;
+            coalescedFields += total - merged.length();
+            flushCount++;
+        }
+        return written;
+    }
+
+    /**
+     * 供JS通过反射调用
+     */
+    public static void recordStatic(String json) {
+        getInstance().record(json);
+    }
+
+    /**
+     * 落盘后读取全部内容（启动加载时调用，保证读到尚未落盘的字段）
+     */
+    public static String getAllStatic() {
+        getInstance().flush();
+        return NativeKVStore.getAllStatic();
+    }
+
+    // ---------- 服务器上报 ----------
+
+    /**
+     * 排队一次进度上报
+     * @param json {"url","headers":{},"body":{},"timeoutMs","successCode","appliedAck"}，
+     *             appliedAck为JS已经扣除过的最后一次确认序号
+     */
+    public void enqueueSync(String json, ScriptSender sender) {
+        JSONObject request;
+        try {
+            request = new JSONObject(json);
+        } catch (JSONException e) {
+            Log.e(TAG, "上报参数解析失败: " + e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            this.sender = sender;
+            syncEnqueued++;
+            if (queuedSync != null) {
+                syncSuperseded++;
+            }
+            queuedSync = request;
+            if (syncRunning) {
+                return;
+            }
+            syncRunning = true;
+        }
+        syncWorker.execute(new Runnable() {
+            @Override
+            public void run() {
+                drainSync();
+            }
+        });
+    }
+
+    /**
+     * 在上报线程中逐个发送排队的上报，直到队列为空
+     */
+    private void drainSync() {
+        while (true) {
+            JSONObject request;
+            synchronized (this) {
+                request = queuedSync;
+                queuedSync = null;
+                if (request == null) {
+                    syncRunning = false;
+                    return;
+                }
+            }
+            sendWithRetry(request);
+        }
+    }
+
+    private void sendWithRetry(JSONObject request) {
+        long backoff = SYNC_RETRY_BASE_MS;
+        for (int attempt = 1; ; attempt++) {
+            JSONObject body;
+            synchronized (this) {
+                body = deductAcked(request);
+            }
+            NativeHttpClient.Response response = NativeHttpClient.getInstance().execute(toHttpRequest(request, body));
+            synchronized (this) {
+                syncSent++;
+            }
+            // 请求可能已被服务端处理时重发会重复累加增量，只重试确定没有发出的请求
+            boolean retryable = response.error != null && !response.requestSent;
+            if (!retryable || attempt >= SYNC_MAX_ATTEMPTS) {
+                onSyncComplete(request, body, response);
+                return;
+            }
+            Log.w(TAG, "进度上报失败，" + backoff + "ms后重试(" + attempt + "): "
+                + (response.error != null ? response.error : "HTTP " + response.status));
+            SystemClock.sleep(backoff);
+            backoff = Math.min(backoff * 2, SYNC_RETRY_MAX_MS);
+            synchronized (this) {
+                syncRetries++;
+                if (queuedSync != null) {
+                    // 等待期间有新的上报，新上报包含这次的内容，改发新的
+                    syncSuperseded++;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 从请求体的增量字段中扣除JS尚未扣除的确认，返回实际发送的请求体
+     */
+    private JSONObject deductAcked(JSONObject request) {
+        JSONObject body = request.optJSONObject("body");
+        if (body == null) {
+            body = new JSONObject();
+        }
+        int appliedAck = request.optInt("appliedAck", 0);
+        if (appliedAck >= ackSeq) {
+            return body;
+        }
+        try {
+            JSONObject adjusted = new JSONObject(body.toString());
+            for (Map.Entry<Integer, JSONObject> ack : ackHistory.entrySet()) {
+                if (ack.getKey() <= appliedAck) {
+                    continue;
+                }
+                for (String field : DELTA_FIELDS) {
+                    if (adjusted.has(field)) {
+                        long value = adjusted.optLong(field) - ack.getValue().optLong(field);
+                        adjusted.put(field, Math.max(0, value));
+                    }
+                }
+            }
+            return adjusted;
+        } catch (JSONException e) {
+            Log.e(TAG, "扣除已确认增量失败: " + e.getMessage());
+            return body;
+        }
+    }
+
+    private NativeHttpClient.Request toHttpRequest(JSONObject request, JSONObject body) {
+        Map<String, String> headers = new HashMap<>();
+        JSONObject headersJson = request.optJSONObject("headers");
+        if (headersJson != null) {
+            Iterator<String> keys = headersJson.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                headers.put(key, headersJson.optString(key));
+            }
+        }
+        long timeoutMs = request.optLong("timeoutMs", NativeHttpClient.DEFAULT_TIMEOUT_MS);
+        return new NativeHttpClient.Request("progress_sync", "POST", request.optString("url"), headers,
+            body.toString(), false, false, timeoutMs, null);
+    }
+
+    /**
+     * 上报结束：业务成功时记录本次确认的增量，并把结果发给JS
+     */
+    private void onSyncComplete(JSONObject request, JSONObject body, NativeHttpClient.Response response) {
+        boolean ok = false;
+        if (response.isSuccessful()) {
+            try {
+                JSONObject result = new JSONObject(response.body);
+                ok = !request.has("successCode") || result.optInt("code") == request.optInt("successCode");
+            } catch (JSONException e) {
+                Log.w(TAG, "进度上报响应解析失败: " + e.getMessage());
+            }
+        }
+        JSONObject message = new JSONObject();
+        ScriptSender target;
+        synchronized (this) {
+            try {
+                message.put("ok", ok);
+                message.put("status", response.status);
+                message.put("body", response.body);
+                if (response.error != null) {
+                    message.put("error", response.error);
+                }
+                if (ok) {
+                    JSONObject acked = new JSONObject();
+                    for (String field : DELTA_FIELDS) {
+                        acked.put(field, body.optLong(field));
+                    }
+                    ackSeq++;
+                    ackHistory.put(ackSeq, acked);
+                    if (ackHistory.size() > MAX_ACK_HISTORY) {
+                        Iterator<Integer> oldest = ackHistory.keySet().iterator();
+                        oldest.next();
+                        oldest.remove();
+                    }
+                    message.put("ack", ackSeq);
+                    message.put("acked", acked);
+                    syncSucceeded++;
+                } else {
+                    syncFailed++;
+                }
+            } catch (JSONException e) {
+                Log.e(TAG, "构造上报结果JSON失败", e);
+            }
+            target = sender;
+        }
+        Log.d(TAG, "进度上报" + (ok ? "成功" : "失败") + ": HTTP " + response.status + ", " + response.elapsedMs + "ms");
+        if (target != null) {
+            target.sendToScript(EVENT_SYNC_RESULT, message.toString());
+        }
+    }
+
+    /**
+     * 供JS通过反射调用
+     */
+    public static String getStatsJsonStatic() {
+        return getInstance().getStatsJson();
+    }
+
+    /**
+     * 写入和上报统计JSON
+     */
+    public synchronized String getStatsJson() {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("recordedBatches", recordedBatches);
+            json.put("pendingBatches", pendingBatches.size());
+            json.put("flushes", flushCount);
+            json.put("flushedFields", flushedFields);
+            json.put("coalescedFields", coalescedFields);
+            json.put("syncEnqueued", syncEnqueued);
+            json.put("syncSuperseded", syncSuperseded);
+            json.put("syncSent", syncSent);
+            json.put("syncRetries", syncRetries);
+            json.put("syncSucceeded", syncSucceeded);
+            json.put("syncFailed", syncFailed);
+            json.put("store", NativeKVStore.get(NativeKVStore.STORE_GAME).getStats());
+        } catch (JSONException e) {
+            Log.e(TAG, "构造进度日志统计JSON失败", e);
+        }
+        return json.toString();
+    }
+}
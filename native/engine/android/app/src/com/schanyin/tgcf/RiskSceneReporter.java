@@ -0,0 +1,145 @@
+package com.schanyin.tgcf;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 连云山风控场景上报队列
+ * 上报在后台串行线程上调用SDK，不占用桥接线程；
+ * 短时间内重复上报的同一场景合并为一次SDK调用，所有请求方都会收到这次上报的真实结果
+ */
+public class RiskSceneReporter {
+    private static final String TAG = "RiskSceneReporter";
+
+    // 同一场景在该时间窗口内的重复上报合并
+    private static final long COLLAPSE_WINDOW_MS = 2000;
+
+    /**
+     * 上报完成回调（在上报线程中调用）
+     */
+    public interface Callback {
+        void onComplete(String scene, boolean success, String message, boolean collapsed);
+    }
+
+    /**
+     * 一次SDK上报及等待其结果的请求方，由RiskSceneReporter的锁保护
+     */
+    private static final class Flight {
+        final long startedAt;
+        final List<Callback> waiters = new ArrayList<>(2);
+        int requestCount = 1;
+        boolean done = false;
+        boolean success;
+        String message;
+
+        Flight(long startedAt) {
+            this.startedAt = startedAt;
+        }
+    }
+
+    private static RiskSceneReporter instance;
+
+    private final ExecutorService executor =
+        Executors.newSingleThreadExecutor(NativeExecutors.newThreadFactory("risk-report"));
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    private long reportedCount = 0;
+    private long collapsedCount = 0;
+
+    public static synchronized RiskSceneReporter getInstance() {
+        if (instance == null) {
+            instance = new RiskSceneReporter();
+        }
+        return instance;
+    }
+
+    private RiskSceneReporter() {}
+
+    /**
+     * 提交场景上报，立即返回；结果通过callback通知
+     */
+    public void report(final String scene, Callback callback) {
+        long now = SystemClock.elapsedRealtime();
+        Flight joined = null;
+        final Flight flight;
+        synchronized (this) {
+            Flight existing = flights.get(scene);
+            if (existing != null && now - existing.startedAt < COLLAPSE_WINDOW_MS) {
+                existing.requestCount++;
+                collapsedCount++;
+                if (!existing.done) {
+                    existing.waiters.add(callback);
+                    return;
+                }
+                joined = existing;
+                flight = null;
+            } else {
+                flight = new Flight(now);
+                flight.waiters.add(callback);
+                flights.put(scene, flight);
+                reportedCount++;
+            }
+        }
+        if (joined != null) {
+            // 窗口内已完成的同一场景，直接返回该次结果
+            callback.onComplete(scene, joined.success, joined.message, true);
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                execute(scene, flight);
+            }
+        });
+    }
+
+    private void execute(String scene, Flight flight) {
+        boolean success;
+        String message;
+        try {
+            success = App.reportScene(scene);
+            message = (success ? "场景上报成功: " : "场景上报失败: ") + scene;
+        } catch (Exception e) {
+            success = false;
+            message = "场景上报失败: " + e.getMessage();
+        }
+
+        List<Callback> waiters;
+        int requests;
+        synchronized (this) {
+            flight.done = true;
+            flight.success = success;
+            flight.message = message;
+            waiters = new ArrayList<>(flight.waiters);
+            flight.waiters.clear();
+            requests = flight.requestCount;
+            // 清理已过窗口的记录，避免场景名无限累积
+            long now = SystemClock.elapsedRealtime();
+            Iterator<Map.Entry<String, Flight>> it = flights.entrySet().iterator();
+            while (it.hasNext()) {
+                Flight f = it.next().getValue();
+                if (f.done && now - f.startedAt >= COLLAPSE_WINDOW_MS) {
+                    it.remove();
+                }
+            }
+        }
+        if (requests > 1) {
+            Log.d(TAG, "场景上报合并: " + scene + ", 请求" + requests + "次，累计上报" + reportedCount + "次，合并" + collapsedCount + "次");
+        }
+        for (int i = 0; i < waiters.size(); i++) {
+            try {
+                waiters.get(i).onComplete(scene, success, message, i > 0);
+            } catch (Exception e) {
+                Log.e(TAG, "场景上报回调失败: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.schanyin.tgcf;
+
+/**
+ * 向JS发送消息的统一接口
+ * 由AppActivity实现，原生服务通过该接口回调JS，避免直接依赖Activity
+ */
+public interface ScriptSender {
+    void sendToScript(String command, String data);
+}
@@ -0,0 +1,141 @@
+package com.schanyin.tgcf;
+
+import android.util.Base64;
+import android.util.Log;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 接口签名服务
+ * 密钥只保存在原生端，HmacSHA256/SHA-256由javax.crypto计算，替代JS端crypto-es的纯JS实现；
+ * Mac和MessageDigest按线程缓存，支持一次桥接调用签名多个请求体
+ */
+public class SigningService {
+    private static final String TAG = "SigningService";
+
+    // 批量签名时请求体之间的分隔符（JSON.stringify会转义控制字符，不会出现在请求体中）
+    public static final char BATCH_SEPARATOR = '\u001E';
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    // 密钥分段存储（Base64），与服务端约定的签名密钥
+    private static final String[] SECRET_PARTS = {
+        "ODtqIWg3WA==",
+        "ezJhYjhLMDl2U0UwWnJOMm1BRzY=",
+        "XnQzNDVGMTVjNFZZKQ==",
+        "Km8uRDlmN019TzFVLXB4cWVITHcrVGt6",
+    };
+
+    private static volatile SecretKeySpec signingKey;
+
+    // 每个线程一个Mac实例，避免同步和重复初始化
+    private static final ThreadLocal<Mac> THREAD_MAC = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(getSigningKey());
+                return mac;
+            } catch (Exception e) {
+                Log.e(TAG, "初始化HmacSHA256失败: " + e.getMessage(), e);
+                return null;
+            }
+        }
+    };
+
+    private static final ThreadLocal<MessageDigest> THREAD_SHA256 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                Log.e(TAG, "初始化SHA-256失败: " + e.getMessage(), e);
+                return null;
+            }
+        }
+    };
+
+    private SigningService() {}
+
+    /**
+     * 计算请求体的HmacSHA256签名（小写十六进制），失败时返回空字符串
+     */
+    public static String sign(String payload) {
+        Mac mac = THREAD_MAC.get();
+        if (mac == null || payload == null) {
+            return "";
+        }
+        // doFinal后Mac自动重置，可直接复用
+        return toHex(mac.doFinal(payload.getBytes(UTF_8)));
+    }
+
+    /**
+     * 批量签名：请求体之间以BATCH_SEPARATOR分隔，返回逗号分隔的签名，顺序与输入一致
+     */
+    public static String signBatch(String payloads) {
+        if (payloads == null) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder();
+        int start = 0;
+        int length = payloads.length();
+        while (true) {
+            int end = payloads.indexOf(BATCH_SEPARATOR, start);
+            if (end < 0) {
+                end = length;
+            }
+            if (out.length() > 0 || start > 0) {
+                out.append(',');
+            }
+            out.append(sign(payloads.substring(start, end)));
+            if (end >= length) {
+                break;
+            }
+            start = end + 1;
+        }
+        return out.toString();
+    }
+
+    /**
+     * 计算SHA-256摘要（小写十六进制）
+     */
+    public static String sha256(String data) {
+        MessageDigest digest = THREAD_SHA256.get();
+        if (digest == null || data == null) {
+            return "";
+        }
+        return toHex(digest.digest(data.getBytes(UTF_8)));
+    }
+
+    private static SecretKeySpec getSigningKey() {
+        if (signingKey == null) {
+            synchronized (SigningService.class) {
+                if (signingKey == null) {
+                    StringBuilder secret = new StringBuilder();
+                    for (String part : SECRET_PARTS) {
+                        secret.append(new String(Base64.decode(part, Base64.DEFAULT), UTF_8));
+                    }
+                    signingKey = new SecretKeySpec(secret.toString().getBytes(UTF_8), HMAC_ALGORITHM);
+                }
+            }
+        }
+        return signingKey;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int v = bytes[i] & 0xff;
+            out[i * 2] = HEX_DIGITS[v >>> 4];
+            out[i * 2 + 1] = HEX_DIGITS[v & 0x0f];
+        }
+        return new String(out);
+    }
+}
@@ -2,10 +2,12 @@ package com.schanyin.tgcf;
 
 import android.content.Context;
 import com.umeng.analytics.MobclickAgent;
+import org.json.JSONException;
 import org.json.JSONObject;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 友盟统计助手类
@@ -18,53 +20,316 @@ public class UmengHelper {
         return App.getContext();
     }
     
+    private static volatile AnalyticsPipeline pipeline;
+    
+    // 预编码属性格式：键值之间用\u001F分隔，键值对之间用\u001E分隔
+    // 例如 "level\u001F5\u001Esource\u001Fmerge"
+    public static final char ATTR_KV_SEPARATOR = '\u001F';
+    public static final char ATTR_PAIR_SEPARATOR = '\u001E';
+    
+    // 带属性的事件数
+    private static final AtomicLong attributedEvents = new AtomicLong();
+    // 分发时新建的属性Map数，以及直接沿用调用方Map（onEventWithMap）而未新建的次数
+    private static final AtomicLong attributeMapsCreated = new AtomicLong();
+    private static final AtomicLong attributeMapsReused = new AtomicLong();
+    
+    // 按事件ID的采样/限流策略，在入队前判断，被抑制的事件不占用队列
+    private static final EventSampler sampler = new EventSampler();
+    
+    // 采样权重属性名，看板按此字段还原实际次数
+    private static final String ATTR_SAMPLE_WEIGHT = "sample_weight";
+    
+    private static volatile AnalyticsAggregator aggregator;
+    
     /**
-     * 简单事件统计
-     * @param eventId 事件ID
+     * 获取统计事件管道（懒加载），消费线程中调用友盟接口
      */
-    public static void onEvent(String eventId) {
-        try {
-            Context context = getContext();
-            if (context != null) {
-                // 使用onEventObject接口，传入空的Map
-                MobclickAgent.onEventObject(context, eventId, null);
-                android.util.Log.d("UmengHelper", "友盟事件统计: " + eventId);
-            } else {
-                android.util.Log.e("UmengHelper", "Context为空，无法进行友盟事件统计");
+    private static AnalyticsPipeline getPipeline() {
+        if (pipeline == null) {
+            synchronized (UmengHelper.class) {
+                if (pipeline == null) {
+                    pipeline = new AnalyticsPipeline(new AnalyticsPipeline.Dispatcher() {
+                        @Override
+                        public void dispatch(AnalyticsPipeline.Event event) {
+                            dispatchEvent(event);
+                        }
+                    });
+                }
             }
-        } catch (Exception e) {
-            android.util.Log.e("UmengHelper", "友盟事件统计失败: " + e.getMessage());
         }
+        return pipeline;
+    }
+    
+    /**
+     * 简单事件统计（异步，写入队列后立即返回）
+     * @param eventId 事件ID
+     */
+    public static void onEvent(String eventId) {
+        enqueue(eventId, null, null, null, null);
     }
     
     /**
-     * 带属性的事件统计
+     * 带属性的事件统计（异步，JSON解析在消费线程中进行）
+     * 高频事件建议使用onEventEncoded，避免JSON序列化和解析
      * @param eventId 事件ID
      * @param attributesJson 属性JSON字符串
      */
     public static void onEventWithAttributes(String eventId, String attributesJson) {
+        enqueue(eventId, attributesJson, null, null, null);
+    }
+    
+    /**
+     * 带属性的事件统计（预编码格式，无JSON解析）
+     * @param eventId 事件ID
+     * @param encodedAttributes 预编码属性，格式见ATTR_KV_SEPARATOR/ATTR_PAIR_SEPARATOR
+     */
+    public static void onEventEncoded(String eventId, String encodedAttributes) {
+        enqueue(eventId, null, encodedAttributes, null, null);
+    }
+    
+    /**
+     * 带属性的事件统计（键值数组，供原生调用，无需JSON序列化和解析）
+     * 入队时复制数组，调用方可以立即复用自己的数组
+     * @param eventId 事件ID
+     * @param keys 属性键
+     * @param values 属性值，与keys一一对应
+     */
+    public static void onEventWithKeyValues(String eventId, String[] keys, String[] values) {
+        if (keys == null || values == null || keys.length != values.length) {
+            android.util.Log.e("UmengHelper", "属性键值数量不一致: " + eventId);
+            return;
+        }
+        enqueue(eventId, null, null, keys.clone(), values.clone());
+    }
+    
+    /**
+     * 带数值属性的事件统计（供原生调用），数值以Long/Double传给友盟，看板可以求和、求均值
+     * 字符串形式的数值会被友盟当作分类属性，汇总类事件应使用此接口
+     * @param eventId 事件ID
+     * @param attributes 属性，值为String或Number；须为可变Map（分发时直接交给友盟并可能写入采样权重），调用后不要再修改
+     */
+    public static void onEventWithMap(String eventId, Map<String, Object> attributes) {
+        int admit = sampler.admit(eventId);
+        if (admit == EventSampler.SUPPRESSED) {
+            return;
+        }
+        int weight = admit == EventSampler.UNWEIGHTED ? 0 : admit;
+        offer(new AnalyticsPipeline.Event(eventId, attributes, weight));
+    }
+    
+    /**
+     * 经过采样/限流判断后写入队列
+     */
+    private static void enqueue(String eventId, String attributesJson, String encodedAttributes,
+                                String[] keys, String[] values) {
+        int admit = sampler.admit(eventId);
+        if (admit == EventSampler.SUPPRESSED) {
+            return;
+        }
+        int weight = admit == EventSampler.UNWEIGHTED ? 0 : admit;
+        offer(new AnalyticsPipeline.Event(eventId, attributesJson, encodedAttributes, keys, values, weight));
+    }
+    
+    /**
+     * 写入队列；未同意隐私政策或日志尚未回放完时写入本地日志
+     */
+    private static void offer(AnalyticsPipeline.Event event) {
+        if (EventJournal.getInstance().append(EventJournal.CHANNEL_UMENG, event)) {
+            return;
+        }
+        getPipeline().offer(event);
+    }
+    
+    /**
+     * 回放日志中的事件（已经过采样，直接入队）
+     */
+    static void replayEvent(AnalyticsPipeline.Event event) {
+        getPipeline().offer(event);
+    }
+    
+    /**
+     * 等待队列中的事件分发完成，最多等待timeoutMs毫秒（日志回放批次之间调用）
+     * @return 队列已清空返回true，超时返回false
+     */
+    static boolean awaitDispatched(long timeoutMs) {
+        return pipeline == null || pipeline.flush(timeoutMs);
+    }
+    
+    /**
+     * 获取端上聚合器（懒加载），汇总事件不经过采样直接入队
+     */
+    private static AnalyticsAggregator getAggregator() {
+        if (aggregator == null) {
+            synchronized (UmengHelper.class) {
+                if (aggregator == null) {
+                    aggregator = new AnalyticsAggregator(new AnalyticsAggregator.SummarySink() {
+                        @Override
+                        public void emit(String eventId, Map<String, Object> attributes) {
+                            offer(new AnalyticsPipeline.Event(eventId, attributes, 0));
+                        }
+                    });
+                }
+            }
+        }
+        return aggregator;
+    }
+    
+    /**
+     * 端上聚合记录（高频事件使用，定时只上报一条汇总事件：事件ID + "_agg"）
+     * @param eventId 事件ID
+     * @param encodedDimensions 聚合维度（预编码格式，可为空字符串）
+     * @param value 数值，只计次数时传1
+     */
+    public static void aggregate(String eventId, String encodedDimensions, float value) {
+        getAggregator().record(eventId, encodedDimensions, value);
+    }
+    
+    /**
+     * 配置聚合事件的直方图分桶上界
+     * @param eventId 事件ID
+     * @param boundsCsv 升序的分桶上界，逗号分隔，如 "1,2,3,5,8,13"
+     */
+    public static void setAggregateBuckets(String eventId, String boundsCsv) {
         try {
-            Context context = getContext();
-            if (context != null) {
-                Map<String, Object> attributes = parseJsonToObjectMap(attributesJson);
-                // 使用官方推荐的onEventObject接口
-                MobclickAgent.onEventObject(context, eventId, attributes);
-                android.util.Log.d("UmengHelper", "友盟事件统计(带属性): " + eventId + ", 属性: " + attributesJson);
-            } else {
-                android.util.Log.e("UmengHelper", "Context为空，无法进行友盟事件统计");
+            String[] parts = boundsCsv.split(",");
+            double[] bounds = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                bounds[i] = Double.parseDouble(parts[i].trim());
             }
+            getAggregator().setBucketBounds(eventId, bounds);
         } catch (Exception e) {
-            android.util.Log.e("UmengHelper", "友盟事件统计(带属性)失败: " + e.getMessage());
+            android.util.Log.e("UmengHelper", "聚合分桶配置解析失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 加载统计事件采样/限流策略
+     * @param policiesJson 策略JSON，格式见EventSampler.configure
+     */
+    public static void configureEventPolicies(String policiesJson) {
+        try {
+            sampler.configure(policiesJson);
+        } catch (Exception e) {
+            android.util.Log.e("UmengHelper", "统计事件策略解析失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 通知消费线程立即把队列中的事件交给友盟（在onPause中调用，只发信号不等待，不阻塞UI线程）
+     */
+    public static void flush() {
+        // 先输出聚合汇总，再一起交给友盟
+        if (aggregator != null) {
+            aggregator.flush();
+        }
+        if (pipeline != null) {
+            pipeline.requestFlush();
+        }
+    }
+    
+    /**
+     * 获取统计管道状态（队列深度、丢弃数、带属性事件数等），供JS调试使用
+     */
+    public static String getAnalyticsStats() {
+        JSONObject stats = getPipeline().getStats();
+        try {
+            long events = attributedEvents.get();
+            long created = attributeMapsCreated.get();
+            stats.put("attributedEvents", events);
+            stats.put("attributeMapsCreated", created);
+            stats.put("attributeMapsReused", attributeMapsReused.get());
+            stats.put("mapsCreatedPerEvent", events > 0 ? (double) created / events : 0);
+            stats.put("sampling", sampler.getStats());
+            stats.put("journal", EventJournal.getInstance().getStats());
+        } catch (JSONException e) {
+            android.util.Log.e("UmengHelper", "构造统计状态失败: " + e.getMessage());
+        }
+        return stats.toString();
+    }
+    
+    /**
+     * 分发时新建的属性Map数（每个带属性事件最多一个）
+     */
+    public static long getAttributeMapsCreated() {
+        return attributeMapsCreated.get();
+    }
+    
+    /**
+     * 分发时沿用调用方Map、未新建Map的事件数
+     */
+    public static long getAttributeMapsReused() {
+        return attributeMapsReused.get();
+    }
+    
+    /**
+     * 在消费线程中把事件交给友盟
+     */
+    private static void dispatchEvent(AnalyticsPipeline.Event event) {
+        Context context = getContext();
+        if (context == null) {
+            android.util.Log.e("UmengHelper", "Context为空，无法进行友盟事件统计");
+            return;
+        }
+        if (!event.hasAttributes() && event.sampleWeight <= 0) {
+            // 使用onEventObject接口，传入空的Map
+            MobclickAgent.onEventObject(context, event.eventId, null);
+            return;
+        }
+        
+        // 友盟SDK不保证在onEventObject返回前复制Map内容，不能在事件之间复用同一个Map；
+        // onEventWithMap传入的Map入队后归本类所有，直接交给友盟，其他格式每个事件新建一个Map
+        Map<String, Object> attributes;
+        if (event.attributeMap != null) {
+            attributes = event.attributeMap;
+            attributeMapsReused.incrementAndGet();
+        } else {
+            attributes = new HashMap<>();
+            attributeMapsCreated.incrementAndGet();
+            if (event.keys != null) {
+                for (int i = 0; i < event.keys.length; i++) {
+                    attributes.put(event.keys[i], event.values[i]);
+                }
+            } else if (event.encodedAttributes != null) {
+                fillFromEncoded(event.encodedAttributes, attributes);
+            } else if (event.attributesJson != null) {
+                fillFromJson(event.attributesJson, attributes);
+            }
+        }
+        if (event.sampleWeight > 0) {
+            attributes.put(ATTR_SAMPLE_WEIGHT, event.sampleWeight);
+        }
+        attributedEvents.incrementAndGet();
+        
+        // 使用官方推荐的onEventObject接口
+        MobclickAgent.onEventObject(context, event.eventId, attributes);
+    }
+    
+    /**
+     * 解析预编码属性并写入Map
+     */
+    static int fillFromEncoded(String encoded, Map<String, Object> out) {
+        int pairs = 0;
+        int length = encoded.length();
+        int start = 0;
+        while (start < length) {
+            int pairEnd = encoded.indexOf(ATTR_PAIR_SEPARATOR, start);
+            if (pairEnd < 0) {
+                pairEnd = length;
+            }
+            int kvSplit = encoded.indexOf(ATTR_KV_SEPARATOR, start);
+            if (kvSplit > start && kvSplit < pairEnd) {
+                out.put(encoded.substring(start, kvSplit), encoded.substring(kvSplit + 1, pairEnd));
+                pairs++;
+            }
+            start = pairEnd + 1;
         }
+        return pairs;
     }
     
     /**
-     * 将JSON字符串转换为Map<String, Object>
-     * @param jsonString JSON字符串
-     * @return Map对象
+     * 解析JSON属性并写入Map（兼容旧接口）
      */
-    private static Map<String, Object> parseJsonToObjectMap(String jsonString) {
-        Map<String, Object> map = new HashMap<>();
+    private static void fillFromJson(String jsonString, Map<String, Object> out) {
         try {
             JSONObject jsonObject = new JSONObject(jsonString);
             Iterator<String> keys = jsonObject.keys();
@@ -73,44 +338,33 @@ public class UmengHelper {
                 Object value = jsonObject.get(key);
                 // 根据友盟文档，支持String、Long、Integer、Float、Double、Short类型
                 if (value instanceof String || value instanceof Number || value instanceof Boolean) {
-                    map.put(key, value);
+                    out.put(key, value);
                 } else {
                     // 其他类型转为字符串
-                    map.put(key, value.toString());
+                    out.put(key, value.toString());
                 }
             }
         } catch (Exception e) {
             android.util.Log.e("UmengHelper", "JSON解析失败: " + e.getMessage());
         }
-        return map;
     }
     
     /**
-     * 将JSON字符串转换为Map<String, String>（保留兼容性）
-     * @param jsonString JSON字符串
-     * @return Map对象
+     * 页面开始统计（同时开始原生页面耗时统计，卡顿按60帧的目标帧率计算）
+     * @param pageName 页面名称
      */
-    private static Map<String, String> parseJsonToMap(String jsonString) {
-        Map<String, String> map = new HashMap<>();
-        try {
-            JSONObject jsonObject = new JSONObject(jsonString);
-            Iterator<String> keys = jsonObject.keys();
-            while (keys.hasNext()) {
-                String key = keys.next();
-                String value = jsonObject.getString(key);
-                map.put(key, value);
-            }
-        } catch (Exception e) {
-            android.util.Log.e("UmengHelper", "JSON解析失败: " + e.getMessage());
-        }
-        return map;
+    public static void onPageStart(String pageName) {
+        onPageStart(pageName, 0);
     }
     
     /**
-     * 页面开始统计
+     * 页面开始统计（同时开始原生页面耗时统计）
      * @param pageName 页面名称
+     * @param targetFrameRate 游戏目标帧率（game.frameRate），用于计算卡顿阈值
      */
-    public static void onPageStart(String pageName) {
+    public static void onPageStart(String pageName, int targetFrameRate) {
+        // 原生页面耗时与帧率统计
+        PageTracker.getInstance().onPageStart(pageName, targetFrameRate);
         try {
             Context context = getContext();
             if (context != null) {
@@ -125,10 +379,21 @@ public class UmengHelper {
     }
     
     /**
-     * 页面结束统计
+     * 页面结束统计（同时上报一条Page_Visit页面访问事件，不含帧统计）
      * @param pageName 页面名称
      */
     public static void onPageEnd(String pageName) {
+        onPageEnd(pageName, null);
+    }
+    
+    /**
+     * 页面结束统计（同时上报一条Page_Visit页面访问事件）
+     * @param pageName 页面名称
+     * @param frameHistogram JS端在Director绘制完成事件中采集的帧耗时分桶计数（1ms一个桶，逗号分隔），可为空
+     */
+    public static void onPageEnd(String pageName, String frameHistogram) {
+        // 原生页面耗时统计，帧率和卡顿按引擎实际渲染的帧计算
+        PageTracker.getInstance().onPageEnd(pageName, frameHistogram);
         try {
             Context context = getContext();
             if (context != null) {